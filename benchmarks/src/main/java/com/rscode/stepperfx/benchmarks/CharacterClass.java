@@ -0,0 +1,102 @@
+package com.rscode.stepperfx.benchmarks;
+
+/**
+ * Classes of characters that generated text is drawn from, matching the cases that the process pipeline handles differently.<br><br>
+ *
+ * Letters are the only characters the cipher changes. Apostrophes are dropped from the output. Accented characters are
+ * the ones that {@code ProcessSubtaskDiacritics} replaces. A NUL character is stored as (char)7 by
+ * {@code ProcessSubtaskMain.findNonAlphaPositions}. Other Unicode characters, including ones outside the Basic Multilingual
+ * Plane, pass through as punctuation. Line breaks are not a class: generators place them by line length.
+ */
+public enum CharacterClass {
+
+    /**
+     * English lowercase letters
+     */
+    LOWERCASE("abcdefghijklmnopqrstuvwxyz"),
+
+    /**
+     * English uppercase letters
+     */
+    UPPERCASE("ABCDEFGHIJKLMNOPQRSTUVWXYZ"),
+
+    /**
+     * ASCII digits
+     */
+    DIGIT("0123456789"),
+
+    /**
+     * Spaces and tabs, mostly spaces
+     */
+    WHITESPACE("         \t"),
+
+    /**
+     * ASCII punctuation and symbols, except apostrophes
+     */
+    PUNCTUATION(".,;:!?\"()-[]{}<>/@#$%&*=+_"),
+
+    /**
+     * Every character that the pipeline treats as an apostrophe
+     */
+    APOSTROPHE("'`’"),
+
+    /**
+     * Accented letters, sub- and superscript digits, and the em dash that {@code ProcessSubtaskDiacritics} replaces,
+     * with some uppercase accented letters
+     */
+    ACCENTED("àáâãäåçðèéëêœæìíîïòóôõöøǹńñňßùúûüýÿ⁰₀¹₁²₂³₃⁴₄⁵₅⁶₆⁷₇⁸₈⁹₉—ÀÉÈÇÑÖÜ"),
+
+    /**
+     * Greek, Cyrillic, CJK, and Hangul letters, and emoji outside the Basic Multilingual Plane, which take two chars each
+     */
+    OTHER_UNICODE("αβγδεζηθλμπσωабвгдежзийклмн中文字漢日本語한국어😀🚀🎉"),
+
+    /**
+     * The NUL character, (char)0
+     */
+    NUL("\u0000");
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Code points of the class's characters. Repeated code points are drawn more often
+     */
+    private final int[] codePoints;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates a new class of the characters in {@code characters}
+     * @param characters characters of the class. Cannot be null or empty
+     */
+    CharacterClass(String characters) {
+        if(characters == null || characters.isEmpty()) throw new AssertionError("Characters cannot be null or empty");
+        this.codePoints = characters.codePoints().toArray();
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // GETTERS
+
+    /**
+     * Returns the code point at {@code index} of the class
+     * @param index index of the code point. Must be on the interval [0, {@code getSize()})
+     * @return the code point
+     */
+    public int getCodePoint(int index) {
+        return codePoints[index];
+    }
+
+
+
+    /**
+     * Returns the number of code points in the class
+     * @return number of code points, counting repeats
+     */
+    public int getSize() {
+        return codePoints.length;
+    }
+}
@@ -0,0 +1,184 @@
+package com.rscode.stepperfx.benchmarks;
+
+import com.rscode.stepperfx.threading.ProcessSubtaskMain;
+import com.rscode.stepperfx.threading.ProcessTask;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the four cipher kernels of {@code ProcessSubtaskMain}, in megabytes of input per second.<br><br>
+ *
+ * Each benchmark runs one kernel over random lowercase text, which is what the kernels receive after preprocessing.
+ * The text is ASCII, so each character is one byte. The throughput is reported as the "megabytes" secondary result, in MB/s.
+ * The primary result counts kernel calls per second.<br><br>
+ *
+ * Every combination of block count, block length, and input size is run by default. Use {@code -p} to run fewer,
+ * such as {@code -p inputBytes=1048576 -p blockCount=6}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CipherKernelBenchmark {
+
+    /**
+     * Key that the key blocks are created from. Longer than the largest key, so every block is filled from it
+     */
+    private static final String KEY_TEXT = "thequickbrownfoxjumpsoverthelazydog".repeat(30);
+
+    /**
+     * Seed of the random input text, so every run measures the same text
+     */
+    private static final long TEXT_SEED = 20240226L;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Number of blocks in the key. Must be on the interval [1, {@code StepperFields.MAX_BLOCK_COUNT}]
+     */
+    @Param({"1", "3", "6", "10"})
+    public int blockCount;
+
+    /**
+     * Number of characters in each key block. Must be on the interval [1, {@code StepperFields.MAX_BLOCK_LENGTH}]
+     */
+    @Param({"1", "10", "25", "100"})
+    public int blockLength;
+
+    /**
+     * Length of the input text, in bytes: 1 KB, 1 MB, and 100 MB
+     */
+    @Param({"1024", "1048576", "104857600"})
+    public int inputBytes;
+
+    /**
+     * Key blocks created from {@code KEY_TEXT}
+     */
+    private byte[][] key;
+
+    /**
+     * Subtask whose kernels are measured. Never executed, so its own input is unused
+     */
+    private ProcessSubtaskMain subtask;
+
+    /**
+     * Random lowercase text of {@code inputBytes} characters
+     */
+    private String text;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // MEGABYTES COUNTER
+
+    /**
+     * Counts the megabytes of input the kernels processed. JMH reports the count per second as the "megabytes" result
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Megabytes {
+
+        /**
+         * Megabytes processed in the current iteration
+         */
+        public double megabytes;
+
+        /**
+         * Resets the count before each iteration
+         */
+        @Setup(Level.Iteration)
+        public void resetCount() {
+            megabytes = 0;
+        }
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // SETUP
+
+    /**
+     * Creates the key blocks and the input text for the trial's block geometry and input size
+     */
+    @Setup(Level.Trial)
+    public void createInputs() {
+        key = new ProcessTask().createKeyBlocks_Testing(KEY_TEXT, blockCount, blockLength);
+        subtask = new ProcessSubtaskMain();
+
+        SplittableRandom random = new SplittableRandom(TEXT_SEED);
+        char[] letters = new char[inputBytes];
+        for(int i = 0; i < letters.length; i++) {
+            letters[i] = (char) ('a' + random.nextInt(26));
+        }
+        text = new String(letters);
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // BENCHMARKS
+
+    /**
+     * Measures {@code decryptStepper}
+     * @param counter counter of the megabytes processed
+     * @return the kernel's output, so it is not optimized away
+     */
+    @Benchmark
+    public String decryptStepper(Megabytes counter) {
+        counter.megabytes += inputBytes / 1e6;
+        return subtask.decryptStepper_Testing(text, key, 0);
+    }
+
+
+
+    /**
+     * Measures {@code decryptStepper2}
+     * @param counter counter of the megabytes processed
+     * @return the kernel's output, so it is not optimized away
+     */
+    @Benchmark
+    public String decryptStepper2(Megabytes counter) {
+        counter.megabytes += inputBytes / 1e6;
+        return subtask.decryptStepper2_Testing(text, key, 0);
+    }
+
+
+
+    /**
+     * Measures {@code encryptStepper}
+     * @param counter counter of the megabytes processed
+     * @return the kernel's output, so it is not optimized away
+     */
+    @Benchmark
+    public String encryptStepper(Megabytes counter) {
+        counter.megabytes += inputBytes / 1e6;
+        return subtask.encryptStepper_Testing(text, key, 0);
+    }
+
+
+
+    /**
+     * Measures {@code encryptStepper2}
+     * @param counter counter of the megabytes processed
+     * @return the kernel's output, so it is not optimized away
+     */
+    @Benchmark
+    public String encryptStepper2(Megabytes counter) {
+        counter.megabytes += inputBytes / 1e6;
+        return subtask.encryptStepper2_Testing(text, key, 0);
+    }
+}
@@ -0,0 +1,325 @@
+package com.rscode.stepperfx.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Generates reproducible random text with set proportions of each {@code CharacterClass} and set line lengths,
+ * either in memory or streamed to a UTF-8 file of any size.<br><br>
+ *
+ * Each code point is drawn from a class picked with the generator's weights. After each line of a random length within the
+ * generator's range, a line break is added. The same generator and seed always give the same text, and a file starts with
+ * the same text that is created in memory, so large benchmark and soak test inputs never need to be stored.<br><br>
+ *
+ * Run {@code main} to write a corpus file. Arguments:<br>
+ * {@code --out FILE}: file to write. Required<br>
+ * {@code --size SIZE}: size of the file in bytes, with an optional K, M, or G suffix. 100M by default<br>
+ * {@code --seed N}: seed of the random text, 1 by default<br>
+ * {@code --profile NAME}: {@code TextProfile} to start from, {@code PROSE} by default<br>
+ * {@code --weight CLASS=N}: weight of one {@code CharacterClass}, replacing the profile's. May be given more than once<br>
+ * {@code --min-line N}, {@code --max-line N}: shortest and longest line, replacing the profile's
+ */
+final public class CorpusGenerator {
+
+    /**
+     * Every character class, by ordinal. Kept so drawing a code point does not copy {@code CharacterClass.values()}
+     */
+    private static final CharacterClass[] CHARACTER_CLASSES = CharacterClass.values();
+
+    /**
+     * Number of chars that are buffered before they are written to a file
+     */
+    private static final int WRITE_BUFFER_CHARS = 1 << 16;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Longest line, in code points, not counting the line break
+     */
+    private final int maxLineLength;
+
+    /**
+     * Shortest line, in code points, not counting the line break
+     */
+    private final int minLineLength;
+
+    /**
+     * Sum of {@code weights}. Must be positive
+     */
+    private final int totalWeight;
+
+    /**
+     * Weight of each {@code CharacterClass}, by ordinal. Weights are relative, and cannot be negative
+     */
+    private final int[] weights;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates a new generator.
+     *
+     * @param weights weight of each {@code CharacterClass}, by ordinal. Cannot be null. Length must be the number of classes.
+     *                Weights cannot be negative, and must add up to a positive number
+     * @param minLineLength shortest line, in code points. Must be positive
+     * @param maxLineLength longest line, in code points. Cannot be less than {@code minLineLength}
+     */
+    public CorpusGenerator(int[] weights, int minLineLength, int maxLineLength) {
+        if(weights == null || weights.length != CHARACTER_CLASSES.length) throw new AssertionError("Weights must have "
+                + CHARACTER_CLASSES.length + " indices");
+        if(minLineLength <= 0) throw new AssertionError("Min line length must be positive- received " + minLineLength);
+        if(maxLineLength < minLineLength) throw new AssertionError("Max line length cannot be less than the min line length- "
+                + "received " + maxLineLength);
+
+        int total = 0;
+        for(int weight : weights) {
+            if(weight < 0) throw new AssertionError("Weights cannot be negative- received " + weight);
+            total += weight;
+        }
+        if(total <= 0) throw new AssertionError("Weights must add up to a positive number- received " + total);
+
+        this.weights = weights.clone();
+        this.totalWeight = total;
+        this.minLineLength = minLineLength;
+        this.maxLineLength = maxLineLength;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // HELPERS
+
+    /**
+     * Returns the number of bytes that {@code codePoint} takes in UTF-8.<br><br>
+     *
+     * Helper to {@code writeCorpus}
+     *
+     * @param codePoint code point to measure
+     * @return 1, 2, 3, or 4
+     */
+    private static int findUtf8Length(int codePoint) {
+        if(codePoint < 0x80) {
+            return 1;
+        }
+        else if(codePoint < 0x800) {
+            return 2;
+        }
+        else if(codePoint < 0x10000) {
+            return 3;
+        }
+        return 4;
+    }
+
+
+
+    /**
+     * Returns {@code size} in bytes, from a number with an optional K, M, or G suffix for binary multiples.<br><br>
+     *
+     * Helper to {@code main}
+     *
+     * @param size size to parse, such as "512K" or "2G". Cannot be null
+     * @return the size in bytes
+     * @throws NumberFormatException if {@code size} is not a number with an optional suffix
+     */
+    private static long parseSize(String size) {
+        int shift = switch(Character.toUpperCase(size.charAt(size.length() - 1))) {
+            case 'K' -> 10;
+            case 'M' -> 20;
+            case 'G' -> 30;
+            default -> 0;
+        };
+        String number = (shift == 0) ? size : size.substring(0, size.length() - 1);
+        return Long.parseLong(number) << shift;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Returns random text of {@code length} chars. If a code point outside the Basic Multilingual Plane would not fit
+     * in the last char, an 'a' is used instead.
+     *
+     * @param length number of chars in the text. Cannot be negative
+     * @param seed seed of the random text
+     * @return the text
+     */
+    public String createText(int length, long seed) {
+        if(length < 0) throw new AssertionError("Length cannot be negative- received " + length);
+
+        CharacterStream stream = new CharacterStream(seed);
+        char[] text = new char[length];
+        int textIndex = 0;
+        while(textIndex < length) {
+            int codePoint = stream.nextCodePoint();
+            if(Character.charCount(codePoint) > length - textIndex) {
+                codePoint = 'a';
+            }
+            textIndex += Character.toChars(codePoint, text, textIndex);
+        }
+        return new String(text);
+    }
+
+
+
+    /**
+     * Streams random text to {@code file} in UTF-8, until the file is exactly {@code sizeBytes} long.
+     * If a code point would not fit in the bytes left, an 'a' is used instead. Only a small buffer is held in memory,
+     * so files larger than the heap can be written.
+     *
+     * @param file file to write. Cannot be null. If it exists, it is replaced
+     * @param sizeBytes size of the file, in bytes. Cannot be negative
+     * @param seed seed of the random text
+     * @throws IOException if the file cannot be written
+     */
+    public void writeCorpus(Path file, long sizeBytes, long seed) throws IOException {
+        if(file == null) throw new AssertionError("File cannot be null");
+        if(sizeBytes < 0) throw new AssertionError("Size cannot be negative- received " + sizeBytes);
+
+        CharacterStream stream = new CharacterStream(seed);
+        char[] buffer = new char[WRITE_BUFFER_CHARS];
+        int bufferIndex = 0;
+        long bytesLeft = sizeBytes;
+
+        try(Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            while(bytesLeft > 0) {
+                int codePoint = stream.nextCodePoint();
+                int codePointBytes = findUtf8Length(codePoint);
+                if(codePointBytes > bytesLeft) {
+                    codePoint = 'a';
+                    codePointBytes = 1;
+                }
+
+                if(bufferIndex + 2 > buffer.length) {
+                    writer.write(buffer, 0, bufferIndex);
+                    bufferIndex = 0;
+                }
+                bufferIndex += Character.toChars(codePoint, buffer, bufferIndex);
+                bytesLeft -= codePointBytes;
+            }
+            writer.write(buffer, 0, bufferIndex);
+        }
+    }
+
+
+
+    /**
+     * Writes a corpus file with the given arguments.
+     *
+     * @param args arguments described in the class documentation
+     * @throws IOException if the file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = null;
+        long sizeBytes = 100L << 20;
+        long seed = 1;
+        TextProfile profile = TextProfile.PROSE;
+        int[] weightOverrides = new int[CHARACTER_CLASSES.length];
+        Arrays.fill(weightOverrides, -1);
+        int minLineLength = -1;
+        int maxLineLength = -1;
+
+        for(int a = 0; a + 1 < args.length; a += 2) {
+            switch(args[a]) {
+                case "--out" -> file = Path.of(args[a + 1]);
+                case "--size" -> sizeBytes = parseSize(args[a + 1]);
+                case "--seed" -> seed = Long.parseLong(args[a + 1]);
+                case "--profile" -> profile = TextProfile.valueOf(args[a + 1]);
+                case "--weight" -> {
+                    String[] classWeight = args[a + 1].split("=", 2);
+                    if(classWeight.length != 2) throw new IllegalArgumentException("Weight must be CLASS=N- received "
+                            + args[a + 1]);
+                    weightOverrides[CharacterClass.valueOf(classWeight[0]).ordinal()] = Integer.parseInt(classWeight[1]);
+                }
+                case "--min-line" -> minLineLength = Integer.parseInt(args[a + 1]);
+                case "--max-line" -> maxLineLength = Integer.parseInt(args[a + 1]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + args[a]);
+            }
+        }
+        if(file == null) throw new IllegalArgumentException("An output file must be given with --out");
+
+        //start from the profile's settings, then replace the ones that were given
+        CorpusGenerator base = profile.createGenerator();
+        int[] weights = base.weights.clone();
+        for(int w = 0; w < weights.length; w++) {
+            if(weightOverrides[w] >= 0) {
+                weights[w] = weightOverrides[w];
+            }
+        }
+        CorpusGenerator generator = new CorpusGenerator(weights,
+                (minLineLength > 0) ? minLineLength : base.minLineLength,
+                (maxLineLength > 0) ? maxLineLength : base.maxLineLength);
+
+        long start = System.nanoTime();
+        generator.writeCorpus(file, sizeBytes, seed);
+        System.out.printf("Wrote %d bytes to %s in %.1f s%n", sizeBytes, file, (System.nanoTime() - start) / 1e9);
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CHARACTER STREAM
+
+    /**
+     * Endless random code points from the generator's classes, with a line break after each line
+     */
+    private final class CharacterStream {
+
+        /**
+         * Random source of every choice. Seeded, so the stream is reproducible
+         */
+        private final SplittableRandom random;
+
+        /**
+         * Code points left before the next line break
+         */
+        private int lineCodePointsLeft;
+
+        /**
+         * Creates a new stream
+         * @param seed seed of the random code points
+         */
+        private CharacterStream(long seed) {
+            this.random = new SplittableRandom(seed);
+            this.lineCodePointsLeft = createLineLength();
+        }
+
+        /**
+         * Returns a random line length within the generator's range.<br><br>
+         *
+         * Helper to {@code nextCodePoint}
+         *
+         * @return the line length, in code points
+         */
+        private int createLineLength() {
+            return random.nextInt(minLineLength, maxLineLength + 1);
+        }
+
+        /**
+         * Returns the next code point: a line break if the line is full, otherwise a code point from a weighted random class
+         * @return the code point
+         */
+        private int nextCodePoint() {
+            if(lineCodePointsLeft == 0) {
+                lineCodePointsLeft = createLineLength();
+                return '\n';
+            }
+            lineCodePointsLeft--;
+
+            int pick = random.nextInt(totalWeight);
+            int classIndex = 0;
+            while(pick >= weights[classIndex]) {
+                pick -= weights[classIndex];
+                classIndex++;
+            }
+
+            CharacterClass characterClass = CHARACTER_CLASSES[classIndex];
+            return characterClass.getCodePoint(random.nextInt(characterClass.getSize()));
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.rscode.stepperfx.benchmarks;
+
+import com.rscode.stepperfx.threading.ProcessSubtaskDiacritics;
+import com.rscode.stepperfx.threading.ProcessSubtaskMain;
+import com.rscode.stepperfx.threading.ProcessTask;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time and allocations of the stages that prepare text for the cipher kernels, and of partitioning the text among workers.<br><br>
+ *
+ * Each benchmark runs one stage over text of a {@code TextProfile}, given to it as the pipeline would: the diacritics stage
+ * gets the raw text, and the other stages get the text without diacritics. {@code recombineNonAlphas} gets the letters and
+ * non-alphabetic positions that the earlier stages found.<br><br>
+ *
+ * Run {@code main} to record allocations per operation with JMH's GC profiler, which reports them as {@code gc.alloc.rate.norm}.
+ * The same profiler can be added to any run with {@code -prof gc}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PreprocessingBenchmark {
+
+    /**
+     * Block length used to partition the text, matching {@code StepperFields.DEFAULT_BLOCK_LENGTH}
+     */
+    private static final int PARTITION_BLOCK_LENGTH = 25;
+
+    /**
+     * Number of workers the text is partitioned among
+     */
+    private static final int PARTITION_THREADS = 8;
+
+    /**
+     * Seed of the random input text, so every run measures the same text
+     */
+    private static final long TEXT_SEED = 20240718L;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Length of the input text, in characters: 64 K and 1 M
+     */
+    @Param({"65536", "1048576"})
+    public int inputLength;
+
+    /**
+     * Mix of characters in the input text
+     */
+    @Param({"PROSE", "PUNCTUATED", "DIACRITICS", "NUMERIC"})
+    public TextProfile profile;
+
+    /**
+     * Subtask whose diacritics stage is measured. Never executed
+     */
+    private ProcessSubtaskDiacritics diacriticsSubtask;
+
+    /**
+     * Input text without diacritics, as the main process receives it
+     */
+    private String formattedText;
+
+    /**
+     * Lowercase letters of {@code formattedText}, as {@code removeNonAlphas} returns them
+     */
+    private String letters;
+
+    /**
+     * Subtask whose main process stages are measured. Never executed
+     */
+    private ProcessSubtaskMain mainSubtask;
+
+    /**
+     * Non-alphabetic positions of {@code formattedText}, as {@code findNonAlphaPositions} returns them
+     */
+    private char[] nonAlphas;
+
+    /**
+     * Task whose partitioning is measured. Never executed
+     */
+    private ProcessTask task;
+
+    /**
+     * Random text of {@code inputLength} characters with the profile's mix
+     */
+    private String text;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // SETUP
+
+    /**
+     * Creates the input text for the trial's profile and length, and the inputs of each later stage
+     */
+    @Setup(Level.Trial)
+    public void createInputs() {
+        task = new ProcessTask();
+        diacriticsSubtask = new ProcessSubtaskDiacritics();
+        mainSubtask = new ProcessSubtaskMain();
+
+        text = profile.createText(inputLength, TEXT_SEED);
+        formattedText = diacriticsSubtask.removeDiacritics_Testing(text);
+        nonAlphas = mainSubtask.findNonAlphaPositions_Testing(formattedText);
+        letters = mainSubtask.removeNonAlphas_Testing(formattedText);
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // BENCHMARKS
+
+    /**
+     * Measures {@code ProcessTask.assignWorkerLoads}, splitting the text among {@code PARTITION_THREADS} workers
+     * @return the workloads, so they are not optimized away
+     */
+    @Benchmark
+    public String[] assignWorkerLoads() {
+        return task.assignWorkerLoads_Testing(formattedText, PARTITION_THREADS, PARTITION_BLOCK_LENGTH);
+    }
+
+
+
+    /**
+     * Measures {@code ProcessSubtaskMain.findNonAlphaPositions}
+     * @return the non-alphabetic positions, so they are not optimized away
+     */
+    @Benchmark
+    public char[] findNonAlphaPositions() {
+        return mainSubtask.findNonAlphaPositions_Testing(formattedText);
+    }
+
+
+
+    /**
+     * Measures {@code ProcessSubtaskMain.recombineNonAlphas}, reinserting punctuation
+     * @return the recombined text, so it is not optimized away
+     */
+    @Benchmark
+    public String recombineNonAlphas() {
+        return mainSubtask.recombineNonAlphas_Testing(letters, nonAlphas, true);
+    }
+
+
+
+    /**
+     * Measures {@code ProcessSubtaskDiacritics.removeDiacritics}
+     * @return the text without diacritics, so it is not optimized away
+     */
+    @Benchmark
+    public String removeDiacritics() {
+        return diacriticsSubtask.removeDiacritics_Testing(text);
+    }
+
+
+
+    /**
+     * Measures {@code ProcessSubtaskMain.removeNonAlphas}
+     * @return the letters of the text, so they are not optimized away
+     */
+    @Benchmark
+    public String removeNonAlphas() {
+        return mainSubtask.removeNonAlphas_Testing(formattedText);
+    }
+
+
+
+    /**
+     * Measures {@code ProcessSubtaskMain.removeSpaces}
+     * @return the text without spaces between letters, so it is not optimized away
+     */
+    @Benchmark
+    public String removeSpaces() {
+        return mainSubtask.removeSpaces_Testing(formattedText);
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // MAIN
+
+    /**
+     * Runs every preprocessing benchmark with JMH's GC profiler, which records the bytes allocated per operation.
+     *
+     * @param args not used
+     * @throws RunnerException if JMH cannot run the benchmarks
+     */
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PreprocessingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
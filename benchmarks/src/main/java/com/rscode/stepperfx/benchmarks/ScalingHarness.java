@@ -0,0 +1,469 @@
+package com.rscode.stepperfx.benchmarks;
+
+import com.rscode.stepperfx.integration.InputSelection;
+import com.rscode.stepperfx.integration.OperationSelection;
+import com.rscode.stepperfx.integration.PunctuationSelection;
+import com.rscode.stepperfx.integration.StepperFields;
+import com.rscode.stepperfx.threading.ProcessMetrics;
+import com.rscode.stepperfx.threading.ProcessResult;
+import com.rscode.stepperfx.threading.ProcessTask;
+import javafx.application.Platform;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs the whole {@code ProcessTask} pipeline over a corpus at each worker count from 1 to twice the number of cores,
+ * and writes the scaling of each text to a CSV file.<br><br>
+ *
+ * The Tasks run on the harness's thread, without a stage. JavaFX is started on its headless Monocle platform,
+ * since Tasks report their progress to the FX app thread.<br>
+ * Each text is run once untimed to warm up, then {@code repetitions} times at each worker count. The run with the median
+ * processing time is recorded. The processing time leaves out the Task's fixed delays for the loading screen.<br><br>
+ *
+ * Each CSV row holds the wall time, processing time, speedup and parallel efficiency against one worker,
+ * peak resident set size (sampled from {@code /proc/self/status}), peak heap, GC time, and the time of the
+ * diacritics, main process, and reassembly phases. Reassembly and the {@code System.gc()} between the two runs are serial,
+ * so they show up as phase and GC time that does not shrink as workers are added.<br><br>
+ *
+ * Arguments, all optional:<br>
+ * {@code --corpus DIR}: directory of .txt files to run. If not given, 8 M characters of each {@code TextProfile} are run<br>
+ * {@code --out FILE}: CSV file to write, {@code scaling.csv} by default<br>
+ * {@code --operation NAME}: {@code OperationSelection} to run, {@code STEPPER2_ENCRYPT} by default<br>
+ * {@code --repetitions N}: timed runs at each worker count, 3 by default<br>
+ * {@code --max-threads N}: most workers to run with, twice the number of cores by default
+ */
+final public class ScalingHarness {
+
+    /**
+     * Header of the CSV file. Must match the columns written by {@code writeRow}
+     */
+    private static final String CSV_HEADER = "corpus,characters,operation,threads,wall_ms,processing_ms,speedup,efficiency,"
+            + "peak_rss_mb,peak_heap_mb,gc_ms,diacritics_ms,main_ms,reassembly_ms";
+
+    /**
+     * Number of characters of each generated text, if no corpus is given
+     */
+    private static final int GENERATED_TEXT_LENGTH = 8_000_000;
+
+    /**
+     * Key that every text is processed with
+     */
+    private static final String KEY_TEXT = "thequickbrownfoxjumpsoverthelazydog".repeat(30);
+
+    /**
+     * Milliseconds between samples of the resident set size
+     */
+    private static final long RSS_SAMPLE_MILLIS = 10;
+
+    /**
+     * Seed of the generated texts
+     */
+    private static final long TEXT_SEED = 1L;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Texts to run, by name, in the order they are run
+     */
+    private final Map<String, String> corpus;
+
+    /**
+     * Operation every text is processed with
+     */
+    private final OperationSelection operationSelection;
+
+    /**
+     * Number of timed runs at each worker count. Must be positive
+     */
+    private final int repetitions;
+
+    /**
+     * Worker counts to run, in increasing order, starting at 1
+     */
+    private final int[] threadCounts;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates a new harness.
+     *
+     * @param corpus texts to run, by name. Cannot be null or empty. Its order is kept
+     * @param operationSelection operation to process the texts with. Cannot be null
+     * @param repetitions number of timed runs at each worker count. Must be positive
+     * @param threadCounts worker counts to run. Cannot be null. Must start at 1 and increase
+     */
+    public ScalingHarness(Map<String, String> corpus, OperationSelection operationSelection, int repetitions, int[] threadCounts) {
+        if(corpus == null || corpus.isEmpty()) throw new AssertionError("Corpus cannot be null or empty");
+        if(operationSelection == null) throw new AssertionError("Operation cannot be null");
+        if(repetitions <= 0) throw new AssertionError("Repetitions must be positive- received " + repetitions);
+        if(threadCounts == null || threadCounts.length == 0 || threadCounts[0] != 1)
+            throw new AssertionError("Thread counts must start at 1");
+
+        this.corpus = new LinkedHashMap<>(corpus);
+        this.operationSelection = operationSelection;
+        this.repetitions = repetitions;
+        this.threadCounts = threadCounts.clone();
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // HELPERS
+
+    /**
+     * Returns the worker counts to sweep: every power of 2 below {@code maxThreads}, the number of cores, and {@code maxThreads}.
+     * Counts above {@code StepperFields.MAX_THREADS} are left out.<br><br>
+     *
+     * Helper to {@code main}
+     *
+     * @param maxThreads most workers to run with. Must be positive
+     * @return the worker counts, in increasing order, starting at 1
+     */
+    private static int[] createThreadCounts(int maxThreads) {
+        TreeSet<Integer> counts = new TreeSet<>();
+        for(int threads = 1; threads < maxThreads; threads *= 2) {
+            counts.add(threads);
+        }
+        counts.add(Math.min(Runtime.getRuntime().availableProcessors(), maxThreads));
+        counts.add(maxThreads);
+        counts.removeIf(threads -> threads > StepperFields.MAX_THREADS);
+        return counts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+
+
+    /**
+     * Returns the texts of every .txt file in {@code directory}, by filename, in filename order.<br><br>
+     *
+     * Helper to {@code main}
+     *
+     * @param directory directory to read. Cannot be null
+     * @return the texts, by filename
+     * @throws IOException if the directory or a file cannot be read
+     */
+    private static Map<String, String> readCorpus(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.txt")) {
+            stream.forEach(files::add);
+        }
+        files.sort(Comparator.comparing(Path::toString));
+
+        Map<String, String> texts = new LinkedHashMap<>();
+        for(Path file : files) {
+            texts.put(file.getFileName().toString(), Files.readString(file, StandardCharsets.UTF_8));
+        }
+        return texts;
+    }
+
+
+
+    /**
+     * Runs {@code text} once with {@code threads} workers, and returns the run's measurements.<br><br>
+     *
+     * Helper to {@code runText}
+     *
+     * @param text text to process. Cannot be null
+     * @param threads number of workers
+     * @return wall time, processing time, and peak RSS of the run, with its metrics
+     * @throws ExecutionException if the Task fails
+     * @throws InterruptedException if the harness is interrupted
+     */
+    private RunMeasurement runOnce(String text, int threads) throws ExecutionException, InterruptedException {
+        ProcessTask task = new ProcessTask(text, KEY_TEXT, operationSelection, PunctuationSelection.USE_PUNCTUATION,
+                StepperFields.DEFAULT_BLOCK_COUNT, StepperFields.DEFAULT_BLOCK_LENGTH, InputSelection.TEXT, null, false, threads);
+
+        RssSampler sampler = new RssSampler();
+        Thread samplerThread = new Thread(sampler, "RSS sampler");
+        samplerThread.setDaemon(true);
+        samplerThread.start();
+
+        long start = System.nanoTime();
+        task.run();
+        long wallNanos = System.nanoTime() - start;
+
+        sampler.running = false;
+        samplerThread.join();
+
+        ProcessResult result = task.get();
+        if(!result.isSucceeded()) {
+            throw new ExecutionException(new IllegalStateException("Run with " + threads + " threads did not succeed: "
+                    + result.getErrorType() + " " + result.getErrorMessage()));
+        }
+
+        long delayNanos = (ProcessTask.START_DELAY_MILLIS + ProcessTask.FINALIZING_DELAY_MILLIS) * 1_000_000;
+        return new RunMeasurement(wallNanos, Math.max(wallNanos - delayNanos, 1), sampler.peakRssBytes, result.getMetrics());
+    }
+
+
+
+    /**
+     * Runs {@code text} at every worker count, and writes one CSV row for each.<br><br>
+     *
+     * Helper to {@code run}
+     *
+     * @param name name of the text. Cannot be null
+     * @param text text to process. Cannot be null
+     * @param csv writer of the CSV file. Cannot be null
+     * @throws ExecutionException if a Task fails
+     * @throws InterruptedException if the harness is interrupted
+     */
+    private void runText(String name, String text, PrintWriter csv) throws ExecutionException, InterruptedException {
+        runOnce(text, threadCounts[threadCounts.length - 1]);
+
+        long baselineNanos = -1;
+        for(int threads : threadCounts) {
+            RunMeasurement[] runs = new RunMeasurement[repetitions];
+            for(int r = 0; r < repetitions; r++) {
+                runs[r] = runOnce(text, threads);
+            }
+            Arrays.sort(runs, Comparator.comparingLong(run -> run.processingNanos));
+            RunMeasurement median = runs[repetitions / 2];
+
+            if(baselineNanos < 0) {
+                baselineNanos = median.processingNanos;
+            }
+            double speedup = (double) baselineNanos / median.processingNanos;
+            writeRow(csv, name, text.length(), threads, median, speedup, speedup / threads);
+        }
+    }
+
+
+
+    /**
+     * Writes one CSV row to {@code csv} and the standard output.<br><br>
+     *
+     * Helper to {@code runText}
+     *
+     * @param csv writer of the CSV file. Cannot be null
+     * @param name name of the text. Cannot be null
+     * @param characters number of characters in the text
+     * @param threads number of workers
+     * @param run measurements of the median run. Cannot be null
+     * @param speedup processing time with one worker, divided by this processing time
+     * @param efficiency speedup divided by the number of workers
+     */
+    private void writeRow(PrintWriter csv, String name, int characters, int threads, RunMeasurement run, double speedup,
+                          double efficiency) {
+        ProcessMetrics metrics = run.metrics;
+        String row = String.format("%s,%d,%s,%d,%.1f,%.1f,%.3f,%.3f,%.1f,%.1f,%d,%.1f,%.1f,%.1f",
+                name.replace(",", "_"), characters, operationSelection.name(), threads,
+                run.wallNanos / 1e6, run.processingNanos / 1e6, speedup, efficiency,
+                (run.peakRssBytes < 0) ? -1.0 : run.peakRssBytes / (1024.0 * 1024.0),
+                metrics.getPeakHeapBytes() / (1024.0 * 1024.0), metrics.getGcMillis(),
+                metrics.getPhaseNanos(ProcessMetrics.Phase.DIACRITICS) / 1e6,
+                metrics.getPhaseNanos(ProcessMetrics.Phase.MAIN) / 1e6,
+                metrics.getPhaseNanos(ProcessMetrics.Phase.REASSEMBLY) / 1e6);
+        csv.println(row);
+        csv.flush();
+        System.out.println(row);
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Runs every text of the corpus at every worker count, and writes the results to {@code csvFile}.
+     *
+     * @param csvFile CSV file to write. Cannot be null. If it exists, it is replaced
+     * @throws IOException if the CSV file cannot be written
+     * @throws ExecutionException if a Task fails
+     * @throws InterruptedException if the harness is interrupted
+     */
+    public void run(Path csvFile) throws IOException, ExecutionException, InterruptedException {
+        if(csvFile == null) throw new AssertionError("CSV file cannot be null");
+
+        try(PrintWriter csv = new PrintWriter(Files.newBufferedWriter(csvFile, StandardCharsets.UTF_8))) {
+            csv.println(CSV_HEADER);
+            System.out.println(CSV_HEADER);
+            for(Map.Entry<String, String> text : corpus.entrySet()) {
+                runText(text.getKey(), text.getValue(), csv);
+            }
+        }
+    }
+
+
+
+    /**
+     * Starts headless JavaFX, runs the harness with the given arguments, then exits.
+     *
+     * @param args arguments described in the class documentation
+     * @throws Exception if the corpus cannot be read, the CSV file cannot be written, or a Task fails
+     */
+    public static void main(String[] args) throws Exception {
+        Path corpusDirectory = null;
+        Path csvFile = Path.of("scaling.csv");
+        OperationSelection operation = OperationSelection.STEPPER2_ENCRYPT;
+        int repetitions = 3;
+        int maxThreads = 2 * Runtime.getRuntime().availableProcessors();
+
+        for(int a = 0; a + 1 < args.length; a += 2) {
+            switch(args[a]) {
+                case "--corpus" -> corpusDirectory = Path.of(args[a + 1]);
+                case "--out" -> csvFile = Path.of(args[a + 1]);
+                case "--operation" -> operation = OperationSelection.valueOf(args[a + 1]);
+                case "--repetitions" -> repetitions = Integer.parseInt(args[a + 1]);
+                case "--max-threads" -> maxThreads = Integer.parseInt(args[a + 1]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + args[a]);
+            }
+        }
+        if(maxThreads <= 0) throw new IllegalArgumentException("Max threads must be positive- received " + maxThreads);
+
+        Map<String, String> corpus;
+        if(corpusDirectory != null) {
+            corpus = readCorpus(corpusDirectory);
+        }
+        else {
+            corpus = new LinkedHashMap<>();
+            for(TextProfile profile : TextProfile.values()) {
+                corpus.put("generated-" + profile.name(), profile.createText(GENERATED_TEXT_LENGTH, TEXT_SEED));
+            }
+        }
+
+        //Tasks send their progress to the FX app thread, so JavaFX must run, without a display
+        System.setProperty("glass.platform", "Monocle");
+        System.setProperty("monocle.platform", "Headless");
+        System.setProperty("prism.order", "sw");
+        Platform.startup(() -> {});
+        StepperFields.setKeyPaddingSeed(TEXT_SEED);
+        StepperFields.setLoggingMetrics(false);
+
+        try {
+            new ScalingHarness(corpus, operation, repetitions, createThreadCounts(maxThreads)).run(csvFile);
+        }
+        finally {
+            Platform.exit();
+        }
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // RUN MEASUREMENT
+
+    /**
+     * Measurements of one run
+     */
+    private static final class RunMeasurement {
+
+        /**
+         * Metrics of the run's result
+         */
+        private final ProcessMetrics metrics;
+
+        /**
+         * Most resident memory sampled during the run, in bytes, or -1 if it could not be read
+         */
+        private final long peakRssBytes;
+
+        /**
+         * Wall time without the Task's fixed delays, in nanoseconds
+         */
+        private final long processingNanos;
+
+        /**
+         * Wall time of the run, in nanoseconds
+         */
+        private final long wallNanos;
+
+        /**
+         * Creates the measurements of a run
+         *
+         * @param wallNanos wall time of the run, in nanoseconds
+         * @param processingNanos wall time without the Task's fixed delays, in nanoseconds
+         * @param peakRssBytes most resident memory sampled during the run, or -1
+         * @param metrics metrics of the run's result. Cannot be null
+         */
+        private RunMeasurement(long wallNanos, long processingNanos, long peakRssBytes, ProcessMetrics metrics) {
+            if(metrics == null) throw new AssertionError("Metrics cannot be null");
+            this.wallNanos = wallNanos;
+            this.processingNanos = processingNanos;
+            this.peakRssBytes = peakRssBytes;
+            this.metrics = metrics;
+        }
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // RSS SAMPLER
+
+    /**
+     * Samples the process's resident set size from {@code /proc/self/status} until stopped, keeping the largest sample
+     */
+    private static final class RssSampler implements Runnable {
+
+        /**
+         * Largest resident set size sampled, in bytes, or -1 if it could not be read
+         */
+        private volatile long peakRssBytes;
+
+        /**
+         * Whether the sampler keeps sampling. Set to false to stop it
+         */
+        private volatile boolean running;
+
+        /**
+         * Creates a new sampler, which samples once it is run
+         */
+        private RssSampler() {
+            this.peakRssBytes = -1;
+            this.running = true;
+        }
+
+        /**
+         * Samples until {@code running} is false, then samples once more
+         */
+        @Override
+        public void run() {
+            do {
+                long rssBytes = readRssBytes();
+                if(rssBytes > peakRssBytes) {
+                    peakRssBytes = rssBytes;
+                }
+                try {
+                    Thread.sleep(RSS_SAMPLE_MILLIS);
+                }
+                catch(InterruptedException e) {
+                    return;
+                }
+            } while(running);
+
+            peakRssBytes = Math.max(peakRssBytes, readRssBytes());
+        }
+
+        /**
+         * Returns the current resident set size, from the VmRSS line of {@code /proc/self/status}.<br><br>
+         *
+         * Helper to {@code run}
+         *
+         * @return resident set size in bytes, or -1 if it cannot be read
+         */
+        private long readRssBytes() {
+            try {
+                for(String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                    if(line.startsWith("VmRSS:")) {
+                        return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                    }
+                }
+            }
+            catch(IOException | NumberFormatException e) {
+                return -1;
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.rscode.stepperfx.benchmarks;
+
+/**
+ * Kinds of random input text for the benchmarks, each with its own mix of letters, punctuation, diacritics, and digits.<br><br>
+ *
+ * Each character is drawn from a {@code CharacterClass} with the profile's weight for that class, and lines are broken
+ * at random lengths within the profile's range. The same profile, length, and seed always give the same text, so runs of a
+ * benchmark measure the same input. A profile's {@code CorpusGenerator} can also stream its text to a file of any size.
+ */
+public enum TextProfile {
+
+    /**
+     * Plain English-like text: mostly letters and spaces, with some punctuation
+     */
+    PROSE(new int[] {70, 2, 1, 16, 3, 1, 0, 0, 0}, 40, 120),
+
+    /**
+     * Text where about a third of the characters are punctuation, such as code or markup
+     */
+    PUNCTUATED(new int[] {45, 3, 4, 12, 28, 2, 0, 0, 0}, 20, 80),
+
+    /**
+     * Text in a language with many accented letters, such as French or Vietnamese
+     */
+    DIACRITICS(new int[] {50, 2, 1, 16, 3, 1, 20, 0, 0}, 40, 120),
+
+    /**
+     * Text where about a third of the characters are digits, such as tables or logs
+     */
+    NUMERIC(new int[] {40, 2, 30, 18, 6, 0, 0, 0, 0}, 20, 80),
+
+    /**
+     * Text with every character class, including other scripts, emoji, and NUL characters, such as scraped web pages
+     */
+    MIXED_UNICODE(new int[] {50, 3, 4, 14, 6, 2, 8, 12, 1}, 20, 120);
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Longest line, in code points, not counting the line break
+     */
+    private final int maxLineLength;
+
+    /**
+     * Shortest line, in code points, not counting the line break
+     */
+    private final int minLineLength;
+
+    /**
+     * Weight of each {@code CharacterClass}, by ordinal
+     */
+    private final int[] weights;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates a new profile that draws characters with {@code weights}
+     *
+     * @param weights weight of each {@code CharacterClass}, by ordinal. Checked by {@code CorpusGenerator}
+     * @param minLineLength shortest line, in code points
+     * @param maxLineLength longest line, in code points
+     */
+    TextProfile(int[] weights, int minLineLength, int maxLineLength) {
+        this.weights = weights;
+        this.minLineLength = minLineLength;
+        this.maxLineLength = maxLineLength;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Returns a generator of text with this profile's mix of characters and line lengths
+     * @return a new generator
+     */
+    public CorpusGenerator createGenerator() {
+        return new CorpusGenerator(weights, minLineLength, maxLineLength);
+    }
+
+
+
+    /**
+     * Returns random text with this profile's mix of characters.
+     *
+     * @param length number of characters in the text. Cannot be negative
+     * @param seed seed of the random characters
+     * @return the text
+     */
+    public String createText(int length, long seed) {
+        return createGenerator().createText(length, seed);
+    }
+}
@@ -22,6 +22,9 @@ final public class MainApplication extends Application {
 
         StepperFields.assertConstantPreconditions();
 
+        //Tune the "Auto" thread option, calibrating in the background if this machine has no profile yet
+        StepperFields.preparePerformanceProfile();
+
         ScreenControl.setApplicationStage(initialStage);
 
         //Set the screens
@@ -31,11 +34,15 @@ final public class MainApplication extends Application {
         ScreenControl.addScreen(ScreenName.LOADING, "/com/rscode/stepperfx/views/loading-view.fxml");
         ScreenControl.addScreen(ScreenName.SETTINGS, "/com/rscode/stepperfx/views/settings-view.fxml");
         ScreenControl.addScreen(ScreenName.RESULTS, "/com/rscode/stepperfx/views/results-view.fxml");
+        ScreenControl.addScreen(ScreenName.MONITOR, "/com/rscode/stepperfx/views/monitor-view.fxml");
+        ScreenControl.addScreen(ScreenName.JOBS, "/com/rscode/stepperfx/views/jobs-view.fxml");
 
-        //Add alternate styles for input, settings, results screens
+        //Add alternate styles for input, settings, results, monitor, jobs screens
         ScreenControl.addAlternateStylesheet(ScreenName.INPUT, "/com/rscode/stepperfx/views/high-contrast-main-styles.css");
         ScreenControl.addAlternateStylesheet(ScreenName.SETTINGS, "/com/rscode/stepperfx/views/high-contrast-main-styles.css");
         ScreenControl.addAlternateStylesheet(ScreenName.RESULTS, "/com/rscode/stepperfx/views/high-contrast-main-styles.css");
+        ScreenControl.addAlternateStylesheet(ScreenName.MONITOR, "/com/rscode/stepperfx/views/high-contrast-main-styles.css");
+        ScreenControl.addAlternateStylesheet(ScreenName.JOBS, "/com/rscode/stepperfx/views/high-contrast-main-styles.css");
 
         ScreenControl.finishLoading();
 
@@ -1,31 +1,50 @@
 package com.rscode.stepperfx.controllers;
 
+import javafx.beans.InvalidationListener;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.input.KeyCode;
 import com.rscode.stepperfx.integration.*;
+import com.rscode.stepperfx.threading.ChunkContainer;
+import com.rscode.stepperfx.threading.ProcessJob;
+import com.rscode.stepperfx.threading.ThreadCountAdvisor;
 
+import java.io.File;
 import java.util.Optional;
 
 
 /**
- * Controller for the user input screen. Responsible for updating the input screen and starting the shared Service.<br>
+ * Controller for the user input screen. Responsible for updating the input screen, starting the shared Service,
+ * and adding jobs to the app's job queue.<br>
  * Not responsible for taking the output of the Service or handling the Service's cancellation.
  */
 final public class InputController extends IntegratedController {
 
     /**
-     * Options for the app's input selector. The first option should be treated as equal to the second option.
+     * Options for the app's input selector. The first option should be treated as equal to the second option.<br><br>
+     *
+     * Index 3 streams the input file. Streamed inputs always write their output to a file.<br>
+     * The last option browses an encrypted file, decrypting one result page at a time. Browsed inputs are never written to a file.
      */
-    final private String[] INPUT_SELECTION_OPTIONS = {"Select input mode", "Text", "File"};
+    final private String[] INPUT_SELECTION_OPTIONS = {"Select input mode", "Text", "File", "File (streamed)", "File (browse)"};
 
     /**
      * Options for the app's operation mode selector. The first option should be treated as equal to the second option.
      */
     final private String[] MODE_OPTIONS = {"Select process", "Forward", "Reverse"};
 
+    /**
+     * Options for the app's output selector.<br><br>
+     *
+     * First option ("Show output") >>> the output is shown on the results screen<br>
+     *
+     * Second option ("Write to file...") >>> displays a dialog asking the user for an output filepath.
+     * The output is written to that file, and the results screen shows where it was written.
+     */
+    final private String[] OUTPUT_SELECTION_OPTIONS = {"Show output", "Write to file..."};
+
     /**
      * Options for the app's punctuation selector. The first option should be treated as equal to the second option.
      */
@@ -34,17 +53,26 @@ final public class InputController extends IntegratedController {
     /**
      * Options for the app's thread selector.<br><br>
      *
-     * First option ("Number of threads: 1") >>> app uses 1 thread<br>
+     * First option ("Number of threads: Auto") >>> app chooses the number of threads with {@code ThreadCountAdvisor}<br>
      *
-     * Second option ("Custom") >>> displays dialog asking user for any amount of threads.
+     * Second option ("Threads: 1") >>> app uses 1 thread<br>
+     *
+     * Third option ("Custom") >>> displays dialog asking user for any amount of threads.
      * Starting the operation with "Custom..." selected should never occur.<br>
      *
      * All other options >>> app uses amount of threads after the phrase "Threads: "<br><br>
      *
-     * All options except for the first two should be in the format "Threads: {integer on the interval [1, StepperFields.MAX_THREADS]}"
+     * All options from index {@code FIXED_THREAD_OPTIONS_START} should be in the format
+     * "Threads: {integer on the interval [1, StepperFields.MAX_THREADS]}"
+     */
+    final private String[] THREAD_OPTIONS = {"Number of threads: Auto", "Threads: 1", "Custom...", "Threads: 2", "Threads: 4",
+            "Threads: 8", "Threads: 12", "Threads: 16", "Threads: 24", "Threads: 32"};
+
+    /**
+     * Index of the first option of {@code THREAD_OPTIONS} that holds a fixed number of threads, after the single-thread
+     * and "Custom..." options
      */
-    final private String[] THREAD_OPTIONS = {"Number of threads: 1", "Custom...", "Threads: 2", "Threads: 4", "Threads: 8",
-            "Threads: 12", "Threads: 16", "Threads: 24", "Threads: 32"};
+    final private int FIXED_THREAD_OPTIONS_START = 3;
 
 
     // ////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -58,6 +86,12 @@ final public class InputController extends IntegratedController {
     @FXML
     private Button startButton;
 
+    /**
+     * Switches to the jobs screen. Shows the number of jobs that have not finished
+     */
+    @FXML
+    private Button jobsButton;
+
     /**
      * Allows the user to choose between normal and enhanced (v2) operations
      */
@@ -80,6 +114,14 @@ final public class InputController extends IntegratedController {
     @FXML
     private ChoiceBox<String> modeSelector;
 
+    /**
+     * Allows the user to choose whether the output is shown or written to a file<br><br>
+     *
+     * Contents are specified by {@code OUTPUT_SELECTION_OPTIONS}
+     */
+    @FXML
+    private ChoiceBox<String> outputSelector;
+
     /**
      * Allows the user to select the punctuation mode<br><br>
      *
@@ -116,6 +158,13 @@ final public class InputController extends IntegratedController {
     private TextArea textInput;
 
 
+    /**
+     * Filepath entered by the user when the output selector's second option was chosen.
+     * The empty string means {@code StepperFields.DEFAULT_OUTPUT_FILENAME}. Cannot be null
+     */
+    private String outputFilepath;
+
+
 
     // ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
     // ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -132,7 +181,7 @@ final public class InputController extends IntegratedController {
 
         //Check thread option formatting
         for(int v=0; v<THREAD_OPTIONS.length; v++) {
-            if(v>1) {
+            if(v>=FIXED_THREAD_OPTIONS_START) {
                 if(!THREAD_OPTIONS[v].startsWith("Threads: ")) {
                     throw new AssertionError("Thread option index " + v + " must start with \"Threads: \"");
                 }
@@ -158,6 +207,9 @@ final public class InputController extends IntegratedController {
         inputSelector.getSelectionModel().selectFirst();
         modeSelector.setItems(FXCollections.observableArrayList(MODE_OPTIONS));
         modeSelector.getSelectionModel().selectFirst();
+        outputSelector.setItems(FXCollections.observableArrayList(OUTPUT_SELECTION_OPTIONS));
+        outputSelector.getSelectionModel().selectFirst();
+        outputFilepath = "";
         punctSelector.setItems(FXCollections.observableArrayList(PUNCT_OPTIONS));
         punctSelector.getSelectionModel().selectFirst();
         threadSelector.setItems(FXCollections.observableArrayList(THREAD_OPTIONS));
@@ -167,14 +219,16 @@ final public class InputController extends IntegratedController {
 
         //Set listener on the shared service to clear the text/key inputs upon successful output
         StepperFields.addServiceValueListener((obs, oldValue, newValue) -> {
-            //Service output: {processed text, key, error type, error message}
-            if(newValue!=null && newValue[0]!=null && newValue[1]!=null && newValue[2]==null) {
-                //This means: the service was not cancelled, and the service produced a valid output with a null error message
+            if(newValue!=null && newValue.isSucceeded()) {
+                //This means: the service was not cancelled, and the service produced a valid output
                 textInput.setText("");
                 keyInput.setText("");
             }
         });
 
+        //Keep the jobs button's count current as jobs are added and finish
+        StepperFields.fetchJobs().addListener((InvalidationListener) obs -> showJobCount());
+
         //Set key listener on this screen
         ScreenControl.addKeyEventFilter(name, event -> {
             if(event.getCode().equals(KeyCode.ALT)) {
@@ -189,6 +243,149 @@ final public class InputController extends IntegratedController {
 
 
 
+    // ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //HELPERS
+
+
+    /**
+     * Returns where the input comes from, as chosen by the input selector.<br><br>
+     *
+     * Helper to {@code queueProcess} and {@code startProcess}
+     *
+     * @return the input selection
+     */
+    private InputSelection findInputSelection() {
+        InputSelection inputSelection = InputSelection.TEXT;
+        if (inputSelector.getValue().equals(INPUT_SELECTION_OPTIONS[3])) {
+            inputSelection = InputSelection.FILE_STREAMING;
+        }
+        else if (inputSelector.getValue().equals(INPUT_SELECTION_OPTIONS[2])) {
+            inputSelection = InputSelection.FILE;
+        }
+        else if (inputSelector.getValue().equals(INPUT_SELECTION_OPTIONS[4])) {
+            inputSelection = InputSelection.FILE_BROWSING;
+        }
+        return inputSelection;
+    }
+
+
+
+    /**
+     * Returns the operation chosen by the mode selector and the version 2 checkbox.<br><br>
+     *
+     * Helper to {@code queueProcess} and {@code startProcess}
+     *
+     * @return the operation selection
+     */
+    private OperationSelection findOperationSelection() {
+        //Decrypt (Final value in MODE_OPTIONS is selected)
+        if(modeSelector.getValue().equals(MODE_OPTIONS[2])) {
+            return v2Selector.isSelected() ? OperationSelection.STEPPER2_DECRYPT : OperationSelection.STEPPER_DECRYPT;
+        }
+        //Encrypt
+        return v2Selector.isSelected() ? OperationSelection.STEPPER2_ENCRYPT : OperationSelection.STEPPER_ENCRYPT;
+    }
+
+
+
+    /**
+     * Returns the punctuation preferences chosen by the punctuation selector.<br><br>
+     *
+     * Helper to {@code queueProcess} and {@code startProcess}
+     *
+     * @return the punctuation selection
+     */
+    private PunctuationSelection findPunctSelection() {
+        PunctuationSelection punctSelection = PunctuationSelection.REMOVE_ALL_PUNCTUATION;
+        if (punctSelector.getValue().equals(PUNCT_OPTIONS[3])) {
+            punctSelection = PunctuationSelection.USE_PUNCTUATION;
+        }
+        else if (punctSelector.getValue().equals(PUNCT_OPTIONS[2])) {
+            punctSelection = PunctuationSelection.REMOVE_SPACES;
+        }
+        return punctSelection;
+    }
+
+
+
+    /**
+     * Returns the number of threads chosen by the thread selector. For the "Auto" option, the number is chosen from the
+     * size of the input, which is not read.<br><br>
+     *
+     * Helper to {@code queueProcess} and {@code startProcess}
+     *
+     * @param inputSelection where the input comes from. Cannot be null
+     * @return the thread count, on the interval [0, {@code StepperFields.MAX_THREADS}]
+     */
+    private int findThreadCount(InputSelection inputSelection) {
+        if(inputSelection == null) throw new AssertionError("Input selection cannot be null");
+
+        int threadCount = 0;
+        if (threadSelector.getValue().equals(THREAD_OPTIONS[0])) {
+            //Auto: size the input without reading it. A missing input file gets one thread, and the Task reports it
+            long inputSize = textInput.getText().strip().length();
+            if (inputSelection.isFileInput()) {
+                String inputFilepath = textInput.getText().strip();
+                inputSize = new File(inputFilepath.isEmpty() ? StepperFields.DEFAULT_INPUT_FILENAME : inputFilepath).length();
+            }
+            threadCount = ThreadCountAdvisor.findThreadCount(inputSize, inputSelection);
+        }
+        else if (threadSelector.getValue().equals(THREAD_OPTIONS[1])) {
+            threadCount = 1;
+        }
+        else if (threadSelector.getValue().equals(THREAD_OPTIONS[2])) {
+            throw new AssertionError("Invalid thread selector option- Cannot choose \"Custom...\"");
+        }
+        else {
+            //Remove the "Threads: " part of the string
+            String substr = threadSelector.getValue();
+            substr = substr.substring(9);
+            threadCount = Integer.parseInt(substr);
+        }
+        if(StepperFields.getLoginCredentials() != 0) {
+            threadCount = 0;
+        }
+        return threadCount;
+    }
+
+
+
+    /**
+     * Tells the user that a queued or running job, or the Service, already writes to {@code outputDestination}.<br><br>
+     *
+     * Helper to {@code queueProcess} and {@code startProcess}
+     *
+     * @param outputDestination claimed output filepath, or the empty string for {@code StepperFields.DEFAULT_OUTPUT_FILENAME}.
+     *                          Cannot be null
+     */
+    private void showClaimedOutputDialog(String outputDestination) {
+        if(outputDestination == null) throw new AssertionError("Output destination cannot be null");
+
+        StyledDialogs.showAlertDialog("Invalid output", "Output file in use",
+                (outputDestination.isEmpty() ? StepperFields.DEFAULT_OUTPUT_FILENAME : outputDestination)
+                + " is already being written by another job. Choose another output file, or wait for that job to finish");
+    }
+
+
+
+    /**
+     * Shows the number of jobs in the app's job queue that have not finished on the jobs button.<br><br>
+     *
+     * Helper to the job list listener set in {@code initializeController}
+     */
+    private void showJobCount() {
+        int activeJobs = 0;
+        for(ProcessJob job : StepperFields.fetchJobs()) {
+            if(!job.getStatus().isFinished()) {
+                activeJobs++;
+            }
+        }
+        jobsButton.setText((activeJobs == 0) ? "Jobs" : "Jobs (" + activeJobs + ")");
+    }
+
+
+
     // ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
     // ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
     // ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -204,7 +401,13 @@ final public class InputController extends IntegratedController {
     @FXML
     private void onInputSelectorChange() {
         if(inputSelector.getValue().equals(INPUT_SELECTION_OPTIONS[2])) {
-            textInputLabel.setText("Path to input text (*.txt) file");
+            textInputLabel.setText("Path to input text (*.txt) or container (*" + ChunkContainer.FILE_EXTENSION + ") file");
+        }
+        else if(inputSelector.getValue().equals(INPUT_SELECTION_OPTIONS[3])) {
+            textInputLabel.setText("Path to input text (*.txt) file (output is written to a file)");
+        }
+        else if(inputSelector.getValue().equals(INPUT_SELECTION_OPTIONS[4])) {
+            textInputLabel.setText("Path to encrypted text (*.txt) or container (*" + ChunkContainer.FILE_EXTENSION + ") file to browse");
         }
         else {
             textInputLabel.setText("Text");
@@ -231,7 +434,8 @@ final public class InputController extends IntegratedController {
         }
 
         //Change label text, if file input is not selected
-        if(!inputSelector.getValue().equals(INPUT_SELECTION_OPTIONS[2])) {
+        if(!inputSelector.getValue().equals(INPUT_SELECTION_OPTIONS[2]) && !inputSelector.getValue().equals(INPUT_SELECTION_OPTIONS[3])
+                && !inputSelector.getValue().equals(INPUT_SELECTION_OPTIONS[4])) {
             textInputLabel.setText("Text");
         }
     }
@@ -239,7 +443,41 @@ final public class InputController extends IntegratedController {
 
 
     /**
-     * Checks if the new value of the thread selector is index 1 ("Custom...").
+     * Checks if the new value of the output selector is index 1 ("Write to file...").
+     * If so, displays a dialog and allows the user to enter the output filepath.
+     */
+    @FXML
+    private void onOutputSelectorChange() {
+
+        if(outputSelector.getValue().equals(OUTPUT_SELECTION_OPTIONS[1])) {
+            Optional<String> userInput = StyledDialogs.showTextInputDialog("Output file", "Enter path to output file",
+                    "The output is written to this text (*.txt) file.\nEncrypted output can also be written to a container (*"
+                            + ChunkContainer.FILE_EXTENSION + ") file.\nLeave empty to use " + StepperFields.DEFAULT_OUTPUT_FILENAME);
+
+            if(userInput.isPresent()) {
+                String newOutputFilepath = userInput.get().strip();
+
+                //Not a text file: show error dialog
+                if(!newOutputFilepath.isEmpty() && !newOutputFilepath.endsWith(".txt")
+                        && !newOutputFilepath.endsWith(ChunkContainer.FILE_EXTENSION)) {
+                    outputSelector.getSelectionModel().selectFirst();
+                    StyledDialogs.showAlertDialog("Invalid input", "Invalid output file",
+                            "The output file must have a .txt or " + ChunkContainer.FILE_EXTENSION + " extension");
+                    return;
+                }
+
+                outputFilepath = newOutputFilepath;
+            }
+            else {
+                outputSelector.getSelectionModel().selectFirst();
+            }
+        }
+    }
+
+
+
+    /**
+     * Checks if the new value of the thread selector is index 2 ("Custom...").
      * If so, displays a dialog and allows the user to enter a new thread value.
      */
     @FXML
@@ -274,15 +512,15 @@ final public class InputController extends IntegratedController {
                     return;
                 }
 
-                //User wants 1 thread: set value to the default
+                //User wants 1 thread: set value to the single-thread option
                 if(newThreadCount == 1) {
-                    threadSelector.getSelectionModel().selectFirst();
+                    threadSelector.setValue(THREAD_OPTIONS[1]);
                     return;
                 }
 
                 ObservableList<String> threadSelectorContents = threadSelector.getItems();
                 //Look through the list for matching values
-                for(int i=2; i<threadSelectorContents.size(); i++) {
+                for(int i=FIXED_THREAD_OPTIONS_START; i<threadSelectorContents.size(); i++) {
                     int currentThreadCount = Integer.parseInt( threadSelectorContents.get(i).substring(9) );
 
                     //User input equals current value: set combo box to inputted value
@@ -311,6 +549,50 @@ final public class InputController extends IntegratedController {
 
 
 
+    /**
+     * Adds a job with the user's selected settings to the app's job queue, then clears the text input so the next
+     * input can be entered. The key is kept.<br>
+     * Queued jobs always write their output to a file. If the output is shown, it is written to a file named for the job instead.
+     * Browsed inputs cannot be queued, and neither can a job whose output file another job or the Service writes.
+     */
+    @FXML
+    private void queueProcess() {
+        InputSelection inputSelection = findInputSelection();
+        if(inputSelection == InputSelection.FILE_BROWSING) {
+            StyledDialogs.showAlertDialog("Invalid input", "Browsed files cannot be queued",
+                    "Start a browsed file with the start button instead");
+            return;
+        }
+
+        //Queued jobs have nowhere to show their output, so null names a file for the job
+        String outputDestination = null;
+        if (outputSelector.getValue().equals(OUTPUT_SELECTION_OPTIONS[1])) {
+            outputDestination = outputFilepath;
+        }
+        if(outputDestination != null && StepperFields.isOutputClaimed(outputDestination)) {
+            showClaimedOutputDialog(outputDestination);
+            return;
+        }
+
+        StepperFields.submitJob(textInput.getText().strip(), keyInput.getText().strip(), findOperationSelection(), findPunctSelection(),
+                StepperFields.getBlockCount(), StepperFields.getBlockLength(),
+                inputSelection, outputDestination, StepperFields.getWritingChunkIndex(), findThreadCount(inputSelection));
+
+        textInput.setText("");
+    }
+
+
+
+    /**
+     * Switches to the jobs screen
+     */
+    @FXML
+    private void showJobsScreen() {
+        ScreenControl.showScreen(ScreenName.JOBS);
+    }
+
+
+
     /**
      * Displays the login screen and resets the text inputs
      */
@@ -335,67 +617,34 @@ final public class InputController extends IntegratedController {
 
     /**
      * Loads the shared Service with the user's selected settings and runs the Service.<br>
-     * Transitions to the loading screen.
+     * Transitions to the loading screen. Does not start if a queued or running job writes the output file.
      */
     @FXML
     private void startProcess() {
 
-        ScreenControl.showScreen(ScreenName.LOADING, false);
+        InputSelection inputSelection = findInputSelection();
 
-        //Set mode options
-        OperationSelection operationSelection;
-        //Decrypt (Final value in MODE_OPTIONS is selected)
-        if(modeSelector.getValue().equals(MODE_OPTIONS[2])) {
-            if(v2Selector.isSelected()) {
-                operationSelection = OperationSelection.STEPPER2_DECRYPT;
-            }
-            else {
-                operationSelection = OperationSelection.STEPPER_DECRYPT;
-            }
+        //Set output destination. Streamed inputs are always written to a file, and browsed inputs never are
+        String outputDestination = null;
+        if (inputSelection == InputSelection.FILE_BROWSING) {
+            outputDestination = null;
         }
-        //Encrypt
-        else {
-            if(v2Selector.isSelected()) {
-                operationSelection = OperationSelection.STEPPER2_ENCRYPT;
-            }
-            else {
-                operationSelection = OperationSelection.STEPPER_ENCRYPT;
-            }
+        else if (outputSelector.getValue().equals(OUTPUT_SELECTION_OPTIONS[1])) {
+            outputDestination = outputFilepath;
         }
-
-        //Set punctuation mode
-        PunctuationSelection punctSelection = PunctuationSelection.REMOVE_ALL_PUNCTUATION;
-        if (punctSelector.getValue().equals(PUNCT_OPTIONS[3])) {
-            punctSelection = PunctuationSelection.USE_PUNCTUATION;
+        else if (inputSelection == InputSelection.FILE_STREAMING) {
+            outputDestination = "";
         }
-        else if (punctSelector.getValue().equals(PUNCT_OPTIONS[2])) {
-            punctSelection = PunctuationSelection.REMOVE_SPACES;
+        if(outputDestination != null && StepperFields.isOutputClaimed(outputDestination)) {
+            showClaimedOutputDialog(outputDestination);
+            return;
         }
 
-        //Set file loading mode
-        boolean loadingFromFile = inputSelector.getValue().equals(INPUT_SELECTION_OPTIONS[2]);
-
-        //Set thread count
-        int threadCount = 0;
-        if (threadSelector.getValue().equals(THREAD_OPTIONS[0])) {
-            threadCount = 1;
-        }
-        else if (threadSelector.getValue().equals(THREAD_OPTIONS[1])) {
-            throw new AssertionError("Invalid thread selector option- Cannot choose \"Custom...\"");
-        }
-        else {
-            //Remove the "Threads: " part of the string
-            String substr = threadSelector.getValue();
-            substr = substr.substring(9);
-            threadCount = Integer.parseInt(substr);
-        }
-        if(StepperFields.getLoginCredentials() != 0) {
-            threadCount = 0;
-        }
+        ScreenControl.showScreen(ScreenName.LOADING, false);
 
-        StepperFields.startService(textInput.getText().strip(), keyInput.getText().strip(), operationSelection, punctSelection,
+        StepperFields.startService(textInput.getText().strip(), keyInput.getText().strip(), findOperationSelection(), findPunctSelection(),
                 StepperFields.getBlockCount(), StepperFields.getBlockLength(),
-                loadingFromFile, threadCount);
+                inputSelection, outputDestination, StepperFields.getWritingChunkIndex(), findThreadCount(inputSelection));
 
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,187 @@
+package com.rscode.stepperfx.controllers;
+
+import com.rscode.stepperfx.integration.IntegratedController;
+import com.rscode.stepperfx.integration.ScreenControl;
+import com.rscode.stepperfx.integration.ScreenName;
+import com.rscode.stepperfx.integration.StepperFields;
+import com.rscode.stepperfx.threading.JobStatus;
+import com.rscode.stepperfx.threading.ProcessJob;
+import javafx.beans.InvalidationListener;
+import javafx.fxml.FXML;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.input.KeyCode;
+
+import java.util.EnumMap;
+
+/**
+ * Controller for the jobs screen. Responsible for listing the app's queued, running, and finished jobs,
+ * and cancelling them.<br><br>
+ *
+ * The list shows the job queue's own list, so rows are added, updated, and removed as the jobs change,
+ * including while another screen is shown. Finished jobs stay listed until "Clear Finished" is clicked.
+ */
+final public class JobsController extends IntegratedController {
+
+    /**
+     * Style class of the rows of failed jobs
+     */
+    private final static String FAILED_JOB_STYLE_CLASS = "failed-job";
+
+
+    /**
+     * Cancels the selected job. Disabled if no job is selected, or the selected job has finished
+     */
+    @FXML
+    private Button cancelButton;
+
+    /**
+     * Displays the number of jobs with each status, and the threads they use
+     */
+    @FXML
+    private Label jobCounts;
+
+    /**
+     * Lists the app's jobs, one row each, in the order they were added
+     */
+    @FXML
+    private ListView<ProcessJob> jobList;
+
+
+    // /////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates a new jobs controller. Its GUI elements are configured in {@code initializeController}
+     */
+    public JobsController() {
+        super();
+    }
+
+
+
+    /**
+     * Shows the app's jobs in the list, and keeps the counts and cancel button current as the jobs change
+     */
+    @Override
+    public void initializeController() {
+        jobList.setItems(StepperFields.fetchJobs());
+        jobList.setCellFactory(listView -> new ListCell<>() {
+            @Override
+            protected void updateItem(ProcessJob job, boolean empty) {
+                super.updateItem(job, empty);
+                getStyleClass().remove(FAILED_JOB_STYLE_CLASS);
+                if(empty || job == null) {
+                    setText(null);
+                    return;
+                }
+
+                setText(job.createSummary());
+                if(job.getStatus() == JobStatus.FAILED) {
+                    getStyleClass().add(FAILED_JOB_STYLE_CLASS);
+                }
+            }
+        });
+
+        jobList.getSelectionModel().selectedItemProperty().addListener((obs, oldValue, newValue) -> showCancelButton());
+        StepperFields.fetchJobs().addListener((InvalidationListener) obs -> {
+            showCancelButton();
+            showJobCounts();
+        });
+
+        ScreenControl.addKeyEventFilter(name, event -> {
+            if(event.getCode().equals(KeyCode.ESCAPE)) {
+                showInputScreen();
+            }
+        });
+    }
+
+
+    // /////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // HELPERS
+
+    /**
+     * Enables the cancel button if the selected job has not finished. Otherwise, disables it.<br><br>
+     *
+     * Helper to {@code prepareScreenTransition} and the listeners set in {@code initializeController}
+     */
+    private void showCancelButton() {
+        ProcessJob selectedJob = jobList.getSelectionModel().getSelectedItem();
+        cancelButton.setDisable(selectedJob == null || selectedJob.getStatus().isFinished());
+    }
+
+
+
+    /**
+     * Shows the number of jobs with each status, and how many of the job queue's threads are in use.<br><br>
+     *
+     * Helper to {@code prepareScreenTransition} and the job list listener set in {@code initializeController}
+     */
+    private void showJobCounts() {
+        if(jobList.getItems().isEmpty()) {
+            jobCounts.setText("No jobs");
+            return;
+        }
+
+        EnumMap<JobStatus, Integer> counts = new EnumMap<>(JobStatus.class);
+        for(ProcessJob job : jobList.getItems()) {
+            counts.merge(job.getStatus(), 1, Integer::sum);
+        }
+
+        StringBuilder text = new StringBuilder();
+        for(JobStatus status : JobStatus.values()) {
+            text.append(counts.getOrDefault(status, 0)).append(' ').append(status.name().toLowerCase()).append(", ");
+        }
+        text.append(StepperFields.fetchJobThreadsInUse()).append(" of ").append(StepperFields.fetchJobThreadBudget())
+                .append(" threads in use");
+        jobCounts.setText(text.toString());
+    }
+
+
+    // /////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Cancels the selected job. A queued job is cancelled at once, and a running job stops soon after
+     */
+    @FXML
+    private void cancelSelectedJob() {
+        ProcessJob selectedJob = jobList.getSelectionModel().getSelectedItem();
+        if(selectedJob != null) {
+            StepperFields.cancelJob(selectedJob);
+        }
+    }
+
+
+
+    /**
+     * Removes every finished job from the list
+     */
+    @FXML
+    private void clearFinishedJobs() {
+        StepperFields.clearFinishedJobs();
+    }
+
+
+
+    /**
+     * Shows the current job counts, since the Service's runs change the threads in use without changing a job
+     */
+    @Override
+    protected void prepareScreenTransition() {
+        showCancelButton();
+        showJobCounts();
+    }
+
+
+
+    /**
+     * Returns to the input screen. The jobs keep running in the background
+     */
+    @FXML
+    private void showInputScreen() {
+        ScreenControl.showScreen(ScreenName.INPUT);
+    }
+}
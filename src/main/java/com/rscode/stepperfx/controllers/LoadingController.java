@@ -3,14 +3,24 @@ package com.rscode.stepperfx.controllers;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.HBox;
 import com.rscode.stepperfx.integration.ScreenName;
 import com.rscode.stepperfx.integration.StepperFields;
 import com.rscode.stepperfx.integration.IntegratedController;
 import com.rscode.stepperfx.integration.ScreenControl;
 import com.rscode.stepperfx.threading.ProcessTask;
+import com.rscode.stepperfx.threading.WorkerProgress;
 
 /**
- * Controller for the loading screen. Responsible for stopping the Service and tracking its progress.
+ * Controller for the loading screen. Responsible for stopping the Service and tracking its progress.<br><br>
+ *
+ * A {@code ProcessTask} reports the characters processed in its current stage. From those samples, the loading screen shows
+ * the stage's percent done, its speed in characters per second, and an estimate of the time left. The speed is averaged
+ * over the stage so far, so it restarts whenever the stage changes.<br><br>
+ *
+ * Below the stage's progress, a strip shows one small bar for each worker thread. Workers flagged as stragglers
+ * are highlighted, and counted in the details.
  */
 final public class LoadingController extends IntegratedController {
 
@@ -20,11 +30,37 @@ final public class LoadingController extends IntegratedController {
      *
      * Used by a {@code ProcessTask} to update the loading screen text.<br><br>
      *
-     * Index 3 ("Writing to file...") is currently not used.
+     * Index 3 ("Writing to file...") is only used when the output is written to a file.
      */
     public final static String[] LOADING_STATE_NAMES =
             new String[] {"Loading input...", "Formatting...", "Executing...", "Writing to file...", "Finalizing..."};
 
+    /**
+     * Seconds a stage must run before its speed is shown. Earlier speeds are too noisy to estimate the time left. Must be positive
+     */
+    private final static double MIN_SPEED_SECONDS = 0.5;
+
+    /**
+     * Width of the worker strip, in pixels. Shared evenly by the workers' bars. Must be positive
+     */
+    private final static double WORKER_STRIP_WIDTH = 400;
+
+
+    /**
+     * Number of characters the stage had processed when its speed started being measured
+     */
+    private double stageStartWork;
+
+    /**
+     * Time when the stage's speed started being measured, from {@code System.nanoTime}
+     */
+    private long stageStartNanos;
+
+    /**
+     * Number of characters the current stage processes, or -1 if the stage's speed is not being measured yet
+     */
+    private double stageTotalWork;
+
 
     /**
      * Cancels the ongoing process when clicked. Disabled when the Service sends its output to the app.
@@ -38,21 +74,193 @@ final public class LoadingController extends IntegratedController {
     @FXML
     private Label loadStatus;
 
+    /**
+     * Shows how much of the current stage is done. Indeterminate if the stage's progress is not counted
+     */
+    @FXML
+    private ProgressBar progressBar;
+
+    /**
+     * Displays the current stage's percent done, speed, and time left
+     */
+    @FXML
+    private Label progressDetails;
+
+    /**
+     * Holds one bar for each worker thread in the current stage. Empty if the stage has no workers
+     */
+    @FXML
+    private HBox workerStrip;
+
     /**
      * Sets and configures the fields of this controller
      */
     @Override
     public void initializeController() {
+        stageTotalWork = -1;
 
         StepperFields.addServiceMessageListener((obs, oldValue, newValue) -> {
             loadStatus.setText(newValue);
 
             //Disable the cancel button when a cancel operation is impossible
             cancelButton.setDisable(newValue.equals(LOADING_STATE_NAMES[4]));
+
+            //A new stage measures its speed from its next progress sample
+            stageTotalWork = -1;
+            progressDetails.setText("");
+            workerStrip.getChildren().clear();
         });
+
+        //The Task sets the work done and total work before the progress, so both are current here
+        StepperFields.addServiceProgressListener((obs, oldValue, newValue) -> showProgress());
+    }
+
+
+
+    // /////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns {@code seconds} as a short duration, such as "45 s", "3 min 5 s", or "2 h 10 min".
+     * Helper to {@code createProgressDetails}
+     *
+     * @param seconds duration in seconds. Cannot be negative
+     * @return text of the duration
+     */
+    private String createDurationText(double seconds) {
+        if(seconds < 0) throw new AssertionError("Seconds cannot be negative- received " + seconds);
+
+        long wholeSeconds = Math.round(seconds);
+        if(wholeSeconds < 1) {
+            return "under 1 s";
+        }
+        if(wholeSeconds < 60) {
+            return wholeSeconds + " s";
+        }
+        if(wholeSeconds < 3600) {
+            return (wholeSeconds / 60) + " min " + (wholeSeconds % 60) + " s";
+        }
+        return (wholeSeconds / 3600) + " h " + ((wholeSeconds % 3600) / 60) + " min";
     }
 
 
+
+    /**
+     * Returns the text showing the current stage's percent done, speed, and time left.
+     * The speed is only shown once the stage has run for {@code MIN_SPEED_SECONDS}.<br><br>
+     *
+     * Helper to {@code showProgress}
+     *
+     * @param workDone number of characters processed in the stage. Cannot be negative
+     * @param totalWork number of characters the stage processes. Must be positive
+     * @param now current time, from {@code System.nanoTime}
+     * @return text of the stage's progress
+     */
+    private String createProgressDetails(double workDone, double totalWork, long now) {
+        if(workDone < 0) throw new AssertionError("Work done cannot be negative- received " + workDone);
+        if(totalWork <= 0) throw new AssertionError("Total work must be positive- received " + totalWork);
+
+        String details = String.format("%d%% of %,d characters", (int) (100 * workDone / totalWork), (long) totalWork);
+
+        double elapsedSeconds = (now - stageStartNanos) / 1e9;
+        if(elapsedSeconds < MIN_SPEED_SECONDS || workDone <= stageStartWork) {
+            return details + "  |  measuring speed...";
+        }
+
+        double charactersPerSecond = (workDone - stageStartWork) / elapsedSeconds;
+        return details + String.format("  |  %,d characters/s  |  about %s left", Math.round(charactersPerSecond),
+                createDurationText((totalWork - workDone) / charactersPerSecond));
+    }
+
+
+
+    /**
+     * Shows the monitor screen, where the running job's performance is charted. The job keeps running.
+     */
+    @FXML
+    private void showMonitorScreen() {
+        ScreenControl.showScreen(ScreenName.MONITOR, false);
+    }
+
+
+
+    /**
+     * Shows the progress of the Service's current stage. If the stage's progress is not counted, the progress bar
+     * is indeterminate and no details are shown.<br>
+     * The first sample of a stage starts measuring its speed.
+     */
+    private void showProgress() {
+        double workDone = StepperFields.fetchServiceWorkDone();
+        double totalWork = StepperFields.fetchServiceTotalWork();
+        if(workDone < 0 || totalWork <= 0) {
+            progressBar.setProgress(ProgressBar.INDETERMINATE_PROGRESS);
+            progressDetails.setText("");
+            return;
+        }
+
+        //A new total means a new stage
+        long now = System.nanoTime();
+        if(totalWork != stageTotalWork) {
+            stageTotalWork = totalWork;
+            stageStartWork = workDone;
+            stageStartNanos = now;
+        }
+
+        progressBar.setProgress(workDone / totalWork);
+        int stragglers = showWorkerStrip(now);
+        progressDetails.setText(createProgressDetails(workDone, totalWork, now)
+                + ((stragglers > 0) ? String.format("  |  %d straggling worker%s", stragglers, (stragglers == 1) ? "" : "s") : ""));
+    }
+
+
+
+    /**
+     * Shows each worker's progress in the worker strip, and highlights the stragglers.
+     * Clears the strip if the Service has no worker progress.<br><br>
+     *
+     * Helper to {@code showProgress}
+     *
+     * @param now current time, from {@code System.nanoTime}
+     * @return number of straggling workers
+     */
+    private int showWorkerStrip(long now) {
+        WorkerProgress workerProgress = StepperFields.fetchServiceWorkerProgress();
+        if(workerProgress == null) {
+            workerStrip.getChildren().clear();
+            return 0;
+        }
+
+        //Reuse the strip's bars while the worker count stays the same
+        int workers = workerProgress.getWorkerCount();
+        if(workerStrip.getChildren().size() != workers) {
+            workerStrip.getChildren().clear();
+            double barWidth = (WORKER_STRIP_WIDTH - workerStrip.getSpacing() * (workers - 1)) / workers;
+            for(int w = 0; w < workers; w++) {
+                ProgressBar workerBar = new ProgressBar(0);
+                workerBar.getStyleClass().add("worker-bar");
+                workerBar.setMinWidth(0);
+                workerBar.setPrefWidth(barWidth);
+                workerStrip.getChildren().add(workerBar);
+            }
+        }
+
+        double[] fractionsDone = workerProgress.findFractionsDone();
+        boolean[] stragglers = workerProgress.findStragglers(StepperFields.getStragglerFactor(), now);
+        int stragglerCount = 0;
+        for(int w = 0; w < workers; w++) {
+            ProgressBar workerBar = (ProgressBar) workerStrip.getChildren().get(w);
+            workerBar.setProgress(fractionsDone[w]);
+
+            workerBar.getStyleClass().remove("straggler");
+            if(stragglers[w]) {
+                workerBar.getStyleClass().add("straggler");
+                stragglerCount++;
+            }
+        }
+        return stragglerCount;
+    }
+
+
+
     /**
      * Stops the Service's execution, putting it in its READY state.
      * Sets the screen to the input screen.
@@ -64,4 +272,4 @@ final public class LoadingController extends IntegratedController {
         StepperFields.stopService();
         ScreenControl.showScreen(ScreenName.INPUT);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,410 @@
+package com.rscode.stepperfx.controllers;
+
+import com.rscode.stepperfx.integration.IntegratedController;
+import com.rscode.stepperfx.integration.ScreenControl;
+import com.rscode.stepperfx.integration.ScreenName;
+import com.rscode.stepperfx.integration.StepperFields;
+import javafx.application.Platform;
+import javafx.fxml.FXML;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.ScatterChart;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.input.KeyCode;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Controller for the monitor screen. Responsible for charting the app's performance while jobs run.<br><br>
+ *
+ * While monitoring, an in-process JFR {@code RecordingStream} records the JVM's CPU load, garbage collections, heap use,
+ * and allocation samples, as well as each {@code ProcessEvent} of the app's own jobs. The stream keeps running when
+ * another screen is shown, so a job can be started, then watched from the loading screen's "Monitor" button.<br><br>
+ *
+ * Events arrive on the stream's thread. They are collected there, and handed to the FX app thread once per flush of the
+ * stream, about once a second, so the charts never update once per event. Each series keeps its last
+ * {@code MAX_CHART_POINTS} points.
+ */
+final public class MonitorController extends IntegratedController {
+
+    /**
+     * Most points kept in each chart series. Older points are dropped. Must be positive
+     */
+    private final static int MAX_CHART_POINTS = 120;
+
+    /**
+     * Bytes in a megabyte, for the memory chart
+     */
+    private final static double MEGABYTE = 1024 * 1024;
+
+    /**
+     * Names of the app's phase events, and the label of each one's series. Must match the names in {@code ProcessEvent}
+     */
+    private final static String[][] PHASE_EVENTS = new String[][] {
+            {"com.rscode.stepperfx.FileRead", "File read"},
+            {"com.rscode.stepperfx.KeyBlocks", "Key blocks"},
+            {"com.rscode.stepperfx.Partition", "Partitioning"},
+            {"com.rscode.stepperfx.DiacriticsStage", "Diacritics"},
+            {"com.rscode.stepperfx.MainSubtask", "Main subtask"},
+            {"com.rscode.stepperfx.Reassembly", "Reassembly"},
+            {"com.rscode.stepperfx.OutputWrite", "Output write"}
+    };
+
+    /**
+     * Period of the CPU load and heap samples
+     */
+    private final static Duration SAMPLE_PERIOD = Duration.ofSeconds(1);
+
+
+    /**
+     * Bytes allocated in the current sample period, from allocation samples. Only used by the stream's thread
+     */
+    private long allocatedBytes;
+
+    /**
+     * Time when the current allocation sample period started. Only used by the stream's thread
+     */
+    private Instant allocationPeriodStart;
+
+    /**
+     * Points received since the last flush, for each series. Only used by the stream's thread
+     */
+    private HashMap<XYChart.Series<Number, Number>, List<XYChart.Data<Number, Number>>> pendingPoints;
+
+    /**
+     * Series of each phase event's durations, by event name
+     */
+    private final HashMap<String, XYChart.Series<Number, Number>> phaseSeries;
+
+    /**
+     * Stream of the JVM's events while monitoring, or null if not monitoring
+     */
+    private RecordingStream recordingStream;
+
+    /**
+     * Screen to return to when the monitor screen is left
+     */
+    private ScreenName returnScreen;
+
+    /**
+     * Time when monitoring started. Each point's time is in seconds after it. Set before the stream's thread starts
+     */
+    private Instant streamStart;
+
+
+    /**
+     * Series of the whole machine's CPU load, in percent
+     */
+    private final XYChart.Series<Number, Number> machineCpuSeries;
+
+    /**
+     * Series of the JVM's CPU load, in percent
+     */
+    private final XYChart.Series<Number, Number> jvmCpuSeries;
+
+    /**
+     * Series of the garbage collections' pause times, in milliseconds
+     */
+    private final XYChart.Series<Number, Number> gcPauseSeries;
+
+    /**
+     * Series of the allocation rate, in megabytes per second
+     */
+    private final XYChart.Series<Number, Number> allocationSeries;
+
+    /**
+     * Series of the heap used after each garbage collection, in megabytes
+     */
+    private final XYChart.Series<Number, Number> heapSeries;
+
+
+    /**
+     * Charts the CPU load of the machine and the JVM
+     */
+    @FXML
+    private LineChart<Number, Number> cpuChart;
+
+    /**
+     * Charts the pause time of each garbage collection
+     */
+    @FXML
+    private ScatterChart<Number, Number> gcChart;
+
+    /**
+     * Charts the allocation rate and heap use
+     */
+    @FXML
+    private LineChart<Number, Number> memoryChart;
+
+    /**
+     * Charts the duration of each of the app's phase events
+     */
+    @FXML
+    private ScatterChart<Number, Number> phaseChart;
+
+    /**
+     * Starts and stops monitoring
+     */
+    @FXML
+    private Button monitorButton;
+
+    /**
+     * Displays whether the app is being monitored
+     */
+    @FXML
+    private Label monitorStatus;
+
+
+    // /////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates a new monitor controller with empty series. Its GUI elements are configured in {@code initializeController}
+     */
+    public MonitorController() {
+        super();
+        machineCpuSeries = createSeries("Machine");
+        jvmCpuSeries = createSeries("JVM");
+        gcPauseSeries = createSeries("GC pauses");
+        allocationSeries = createSeries("Allocated per second");
+        heapSeries = createSeries("Heap used after GC");
+
+        phaseSeries = new HashMap<>(PHASE_EVENTS.length * 2);
+        for(String[] phaseEvent : PHASE_EVENTS) {
+            phaseSeries.put(phaseEvent[0], createSeries(phaseEvent[1]));
+        }
+
+        returnScreen = ScreenName.SETTINGS;
+    }
+
+
+    /**
+     * Adds each series to its chart, and turns off the charts' animations
+     */
+    @Override
+    public void initializeController() {
+        cpuChart.getData().add(machineCpuSeries);
+        cpuChart.getData().add(jvmCpuSeries);
+        gcChart.getData().add(gcPauseSeries);
+        memoryChart.getData().add(allocationSeries);
+        memoryChart.getData().add(heapSeries);
+        for(String[] phaseEvent : PHASE_EVENTS) {
+            phaseChart.getData().add(phaseSeries.get(phaseEvent[0]));
+        }
+
+        cpuChart.setAnimated(false);
+        gcChart.setAnimated(false);
+        memoryChart.setAnimated(false);
+        phaseChart.setAnimated(false);
+
+        ScreenControl.addKeyEventFilter(name, event -> {
+            if(event.getCode().equals(KeyCode.ESCAPE)) {
+                showReturnScreen();
+            }
+        });
+    }
+
+
+
+    // /////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // HELPERS
+
+    /**
+     * Queues a point for {@code series} at the time of {@code time}. Helper to the stream's event handlers
+     *
+     * @param series series to add the point to. Cannot be null
+     * @param time time of the point
+     * @param value value of the point
+     */
+    private void addPendingPoint(XYChart.Series<Number, Number> series, Instant time, double value) {
+        if(series == null) throw new AssertionError("Series cannot be null");
+
+        double seconds = Duration.between(streamStart, time).toMillis() / 1000.0;
+        pendingPoints.computeIfAbsent(series, s -> new ArrayList<>()).add(new XYChart.Data<>(seconds, value));
+    }
+
+
+
+    /**
+     * Returns a new, empty series named {@code seriesName}
+     * @param seriesName name shown in the chart's legend. Cannot be null
+     * @return the series
+     */
+    private static XYChart.Series<Number, Number> createSeries(String seriesName) {
+        if(seriesName == null) throw new AssertionError("Series name cannot be null");
+
+        XYChart.Series<Number, Number> series = new XYChart.Series<>();
+        series.setName(seriesName);
+        return series;
+    }
+
+
+
+    /**
+     * Hands the points received since the last flush of {@code stream} to the FX app thread.
+     * Helper to the stream's flush handler
+     *
+     * @param stream stream that was flushed. Cannot be null
+     */
+    private void flushPendingPoints(RecordingStream stream) {
+        if(stream == null) throw new AssertionError("Stream cannot be null");
+        if(pendingPoints.isEmpty()) {
+            return;
+        }
+
+        Map<XYChart.Series<Number, Number>, List<XYChart.Data<Number, Number>>> flushedPoints = pendingPoints;
+        pendingPoints = new HashMap<>();
+        Platform.runLater(() -> showPoints(flushedPoints, stream));
+    }
+
+
+
+    /**
+     * Adds the allocation sample {@code event} to the current sample period. Once the period ends, its allocation rate
+     * is queued. Helper to the stream's event handlers
+     *
+     * @param event allocation sample. Cannot be null
+     */
+    private void recordAllocation(RecordedEvent event) {
+        if(event == null) throw new AssertionError("Event cannot be null");
+
+        Instant time = event.getEndTime();
+        if(allocationPeriodStart == null) {
+            allocationPeriodStart = time;
+        }
+        allocatedBytes += event.getLong("weight");
+
+        Duration period = Duration.between(allocationPeriodStart, time);
+        if(period.compareTo(SAMPLE_PERIOD) >= 0) {
+            addPendingPoint(allocationSeries, time, allocatedBytes / MEGABYTE / (period.toMillis() / 1000.0));
+            allocatedBytes = 0;
+            allocationPeriodStart = time;
+        }
+    }
+
+
+
+    /**
+     * Adds {@code points} to their series, dropping each series' oldest points past {@code MAX_CHART_POINTS}.
+     * Ignored if {@code stream} is no longer the current stream.
+     *
+     * @param points points to add, by series. Cannot be null
+     * @param stream stream that the points came from
+     */
+    private void showPoints(Map<XYChart.Series<Number, Number>, List<XYChart.Data<Number, Number>>> points, RecordingStream stream) {
+        if(points == null) throw new AssertionError("Points cannot be null");
+        if(stream != recordingStream) {
+            return;
+        }
+
+        for(Map.Entry<XYChart.Series<Number, Number>, List<XYChart.Data<Number, Number>>> entry : points.entrySet()) {
+            List<XYChart.Data<Number, Number>> seriesData = entry.getKey().getData();
+            seriesData.addAll(entry.getValue());
+            if(seriesData.size() > MAX_CHART_POINTS) {
+                seriesData.subList(0, seriesData.size() - MAX_CHART_POINTS).clear();
+            }
+        }
+    }
+
+
+
+    // /////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Remembers the screen that the monitor screen was opened from, and shows whether the app is being monitored
+     */
+    @Override
+    protected void prepareScreenTransition() {
+        ScreenName previousScreen = ScreenControl.getCurrentScreen();
+        if(previousScreen != null && previousScreen != ScreenName.MONITOR) {
+            returnScreen = previousScreen;
+        }
+        monitorStatus.setText((recordingStream == null) ? "Not monitoring" : "Monitoring since " + streamStart);
+    }
+
+
+
+    /**
+     * Returns to the screen that the monitor screen was opened from. Monitoring continues in the background.<br>
+     * If that screen was the loading screen, and its job has ended, returns to the input screen instead.
+     */
+    @FXML
+    private void showReturnScreen() {
+        if(returnScreen == ScreenName.LOADING && !StepperFields.isServiceRunning()) {
+            ScreenControl.showScreen(ScreenName.INPUT, false);
+            return;
+        }
+        ScreenControl.showScreen(returnScreen, false);
+    }
+
+
+
+    /**
+     * Starts monitoring if the app is not being monitored. Otherwise, stops monitoring.<br><br>
+     *
+     * Starting clears the charts, then starts a new {@code RecordingStream} in the background.
+     */
+    @FXML
+    private void toggleMonitoring() {
+        if(recordingStream != null) {
+            recordingStream.close();
+            recordingStream = null;
+            monitorButton.setText("Start Monitoring");
+            monitorStatus.setText("Not monitoring");
+            return;
+        }
+
+        for(XYChart<Number, Number> chart : List.of(cpuChart, gcChart, memoryChart, phaseChart)) {
+            for(XYChart.Series<Number, Number> series : chart.getData()) {
+                series.getData().clear();
+            }
+        }
+
+        //The handlers run on the stream's thread. Its fields are set before the stream starts
+        RecordingStream stream = new RecordingStream();
+        streamStart = Instant.now();
+        pendingPoints = new HashMap<>();
+        allocatedBytes = 0;
+        allocationPeriodStart = null;
+
+        stream.enable("jdk.CPULoad").withPeriod(SAMPLE_PERIOD);
+        stream.enable("jdk.GarbageCollection");
+        stream.enable("jdk.GCHeapSummary");
+        stream.enable("jdk.ObjectAllocationSample");
+        for(String[] phaseEvent : PHASE_EVENTS) {
+            stream.enable(phaseEvent[0]);
+        }
+
+        stream.onEvent("jdk.CPULoad", event -> {
+            addPendingPoint(machineCpuSeries, event.getEndTime(), 100 * event.getFloat("machineTotal"));
+            addPendingPoint(jvmCpuSeries, event.getEndTime(), 100 * (event.getFloat("jvmUser") + event.getFloat("jvmSystem")));
+        });
+        stream.onEvent("jdk.GarbageCollection", event ->
+                addPendingPoint(gcPauseSeries, event.getEndTime(), event.getDuration("sumOfPauses").toNanos() / 1e6));
+        stream.onEvent("jdk.GCHeapSummary", event -> {
+            if("After GC".equals(event.getString("when"))) {
+                addPendingPoint(heapSeries, event.getEndTime(), event.getLong("heapUsed") / MEGABYTE);
+            }
+        });
+        stream.onEvent("jdk.ObjectAllocationSample", this::recordAllocation);
+        for(String[] phaseEvent : PHASE_EVENTS) {
+            XYChart.Series<Number, Number> series = phaseSeries.get(phaseEvent[0]);
+            stream.onEvent(phaseEvent[0], event -> addPendingPoint(series, event.getEndTime(), event.getDuration().toNanos() / 1e6));
+        }
+        stream.onFlush(() -> flushPendingPoints(stream));
+
+        recordingStream = stream;
+        stream.startAsync();
+        monitorButton.setText("Stop Monitoring");
+        monitorStatus.setText("Monitoring since " + streamStart);
+    }
+}
@@ -1,33 +1,72 @@
 package com.rscode.stepperfx.controllers;
 
 import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.input.Clipboard;
 import javafx.scene.input.ClipboardContent;
 import javafx.scene.input.KeyCode;
 import com.rscode.stepperfx.integration.*;
+import com.rscode.stepperfx.threading.ProcessResult;
+import com.rscode.stepperfx.threading.ResultPageReader;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Flow;
+
+import static com.rscode.stepperfx.integration.StepperFields.RESULT_PAGE_LENGTH;
 
 /**
- * Controller for the results screen. Responsible for handling the output and errors of the shared Service.
+ * Controller for the results screen. Responsible for handling the output and errors of the shared Service.<br><br>
+ *
+ * The result is shown by a {@code ResultViewer}, which only renders the visible rows, so the whole result is shown at once.<br>
+ * If the Service browsed a file, only the first page is decrypted by the Service. Each other page is decrypted
+ * by the Service's page reader on a background thread when the user moves to it.<br><br>
+ *
+ * While a result is processed, the start of it is previewed as soon as its first pieces are done.
+ * The preview holds up to {@code RESULT_PAGE_LENGTH} characters, and is replaced by the whole result once the Service finishes.<br><br>
+ *
+ * Below the key, a job summary shows how evenly the worker threads of the Service's last stage finished.
+ * The metrics button shows how long each phase of the job took, and how fast it ran.
  */
 final public class ResultsController extends IntegratedController {
 
     /**
-     * Holds the index of the current page in {@code resultPages}. Uses 0-based indexing, so the first page is at index 0.
+     * Subscriber that previews the partial results of the Service's current run, or null if no run is being previewed
+     */
+    private PartialResultPreview currentPreview;
+
+    /**
+     * Holds the index of the current page of a browsed result. Uses 0-based indexing, so the first page is at index 0.
+     * Always 0 if the result is not browsed, since the whole result is one page.
      */
     private int currentResultPage;
 
     /**
-     * Holds the result in pages. Each index of this list is one page. The first page is at index 0.
+     * Whether a browsed page is being decrypted. While true, the page buttons and arrow keys do nothing
+     */
+    private boolean loadingPage;
+
+    /**
+     * Reader that decrypts the pages of a browsed file, or null if the result is not browsed
+     */
+    private ResultPageReader pageReader;
+
+    /**
+     * Whether the displayed result is being searched. While true, finding text again does nothing
      */
-    private ArrayList<String> resultPages;
+    private boolean searching;
+
+    /**
+     * Result of the Service's last run, or null if no finished result is displayed. The result viewer's rows are views
+     * into its output, so the output is only copied into a String when it is copied to the clipboard
+     */
+    private ProcessResult shownResult;
 
 
     /**
-     * Allows the user to copy the entire text in {@code resultPages} to the system clipboard
+     * Allows the user to copy the entire text in {@code resultText} to the system clipboard
      */
     @FXML
     private Button copyButton;
@@ -44,6 +83,24 @@ final public class ResultsController extends IntegratedController {
     @FXML
     private Button pageForwardButton;
 
+    /**
+     * Allows the user to find text in the result. Pressing Enter moves to the next match
+     */
+    @FXML
+    private TextField findField;
+
+    /**
+     * Displays the job summary of the worker threads in the Service's last stage
+     */
+    @FXML
+    private Label jobSummaryText;
+
+    /**
+     * Shows the metrics of the displayed result
+     */
+    @FXML
+    private Button metricsButton;
+
     /**
      * Shows the current page and total pages to the user
      */
@@ -54,7 +111,7 @@ final public class ResultsController extends IntegratedController {
      * Displays the results of the app's processing
      */
     @FXML
-    private TextArea resultArea;
+    private ResultViewer resultArea;
 
     /**
      * Displays the key used to process the result
@@ -66,6 +123,7 @@ final public class ResultsController extends IntegratedController {
     /**
      * Sets the app's fields.<br>
      * Attaches a value listener to the app's shared Service to load the Service's output.<br>
+     * Subscribes to the partial results of each of the Service's runs, to preview the output before it is finished.<br>
      * Attaches an event filter to the scene graph root (in the screen manager) to check for key presses.
      */
     @Override
@@ -92,6 +150,13 @@ final public class ResultsController extends IntegratedController {
         });
 
 
+        //Preview the start of each run's result. The factory is called on the FX app thread as each run starts
+        StepperFields.addServicePartialResultSubscriber(() -> {
+            currentPreview = new PartialResultPreview();
+            return currentPreview;
+        });
+
+
         //Attach value listener to the service to handle its output
         StepperFields.addServiceValueListener((obs, oldValue, newValue) -> {
 
@@ -103,25 +168,22 @@ final public class ResultsController extends IntegratedController {
                     return;
                 }
 
-                //Check valid output
-                if(newValue.length != 4) {
-                    throw new AssertionError("Service output's length must be 4. Actual length is " + newValue.length);
-                }
-
                 //Error: display the dialog (dialog creation works on any screen)
-                if(newValue[0]==null && newValue[1]==null && newValue[2]!=null && newValue[3]!=null) {
+                if(newValue.isFailed()) {
+                    currentPreview = null;
                     StepperFields.resetService();
 
                     //It's important to change the screen first, then show the sponsored content.
                     ScreenControl.showScreen(ScreenName.INPUT, false);
 
                     //File loading exception: load with error message
-                    if(newValue[2].equals("class java.io.FileNotFoundException")) {
-                        StyledDialogs.showAlertDialog("File load error", "File load error", newValue[3]);
+                    String errorMessage = Objects.toString(newValue.getErrorMessage(), "No details were given");
+                    if(newValue.getErrorType().equals("class java.io.FileNotFoundException")) {
+                        StyledDialogs.showAlertDialog("File load error", "File load error", errorMessage);
                     }
                     //Any other exception: load with exception's message
                     else {
-                        StyledDialogs.showAlertDialog("Thread unhandled exception", newValue[2], newValue[3]);
+                        StyledDialogs.showAlertDialog("Thread unhandled exception", newValue.getErrorType(), errorMessage);
                     }
 
                     //After the dialog shows, show sponsored content
@@ -130,40 +192,28 @@ final public class ResultsController extends IntegratedController {
                     }
                 }
 
-                //No error: configure and display results screen
-                else if(newValue[0]!=null && newValue[1]!=null && newValue[2]==null && newValue[3]==null) {
-                    resultPages = new ArrayList<>();
-
-                    //Divide the result into pages
-                    int startIndex = 0;
-                    int endIndex = StepperFields.RESULT_PAGE_LENGTH;
-                    while(endIndex < newValue[0].length()) {
-                        resultPages.add(newValue[0].substring(startIndex, endIndex));
-                        startIndex += StepperFields.RESULT_PAGE_LENGTH;
-                        endIndex += StepperFields.RESULT_PAGE_LENGTH;
-                    }
-                    resultPages.add(newValue[0].substring(startIndex));
-                    resultPages.trimToSize();
-
-                    //configure UI variables
-                    currentResultPage = 0;
-                    pageDisplayText.setText("Page " + (currentResultPage+1) + " of " + resultPages.size() + ", displaying " +
-                            ((StepperFields.RESULT_PAGE_LENGTH==100000) ? "100K" : StepperFields.RESULT_PAGE_LENGTH) +
-                            " characters per page");
-                    pageBackwardButton.setDisable(true);
-                    pageForwardButton.setDisable(resultPages.size()<=1);
-
-                    //load the result
-                    resultArea.setText(resultPages.getFirst());
-                    keyArea.setText(newValue[1]);
-
-                    ScreenControl.showScreen(ScreenName.RESULTS);
+                //No error: index the result's rows on a background thread, so the FX thread only shows the finished rows
+                //A browsed file's first page is indexed the same way. Its later pages are decrypted on demand
+                else if(newValue.isSucceeded()) {
+                    ResultPageReader reader = StepperFields.fetchServicePageReader();
+
+                    Task<ResultRows> preparation = new Task<>() {
+                        @Override
+                        protected ResultRows call() {
+                            return new ResultRows(newValue.getOutput());
+                        }
+                    };
+                    preparation.setOnSucceeded(event -> showResult(preparation.getValue(), newValue, reader));
+                    preparation.setOnFailed(event -> {
+                        StepperFields.resetService();
+                        ScreenControl.showScreen(ScreenName.INPUT, false);
+                        StyledDialogs.showAlertDialog("Thread unhandled exception", "The result could not be displayed",
+                                String.valueOf(preparation.getException()));
+                    });
+                    startBackgroundTask(preparation);
                 }
 
-                //Something weird
-                else {
-                    throw new AssertionError("Illegal output configuration- output is " + Arrays.toString(newValue));
-                }
+                //Cancelled: the screen that cancelled the run already moved on
             });
         });
 
@@ -174,7 +224,26 @@ final public class ResultsController extends IntegratedController {
     // /////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
     /**
-     * Copies the output to the system clipboard
+     * Closes the page reader of a browsed result, if there is one.
+     */
+    private void closePageReader() {
+        if(pageReader == null) {
+            return;
+        }
+
+        try {
+            pageReader.close();
+        }
+        catch(IOException e) {
+            System.err.println("Could not close the browsed file: " + e.getMessage());
+        }
+        pageReader = null;
+    }
+
+
+
+    /**
+     * Copies the output to the system clipboard. If the result is browsed, only the current page is copied
      */
     @FXML
     private void copyResult() {
@@ -184,14 +253,18 @@ final public class ResultsController extends IntegratedController {
         Clipboard clipboard = Clipboard.getSystemClipboard();
         ClipboardContent content = new ClipboardContent();
 
-        //Turn the clipboard contents into a single string
-        StringBuilder combinedResult = new StringBuilder();
-        for(String str : resultPages) {
-            combinedResult.append(str);
+        //Browsed result: the whole result may not fit in memory
+        if(pageReader != null) {
+            content.putString(resultArea.getRows().getText().toString());
+            clipboard.setContent(content);
+
+            copyButton.setDisable(false);
+            pageDisplayText.setText("Page " + (currentResultPage+1) + " copied to clipboard");
+            return;
         }
 
-        //Export the result
-        content.putString(combinedResult.toString());
+        //Export the result, creating its String once
+        content.putString(shownResult.materializeOutput());
         clipboard.setContent(content);
 
         copyButton.setDisable(false);
@@ -200,54 +273,357 @@ final public class ResultsController extends IntegratedController {
 
 
     /**
-     * Sets the screen to the login screen. Resets the app's Service.
+     * Selects and scrolls to the next row of the displayed result that contains the text in {@code findField}.
+     * The result is searched on a background thread, and whether the text was found is shown in the page display text.
+     * Does nothing while an earlier search is running.
+     */
+    @FXML
+    private void findInResult() {
+        String query = findField.getText();
+        if(query == null || query.isEmpty() || searching) {
+            return;
+        }
+
+        String shownQuery = (query.length() <= 20) ? query : query.substring(0, 17) + "...";
+        ResultRows searchedRows = resultArea.getRows();
+        Task<Integer> findTask = resultArea.createFindTask(query);
+        searching = true;
+        pageDisplayText.setText("Searching for \"" + shownQuery + "\"...");
+
+        findTask.setOnSucceeded(event -> {
+            searching = false;
+
+            //Ignore searches of a result or page that is no longer displayed
+            if(resultArea.getRows() != searchedRows) {
+                return;
+            }
+            int row = findTask.getValue();
+            if(row >= 0) {
+                pageDisplayText.setText("Found \"" + shownQuery + "\" in row " + (row+1));
+            }
+            else {
+                pageDisplayText.setText("\"" + shownQuery + "\" was not found" + ((pageReader != null) ? " on this page" : ""));
+            }
+        });
+
+        findTask.setOnFailed(event -> {
+            searching = false;
+            if(resultArea.getRows() == searchedRows) {
+                pageDisplayText.setText("\"" + shownQuery + "\" could not be searched for");
+            }
+        });
+
+        startBackgroundTask(findTask);
+    }
+
+
+
+    /**
+     * Decrypts page {@code page} of the browsed result on a background thread, then displays it.<br>
+     * The page buttons are disabled until the page is displayed. If decryption fails, an error dialog is shown
+     * and the current page stays displayed.
+     *
+     * @param page number of the page to display. Cannot be negative
+     */
+    private void showBrowsedPage(int page) {
+        if(page < 0) throw new AssertionError("Page cannot be negative- received " + page);
+        if(pageReader == null) throw new AssertionError("The result must be browsed");
+
+        loadingPage = true;
+        pageBackwardButton.setDisable(true);
+        pageForwardButton.setDisable(true);
+        pageDisplayText.setText("Decrypting page " + (page+1) + "...");
+
+        //Decrypt the page and index its rows on a background thread
+        ResultPageReader reader = pageReader;
+        Task<ResultRows> pageTask = new Task<>() {
+            @Override
+            protected ResultRows call() throws Exception {
+                return new ResultRows(reader.readPage(page));
+            }
+        };
+
+        pageTask.setOnSucceeded(event -> {
+            //Ignore pages of a result that is no longer displayed
+            if(reader != pageReader) {
+                return;
+            }
+            loadingPage = false;
+            currentResultPage = page;
+            pageBackwardButton.setDisable(currentResultPage == 0);
+            pageForwardButton.setDisable(pageReader.isLastPage(currentResultPage));
+
+            pageDisplayText.setText("Page " + (currentResultPage+1) + " of about " + pageReader.estimatePageCount());
+            resultArea.setRows(pageTask.getValue());
+        });
+
+        pageTask.setOnFailed(event -> {
+            if(reader != pageReader) {
+                return;
+            }
+            loadingPage = false;
+            pageBackwardButton.setDisable(currentResultPage == 0);
+            pageForwardButton.setDisable(pageReader.isLastPage(currentResultPage));
+            pageDisplayText.setText("Page " + (currentResultPage+1) + " of about " + pageReader.estimatePageCount());
+
+            Throwable error = pageTask.getException();
+            StyledDialogs.showAlertDialog("Page load error", "Page " + (page+1) + " could not be decrypted",
+                    (error == null) ? "Unknown error" : error.getMessage());
+        });
+
+        startBackgroundTask(pageTask);
+    }
+
+
+
+    /**
+     * Sets the screen to the login screen. Stops and resets the app's Service, and closes any browsed file.<br>
+     * The Service may still be running if a partial result is being previewed.
      */
     @FXML
     private void showLoginScreen() {
         ScreenControl.showScreen(ScreenName.LOGIN);
-        StepperFields.resetService();
-        resultArea.setText("");
+        currentPreview = null;
+        StepperFields.stopService();
+        closePageReader();
+        shownResult = null;
+        resultArea.setRows(new ResultRows(""));
         keyArea.setText("");
+        jobSummaryText.setText("");
     }
 
 
 
     /**
-     * Reconfigures the UI to display the next page of result text.<br>
-     * If the current result page equals 1 less than the result page list's size (i.e. the last page is displayed),
-     * does nothing.
+     * Shows a dialog with the metrics of the displayed result: its phase times, throughput, worker count, and peak heap.
+     * Does nothing if no finished result is displayed
      */
     @FXML
-    private void showNextPage() {
-        if(currentResultPage+1 == resultPages.size()) {
+    private void showMetrics() {
+        if(shownResult == null) {
             return;
         }
 
-        currentResultPage++;
-        pageForwardButton.setDisable(currentResultPage+1 == resultPages.size());
-        pageBackwardButton.setDisable(currentResultPage == 0);
+        StyledDialogs.showInfoDialog("Job metrics", "Job metrics", shownResult.getMetrics().createReport());
+    }
+
 
-        pageDisplayText.setText("Page " + (currentResultPage+1) + " of " + resultPages.size());
-        resultArea.setText(resultPages.get(currentResultPage));
+
+    /**
+     * Reconfigures the UI to display the next page of a browsed result, which is decrypted first.<br>
+     * Does nothing if the result is not browsed, the last page is displayed, or a page is being decrypted.
+     */
+    @FXML
+    private void showNextPage() {
+        if(pageReader == null || loadingPage || pageReader.isLastPage(currentResultPage)) {
+            return;
+        }
+
+        showBrowsedPage(currentResultPage+1);
     }
 
 
     /**
-     * Reconfigures the UI to display the previous page of result text.<br>
-     * If the current result page equals 0 (i.e. the first page is displayed), does nothing.
+     * Reconfigures the UI to display the previous page of a browsed result, which is decrypted again.<br>
+     * Does nothing if the result is not browsed, the first page is displayed, or a page is being decrypted.
      */
     @FXML
     private void showPreviousPage() {
-        if(currentResultPage == 0) {
+        if(pageReader == null || loadingPage || currentResultPage == 0) {
             return;
         }
 
-        currentResultPage--;
-        pageForwardButton.setDisable(currentResultPage+1 == resultPages.size());
-        pageBackwardButton.setDisable(currentResultPage == 0);
+        showBrowsedPage(currentResultPage-1);
+    }
 
-        pageDisplayText.setText("Page " + (currentResultPage+1) + " of " + resultPages.size());
-        resultArea.setText(resultPages.get(currentResultPage));
+
+
+    /**
+     * Displays the start of a result that is still being processed. Ignored if {@code preview} no longer previews
+     * the Service's current run, or the run has ended.<br>
+     * The result screen is shown for the first preview of a run. Copying is disabled until the whole result is displayed.<br><br>
+     *
+     * Helper to {@code PartialResultPreview}
+     *
+     * @param preview subscriber that received the partial result. Cannot be null
+     * @param rows rows of the start of the result, indexed on a background thread. Cannot be null
+     * @param complete whether the preview holds its full {@code RESULT_PAGE_LENGTH} characters
+     */
+    private void showPreview(PartialResultPreview preview, ResultRows rows, boolean complete) {
+        if(preview == null) throw new AssertionError("Preview cannot be null");
+        if(rows == null) throw new AssertionError("Rows cannot be null");
+
+        //Ignore previews of runs that were cancelled, failed, or already finished
+        if(preview != currentPreview || !StepperFields.isServiceRunning()) {
+            return;
+        }
+
+        boolean firstPreview = !preview.shown;
+        preview.shown = true;
+        if(firstPreview) {
+            closePageReader();
+            shownResult = null;
+            currentResultPage = 0;
+            pageBackwardButton.setDisable(true);
+            pageForwardButton.setDisable(true);
+            copyButton.setDisable(true);
+            metricsButton.setDisable(true);
+            keyArea.setText("");
+            jobSummaryText.setText("");
+        }
+
+        pageDisplayText.setText("Previewing the first " + rows.getText().length()
+                + (complete ? "" : "+") + " characters while the rest is processed...");
+        resultArea.setRows(rows);
+
+        if(firstPreview) {
+            ScreenControl.showScreen(ScreenName.RESULTS, false);
+        }
     }
 
-}
\ No newline at end of file
+
+
+    /**
+     * Displays a finished result on the results screen. Takes constant time, however long the result is.
+     *
+     * @param rows rows of the result, or of a browsed file's first page, indexed on a background thread. Cannot be null
+     * @param result succeeded result of the Service's run. Cannot be null
+     * @param reader reader for a browsed file's other pages, or null if the result is not browsed
+     */
+    private void showResult(ResultRows rows, ProcessResult result, ResultPageReader reader) {
+        if(rows == null) throw new AssertionError("Rows cannot be null");
+        if(result == null || !result.isSucceeded()) throw new AssertionError("Result must have succeeded");
+
+        closePageReader();
+        currentPreview = null;
+        pageReader = reader;
+        loadingPage = false;
+        currentResultPage = 0;
+        shownResult = result;
+
+        //configure UI variables. A result held in memory is one page
+        pageBackwardButton.setDisable(true);
+        pageForwardButton.setDisable(reader == null || reader.isLastPage(0));
+        copyButton.setDisable(false);
+        metricsButton.setDisable(false);
+        if(reader != null) {
+            pageDisplayText.setText("Page 1 of about " + reader.estimatePageCount() + " (browsing, pages are decrypted on demand)");
+        }
+        else {
+            pageDisplayText.setText("Showing all " + rows.getText().length() + " characters (" + rows.getRowCount() + " rows)");
+        }
+
+        //load the result. The viewer shows it without copying it
+        resultArea.setRows(rows);
+        keyArea.setText(result.getKey());
+        jobSummaryText.setText(result.getMetrics().getWorkerSummary());
+
+        ScreenControl.showScreen(ScreenName.RESULTS);
+    }
+
+
+
+    /**
+     * Runs {@code task} on a new daemon thread, so it never keeps the app open.<br><br>
+     *
+     * Helper to the Service value listener, {@code findInResult}, and {@code showBrowsedPage}
+     *
+     * @param task task to run. Cannot be null
+     */
+    private void startBackgroundTask(Task<?> task) {
+        if(task == null) throw new AssertionError("Task cannot be null");
+
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+
+    // /////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // PARTIAL RESULT PREVIEW
+
+    /**
+     * Subscriber that collects the first {@code RESULT_PAGE_LENGTH} characters of a result as its pieces are published,
+     * and previews them on the results screen.<br><br>
+     *
+     * Pieces are requested one at a time, and the rows of each preview are indexed on the publisher's thread,
+     * so the FX app thread only shows them. Once the preview is full, the subscription is cancelled,
+     * so the run never waits for the preview again.
+     */
+    private final class PartialResultPreview implements Flow.Subscriber<String> {
+
+        /**
+         * Start of the result received so far, without leading whitespace. Only used by the publisher's thread
+         */
+        private final StringBuilder previewText;
+
+        /**
+         * Whether this preview was shown on the results screen. Only used by the FX app thread
+         */
+        private boolean shown;
+
+        /**
+         * Subscription to the run's partial results. Null until subscribed
+         */
+        private Flow.Subscription subscription;
+
+        /**
+         * Creates a new preview that has received nothing
+         */
+        private PartialResultPreview() {
+            previewText = new StringBuilder();
+            shown = false;
+            subscription = null;
+        }
+
+        /**
+         * Does nothing. The whole result, or its error, is received by the Service value listener
+         */
+        @Override
+        public void onComplete() {}
+
+        /**
+         * Does nothing. The whole result, or its error, is received by the Service value listener
+         * @param throwable error that stopped publishing
+         */
+        @Override
+        public void onError(Throwable throwable) {}
+
+        /**
+         * Adds {@code piece} to the preview, then shows the preview on the FX app thread.
+         * Requests the next piece, or cancels the subscription if the preview is full.
+         *
+         * @param piece next piece of the result, in order
+         */
+        @Override
+        public void onNext(String piece) {
+            //The whole result is stripped, so its preview is too
+            String addedText = (previewText.isEmpty()) ? piece.stripLeading() : piece;
+            previewText.append(addedText, 0, Math.min(addedText.length(), RESULT_PAGE_LENGTH - previewText.length()));
+
+            boolean complete = previewText.length() >= RESULT_PAGE_LENGTH;
+            if(!previewText.isEmpty()) {
+                ResultRows rows = new ResultRows(previewText.toString());
+                Platform.runLater(() -> showPreview(this, rows, complete));
+            }
+
+            if(complete) {
+                subscription.cancel();
+            }
+            else {
+                subscription.request(1);
+            }
+        }
+
+        /**
+         * Requests the first piece of the result
+         * @param subscription subscription to the run's partial results
+         */
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package com.rscode.stepperfx.controllers;
 
 import com.rscode.stepperfx.integration.*;
+import com.rscode.stepperfx.threading.CalibrationTask;
+import com.rscode.stepperfx.threading.PerformanceProfile;
+import com.rscode.stepperfx.threading.ThreadCountAdvisor;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
@@ -27,6 +31,30 @@ public final class SettingsController extends IntegratedController {
     @FXML
     private CheckBox highContrastStyleSelector;
 
+    /**
+     * Allows the user to write a chunk index next to encrypted output files, which speeds up decrypting them later
+     */
+    @FXML
+    private CheckBox chunkIndexSelector;
+
+    /**
+     * Allows the user to split straggling worker threads among the idle threads
+     */
+    @FXML
+    private CheckBox stragglerSplitSelector;
+
+    /**
+     * Allows the user to append each finished job's metrics to the metrics log
+     */
+    @FXML
+    private CheckBox metricsLogSelector;
+
+    /**
+     * Shows the performance profile that the "Auto" thread option uses, or the progress of its calibration
+     */
+    @FXML
+    private Label calibrationText;
+
     /**
      *  Label for the block count input
      */
@@ -39,6 +67,12 @@ public final class SettingsController extends IntegratedController {
     @FXML
     private Label blockLengthInputText;
 
+    /**
+     *  Label for the straggler factor input
+     */
+    @FXML
+    private Label stragglerFactorInputText;
+
     /**
      * Displays text if the user's settings update was successful
      */
@@ -57,6 +91,37 @@ public final class SettingsController extends IntegratedController {
     @FXML
     private TextField blockLengthInput;
 
+    /**
+     * Text input for the straggler factor
+     */
+    @FXML
+    private TextField stragglerFactorInput;
+
+
+    // /////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // /////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // /////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //HELPERS
+
+
+    /**
+     * Shows the performance profile that the "Auto" thread option uses, or that it is being calibrated.<br><br>
+     *
+     * Helper to {@code prepareScreenTransition} and {@code startCalibration}
+     */
+    private void showCalibrationStatus() {
+        PerformanceProfile profile = ThreadCountAdvisor.getProfile();
+        if(StepperFields.isCalibrationRunning()) {
+            calibrationText.setText("Auto threads: calibrating...");
+        }
+        else if(profile != null) {
+            calibrationText.setText("Auto threads: " + profile.createSummary());
+        }
+        else {
+            calibrationText.setText("Auto threads: not calibrated");
+        }
+    }
+
 
     // /////////////////////////////////////////////////////////////////////////////////////////////////////////////
     // /////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -72,6 +137,7 @@ public final class SettingsController extends IntegratedController {
 
         int newBlockCount = StepperFields.getBlockCount();
         int newBlockLength = StepperFields.getBlockLength();
+        double newStragglerFactor = StepperFields.getStragglerFactor();
 
         //Get new block count
         if(!blockCountInput.getText().isEmpty()) {
@@ -107,10 +173,31 @@ public final class SettingsController extends IntegratedController {
             }
         }
 
+        //Get new straggler factor
+        if(!stragglerFactorInput.getText().isEmpty()) {
+            try {
+                newStragglerFactor = Double.parseDouble(stragglerFactorInput.getText());
+            }
+            catch (NumberFormatException e) {
+                StyledDialogs.showAlertDialog("Invalid input", "Invalid input", "New straggler factor must be a number");
+                return;
+            }
+
+            if(!(newStragglerFactor >= 1) || Double.isInfinite(newStragglerFactor)) {
+                StyledDialogs.showAlertDialog("Invalid input", "Invalid input",
+                        "New straggler factor must be a number that is at least 1");
+                return;
+            }
+        }
+
         //Update the "changes applied" label, if changes were made
         if(!blockCountInput.getText().isEmpty()
                 || !blockLengthInput.getText().isEmpty()
-                || highContrastStyleSelector.isSelected() != ScreenControl.getUsingAlternateStyles()) {
+                || !stragglerFactorInput.getText().isEmpty()
+                || highContrastStyleSelector.isSelected() != ScreenControl.getUsingAlternateStyles()
+                || chunkIndexSelector.isSelected() != StepperFields.getWritingChunkIndex()
+                || stragglerSplitSelector.isSelected() != StepperFields.getSplittingStragglers()
+                || metricsLogSelector.isSelected() != StepperFields.getLoggingMetrics()) {
             statusText.setText("Changes applied");
         }
         else {
@@ -121,13 +208,20 @@ public final class SettingsController extends IntegratedController {
         StepperFields.setBlockCount(newBlockCount);
         StepperFields.setBlockLength(newBlockLength);
         ScreenControl.setAlternateStyles(highContrastStyleSelector.isSelected());
+        StepperFields.setWritingChunkIndex(chunkIndexSelector.isSelected());
+        StepperFields.setStragglerFactor(newStragglerFactor);
+        StepperFields.setSplittingStragglers(stragglerSplitSelector.isSelected());
+        StepperFields.setLoggingMetrics(metricsLogSelector.isSelected());
 
         //Update the labels
         blockCountInputText.setText("Number of blocks (current: " + StepperFields.getBlockCount() + ")");
         blockLengthInputText.setText("Block length (current: " + StepperFields.getBlockLength() + ")");
+        stragglerFactorInputText.setText("Straggler factor, times the median worker's time (current: "
+                + StepperFields.getStragglerFactor() + ")");
 
         blockCountInput.setText("");
         blockLengthInput.setText("");
+        stragglerFactorInput.setText("");
     }
 
 
@@ -143,13 +237,20 @@ public final class SettingsController extends IntegratedController {
 
 
     /**
-     * Prepares the settings screen for view. Updates the high-contrast selector, block count, and block length displayed.
+     * Prepares the settings screen for view. Updates the high-contrast selector, chunk index selector,
+     * straggler split selector, metrics log selector, block count, block length, straggler factor, and calibration status displayed.
      */
     @Override
     protected void prepareScreenTransition() {
+        showCalibrationStatus();
         highContrastStyleSelector.setSelected(ScreenControl.getUsingAlternateStyles());
+        chunkIndexSelector.setSelected(StepperFields.getWritingChunkIndex());
+        stragglerSplitSelector.setSelected(StepperFields.getSplittingStragglers());
+        metricsLogSelector.setSelected(StepperFields.getLoggingMetrics());
         blockCountInputText.setText("Number of blocks (current: " + StepperFields.getBlockCount() + ")");
         blockLengthInputText.setText("Block length (current: " + StepperFields.getBlockLength() + ")");
+        stragglerFactorInputText.setText("Straggler factor, times the median worker's time (current: "
+                + StepperFields.getStragglerFactor() + ")");
     }
 
 
@@ -163,6 +264,34 @@ public final class SettingsController extends IntegratedController {
         statusText.setText(" ");
         blockCountInput.setText("");
         blockLengthInput.setText("");
+        stragglerFactorInput.setText("");
+    }
+
+
+
+    /**
+     * Changes to the monitor screen, where the app's performance is charted
+     */
+    @FXML
+    private void showMonitorScreen() {
+        ScreenControl.showScreen(ScreenName.MONITOR, false);
+        statusText.setText(" ");
+    }
+
+
+
+    /**
+     * Recalibrates the performance profile in the background, and shows the calibration's status until it finishes.
+     * If a calibration is already running, only shows its status.
+     */
+    @FXML
+    private void startCalibration() {
+        CalibrationTask calibration = StepperFields.startCalibration();
+        showCalibrationStatus();
+        calibration.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, event -> showCalibrationStatus());
+        calibration.addEventHandler(WorkerStateEvent.WORKER_STATE_CANCELLED, event -> showCalibrationStatus());
+        calibration.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED,
+                event -> calibrationText.setText("Auto threads: calibration failed"));
     }
 
 
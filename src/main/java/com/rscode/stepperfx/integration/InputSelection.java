@@ -0,0 +1,25 @@
+package com.rscode.stepperfx.integration;
+
+/**
+ * Possible user preferences for where the input comes from.<br><br>
+ *
+ * Possible values:<br>
+ * - {@code TEXT}: Input is the text typed into the app<br>
+ * - {@code FILE}: Input is loaded from a file, then processed all at once<br>
+ * - {@code FILE_STREAMING}: Input is read from a file one chunk at a time. The output is written to a file<br>
+ * - {@code FILE_BROWSING}: Input is an encrypted file, decrypted one result page at a time while the user browses it
+ */
+public enum InputSelection {
+    TEXT,
+    FILE,
+    FILE_STREAMING,
+    FILE_BROWSING;
+
+    /**
+     * Returns whether this selection loads its input from a file
+     * @return true if the input comes from a file
+     */
+    public boolean isFileInput() {
+        return this.equals(FILE) || this.equals(FILE_STREAMING) || this.equals(FILE_BROWSING);
+    }
+}
@@ -0,0 +1,233 @@
+package com.rscode.stepperfx.integration;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Text split into the rows that a {@code ResultViewer} shows. Immutable once created.<br><br>
+ *
+ * Each line break starts a new row, and lines longer than {@code WRAP_COLUMN} characters are wrapped after the last space
+ * that fits, or at the column if the row has no space. Only the start of each row is stored.<br><br>
+ *
+ * Indexing the rows takes one pass over the text, so large texts should be indexed on a background thread.
+ * The finished rows can then be handed to the FX application thread, which only has to show them.
+ */
+final public class ResultRows {
+
+    /**
+     * Maximum number of characters in a row. Longer lines are wrapped. Must be positive
+     */
+    final public static int WRAP_COLUMN = 100;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Number of rows in {@code text}
+     */
+    private final int rowCount;
+
+    /**
+     * Index of the first character of each row in {@code text}, in increasing order. Only the first {@code rowCount} indices are used
+     */
+    private final int[] rowStarts;
+
+    /**
+     * Text that is split into rows
+     */
+    private final CharSequence text;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates the rows of {@code text}. The text is not copied, so it must not change afterward.<br><br>
+     *
+     * A row ends after a line break, or once it has {@code WRAP_COLUMN} characters. A full row is cut after its last space,
+     * or at the column if it has none. A cut never splits a surrogate pair.
+     *
+     * @param text text to split into rows. Cannot be null
+     */
+    public ResultRows(CharSequence text) {
+        if(text == null) throw new AssertionError("Text cannot be null");
+
+        int[] starts = new int[text.length() / WRAP_COLUMN + 16];
+        int count = 1;
+        int rowStart = 0;
+        int afterLastSpace = -1;
+
+        for(int i = 0; i < text.length(); i++) {
+            char currentChar = text.charAt(i);
+
+            //Wrap a full row before this character
+            if(i - rowStart >= WRAP_COLUMN && currentChar != '\n') {
+                int cut = (afterLastSpace > rowStart) ? afterLastSpace : i;
+                if(cut == i && Character.isLowSurrogate(currentChar) && i - 1 > rowStart) {
+                    cut--;
+                }
+
+                if(count == starts.length) {
+                    starts = Arrays.copyOf(starts, starts.length * 2);
+                }
+                starts[count++] = cut;
+                rowStart = cut;
+                afterLastSpace = -1;
+            }
+
+            if(currentChar == ' ') {
+                afterLastSpace = i + 1;
+            }
+            else if(currentChar == '\n') {
+                if(count == starts.length) {
+                    starts = Arrays.copyOf(starts, starts.length * 2);
+                }
+                starts[count++] = i + 1;
+                rowStart = i + 1;
+                afterLastSpace = -1;
+            }
+        }
+
+        this.text = text;
+        this.rowStarts = starts;
+        this.rowCount = count;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // HELPERS
+
+    /**
+     * Returns the index of the first match of {@code query} in the text that starts on the interval [{@code start}, {@code end}),
+     * or -1 if there is none. The text is read in place, without being copied.<br><br>
+     *
+     * Helper to {@code findText}
+     *
+     * @param query text to find. Cannot be null or empty
+     * @param start first index a match can start at. Must be on the interval [0, {@code end}]
+     * @param end index that matches must start before. Must be on the interval [{@code start}, text length]
+     * @return index of the match, or -1
+     */
+    private int findMatch(String query, int start, int end) {
+        int lastStart = Math.min(end - 1, text.length() - query.length());
+        char firstChar = query.charAt(0);
+
+        for(int i = start; i <= lastStart; i++) {
+            if(text.charAt(i) != firstChar) {
+                continue;
+            }
+
+            int matched = 1;
+            while(matched < query.length() && text.charAt(i + matched) == query.charAt(matched)) {
+                matched++;
+            }
+            if(matched == query.length()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // GETTERS
+
+    /**
+     * Returns the number of rows
+     * @return row count, at least 1
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+
+
+    /**
+     * Returns the index of the first character of row {@code row}
+     * @param row row number. Must be on the interval [0, {@code getRowCount()})
+     * @return index in the text where the row starts
+     */
+    public int getRowStart(int row) {
+        if(row < 0 || row >= rowCount) throw new AssertionError("Row must be on the interval [0, " + rowCount + ")- received " + row);
+        return rowStarts[row];
+    }
+
+
+
+    /**
+     * Returns the text that is split into rows
+     * @return the text
+     */
+    public CharSequence getText() {
+        return text;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Returns a read-only view of row {@code row}, without its line break. The row's characters are not copied.
+     *
+     * @param row row number. Must be on the interval [0, {@code getRowCount()})
+     * @return view of the row's characters
+     */
+    public CharSequence createRowView(int row) {
+        return CharBuffer.wrap(text, getRowStart(row), findRowEnd(row));
+    }
+
+
+
+    /**
+     * Returns the row that holds the character at index {@code index} of the text.
+     *
+     * @param index index in the text. Must be on the interval [0, {@code getText().length()}]
+     * @return row number on the interval [0, {@code getRowCount()})
+     */
+    public int findRow(int index) {
+        if(index < 0 || index > text.length()) throw new AssertionError("Index must be on the interval [0, "
+                + text.length() + "]- received " + index);
+
+        int found = Arrays.binarySearch(rowStarts, 0, rowCount, index);
+        return (found >= 0) ? found : -found - 2;
+    }
+
+
+
+    /**
+     * Returns the index after the last character of row {@code row}, without its line break.
+     *
+     * @param row row number. Must be on the interval [0, {@code getRowCount()})
+     * @return index in the text where the row ends
+     */
+    public int findRowEnd(int row) {
+        if(row < 0 || row >= rowCount) throw new AssertionError("Row must be on the interval [0, " + rowCount + ")- received " + row);
+
+        int end = (row + 1 < rowCount) ? rowStarts[row + 1] : text.length();
+        if(end > rowStarts[row] && text.charAt(end - 1) == '\n') {
+            end--;
+        }
+        return end;
+    }
+
+
+
+    /**
+     * Returns the index of the next match of {@code query} in the text, starting at index {@code start} and wrapping around
+     * to the start of the text, or -1 if the text does not contain it.<br><br>
+     *
+     * The text is searched in place, without being copied into a String, so a search of a large text can run on a background thread.
+     *
+     * @param query text to find. Cannot be null or empty
+     * @param start index to start searching from. Must be on the interval [0, {@code getText().length()}]
+     * @return index of the match's first character, or -1 if there is no match
+     */
+    public int findText(String query, int start) {
+        if(query == null || query.isEmpty()) throw new AssertionError("Query cannot be null or empty");
+        if(start < 0 || start > text.length()) throw new AssertionError("Start must be on the interval [0, "
+                + text.length() + "]- received " + start);
+
+        int found = findMatch(query, start, text.length());
+        return (found >= 0) ? found : findMatch(query, 0, start);
+    }
+}
@@ -0,0 +1,217 @@
+package com.rscode.stepperfx.integration;
+
+import javafx.collections.FXCollections;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.SelectionMode;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+
+import java.util.AbstractList;
+
+/**
+ * Read-only text viewer that only renders the visible lines of its text, so any amount of text can be shown.<br><br>
+ *
+ * The viewer shows the rows of a {@code ResultRows}. The rows are shown by a {@code ListView}, which creates cells for the
+ * visible rows only. Each row is a view into the text, and is copied into a cell when the cell shows it.<br>
+ * Since indexing rows takes a pass over the text, large texts should be indexed on a background thread,
+ * then shown with {@code setRows}.<br><br>
+ *
+ * Rows can be selected with the mouse or keyboard. The shortcut key + C copies the selected rows, exactly as they appear
+ * in the text. Searching the text also takes a pass over it, so searches run as Tasks on a background thread.
+ */
+final public class ResultViewer extends ListView<CharSequence> {
+
+    /**
+     * Height of each row, in pixels. A fixed height lets the viewer skip measuring rows
+     */
+    final public static double ROW_HEIGHT = 20;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Rows shown by the viewer
+     */
+    private ResultRows rows;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates a new viewer that shows no text.
+     */
+    public ResultViewer() {
+        super();
+        rows = new ResultRows("");
+
+        getStyleClass().add("result-viewer");
+        setFixedCellSize(ROW_HEIGHT);
+        getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        setCellFactory(listView -> new ListCell<>() {
+            @Override
+            protected void updateItem(CharSequence row, boolean empty) {
+                super.updateItem(row, empty);
+                setText((empty || row == null) ? null : row.toString());
+            }
+        });
+
+        addEventHandler(KeyEvent.KEY_PRESSED, event -> {
+            if(event.isShortcutDown() && event.getCode() == KeyCode.C) {
+                copySelection();
+                event.consume();
+            }
+        });
+
+        setItems(FXCollections.observableList(new RowList(rows)));
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // HELPERS
+
+    /**
+     * Copies the text of the selected rows to the system clipboard, from the start of the first selected row to the end
+     * of the last. Does nothing if no row is selected.<br><br>
+     *
+     * Helper to the constructor's key handler
+     */
+    private void copySelection() {
+        if(getSelectionModel().getSelectedIndices().isEmpty()) {
+            return;
+        }
+
+        int firstRow = Integer.MAX_VALUE;
+        int lastRow = -1;
+        for(int row : getSelectionModel().getSelectedIndices()) {
+            firstRow = Math.min(firstRow, row);
+            lastRow = Math.max(lastRow, row);
+        }
+
+        ClipboardContent content = new ClipboardContent();
+        content.putString(rows.getText().subSequence(rows.getRowStart(firstRow), rows.findRowEnd(lastRow)).toString());
+        Clipboard.getSystemClipboard().setContent(content);
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // GETTERS/SETTERS
+
+    /**
+     * Returns the rows shown by the viewer
+     * @return the viewer's rows
+     */
+    public ResultRows getRows() {
+        return rows;
+    }
+
+
+
+    /**
+     * Shows {@code newRows} in the viewer, scrolled to the first row. Takes constant time, however long the text is.
+     *
+     * @param newRows rows to show. Cannot be null
+     */
+    public void setRows(ResultRows newRows) {
+        if(newRows == null) throw new AssertionError("Rows cannot be null");
+
+        rows = newRows;
+        getSelectionModel().clearSelection();
+        setItems(FXCollections.observableList(new RowList(newRows)));
+        scrollTo(0);
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Returns a Task that finds the row holding the next match of {@code query}. Once the Task succeeds, the row is selected
+     * and scrolled to, as long as the viewer still shows the rows that were searched.<br>
+     * The search starts after the first selected row, or at the start of the text if no row is selected,
+     * and wraps around to the start of the text.<br><br>
+     *
+     * The Task searches the text in place, without copying it, so it should run on a background thread. This method must be
+     * called on the FX application thread.
+     *
+     * @param query text to find. Cannot be null or empty
+     * @return Task whose value is the row holding the match, or -1 if {@code query} was not found
+     */
+    public Task<Integer> createFindTask(String query) {
+        if(query == null || query.isEmpty()) throw new AssertionError("Query cannot be null or empty");
+
+        ResultRows searchedRows = rows;
+        int selectedRow = getSelectionModel().getSelectedIndex();
+        int searchStart = (selectedRow < 0 || selectedRow + 1 >= searchedRows.getRowCount())
+                ? 0 : searchedRows.getRowStart(selectedRow + 1);
+
+        Task<Integer> findTask = new Task<>() {
+            @Override
+            protected Integer call() {
+                int found = searchedRows.findText(query, searchStart);
+                return (found < 0) ? -1 : searchedRows.findRow(found);
+            }
+        };
+
+        findTask.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, event -> {
+            int row = findTask.getValue();
+            if(rows != searchedRows || row < 0) {
+                return;
+            }
+            getSelectionModel().clearAndSelect(row);
+            scrollTo(Math.max(0, row - 2));
+        });
+        return findTask;
+    }
+
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // ROW LIST
+
+    /**
+     * Read-only list of the rows of a {@code ResultRows}. Each row is created as a view into the text when it is requested.
+     */
+    private static final class RowList extends AbstractList<CharSequence> {
+
+        /**
+         * Rows in the list
+         */
+        private final ResultRows rows;
+
+        /**
+         * Creates a new list of the rows in {@code rows}
+         * @param rows rows to list. Cannot be null
+         */
+        private RowList(ResultRows rows) {
+            if(rows == null) throw new AssertionError("Rows cannot be null");
+            this.rows = rows;
+        }
+
+        /**
+         * Returns row {@code index} of the text, without its line break
+         * @param index row number. Must be on the interval [0, {@code size()})
+         * @return view of the row's characters
+         */
+        @Override
+        public CharSequence get(int index) {
+            if(index < 0 || index >= rows.getRowCount()) throw new IndexOutOfBoundsException("Row " + index
+                    + " is not on the interval [0, " + rows.getRowCount() + ")");
+            return rows.createRowView(index);
+        }
+
+        /**
+         * Returns the number of rows in the text
+         * @return row count
+         */
+        @Override
+        public int size() {
+            return rows.getRowCount();
+        }
+    }
+}
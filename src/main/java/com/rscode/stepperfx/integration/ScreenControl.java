@@ -34,7 +34,12 @@ final public class ScreenControl {
     /**
      * Stores controllers for each of the screens
      */
-    private static final HashMap<ScreenName, IntegratedController> controllerMap = new HashMap<>(6);
+    private static final HashMap<ScreenName, IntegratedController> controllerMap = new HashMap<>(7);
+
+    /**
+     * Name of the screen currently displayed, or null if no screen was shown yet
+     */
+    private static ScreenName currentScreen = null;
 
     /**
      * Set containing previously loaded FXML paths.<br><br>
@@ -61,6 +66,18 @@ final public class ScreenControl {
     // ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
     //GETTERS, SETTERS
 
+    /**
+     * Returns the name of the screen currently displayed.<br>
+     * While a screen's controller prepares it for view, this is still the screen being left.
+     *
+     * @return name of the current screen, or null if no screen was shown yet
+     */
+    public static ScreenName getCurrentScreen() {
+        return currentScreen;
+    }
+
+
+
     /**
      * Returns whether the manager is displaying its alternate screens
      * @return true if alternate screens are shown
@@ -341,6 +358,7 @@ final public class ScreenControl {
         //Prepare the screen for view
         IntegratedController controller = controllerMap.get(name);
         controller.prepareScreenTransition();
+        currentScreen = name;
 
         applicationStage.sizeToScene(); //Adjust window size to fit new content
         applicationStage.show();
@@ -9,5 +9,7 @@ public enum ScreenName {
     INPUT,
     SETTINGS,
     LOADING,
-    RESULTS
+    RESULTS,
+    MONITOR,
+    JOBS
 }
\ No newline at end of file
@@ -1,14 +1,29 @@
 package com.rscode.stepperfx.integration;
 
 import javafx.beans.value.ChangeListener;
+import javafx.collections.ObservableList;
 import javafx.concurrent.Worker;
+import com.rscode.stepperfx.threading.CalibrationTask;
+import com.rscode.stepperfx.threading.JobQueue;
+import com.rscode.stepperfx.threading.PerformanceProfile;
+import com.rscode.stepperfx.threading.ProcessJob;
+import com.rscode.stepperfx.threading.ProcessResult;
 import com.rscode.stepperfx.threading.ProcessService;
+import com.rscode.stepperfx.threading.ResultPageReader;
+import com.rscode.stepperfx.threading.ThreadCountAdvisor;
+import com.rscode.stepperfx.threading.WorkerProgress;
+
+import java.io.File;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
 
 /**
  * Contains static methods and fields that represent the app's unified state.
- * One of the fields is a javafx.concurrent.Service used to do operations.<br><br>
+ * One of the fields is a javafx.concurrent.Service used to do operations, and another is a queue that runs many jobs at once.<br><br>
  *
- * This class is not thread-safe! It should never be handled by multiple threads at the same time.
+ * This class is not thread-safe! It should only be handled by the JavaFX application thread. The exceptions are the
+ * settings read by running jobs: the key padding seed, metrics logging, and straggler splitting. They are volatile,
+ * so a job's threads see the latest values set by the JavaFX application thread.
  */
 final public class StepperFields {
 
@@ -24,17 +39,27 @@ final public class StepperFields {
      */
     final public static int DEFAULT_BLOCK_LENGTH = 25;
 
+    /**
+     * Approximate number of output bytes between checkpoints in a chunk index. Must be positive
+     */
+    final public static int CHUNK_INDEX_INTERVAL = 64 * 1024;
+
     /**
      * Filename for the input file if none is given. Cannot be null. Must end in ".txt"
      */
     final public static String DEFAULT_INPUT_FILENAME = "input.txt";
 
     /**
-     * (Currently not used.)<br><br>
      * Filename for the output file if none is given. Cannot be null. Must end in ".txt"
      */
     final public static String DEFAULT_OUTPUT_FILENAME = "output.txt";
 
+    /**
+     * Format of the output filename of a queued job without an output file, given a number. The lowest number whose file
+     * is free is used. Cannot be null. Must end in ".txt"
+     */
+    final public static String JOB_OUTPUT_FILENAME_FORMAT = "output-job%d.txt";
+
     /**
      * Amount to shift during v2 processes, accessed using a getter method. Cannot be null. Length must be at least DEFAULT_BLOCK_COUNT
      */
@@ -56,11 +81,37 @@ final public class StepperFields {
      */
     final public static int MAX_THREADS = 999;
 
+    /**
+     * Filename of the metrics log, which gets one JSON line per finished job. Cannot be null
+     */
+    final public static String METRICS_LOG_FILENAME = "stepperfx-metrics.jsonl";
+
+    /**
+     * Filename of the performance profile, which holds the thread settings calibrated for this machine. Cannot be null
+     */
+    final public static String PERFORMANCE_PROFILE_FILENAME = "stepperfx-profile.properties";
+
+    /**
+     * Number of processed characters that a worker counts before adding them to its Task's shared progress counter.
+     * Must be positive. A power of two keeps the check on the per-character path cheap
+     */
+    final public static int PROGRESS_REPORT_CHARACTERS = 65536;
+
+    /**
+     * Milliseconds between the samples of a Task's progress counter, which update the loading screen. Must be positive
+     */
+    final public static long PROGRESS_SAMPLE_MILLIS = 200;
+
     /**
      * Maximum number of characters that are displayed on a result page. Must be positive
      */
     final public static int RESULT_PAGE_LENGTH = 100000;
 
+    /**
+     * Number of characters read from the input file at a time when streaming a file. Must be positive
+     */
+    final public static int STREAM_CHUNK_LENGTH = 1000000;
+
 
     // ////////////////////////////////////////////////////////////////////////////////////////////////
     // ////////////////////////////////////////////////////////////////////////////////////////////////
@@ -76,6 +127,28 @@ final public class StepperFields {
      */
     private static int blockLength = DEFAULT_BLOCK_LENGTH;
 
+    /**
+     * Calibration of the performance profile that is running or last ran, or null if none was started
+     */
+    private static CalibrationTask calibrationTask = null;
+
+    /**
+     * Queue that runs the jobs added with "Add to Queue", at the same time, under a budget of one thread per core.
+     * The Service's runs also count against its budget. Can never be null
+     */
+    private static final JobQueue jobQueue = new JobQueue(Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREADS));
+
+    /**
+     * Seed of the letters that pad short keys, or null to draw them from the shared DRBG.
+     * Only set for benchmarks and regression tests, since seeded padding is predictable
+     */
+    private static volatile Long keyPaddingSeed = null;
+
+    /**
+     * Whether each finished job's metrics are appended to the metrics log, {@code METRICS_LOG_FILENAME}
+     */
+    private static volatile boolean loggingMetrics = true;
+
     /**
      * Holds the user's login credentials
      */
@@ -91,13 +164,28 @@ final public class StepperFields {
      * - The ProcessSubtasks pass their outputs to the ProcessTask. The ProcessTask finishing updates the Service's value property.<br>
      * - Final output is collected through a value listener set on the Service by the results screen
      */
-    private static final ProcessService service = new ProcessService();
+    private static final ProcessService service = new ProcessService(jobQueue);
+
+    /**
+     * Whether a main process worker that straggles is split among the idle threads. Only used when the output is returned
+     */
+    private static volatile boolean splittingStragglers = false;
 
     /**
      * Probability of seeing sponsored content, after every screen change. Must be on the interval [0, 1].
      */
     private static float sponsoredContentProbability = 0.8f;
 
+    /**
+     * How many times the median worker's projected time a worker must take to be flagged as a straggler. Must be at least 1
+     */
+    private static volatile double stragglerFactor = 2;
+
+    /**
+     * Whether encryption outputs written to a file get a chunk index file next to them
+     */
+    private static boolean writingChunkIndex = false;
+
 
     // ////////////////////////////////////////////////////////////////////////////////////////
 
@@ -107,6 +195,8 @@ final public class StepperFields {
      */
     public static void assertConstantPreconditions() {
         //This is an idiot check.
+        if(CHUNK_INDEX_INTERVAL <= 0)
+            throw new AssertionError("Chunk index interval must be positive- instead received " + CHUNK_INDEX_INTERVAL);
         if(DEFAULT_BLOCK_COUNT <= 0)
             throw new AssertionError("Default block count must be positive- instead received " + DEFAULT_BLOCK_COUNT);
         if(DEFAULT_BLOCK_LENGTH <= 0)
@@ -115,6 +205,8 @@ final public class StepperFields {
             throw new AssertionError("Default input filename must end in \".txt\"- instead received " + DEFAULT_INPUT_FILENAME);
         if(DEFAULT_OUTPUT_FILENAME.endsWith(".txt") == false)
             throw new AssertionError("Default output filename must end in \".txt\"- instead received " + DEFAULT_OUTPUT_FILENAME);
+        if(JOB_OUTPUT_FILENAME_FORMAT.endsWith(".txt") == false)
+            throw new AssertionError("Job output filename format must end in \".txt\"- instead received " + JOB_OUTPUT_FILENAME_FORMAT);
         if(KEY_BLOCK_INCREMENTS.length < DEFAULT_BLOCK_COUNT)
             throw new AssertionError("Length of key block increments, " + KEY_BLOCK_INCREMENTS.length + ", must be at least the default block count, " + DEFAULT_BLOCK_COUNT);
         if(MAX_BLOCK_COUNT != KEY_BLOCK_INCREMENTS.length)
@@ -123,6 +215,12 @@ final public class StepperFields {
             throw new AssertionError("Max block length must be positive- instead received " + MAX_BLOCK_LENGTH);
         if(MAX_THREADS <= 0)
             throw new AssertionError("Max thread count must be positive- instead received " + MAX_THREADS);
+        if(PROGRESS_REPORT_CHARACTERS <= 0 || Integer.bitCount(PROGRESS_REPORT_CHARACTERS) != 1)
+            throw new AssertionError("Progress report length must be a positive power of two- instead received " + PROGRESS_REPORT_CHARACTERS);
+        if(PROGRESS_SAMPLE_MILLIS <= 0)
+            throw new AssertionError("Progress sample interval must be positive- instead received " + PROGRESS_SAMPLE_MILLIS);
+        if(STREAM_CHUNK_LENGTH <= 0)
+            throw new AssertionError("Stream chunk length must be positive- instead received " + STREAM_CHUNK_LENGTH);
     }
 
 
@@ -194,6 +292,42 @@ final public class StepperFields {
 
 
 
+    /**
+     * Returns the seed of the letters that pad short keys
+     * @return the seed, or null if padding is drawn from the shared DRBG
+     */
+    public static Long getKeyPaddingSeed() {
+        return keyPaddingSeed;
+    }
+
+    /**
+     * Sets the seed of the letters that pad short keys. With a seed, the same key is always padded the same way.
+     * @param newKeyPaddingSeed seed of the padding, or null to draw it from the shared DRBG
+     */
+    public static void setKeyPaddingSeed(Long newKeyPaddingSeed) {
+        keyPaddingSeed = newKeyPaddingSeed;
+    }
+
+
+
+    /**
+     * Returns whether each finished job's metrics are appended to the metrics log
+     * @return true if job metrics are logged
+     */
+    public static boolean getLoggingMetrics() {
+        return loggingMetrics;
+    }
+
+    /**
+     * Sets whether each finished job's metrics are appended to the metrics log.
+     * @param newLoggingMetrics true to log job metrics
+     */
+    public static void setLoggingMetrics(boolean newLoggingMetrics) {
+        loggingMetrics = newLoggingMetrics;
+    }
+
+
+
     /**
      * Returns the user's stored login credentials
      * @return login credentials
@@ -212,6 +346,24 @@ final public class StepperFields {
 
 
 
+    /**
+     * Returns whether a straggling main process worker is split among the idle threads
+     * @return true if stragglers are split
+     */
+    public static boolean getSplittingStragglers() {
+        return splittingStragglers;
+    }
+
+    /**
+     * Sets whether a straggling main process worker is split among the idle threads.
+     * @param newSplittingStragglers true to split stragglers
+     */
+    public static void setSplittingStragglers(boolean newSplittingStragglers) {
+        splittingStragglers = newSplittingStragglers;
+    }
+
+
+
     /**
      * Returns the probability that sponsored content is shown on the next screen change.<br><br>
      * The value returned is on the interval [0,1].
@@ -236,6 +388,198 @@ final public class StepperFields {
     }
 
 
+
+    /**
+     * Returns how many times the median worker's projected time a worker must take to be flagged as a straggler
+     * @return straggler factor, at least 1
+     */
+    public static double getStragglerFactor() {
+        return stragglerFactor;
+    }
+
+    /**
+     * Sets how many times the median worker's projected time a worker must take to be flagged as a straggler.
+     * @param newStragglerFactor straggler factor. Must be at least 1
+     */
+    public static void setStragglerFactor(double newStragglerFactor) {
+        if(!(newStragglerFactor >= 1))
+            throw new AssertionError("New straggler factor must be at least 1- instead received " + newStragglerFactor);
+
+        stragglerFactor = newStragglerFactor;
+    }
+
+
+
+    /**
+     * Returns whether encryption outputs written to a file get a chunk index file next to them
+     * @return true if chunk indices are written
+     */
+    public static boolean getWritingChunkIndex() {
+        return writingChunkIndex;
+    }
+
+    /**
+     * Sets whether encryption outputs written to a file get a chunk index file next to them.
+     * @param newWritingChunkIndex true to write chunk indices
+     */
+    public static void setWritingChunkIndex(boolean newWritingChunkIndex) {
+        writingChunkIndex = newWritingChunkIndex;
+    }
+
+
+    // ///////////////////////////////////////////////////////////////////////////////////
+    // ///////////////////////////////////////////////////////////////////////////////////
+    // ///////////////////////////////////////////////////////////////////////////////////
+    // ///////////////////////////////////////////////////////////////////////////////////
+    //CALIBRATION METHODS
+
+    /**
+     * Returns whether the performance profile is being calibrated
+     * @return true if a calibration is running
+     */
+    public static boolean isCalibrationRunning() {
+        return calibrationTask != null && !calibrationTask.isDone();
+    }
+
+
+
+    /**
+     * Gives the stored performance profile to the "Auto" thread option, if the profile was measured on this machine's
+     * number of cores. Otherwise, starts a calibration in the background. Must be called on the FX application thread.
+     */
+    public static void preparePerformanceProfile() {
+        PerformanceProfile profile = PerformanceProfile.fetchProfile(new File(PERFORMANCE_PROFILE_FILENAME));
+        if(profile != null && profile.matchesHardware()) {
+            ThreadCountAdvisor.setProfile(profile);
+        }
+        else {
+            startCalibration();
+        }
+    }
+
+
+
+    /**
+     * Starts calibrating the performance profile on a background daemon thread, unless a calibration is already running.
+     * The calibration writes the profile to {@code PERFORMANCE_PROFILE_FILENAME} and gives it to the "Auto" thread option.
+     * Must be called on the FX application thread.
+     *
+     * @return the running calibration, which may have been started earlier
+     */
+    public static CalibrationTask startCalibration() {
+        if(isCalibrationRunning()) {
+            return calibrationTask;
+        }
+
+        calibrationTask = new CalibrationTask(new File(PERFORMANCE_PROFILE_FILENAME));
+        Thread calibrationThread = new Thread(calibrationTask, "StepperFX calibration");
+        calibrationThread.setDaemon(true);
+        calibrationThread.start();
+        return calibrationTask;
+    }
+
+
+    // ///////////////////////////////////////////////////////////////////////////////////
+    // ///////////////////////////////////////////////////////////////////////////////////
+    // ///////////////////////////////////////////////////////////////////////////////////
+    // ///////////////////////////////////////////////////////////////////////////////////
+    //JOB QUEUE METHODS
+
+    /**
+     * Cancels {@code job} in the app's job queue. A queued job is cancelled at once, and a running job stops at its
+     * next cancellation check. Does nothing if the job has finished.
+     *
+     * @param job job to cancel. Cannot be null, and must be in the app's job queue
+     */
+    public static void cancelJob(ProcessJob job) {
+        jobQueue.cancelJob(job);
+    }
+
+
+
+    /**
+     * Removes every finished job from the app's job queue
+     */
+    public static void clearFinishedJobs() {
+        jobQueue.clearFinishedJobs();
+    }
+
+
+
+    /**
+     * Returns every job in the app's job queue that was not cleared, in the order they were added.
+     * The list reports an update when a job's status, message, or progress changes
+     *
+     * @return an unmodifiable view of the jobs
+     */
+    public static ObservableList<ProcessJob> fetchJobs() {
+        return jobQueue.getJobs();
+    }
+
+
+
+    /**
+     * Returns the most threads that the queued jobs and the Service can use at once
+     * @return the thread budget
+     */
+    public static int fetchJobThreadBudget() {
+        return jobQueue.getThreadBudget();
+    }
+
+
+
+    /**
+     * Returns the number of threads counted against the job queue's budget: those of its running jobs,
+     * plus those of the Service's current run
+     * @return threads in use. May exceed the budget while a job with more threads than the budget runs
+     */
+    public static int fetchJobThreadsInUse() {
+        return jobQueue.findRunningThreads() + jobQueue.getReservedThreads();
+    }
+
+
+
+    /**
+     * Returns whether {@code outputFilepath} names a file that a queued or running job, or the Service's current run,
+     * writes its output to
+     *
+     * @param outputFilepath filepath to an output file, or the empty string for {@code DEFAULT_OUTPUT_FILENAME}. Cannot be null
+     * @return true if the file is claimed
+     */
+    public static boolean isOutputClaimed(String outputFilepath) {
+        return jobQueue.isOutputClaimed(outputFilepath);
+    }
+
+
+
+    /**
+     * Adds a job to the app's job queue. The job starts once enough of the queue's threads are free, and writes its
+     * output to a file. Any number of jobs can be added, while the Service is running or not, as long as no two
+     * write the same file.
+     *
+     * @param input what the job should process, or a filepath to the input. Cannot be null
+     * @param key key for processing the input. Cannot be null
+     * @param operationSelection operation to do, as a OperationSelection object (i.e. Stepper 2, encrypt)
+     * @param punctSelection punctuation preferences, as a PunctuationSelection object
+     * @param blockCount number of blocks to use. Must be on the interval [1, {@code StepperFields.MAX_BLOCK_COUNT}]
+     * @param blockLength number of characters in each block to use.
+     *                    Must be on the interval [1, {@code StepperFields.MAX_BLOCK_LENGTH}]
+     * @param inputSelection where to load the input from, as an InputSelection object. Cannot be null or {@code FILE_BROWSING}
+     * @param outputFilepath filepath to write the output to, the empty string to use {@code DEFAULT_OUTPUT_FILENAME},
+     *                       or null to use a new file named from {@code JOB_OUTPUT_FILENAME_FORMAT}.
+     *                       Cannot be claimed, as found by {@code isOutputClaimed}
+     * @param writingChunkIndex whether to write a chunk index next to an encrypted output file
+     * @param nThreads number of threads to use during processing. Must be on the interval [0, {@code StepperFields.MAX_THREADS}]
+     * @return the added job
+     */
+    public static ProcessJob submitJob(String input, String key, OperationSelection operationSelection, PunctuationSelection punctSelection,
+                                       int blockCount, int blockLength,
+                                       InputSelection inputSelection, String outputFilepath, boolean writingChunkIndex, int nThreads) {
+        return jobQueue.submitJob(input, key, operationSelection, punctSelection, blockCount, blockLength,
+                inputSelection, outputFilepath, writingChunkIndex, nThreads);
+    }
+
+
     // ///////////////////////////////////////////////////////////////////////////////////
     // ///////////////////////////////////////////////////////////////////////////////////
     // ///////////////////////////////////////////////////////////////////////////////////
@@ -252,6 +596,20 @@ final public class StepperFields {
 
 
 
+    /**
+     * Adds a factory for subscribers to the partial results of the app's Service. Each later run publishes the pieces
+     * of the result it returns, in order, to a new subscriber from the factory.<br><br>
+     *
+     * The factory is called on the FX application thread as each run starts. The pieces are received on a background thread.
+     *
+     * @param subscriberFactory creates a subscriber for each run. Cannot be null, and cannot return null
+     */
+    public static void addServicePartialResultSubscriber(Supplier<? extends Flow.Subscriber<? super String>> subscriberFactory) {
+        service.addPartialResultSubscriber(subscriberFactory);
+    }
+
+
+
     /**
      * Assigns {@code listener} as a progress property listener on the app's Service.
      * @param listener listener to assign
@@ -265,22 +623,79 @@ final public class StepperFields {
     /**
      * Assigns {@code listener} as a value property listener on the app's Service.<br><br>
      *
-     * Value format: String array of length 4 containing {result, formatted key, error type, error message}<br><br>
+     * Value format: a {@code ProcessResult}<br><br>
      * Possible configurations:<br>
-     * - Result and key non-null, error type and message null: process completed successfully<br>
-     * - Result and key null, error type message non-null: process stopped with error<br>
-     * - All indices null: process was cancelled<br>
-     * - Entire output is null: should be ignored<br>
-     * No other value should be produced. Any assigned listener should check for illegal values.
+     * - {@code isSucceeded()}: process completed successfully<br>
+     * - {@code isFailed()}: process stopped with error<br>
+     * - {@code isCancelled()}: process was cancelled<br>
+     * - Entire output is null: should be ignored
      *
      * @param listener listener to assign
      */
-    public static void addServiceValueListener(ChangeListener<? super String[]> listener) {
+    public static void addServiceValueListener(ChangeListener<? super ProcessResult> listener) {
         service.valueProperty().addListener(listener);
     }
 
 
 
+    /**
+     * Returns the reader for the other pages of the file browsed by the Service's last run.
+     * The caller takes over the reader, and must close it.<br><br>
+     *
+     * Only valid after the Service succeeds, and before it is started again.
+     *
+     * @return the page reader, or null if the last run did not browse a file
+     */
+    public static ResultPageReader fetchServicePageReader() {
+        return service.fetchPageReader();
+    }
+
+
+
+    /**
+     * Returns the total amount of work in the current stage of the app's Service. For a processing stage, this is
+     * the number of characters it processes
+     * @return total work, or -1 if the current stage's work is not counted
+     */
+    public static double fetchServiceTotalWork() {
+        return service.getTotalWork();
+    }
+
+
+
+    /**
+     * Returns the amount of work done in the current stage of the app's Service. For a processing stage, this is
+     * the number of characters processed so far
+     * @return work done, or -1 if the current stage's work is not counted
+     */
+    public static double fetchServiceWorkDone() {
+        return service.getWorkDone();
+    }
+
+
+
+    /**
+     * Returns the progress of each worker in the current or last stage of the app's Service.
+     * The progress keeps changing while the Service runs.
+     *
+     * @return worker progress, or null if no stage with workers has started
+     */
+    public static WorkerProgress fetchServiceWorkerProgress() {
+        return service.fetchWorkerProgress();
+    }
+
+
+
+    /**
+     * Returns whether the app's Service is running, or about to run
+     * @return true if the Service is scheduled or running
+     */
+    public static boolean isServiceRunning() {
+        return service.isRunning();
+    }
+
+
+
     /**
      * Sets the app's Service to its READY state, preparing it to be run again.<br><br>
      * This method works when the Service is in any state.
@@ -309,25 +724,38 @@ final public class StepperFields {
      * @param blockCount number of blocks to use. Must be on the interval [1, {@code StepperFields.MAX_BLOCK_COUNT}]
      * @param blockLength number of characters in each block to use.
      *                    Must be on the interval [1, {@code StepperFields.MAX_BLOCK_LENGTH}]
-     * @param loadingFromFile true if loading input from a separate file, false otherwise
+     * @param inputSelection where to load the input from, as an InputSelection object. Cannot be null
+     * @param outputFilepath filepath to write the output to, or the empty string to use {@code DEFAULT_OUTPUT_FILENAME}.
+     *                       If null, the output is displayed on the results screen.
+     *                       Cannot be null if {@code inputSelection} is {@code FILE_STREAMING}
+     * @param writingChunkIndex whether to write a chunk index next to an encrypted output file.
+     *                          Ignored if the output is not written to a file, or the operation is decryption
      * @param nThreads number of threads to use during processing. Must be on the interval [0, {@code StepperFields.MAX_THREADS}]
-     * @throws IllegalStateException if the service is not ready to be run
+     * @throws IllegalStateException if the service is not ready to be run, or a queued or running job writes its output file
      */
     public static void startService(String input, String key, OperationSelection operationSelection, PunctuationSelection punctSelection,
                              int blockCount, int blockLength,
-                             boolean loadingFromFile, int nThreads) {
+                             InputSelection inputSelection, String outputFilepath, boolean writingChunkIndex, int nThreads) {
 
         if(input == null) throw new AssertionError("Input cannot be null");
         if(key == null) throw new AssertionError("Key cannot be null");
+        if(inputSelection == null) throw new AssertionError("Input selection cannot be null");
+        if(inputSelection == InputSelection.FILE_STREAMING && outputFilepath == null)
+            throw new AssertionError("Streamed file inputs must have an output filepath");
         if(blockCount<=0 || blockCount>MAX_BLOCK_COUNT) throw new AssertionError("Block count (value: " + blockCount + ") must be on the interval [1, " + MAX_BLOCK_COUNT + "]");
         if(blockLength<=0 || blockLength>MAX_BLOCK_LENGTH) throw new AssertionError("Block length (value: " + blockLength + ") must be on the interval [1, " + MAX_BLOCK_LENGTH + "]");
         if(nThreads<0 || nThreads>MAX_THREADS) throw new AssertionError("Number of threads (value: " + nThreads + ")" +
                 " must be on the interval [0, " + MAX_THREADS + "]");
 
+        if(outputFilepath != null && jobQueue.isOutputClaimed(outputFilepath)) {
+            throw new IllegalStateException("Cannot start the shared Service while a queued or running job writes to " +
+                    (outputFilepath.isEmpty() ? DEFAULT_OUTPUT_FILENAME : outputFilepath) + ".");
+        }
+
         if(service.getState() == Worker.State.READY) {
             service.initializeService(input, key, operationSelection, punctSelection,
                     blockCount, blockLength,
-                    loadingFromFile, nThreads);
+                    inputSelection, outputFilepath, writingChunkIndex, nThreads);
 
             service.start();
         }
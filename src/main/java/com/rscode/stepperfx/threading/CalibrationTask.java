@@ -0,0 +1,254 @@
+package com.rscode.stepperfx.threading;
+
+import com.rscode.stepperfx.integration.OperationSelection;
+import com.rscode.stepperfx.integration.PunctuationSelection;
+import com.rscode.stepperfx.integration.StepperFields;
+import javafx.concurrent.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures this machine's processing speed and worker overhead, and returns the {@code PerformanceProfile} chosen from them.
+ * The worker overhead is measured first, and given to {@code ThreadCountAdvisor} as soon as it is ready.
+ * Once measured, the profile is given to {@code ThreadCountAdvisor} and written to the profile file.<br><br>
+ *
+ * The calibration times the diacritics and main process stages, the stages that jobs split among their workers,
+ * on a fixed random text. The text is split evenly among 1, 2, 4... workers up to the number of cores,
+ * and each worker count is timed {@code REPETITIONS} times, keeping the fastest. The single-worker time gives the cost per
+ * character, and the fastest time of every worker count is kept in the profile as a curve, which the profile scales
+ * to each job's input size to choose its most workers.<br><br>
+ *
+ * The calibration takes about as long as processing {@code CALIBRATION_CHARACTERS} characters a few times per worker count.
+ * Jobs run at the same time slow it down, so its results are best when the app is otherwise idle.
+ */
+final public class CalibrationTask extends Task<PerformanceProfile> {
+
+    /**
+     * Number of characters in the calibration text. Must be positive
+     */
+    private static final int CALIBRATION_CHARACTERS = 1 << 20;
+
+    /**
+     * Seed of the calibration text and key, so every calibration measures the same input
+     */
+    private static final long CALIBRATION_SEED = 20241018L;
+
+    /**
+     * Number of times each worker count is timed. Must be positive
+     */
+    private static final int REPETITIONS = 2;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * File the profile is written to. Cannot be null
+     */
+    private final File profileFile;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates a new calibration that writes its profile to {@code profileFile}
+     * @param profileFile file to write the profile to. Cannot be null. If it exists, it is replaced
+     */
+    public CalibrationTask(File profileFile) {
+        if(profileFile == null) throw new AssertionError("Profile file cannot be null");
+        this.profileFile = profileFile;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // HELPERS
+
+    /**
+     * Returns a random key with the default block count and length.<br><br>
+     *
+     * Helper to {@code call}
+     *
+     * @param random source of the key's values. Cannot be null
+     * @return the key blocks, with values on the interval [0,25]
+     */
+    private byte[][] createCalibrationKey(SplittableRandom random) {
+        byte[][] key = new byte[StepperFields.DEFAULT_BLOCK_COUNT][StepperFields.DEFAULT_BLOCK_LENGTH];
+        for(byte[] block : key) {
+            for(int i = 0; i < block.length; i++) {
+                block[i] = (byte) random.nextInt(26);
+            }
+        }
+        return key;
+    }
+
+
+
+    /**
+     * Returns random text of {@code CALIBRATION_CHARACTERS} characters, mostly lowercase letters with some uppercase
+     * and accented letters, spaces, and punctuation, like the prose that most jobs process.<br><br>
+     *
+     * Helper to {@code call}
+     *
+     * @param random source of the characters. Cannot be null
+     * @return the calibration text
+     */
+    private String createCalibrationText(SplittableRandom random) {
+        final String otherCharacters = "     ,.'\n-ABCDEéàç";
+        char[] text = new char[CALIBRATION_CHARACTERS];
+        for(int i = 0; i < text.length; i++) {
+            text[i] = (random.nextInt(5) > 0)
+                    ? (char) ('a' + random.nextInt(26))
+                    : otherCharacters.charAt(random.nextInt(otherCharacters.length()));
+        }
+        return new String(text);
+    }
+
+
+
+    /**
+     * Returns the worker counts to time: every power of 2 below {@code cores}, and {@code cores}.<br><br>
+     *
+     * Helper to {@code call}
+     *
+     * @param cores number of cores. Must be positive
+     * @return the worker counts, in increasing order, starting at 1
+     */
+    private int[] createWorkerCounts(int cores) {
+        TreeSet<Integer> counts = new TreeSet<>();
+        for(int workers = 1; workers < cores; workers *= 2) {
+            counts.add(workers);
+        }
+        counts.add(cores);
+        return counts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+
+
+    /**
+     * Returns the nanoseconds that {@code workers} workers take to run the diacritics and main process stages on
+     * {@code text}, split evenly among them. Returns -1 if the calibration is cancelled.<br><br>
+     *
+     * Helper to {@code call}
+     *
+     * @param text text to process. Cannot be null
+     * @param key key to process the text with. Cannot be null
+     * @param workers number of workers. Must be positive, and at most the pool's number of threads
+     * @param pool pool that runs the workers. Cannot be null
+     * @return the stages' wall time, in nanoseconds, or -1 if cancelled
+     * @throws ExecutionException if a worker fails
+     * @throws InterruptedException if the calibration is interrupted
+     */
+    private long timeStages(String text, byte[][] key, int workers, ExecutorService pool)
+            throws ExecutionException, InterruptedException {
+        String[] pieces = new String[workers];
+        for(int w = 0; w < workers; w++) {
+            pieces[w] = text.substring((int) ((long) text.length() * w / workers), (int) ((long) text.length() * (w + 1) / workers));
+        }
+
+        long start = System.nanoTime();
+
+        ProcessSubtaskDiacritics[] diacriticsSubtasks = new ProcessSubtaskDiacritics[workers];
+        for(int w = 0; w < workers; w++) {
+            diacriticsSubtasks[w] = new ProcessSubtaskDiacritics(pieces[w]);
+            pool.submit(diacriticsSubtasks[w]);
+        }
+        for(int w = 0; w < workers; w++) {
+            pieces[w] = diacriticsSubtasks[w].get();
+        }
+        if(isCancelled()) {
+            return -1;
+        }
+
+        ProcessSubtaskMain[] mainSubtasks = new ProcessSubtaskMain[workers];
+        for(int w = 0; w < workers; w++) {
+            mainSubtasks[w] = new ProcessSubtaskMain(pieces[w], key, OperationSelection.STEPPER2_ENCRYPT,
+                    PunctuationSelection.USE_PUNCTUATION, 0);
+            pool.submit(mainSubtasks[w]);
+        }
+        for(ProcessSubtaskMain subtask : mainSubtasks) {
+            subtask.get();
+        }
+
+        return System.nanoTime() - start;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CALL
+
+    /**
+     * Measures the worker overhead and the time of each worker count, then sets and writes the profile chosen from them.
+     * If the profile cannot be written, it is still used until the app closes.
+     *
+     * @return the measured profile, or null if the calibration is cancelled
+     * @throws Exception if a worker fails
+     */
+    @Override
+    protected PerformanceProfile call() throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int[] workerCounts = createWorkerCounts(Math.min(cores, StepperFields.MAX_THREADS));
+        long totalRuns = 1 + (long) workerCounts.length * REPETITIONS;
+
+        updateMessage("Measuring worker overhead");
+        long workerOverheadNanos = ThreadCountAdvisor.measureWorkerOverheadNanos();
+        //Jobs started during the calibration estimate their grain with the measured overhead
+        ThreadCountAdvisor.setWorkerOverheadNanos(workerOverheadNanos);
+
+        SplittableRandom random = new SplittableRandom(CALIBRATION_SEED);
+        byte[][] key = createCalibrationKey(random);
+        String text = createCalibrationText(random);
+
+        long[] fastestNanos = new long[workerCounts.length];
+        ExecutorService pool = Executors.newFixedThreadPool(workerCounts[workerCounts.length - 1], runnable -> {
+            Thread thread = new Thread(runnable, "StepperFX calibration");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            //Untimed run, so the stages are compiled before they are timed
+            updateMessage("Measuring processing speed");
+            if(timeStages(text, key, 1, pool) < 0) {
+                return null;
+            }
+            updateProgress(1, totalRuns);
+
+            for(int c = 0; c < workerCounts.length; c++) {
+                fastestNanos[c] = Long.MAX_VALUE;
+                for(int r = 0; r < REPETITIONS; r++) {
+                    long nanos = timeStages(text, key, workerCounts[c], pool);
+                    if(nanos < 0 || isCancelled()) {
+                        return null;
+                    }
+                    fastestNanos[c] = Math.min(fastestNanos[c], nanos);
+                    updateProgress(2 + (long) c * REPETITIONS + r, totalRuns);
+                }
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+
+        double nanosPerCharacter = Math.max((double) fastestNanos[0] / CALIBRATION_CHARACTERS, Double.MIN_NORMAL);
+        long grainCharacters = ThreadCountAdvisor.createGrainCharacters(workerOverheadNanos, nanosPerCharacter);
+        //Below two grains, a job could not give a second worker a full grain
+        PerformanceProfile profile = new PerformanceProfile(Instant.now(), cores, nanosPerCharacter, workerOverheadNanos,
+                grainCharacters, 2 * grainCharacters, CALIBRATION_CHARACTERS, workerCounts, fastestNanos);
+
+        ThreadCountAdvisor.setProfile(profile);
+        try {
+            profile.writeProfile(profileFile);
+        }
+        catch(IOException e) {
+            System.err.println("Could not write the performance profile: " + e.getMessage());
+        }
+        updateMessage("Calibrated: " + profile.createSummary());
+        return profile;
+    }
+}
@@ -0,0 +1,483 @@
+package com.rscode.stepperfx.threading;
+
+import com.rscode.stepperfx.integration.PunctuationSelection;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Description of a chunked container file, which holds encrypted output together with the settings needed to decrypt it.<br><br>
+ *
+ * A container holds its output in chunks. Each chunk is UTF-8 text that starts on a key block boundary, so it can be
+ * decrypted on its own. The chunk table stores each chunk's position, length, letter offset, and CRC32C checksum.
+ * Chunks can therefore be checked and decrypted in parallel, and each worker checks its own chunks while decrypting them.<br><br>
+ *
+ * File layout (big-endian):<br>
+ * - Header ({@code HEADER_BYTES} bytes): int {@code MAGIC}, int {@code FORMAT_VERSION}, int Stepper version (1 or 2),
+ *   int block count, int block length, int punctuation selection (ordinal)<br>
+ * - Chunk payloads, back to back, starting right after the header<br>
+ * - Chunk table: for each chunk, long byte offset, long byte length, long letter offset, int CRC32C checksum<br>
+ * - Footer ({@code FOOTER_BYTES} bytes): long table position, int chunk count, int {@code MAGIC}<br><br>
+ *
+ * The table is at the end of the file, so a writer can stream chunks without knowing how many there will be.
+ */
+final public class ChunkContainer {
+
+    /**
+     * Extension of container files
+     */
+    final public static String FILE_EXTENSION = ".stpc";
+
+    /**
+     * Number of bytes in the footer at the end of a container file
+     */
+    final public static int FOOTER_BYTES = 16;
+
+    /**
+     * Version of the container format. Containers with any other version are rejected
+     */
+    final public static int FORMAT_VERSION = 1;
+
+    /**
+     * Number of bytes in the header at the start of a container file. The first chunk starts here
+     */
+    final public static int HEADER_BYTES = 24;
+
+    /**
+     * First and last 4 bytes of every container file ("STPC" in ASCII)
+     */
+    final public static int MAGIC = 0x53545043;
+
+    /**
+     * Number of bytes in each entry of the chunk table
+     */
+    final public static int TABLE_ENTRY_BYTES = 28;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Number of key blocks used to encrypt the output
+     */
+    private final int blockCount;
+
+    /**
+     * Number of characters per key block used to encrypt the output
+     */
+    private final int blockLength;
+
+    /**
+     * CRC32C checksum of each chunk's bytes
+     */
+    private final int[] checksums;
+
+    /**
+     * Length of each chunk, in bytes
+     */
+    private final long[] chunkLengths;
+
+    /**
+     * Byte position of each chunk in the container file, in increasing order
+     */
+    private final long[] chunkOffsets;
+
+    /**
+     * Number of letters in the output before each chunk. Each value is a multiple of {@code blockLength}
+     */
+    private final long[] letterOffsets;
+
+    /**
+     * Punctuation preferences used to encrypt the output
+     */
+    private final PunctuationSelection punctSelection;
+
+    /**
+     * Stepper version used to encrypt the output. Either 1 or 2
+     */
+    private final int stepperVersion;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates a new container description with the given settings and chunk table.
+     *
+     * @param stepperVersion Stepper version used. Must be 1 or 2
+     * @param blockCount number of key blocks used. Must be positive
+     * @param blockLength number of characters per key block used. Must be positive
+     * @param punctSelection punctuation preferences used. Cannot be null
+     * @param chunkOffsets byte position of each chunk. Cannot be null. The first chunk must start at {@code HEADER_BYTES},
+     *                     and each chunk must start where the previous one ends
+     * @param chunkLengths length of each chunk, in bytes. Cannot be null. Same length as {@code chunkOffsets}. No value can be negative
+     * @param letterOffsets letters before each chunk. Cannot be null. Same length as {@code chunkOffsets}.
+     *                      Must be non-decreasing multiples of {@code blockLength}
+     * @param checksums CRC32C checksum of each chunk. Cannot be null. Same length as {@code chunkOffsets}
+     */
+    public ChunkContainer(int stepperVersion, int blockCount, int blockLength, PunctuationSelection punctSelection,
+                          long[] chunkOffsets, long[] chunkLengths, long[] letterOffsets, int[] checksums) {
+
+        if(stepperVersion != 1 && stepperVersion != 2) throw new AssertionError("Stepper version must be 1 or 2- received " + stepperVersion);
+        if(blockCount <= 0) throw new AssertionError("Block count must be positive- received " + blockCount);
+        if(blockLength <= 0) throw new AssertionError("Block length must be positive- received " + blockLength);
+        if(punctSelection == null) throw new AssertionError("Punctuation selection cannot be null");
+        if(chunkOffsets == null || chunkLengths == null || letterOffsets == null || checksums == null)
+            throw new AssertionError("Chunk table cannot be null");
+        if(chunkLengths.length != chunkOffsets.length || letterOffsets.length != chunkOffsets.length
+                || checksums.length != chunkOffsets.length) throw new AssertionError("Every chunk table column must have the same length");
+
+        long expectedOffset = HEADER_BYTES;
+        for(int c = 0; c < chunkOffsets.length; c++) {
+            if(chunkOffsets[c] != expectedOffset) throw new AssertionError("Chunk " + c + " must start at byte "
+                    + expectedOffset + "- received " + chunkOffsets[c]);
+            if(chunkLengths[c] < 0) throw new AssertionError("Chunk " + c + " length cannot be negative- received " + chunkLengths[c]);
+            if(letterOffsets[c] < 0 || letterOffsets[c] % blockLength != 0) throw new AssertionError("Chunk " + c
+                    + " letter offset must be a non-negative multiple of " + blockLength + "- received " + letterOffsets[c]);
+            if(c > 0 && letterOffsets[c] < letterOffsets[c-1]) throw new AssertionError("Chunk " + c
+                    + " letter offset cannot be less than chunk " + (c-1) + "'s");
+
+            expectedOffset += chunkLengths[c];
+        }
+
+        this.stepperVersion = stepperVersion;
+        this.blockCount = blockCount;
+        this.blockLength = blockLength;
+        this.punctSelection = punctSelection;
+        this.chunkOffsets = Arrays.copyOf(chunkOffsets, chunkOffsets.length);
+        this.chunkLengths = Arrays.copyOf(chunkLengths, chunkLengths.length);
+        this.letterOffsets = Arrays.copyOf(letterOffsets, letterOffsets.length);
+        this.checksums = Arrays.copyOf(checksums, checksums.length);
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // HELPERS
+
+    /**
+     * Throws an AssertionError if {@code chunk} is not a valid chunk number.<br><br>
+     *
+     * Helper to the chunk table getters
+     *
+     * @param chunk chunk number to check
+     */
+    private void assertChunkNumber(int chunk) {
+        if(chunk < 0 || chunk >= chunkOffsets.length) throw new AssertionError("Chunk must be on the interval [0, "
+                + chunkOffsets.length + ")- received " + chunk);
+    }
+
+
+
+    /**
+     * Returns {@code length} bytes of the file in {@code channel}, starting at {@code position}, in a buffer ready to be read.<br><br>
+     *
+     * Helper to {@code fetchChunkContainer}
+     *
+     * @param channel channel to read from. Cannot be null
+     * @param position byte position to start reading. Cannot be negative
+     * @param length number of bytes to read. Cannot be negative
+     * @return buffer holding the bytes
+     * @throws IOException if the bytes cannot be read, or the file ends first
+     */
+    private static ByteBuffer loadBytes(FileChannel channel, long position, int length) throws IOException {
+        if(channel == null) throw new AssertionError("Channel cannot be null");
+        if(position < 0 || length < 0) throw new AssertionError("Position and length cannot be negative");
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Container file ended unexpectedly");
+            }
+        }
+        return buffer.flip();
+    }
+
+
+
+    /**
+     * Writes every remaining byte of {@code buffer} to the file in {@code channel}, starting at {@code position}.<br><br>
+     *
+     * Helper to {@code saveToChannel}
+     *
+     * @param channel channel to write to. Cannot be null
+     * @param buffer bytes to write. Cannot be null
+     * @param position byte position to start writing. Cannot be negative
+     * @return position after the written bytes
+     * @throws IOException if the file cannot be written
+     */
+    private static long storeBytes(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        if(channel == null) throw new AssertionError("Channel cannot be null");
+        if(buffer == null) throw new AssertionError("Buffer cannot be null");
+        if(position < 0) throw new AssertionError("Position cannot be negative- received " + position);
+
+        while(buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return position;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // GETTERS
+
+    /**
+     * Returns the number of key blocks used to encrypt the output
+     * @return block count
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+
+
+    /**
+     * Returns the number of characters per key block used to encrypt the output
+     * @return block length
+     */
+    public int getBlockLength() {
+        return blockLength;
+    }
+
+
+
+    /**
+     * Returns the CRC32C checksum of chunk number {@code chunk}
+     * @param chunk chunk number. Must be on the interval [0, {@code getChunkCount()})
+     * @return the chunk's checksum
+     */
+    public int getChecksum(int chunk) {
+        assertChunkNumber(chunk);
+        return checksums[chunk];
+    }
+
+
+
+    /**
+     * Returns the number of chunks in the container
+     * @return chunk count
+     */
+    public int getChunkCount() {
+        return chunkOffsets.length;
+    }
+
+
+
+    /**
+     * Returns the length of chunk number {@code chunk}, in bytes
+     * @param chunk chunk number. Must be on the interval [0, {@code getChunkCount()})
+     * @return the chunk's length
+     */
+    public long getChunkLength(int chunk) {
+        assertChunkNumber(chunk);
+        return chunkLengths[chunk];
+    }
+
+
+
+    /**
+     * Returns the byte position of chunk number {@code chunk} in the container file
+     * @param chunk chunk number. Must be on the interval [0, {@code getChunkCount()})
+     * @return the chunk's position
+     */
+    public long getChunkOffset(int chunk) {
+        assertChunkNumber(chunk);
+        return chunkOffsets[chunk];
+    }
+
+
+
+    /**
+     * Returns the number of letters in the output before chunk number {@code chunk}
+     * @param chunk chunk number. Must be on the interval [0, {@code getChunkCount()})
+     * @return the chunk's letter offset, a multiple of the block length
+     */
+    public long getLetterOffset(int chunk) {
+        assertChunkNumber(chunk);
+        return letterOffsets[chunk];
+    }
+
+
+
+    /**
+     * Returns the punctuation preferences used to encrypt the output
+     * @return punctuation selection
+     */
+    public PunctuationSelection getPunctSelection() {
+        return punctSelection;
+    }
+
+
+
+    /**
+     * Returns the Stepper version used to encrypt the output
+     * @return 1 for Stepper, 2 for Stepper 2
+     */
+    public int getStepperVersion() {
+        return stepperVersion;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Returns the CRC32C checksum of the remaining bytes of {@code bytes}. The buffer's position is not changed.<br><br>
+     *
+     * {@code java.util.zip.CRC32C} uses the processor's CRC32C instructions where they exist.
+     *
+     * @param bytes bytes to check. Cannot be null
+     * @return checksum of the bytes
+     */
+    public static int computeChecksum(ByteBuffer bytes) {
+        if(bytes == null) throw new AssertionError("Bytes cannot be null");
+
+        CRC32C checksum = new CRC32C();
+        checksum.update(bytes.duplicate());
+        return (int) checksum.getValue();
+    }
+
+
+
+    /**
+     * Returns the description of the container file {@code containerFile}, read from its header, footer, and chunk table.
+     *
+     * @param containerFile container file to read. Cannot be null
+     * @return description of the container
+     * @throws IOException if the file cannot be read, or it is not a valid container of version {@code FORMAT_VERSION}
+     */
+    public static ChunkContainer fetchChunkContainer(File containerFile) throws IOException {
+        if(containerFile == null) throw new AssertionError("Container file cannot be null");
+
+        try (FileChannel channel = FileChannel.open(containerFile.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if(fileSize < HEADER_BYTES + FOOTER_BYTES) {
+                throw new IOException("\"" + containerFile.getName() + "\" is too short to be a container file");
+            }
+
+            //Header
+            ByteBuffer header = loadBytes(channel, 0, HEADER_BYTES);
+            if(header.getInt() != MAGIC) {
+                throw new IOException("\"" + containerFile.getName() + "\" is not a container file");
+            }
+            int version = header.getInt();
+            if(version != FORMAT_VERSION) {
+                throw new IOException("Container version " + version + " is not supported (expected " + FORMAT_VERSION + ")");
+            }
+            int stepperVersion = header.getInt();
+            int blockCount = header.getInt();
+            int blockLength = header.getInt();
+            int punctOrdinal = header.getInt();
+            if(punctOrdinal < 0 || punctOrdinal >= PunctuationSelection.values().length) {
+                throw new IOException("Container has an unknown punctuation selection (" + punctOrdinal + ")");
+            }
+
+            //Footer
+            ByteBuffer footer = loadBytes(channel, fileSize - FOOTER_BYTES, FOOTER_BYTES);
+            long tablePosition = footer.getLong();
+            int chunkCount = footer.getInt();
+            if(footer.getInt() != MAGIC) {
+                throw new IOException("Container file \"" + containerFile.getName() + "\" is incomplete");
+            }
+            if(chunkCount < 0 || tablePosition < HEADER_BYTES
+                    || tablePosition + (long) chunkCount * TABLE_ENTRY_BYTES != fileSize - FOOTER_BYTES) {
+                throw new IOException("Container file \"" + containerFile.getName() + "\" has a corrupted chunk table");
+            }
+
+            //Chunk table
+            long[] chunkOffsets = new long[chunkCount];
+            long[] chunkLengths = new long[chunkCount];
+            long[] letterOffsets = new long[chunkCount];
+            int[] checksums = new int[chunkCount];
+            ByteBuffer table = loadBytes(channel, tablePosition, chunkCount * TABLE_ENTRY_BYTES);
+            for(int c = 0; c < chunkCount; c++) {
+                chunkOffsets[c] = table.getLong();
+                chunkLengths[c] = table.getLong();
+                letterOffsets[c] = table.getLong();
+                checksums[c] = table.getInt();
+            }
+            if(chunkCount > 0 && chunkOffsets[chunkCount - 1] + chunkLengths[chunkCount - 1] != tablePosition) {
+                throw new IOException("Container file \"" + containerFile.getName() + "\" has a corrupted chunk table");
+            }
+
+            try {
+                return new ChunkContainer(stepperVersion, blockCount, blockLength, PunctuationSelection.values()[punctOrdinal],
+                        chunkOffsets, chunkLengths, letterOffsets, checksums);
+            }
+            catch(AssertionError e) {
+                throw new IOException("Container file is corrupted: " + e.getMessage());
+            }
+        }
+    }
+
+
+
+    /**
+     * Returns the number of the last chunk that starts at or before {@code bytePosition}, or -1 if every chunk starts after it.
+     *
+     * @param bytePosition position in the container file. Cannot be negative
+     * @return chunk number on the interval [-1, {@code getChunkCount()})
+     */
+    public int findChunk(long bytePosition) {
+        if(bytePosition < 0) throw new AssertionError("Byte position cannot be negative- received " + bytePosition);
+
+        int found = Arrays.binarySearch(chunkOffsets, bytePosition);
+        if(found < 0) {
+            return -found - 2;
+        }
+
+        //Empty chunks share their start with the next chunk: use the last chunk with this start
+        while(found + 1 < chunkOffsets.length && chunkOffsets[found + 1] == bytePosition) {
+            found++;
+        }
+        return found;
+    }
+
+
+
+    /**
+     * Returns whether {@code file} is named like a container file, with the extension {@code FILE_EXTENSION}.
+     *
+     * @param file file to check. Cannot be null
+     * @return true if the file has the container extension
+     */
+    public static boolean isContainerFile(File file) {
+        if(file == null) throw new AssertionError("File cannot be null");
+        return file.getName().length() > FILE_EXTENSION.length() && file.getName().endsWith(FILE_EXTENSION);
+    }
+
+
+
+    /**
+     * Saves this container's header at the start of the file in {@code channel}, then its chunk table and footer
+     * at {@code tablePosition}. Returns the position after the footer, which is the container file's size.
+     *
+     * @param channel channel to the container file, open for writing. Cannot be null
+     * @param tablePosition position after the last chunk. Must equal the end of the last chunk, or {@code HEADER_BYTES}
+     *                      if there are no chunks
+     * @return size of the finished container file
+     * @throws IOException if the file cannot be written
+     */
+    public long saveToChannel(FileChannel channel, long tablePosition) throws IOException {
+        if(channel == null) throw new AssertionError("Channel cannot be null");
+        long chunksEnd = (chunkOffsets.length == 0) ? HEADER_BYTES
+                : chunkOffsets[chunkOffsets.length - 1] + chunkLengths[chunkLengths.length - 1];
+        if(tablePosition != chunksEnd) throw new AssertionError("Table position must be " + chunksEnd + "- received " + tablePosition);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(stepperVersion)
+                .putInt(blockCount).putInt(blockLength).putInt(punctSelection.ordinal());
+        storeBytes(channel, header.flip(), 0);
+
+        ByteBuffer tail = ByteBuffer.allocate(chunkOffsets.length * TABLE_ENTRY_BYTES + FOOTER_BYTES);
+        for(int c = 0; c < chunkOffsets.length; c++) {
+            tail.putLong(chunkOffsets[c]).putLong(chunkLengths[c]).putLong(letterOffsets[c]).putInt(checksums[c]);
+        }
+        tail.putLong(tablePosition).putInt(chunkOffsets.length).putInt(MAGIC);
+
+        return storeBytes(channel, tail.flip(), tablePosition);
+    }
+}
@@ -0,0 +1,391 @@
+package com.rscode.stepperfx.threading;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sidecar index for an encrypted output file, stored next to it with the extension {@code FILE_EXTENSION}.<br><br>
+ *
+ * The index holds checkpoints, each a (byte offset, letter offset) pair. A checkpoint's byte offset is the position of a letter
+ * in the output file, and its letter offset is the number of letters before that letter, which is always a multiple of the
+ * block length. Decryption can start at any checkpoint, so the file can be split among workers without scanning it first,
+ * and a single region can be decrypted on its own.<br><br>
+ *
+ * A checkpoint is recorded about every {@code checkpointInterval} bytes. The index also stores the block count, block length,
+ * and Stepper version used, plus the output file's size, so an index that does not match its file can be ignored.<br><br>
+ *
+ * File format (big-endian, through {@code DataOutputStream}):<br>
+ * - Header ({@code HEADER_BYTES} bytes): int {@code MAGIC}, int {@code FORMAT_VERSION},
+ *   int block count, int block length, int Stepper version (1 or 2), int checkpoint interval,
+ *   long output file size, int checkpoint count<br>
+ * - For each checkpoint ({@code CHECKPOINT_BYTES} bytes): long byte offset, long letter offset<br><br>
+ *
+ * An index file is read only after its size is checked against its checkpoint count, so a corrupted count
+ * cannot make the reader allocate more than the file holds.
+ */
+final public class ChunkIndex {
+
+    /**
+     * Number of bytes each checkpoint takes up in an index file
+     */
+    final public static int CHECKPOINT_BYTES = 16;
+
+    /**
+     * Extension added to an output file's name to get its index file's name
+     */
+    final public static String FILE_EXTENSION = ".idx";
+
+    /**
+     * Version of the index file format. Index files with any other version are rejected
+     */
+    final public static int FORMAT_VERSION = 1;
+
+    /**
+     * Number of bytes in the header at the start of an index file. The first checkpoint starts here
+     */
+    final public static int HEADER_BYTES = 36;
+
+    /**
+     * First 4 bytes of every index file ("STPI" in ASCII)
+     */
+    final public static int MAGIC = 0x53545049;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Number of key blocks used to encrypt the output file
+     */
+    private final int blockCount;
+
+    /**
+     * Number of characters per key block used to encrypt the output file
+     */
+    private final int blockLength;
+
+    /**
+     * Byte offset of each checkpoint, in increasing order
+     */
+    private final long[] byteOffsets;
+
+    /**
+     * Approximate number of bytes between checkpoints
+     */
+    private final int checkpointInterval;
+
+    /**
+     * Letter offset of each checkpoint, in increasing order. Each value is a multiple of {@code blockLength}
+     */
+    private final long[] letterOffsets;
+
+    /**
+     * Size of the indexed output file, in bytes
+     */
+    private final long outputBytes;
+
+    /**
+     * Stepper version used to encrypt the output file. Either 1 or 2
+     */
+    private final int stepperVersion;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates a new index with the given checkpoints.
+     *
+     * @param blockCount number of key blocks used. Must be positive
+     * @param blockLength number of characters per key block used. Must be positive
+     * @param stepperVersion Stepper version used. Must be 1 or 2
+     * @param checkpointInterval approximate number of bytes between checkpoints. Must be positive
+     * @param outputBytes size of the indexed file, in bytes. Cannot be negative
+     * @param byteOffsets byte offset of each checkpoint. Cannot be null. Must be strictly increasing,
+     *                    with every value on the interval [0, {@code outputBytes})
+     * @param letterOffsets letter offset of each checkpoint. Cannot be null. Same length as {@code byteOffsets}.
+     *                      Must be strictly increasing multiples of {@code blockLength}
+     */
+    public ChunkIndex(int blockCount, int blockLength, int stepperVersion, int checkpointInterval, long outputBytes,
+                      long[] byteOffsets, long[] letterOffsets) {
+
+        if(byteOffsets == null || letterOffsets == null) throw new AssertionError("Checkpoint offsets cannot be null");
+        if(byteOffsets.length != letterOffsets.length) throw new AssertionError("Byte offsets (length " + byteOffsets.length
+                + ") and letter offsets (length " + letterOffsets.length + ") must have the same length");
+        String invalidField = findInvalidField(blockCount, blockLength, stepperVersion, checkpointInterval, outputBytes,
+                byteOffsets, letterOffsets);
+        if(invalidField != null) throw new AssertionError(invalidField);
+
+        this.blockCount = blockCount;
+        this.blockLength = blockLength;
+        this.stepperVersion = stepperVersion;
+        this.checkpointInterval = checkpointInterval;
+        this.outputBytes = outputBytes;
+        this.byteOffsets = Arrays.copyOf(byteOffsets, byteOffsets.length);
+        this.letterOffsets = Arrays.copyOf(letterOffsets, letterOffsets.length);
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // HELPERS
+
+    /**
+     * Returns a description of the first field that a valid index cannot have, or null if every field is valid.<br><br>
+     *
+     * Helper to the constructor, which treats an invalid field as a bug, and {@code fetchChunkIndex},
+     * which treats it as a corrupted file
+     *
+     * @param blockCount number of key blocks used
+     * @param blockLength number of characters per key block used
+     * @param stepperVersion Stepper version used
+     * @param checkpointInterval approximate number of bytes between checkpoints
+     * @param outputBytes size of the indexed file, in bytes
+     * @param byteOffsets byte offset of each checkpoint. Cannot be null
+     * @param letterOffsets letter offset of each checkpoint. Cannot be null. Same length as {@code byteOffsets}
+     * @return what is wrong with the fields, or null if nothing is
+     */
+    private static String findInvalidField(int blockCount, int blockLength, int stepperVersion, int checkpointInterval,
+                                           long outputBytes, long[] byteOffsets, long[] letterOffsets) {
+        if(blockCount <= 0) return "Block count must be positive- received " + blockCount;
+        if(blockLength <= 0) return "Block length must be positive- received " + blockLength;
+        if(stepperVersion != 1 && stepperVersion != 2) return "Stepper version must be 1 or 2- received " + stepperVersion;
+        if(checkpointInterval <= 0) return "Checkpoint interval must be positive- received " + checkpointInterval;
+        if(outputBytes < 0) return "Output size cannot be negative- received " + outputBytes;
+
+        for(int c = 0; c < byteOffsets.length; c++) {
+            if(byteOffsets[c] < 0 || byteOffsets[c] >= outputBytes) return "Checkpoint " + c
+                    + " byte offset must be on the interval [0, " + outputBytes + ")- received " + byteOffsets[c];
+            if(letterOffsets[c] < 0 || letterOffsets[c] % blockLength != 0) return "Checkpoint " + c
+                    + " letter offset must be a non-negative multiple of " + blockLength + "- received " + letterOffsets[c];
+            if(c > 0 && (byteOffsets[c] <= byteOffsets[c-1] || letterOffsets[c] <= letterOffsets[c-1])) {
+                return "Checkpoint " + c + " must come after checkpoint " + (c-1);
+            }
+        }
+
+        return null;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // GETTERS
+
+    /**
+     * Returns the number of key blocks used to encrypt the indexed file
+     * @return block count
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+
+
+    /**
+     * Returns the number of characters per key block used to encrypt the indexed file
+     * @return block length
+     */
+    public int getBlockLength() {
+        return blockLength;
+    }
+
+
+
+    /**
+     * Returns the byte offset of checkpoint number {@code checkpoint}
+     * @param checkpoint checkpoint number. Must be on the interval [0, {@code getCheckpointCount()})
+     * @return the checkpoint's byte offset
+     */
+    public long getByteOffset(int checkpoint) {
+        if(checkpoint < 0 || checkpoint >= byteOffsets.length) throw new AssertionError("Checkpoint must be on the interval [0, "
+                + byteOffsets.length + ")- received " + checkpoint);
+        return byteOffsets[checkpoint];
+    }
+
+
+
+    /**
+     * Returns the number of checkpoints in the index
+     * @return checkpoint count
+     */
+    public int getCheckpointCount() {
+        return byteOffsets.length;
+    }
+
+
+
+    /**
+     * Returns the approximate number of bytes between checkpoints
+     * @return checkpoint interval, in bytes
+     */
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+
+
+    /**
+     * Returns the letter offset of checkpoint number {@code checkpoint}
+     * @param checkpoint checkpoint number. Must be on the interval [0, {@code getCheckpointCount()})
+     * @return the checkpoint's letter offset, a multiple of the block length
+     */
+    public long getLetterOffset(int checkpoint) {
+        if(checkpoint < 0 || checkpoint >= letterOffsets.length) throw new AssertionError("Checkpoint must be on the interval [0, "
+                + letterOffsets.length + ")- received " + checkpoint);
+        return letterOffsets[checkpoint];
+    }
+
+
+
+    /**
+     * Returns the size of the indexed file when the index was written
+     * @return size of the indexed file, in bytes
+     */
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+
+
+    /**
+     * Returns the Stepper version used to encrypt the indexed file
+     * @return 1 for Stepper, 2 for Stepper 2
+     */
+    public int getStepperVersion() {
+        return stepperVersion;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Returns the index stored in {@code indexFile}.
+     *
+     * @param indexFile index file to load. Cannot be null
+     * @return the loaded index
+     * @throws IOException if the file cannot be read, or it is not a valid index file of version {@code FORMAT_VERSION},
+     * including when its size does not match its checkpoint count
+     */
+    public static ChunkIndex fetchChunkIndex(File indexFile) throws IOException {
+        if(indexFile == null) throw new AssertionError("Index file cannot be null");
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if(in.readInt() != MAGIC) {
+                throw new IOException("\"" + indexFile.getName() + "\" is not an index file");
+            }
+            int version = in.readInt();
+            if(version != FORMAT_VERSION) {
+                throw new IOException("Index file version " + version + " is not supported (expected " + FORMAT_VERSION + ")");
+            }
+
+            int blockCount = in.readInt();
+            int blockLength = in.readInt();
+            int stepperVersion = in.readInt();
+            int checkpointInterval = in.readInt();
+            long outputBytes = in.readLong();
+            int checkpointCount = in.readInt();
+
+            //The checkpoints must fill the rest of the file exactly. Checked before the arrays are allocated
+            if(checkpointCount < 0 || HEADER_BYTES + (long) checkpointCount * CHECKPOINT_BYTES != indexFile.length()) {
+                throw new IOException("Index file \"" + indexFile.getName() + "\" has a corrupted checkpoint count ("
+                        + checkpointCount + " checkpoints in " + indexFile.length() + " bytes)");
+            }
+
+            long[] byteOffsets = new long[checkpointCount];
+            long[] letterOffsets = new long[checkpointCount];
+            for(int c = 0; c < checkpointCount; c++) {
+                byteOffsets[c] = in.readLong();
+                letterOffsets[c] = in.readLong();
+            }
+
+            String invalidField = findInvalidField(blockCount, blockLength, stepperVersion, checkpointInterval, outputBytes,
+                    byteOffsets, letterOffsets);
+            if(invalidField != null) {
+                throw new IOException("Index file is corrupted: " + invalidField);
+            }
+            return new ChunkIndex(blockCount, blockLength, stepperVersion, checkpointInterval, outputBytes,
+                    byteOffsets, letterOffsets);
+        }
+    }
+
+
+
+    /**
+     * Returns the index file that belongs to {@code dataFile}. The index file may not exist.
+     *
+     * @param dataFile output file that is (or would be) indexed. Cannot be null
+     * @return the data file's index file
+     */
+    public static File fetchIndexFile(File dataFile) {
+        if(dataFile == null) throw new AssertionError("Data file cannot be null");
+        return new File(dataFile.getPath() + FILE_EXTENSION);
+    }
+
+
+
+    /**
+     * Returns the number of the last checkpoint at or before {@code bytePosition}, or -1 if every checkpoint is after it.
+     *
+     * @param bytePosition position in the indexed file. Cannot be negative
+     * @return checkpoint number on the interval [-1, {@code getCheckpointCount()})
+     */
+    public int findCheckpoint(long bytePosition) {
+        if(bytePosition < 0) throw new AssertionError("Byte position cannot be negative- received " + bytePosition);
+
+        int found = Arrays.binarySearch(byteOffsets, bytePosition);
+        return (found >= 0) ? found : -found - 2;
+    }
+
+
+
+    /**
+     * Returns whether this index describes {@code dataFile}, as encrypted with the given settings.<br>
+     * The file's size must match the size stored in the index.
+     *
+     * @param dataFile file to check. Cannot be null
+     * @param blockCount block count of the operation. Must be positive
+     * @param blockLength block length of the operation. Must be positive
+     * @param stepperVersion Stepper version of the operation. Must be 1 or 2
+     * @return true if the index can be used to decrypt {@code dataFile}
+     */
+    public boolean isUsableFor(File dataFile, int blockCount, int blockLength, int stepperVersion) {
+        if(dataFile == null) throw new AssertionError("Data file cannot be null");
+
+        return this.blockCount == blockCount
+                && this.blockLength == blockLength
+                && this.stepperVersion == stepperVersion
+                && dataFile.length() == outputBytes;
+    }
+
+
+
+    /**
+     * Saves this index to {@code indexFile}, replacing any existing contents.
+     *
+     * @param indexFile file to save to. Cannot be null
+     * @throws IOException if the file cannot be written
+     */
+    public void saveToFile(File indexFile) throws IOException {
+        if(indexFile == null) throw new AssertionError("Index file cannot be null");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(blockCount);
+            out.writeInt(blockLength);
+            out.writeInt(stepperVersion);
+            out.writeInt(checkpointInterval);
+            out.writeLong(outputBytes);
+            out.writeInt(byteOffsets.length);
+            for(int c = 0; c < byteOffsets.length; c++) {
+                out.writeLong(byteOffsets[c]);
+                out.writeLong(letterOffsets[c]);
+            }
+        }
+    }
+}
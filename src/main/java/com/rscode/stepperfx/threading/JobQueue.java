@@ -0,0 +1,370 @@
+package com.rscode.stepperfx.threading;
+
+import com.rscode.stepperfx.integration.InputSelection;
+import com.rscode.stepperfx.integration.OperationSelection;
+import com.rscode.stepperfx.integration.PunctuationSelection;
+import com.rscode.stepperfx.integration.StepperFields;
+import javafx.beans.Observable;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.rscode.stepperfx.integration.StepperFields.*;
+
+/**
+ * Runs many jobs at the same time under one budget of worker threads, in the order they were submitted.<br><br>
+ *
+ * Each job counts its number of worker threads against the budget while it runs. A job starts once the threads of the
+ * running jobs, plus any reserved threads, leave room for its own. Jobs start in order, so a large job is never passed
+ * by smaller ones submitted after it. A job with more threads than the whole budget runs once nothing else is running.<br><br>
+ *
+ * Reserved threads belong to work that runs outside the queue, such as the job on the loading screen. They take up the
+ * budget without being listed as jobs.<br><br>
+ *
+ * Every job writes its output to a file, and jobs never browse a file. No two queued or running jobs write the same file,
+ * and no job writes the reserved output file, which belongs to the work outside the queue. Finished jobs stay in the list
+ * until they are cleared. All methods must be called on the FX application thread.
+ */
+final public class JobQueue {
+
+    /**
+     * Runs each job's Task on its own daemon thread. Threads are reused once their job finishes
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Every job that was submitted and not cleared, in the order they were submitted. Updates when a job's status,
+     * message, or progress changes
+     */
+    private final ObservableList<ProcessJob> jobs;
+
+    /**
+     * Number the next submitted job is given. Starts at 1
+     */
+    private int nextId;
+
+    /**
+     * Number tried first when naming the next job output file from {@code StepperFields.JOB_OUTPUT_FILENAME_FORMAT}.
+     * Starts at 1
+     */
+    private int nextOutputNumber;
+
+    /**
+     * File written by work outside the queue, as an absolute, normalized path, or null if that work writes no file
+     */
+    private File reservedOutputFile;
+
+    /**
+     * Number of threads used by work outside the queue. Cannot be negative
+     */
+    private int reservedThreads;
+
+    /**
+     * Most threads that the running jobs and reserved threads can use at once. Must be positive
+     */
+    private final int threadBudget;
+
+    /**
+     * Unmodifiable view of {@code jobs}, given to callers. Kept, since its listeners stop once it is garbage collected
+     */
+    private final ObservableList<ProcessJob> unmodifiableJobs;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates a new, empty queue with a budget of {@code threadBudget} threads
+     * @param threadBudget most threads that the running jobs can use at once. Must be positive
+     */
+    public JobQueue(int threadBudget) {
+        if(threadBudget <= 0) throw new AssertionError("Thread budget must be positive- received " + threadBudget);
+
+        this.threadBudget = threadBudget;
+        this.nextId = 1;
+        this.nextOutputNumber = 1;
+        this.reservedOutputFile = null;
+        this.reservedThreads = 0;
+        this.jobs = FXCollections.observableArrayList(job ->
+                new Observable[] {job.statusProperty(), job.messageProperty(), job.progressProperty()});
+        this.unmodifiableJobs = FXCollections.unmodifiableObservableList(jobs);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "StepperFX job");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // HELPERS
+
+    /**
+     * Returns a short description of a job, naming its operation, input, and output.<br><br>
+     *
+     * Helper to {@code submitJob}
+     *
+     * @param input input text, or a filepath to the input. Cannot be null
+     * @param operationSelection operation of the job. Cannot be null
+     * @param inputSelection where the input comes from. Cannot be null
+     * @param outputFilepath filepath the output is written to. Cannot be null
+     * @return the description
+     */
+    private static String createDescription(String input, OperationSelection operationSelection,
+                                            InputSelection inputSelection, String outputFilepath) {
+        String inputText;
+        if(inputSelection.isFileInput()) {
+            inputText = input.isEmpty() ? DEFAULT_INPUT_FILENAME : input;
+        }
+        else {
+            inputText = "typed text (" + input.length() + " characters)";
+        }
+
+        return (operationSelection.isStepper2Operation() ? "Stepper 2 " : "Stepper ")
+                + (operationSelection.isEncryptionOperation() ? "encryption" : "decryption")
+                + " of " + inputText + " to " + (outputFilepath.isEmpty() ? DEFAULT_OUTPUT_FILENAME : outputFilepath);
+    }
+
+
+
+    /**
+     * Returns a filepath named from {@code StepperFields.JOB_OUTPUT_FILENAME_FORMAT} whose file, and chunk index file,
+     * do not exist and are not claimed. Numbers are tried from {@code nextOutputNumber} up, so files left by earlier runs
+     * of the app are never overwritten.<br><br>
+     *
+     * Helper to {@code submitJob}
+     *
+     * @return the job output filepath
+     */
+    private String createJobOutputFilepath() {
+        while(true) {
+            String filepath = String.format(JOB_OUTPUT_FILENAME_FORMAT, nextOutputNumber++);
+            File outputFile = findOutputFile(filepath);
+            if(!outputFile.exists() && !ChunkIndex.fetchIndexFile(outputFile).exists() && !isOutputClaimed(filepath)) {
+                return filepath;
+            }
+        }
+    }
+
+
+
+    /**
+     * Starts queued jobs, in order, until the next one does not fit in the budget.<br><br>
+     *
+     * Helper to {@code cancelJob}, {@code setReservedThreads}, {@code submitJob}, and each job's finish
+     */
+    private void startQueuedJobs() {
+        int runningThreads = findRunningThreads();
+
+        //Indexed, since a listener of a job's status could change the list
+        for(int j = 0; j < jobs.size(); j++) {
+            ProcessJob job = jobs.get(j);
+            if(job.getStatus() != JobStatus.QUEUED) {
+                continue;
+            }
+
+            boolean idle = (runningThreads == 0 && reservedThreads == 0);
+            if(!idle && runningThreads + reservedThreads + job.getThreadCount() > threadBudget) {
+                return;
+            }
+
+            runningThreads += job.getThreadCount();
+            job.start(executor, this::startQueuedJobs);
+        }
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // GETTERS
+
+    /**
+     * Returns every job that was submitted and not cleared, in the order they were submitted.
+     * The list reports an update when a job's status, message, or progress changes
+     * @return an unmodifiable view of the jobs
+     */
+    public ObservableList<ProcessJob> getJobs() {
+        return unmodifiableJobs;
+    }
+
+
+
+    /**
+     * Returns the file written by work outside the queue
+     * @return the reserved output file, as an absolute, normalized path, or null if there is none
+     */
+    public File getReservedOutputFile() {
+        return reservedOutputFile;
+    }
+
+    /**
+     * Sets the file written by work outside the queue. Jobs cannot be submitted with it as their output while it is reserved
+     * @param outputFilepath filepath the work writes to, the empty string for {@code StepperFields.DEFAULT_OUTPUT_FILENAME},
+     *                       or null if the work writes no file
+     */
+    public void setReservedOutputFile(String outputFilepath) {
+        reservedOutputFile = (outputFilepath != null) ? findOutputFile(outputFilepath) : null;
+    }
+
+
+
+    /**
+     * Returns the number of threads used by work outside the queue
+     * @return the reserved threads
+     */
+    public int getReservedThreads() {
+        return reservedThreads;
+    }
+
+    /**
+     * Sets the number of threads used by work outside the queue, then starts any queued jobs that now fit
+     * @param newReservedThreads reserved threads. Cannot be negative
+     */
+    public void setReservedThreads(int newReservedThreads) {
+        if(newReservedThreads < 0) throw new AssertionError("Reserved threads cannot be negative- received " + newReservedThreads);
+        reservedThreads = newReservedThreads;
+        startQueuedJobs();
+    }
+
+
+
+    /**
+     * Returns the most threads that the running jobs and reserved threads can use at once
+     * @return the thread budget
+     */
+    public int getThreadBudget() {
+        return threadBudget;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Cancels {@code job}. A queued job is cancelled at once. A running job stops at its Task's next cancellation check,
+     * and its threads count against the budget until it does. Does nothing if the job has finished.
+     *
+     * @param job job to cancel. Cannot be null, and must be in this queue
+     */
+    public void cancelJob(ProcessJob job) {
+        if(job == null) throw new AssertionError("Job cannot be null");
+        if(!jobs.contains(job)) throw new AssertionError("Job #" + job.getId() + " is not in this queue");
+
+        job.cancel();
+        startQueuedJobs();
+    }
+
+
+
+    /**
+     * Removes every finished job from the list
+     */
+    public void clearFinishedJobs() {
+        jobs.removeIf(job -> job.getStatus().isFinished());
+    }
+
+
+
+    /**
+     * Returns the file that {@code outputFilepath} names, as an absolute, normalized path, so two filepaths to the
+     * same file give equal files
+     *
+     * @param outputFilepath filepath to an output file, or the empty string for {@code StepperFields.DEFAULT_OUTPUT_FILENAME}.
+     *                       Cannot be null
+     * @return the output file
+     */
+    public static File findOutputFile(String outputFilepath) {
+        if(outputFilepath == null) throw new AssertionError("Output filepath cannot be null");
+        File outputFile = new File(outputFilepath.isEmpty() ? DEFAULT_OUTPUT_FILENAME : outputFilepath);
+        return outputFile.getAbsoluteFile().toPath().normalize().toFile();
+    }
+
+
+
+    /**
+     * Returns the total number of threads counted by the running jobs. A cancelled job counts until its Task returns
+     * @return the running jobs' threads
+     */
+    public int findRunningThreads() {
+        int runningThreads = 0;
+        for(ProcessJob job : jobs) {
+            if(job.getStatus() == JobStatus.RUNNING) {
+                runningThreads += job.getThreadCount();
+            }
+        }
+        return runningThreads;
+    }
+
+
+
+    /**
+     * Returns whether {@code outputFilepath} names the output file of a queued or running job, or the reserved output file.
+     * A cancelled job claims its file until its Task returns
+     *
+     * @param outputFilepath filepath to an output file, or the empty string for {@code StepperFields.DEFAULT_OUTPUT_FILENAME}.
+     *                       Cannot be null
+     * @return true if the file is claimed
+     */
+    public boolean isOutputClaimed(String outputFilepath) {
+        File outputFile = findOutputFile(outputFilepath);
+        if(outputFile.equals(reservedOutputFile)) {
+            return true;
+        }
+        for(ProcessJob job : jobs) {
+            if(!job.getStatus().isFinished() && job.getOutputFile().equals(outputFile)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+
+    /**
+     * Adds a job to the end of the queue, and starts it if it fits in the budget.<br><br>
+     *
+     * The job's output is always written to a file, which must not be claimed by another job or the work outside the queue.
+     * If no output filepath is given, it is written to a new file named from {@code StepperFields.JOB_OUTPUT_FILENAME_FORMAT},
+     * so jobs never overwrite each other's output, or output left by earlier runs of the app.
+     *
+     * @param input what the job should process, or a filepath to the input. Cannot be null
+     * @param key key for processing the input. Cannot be null
+     * @param operationSelection operation to do, as a OperationSelection object (i.e. Stepper 2, encrypt). Cannot be null
+     * @param punctSelection punctuation preferences, as a PunctuationSelection object
+     * @param blockCount number of blocks to use. Must be on the interval [1, {@code StepperFields.MAX_BLOCK_COUNT}]
+     * @param blockLength number of characters in each block to use. Must be on the interval [1, {@code StepperFields.MAX_BLOCK_LENGTH}]
+     * @param inputSelection where to load the input from, as an InputSelection object. Cannot be null or {@code FILE_BROWSING}
+     * @param outputFilepath filepath to write the output to, the empty string to use {@code StepperFields.DEFAULT_OUTPUT_FILENAME},
+     *                       or null to use a new file named for the job. Cannot be claimed, as found by {@code isOutputClaimed}
+     * @param writingChunkIndex whether to write a chunk index next to an encrypted output file
+     * @param nThreads number of threads to use during processing. Must be on the interval [0, {@code StepperFields.MAX_THREADS}].
+     *                 The job counts at least 1 thread against the budget
+     * @return the queued job
+     */
+    public ProcessJob submitJob(String input, String key, OperationSelection operationSelection, PunctuationSelection punctSelection,
+                                int blockCount, int blockLength,
+                                InputSelection inputSelection, String outputFilepath, boolean writingChunkIndex, int nThreads) {
+        if(input == null) throw new AssertionError("Input cannot be null");
+        if(key == null) throw new AssertionError("Key cannot be null");
+        if(operationSelection == null) throw new AssertionError("Operation selection cannot be null");
+        if(inputSelection == null) throw new AssertionError("Input selection cannot be null");
+        if(inputSelection == InputSelection.FILE_BROWSING) throw new AssertionError("Browsed file inputs cannot be queued");
+        if(nThreads<0 || nThreads>StepperFields.MAX_THREADS) throw new AssertionError("Number of threads must be on the interval [0, "
+                + StepperFields.MAX_THREADS + "]- received " + nThreads);
+        if(outputFilepath != null && isOutputClaimed(outputFilepath)) throw new AssertionError("Output file is already claimed- received "
+                + outputFilepath);
+
+        String jobOutputFilepath = (outputFilepath != null) ? outputFilepath : createJobOutputFilepath();
+
+        ProcessTask task = new ProcessTask(input, key, operationSelection, punctSelection, blockCount, blockLength,
+                inputSelection, jobOutputFilepath, writingChunkIndex, nThreads);
+        ProcessJob job = new ProcessJob(nextId++, createDescription(input, operationSelection, inputSelection, jobOutputFilepath),
+                Math.max(nThreads, 1), findOutputFile(jobOutputFilepath), task);
+
+        jobs.add(job);
+        startQueuedJobs();
+        return job;
+    }
+}
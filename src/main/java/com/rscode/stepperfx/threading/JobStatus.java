@@ -0,0 +1,27 @@
+package com.rscode.stepperfx.threading;
+
+/**
+ * Possible states of a job in a {@code JobQueue}.<br><br>
+ *
+ * Possible values:<br>
+ * - {@code QUEUED}: Job is waiting for enough of the queue's threads to be free<br>
+ * - {@code RUNNING}: Job's Task is running<br>
+ * - {@code SUCCEEDED}: Job wrote or returned its output<br>
+ * - {@code FAILED}: Job stopped with an error<br>
+ * - {@code CANCELLED}: Job was cancelled, while queued or while running
+ */
+public enum JobStatus {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED,
+    CANCELLED;
+
+    /**
+     * Returns whether a job with this status has finished, and will not change status again
+     * @return true if the job succeeded, failed, or was cancelled
+     */
+    public boolean isFinished() {
+        return this.equals(SUCCEEDED) || this.equals(FAILED) || this.equals(CANCELLED);
+    }
+}
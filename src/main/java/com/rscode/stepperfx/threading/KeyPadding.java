@@ -0,0 +1,165 @@
+package com.rscode.stepperfx.threading;
+
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.SplittableRandom;
+
+/**
+ * Source of the random lowercase letters that pad a key shorter than its blocks.<br><br>
+ *
+ * By default, letters come from one DRBG shared by every job. It is created and seeded once, when the class is loaded,
+ * and does not reseed with prediction resistance, so drawing letters never waits for the system's entropy.
+ * Each letter costs one random byte, plus one more for each of the 22 of 256 byte values that are rejected
+ * so every letter is equally likely, so padding takes about 1.1 bytes per letter.<br><br>
+ *
+ * If a seed is given, letters come from a new {@code SplittableRandom} with that seed instead, so the same key is
+ * padded the same way every time. Seeded padding is predictable, so it is only for benchmarks and regression tests.
+ */
+final public class KeyPadding {
+
+    /**
+     * Number of byte values that are turned into letters: the largest multiple of 26 that is at most 256.
+     * Bytes at or above it are rejected, so each letter is drawn from the same number of byte values
+     */
+    private static final int ACCEPTED_BYTE_VALUES = 256 - (256 % 26);
+
+    /**
+     * Security strength of the shared DRBG, in bits
+     */
+    private static final int DRBG_STRENGTH = 128;
+
+    /**
+     * DRBG shared by every job that pads its key without a seed. Thread-safe
+     */
+    private static final SecureRandom sharedDrbg = createSharedDrbg();
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Not used. Key padding only has static methods
+     */
+    private KeyPadding() {
+        throw new AssertionError("KeyPadding cannot be instantiated");
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // HELPERS
+
+    /**
+     * Appends one lowercase letter to {@code target} for each byte of {@code bytes} below {@code ACCEPTED_BYTE_VALUES}, in order,
+     * until {@code maxLetters} letters are appended. Rejected bytes are skipped, and never become letters.<br><br>
+     *
+     * Helper to {@code appendLetters}
+     *
+     * @param target builder to append to. Cannot be null
+     * @param bytes random bytes to turn into letters. Cannot be null
+     * @param maxLetters most letters to append. Cannot be negative
+     * @return number of letters appended
+     */
+    private static int appendAcceptedLetters(StringBuilder target, byte[] bytes, int maxLetters) {
+        if(target == null) throw new AssertionError("Target cannot be null");
+        if(bytes == null) throw new AssertionError("Bytes cannot be null");
+        if(maxLetters < 0) throw new AssertionError("Max letters cannot be negative- received " + maxLetters);
+
+        int appended = 0;
+        for(int b = 0; b < bytes.length && appended < maxLetters; b++) {
+            int value = bytes[b] & 0xFF;
+            if(value < ACCEPTED_BYTE_VALUES) {
+                target.append((char) ('a' + value % 26));
+                appended++;
+            }
+        }
+        return appended;
+    }
+
+
+
+    /**
+     * Returns a seeded DRBG without prediction resistance. If the DRBG algorithm is not available,
+     * returns the platform's default {@code SecureRandom}. Either way, the generator is seeded before it is returned.<br><br>
+     *
+     * Helper to initialize {@code sharedDrbg}
+     *
+     * @return the seeded generator
+     */
+    private static SecureRandom createSharedDrbg() {
+        SecureRandom drbg;
+        try {
+            drbg = SecureRandom.getInstance("DRBG",
+                    DrbgParameters.instantiation(DRBG_STRENGTH, DrbgParameters.Capability.NONE, null));
+        }
+        catch(NoSuchAlgorithmException e) {
+            drbg = new SecureRandom();
+        }
+
+        //seeds the generator now, so no job waits for it
+        drbg.nextBytes(new byte[1]);
+        return drbg;
+    }
+
+
+
+    /**
+     * Fills {@code bytes} with random bytes from the shared DRBG, or from {@code seededRandom} if it is not null.<br><br>
+     *
+     * Helper to {@code appendLetters}
+     *
+     * @param bytes array to fill. Cannot be null
+     * @param seededRandom seeded generator, or null to use the shared DRBG
+     */
+    private static void fetchRandomBytes(byte[] bytes, SplittableRandom seededRandom) {
+        if(seededRandom == null) {
+            sharedDrbg.nextBytes(bytes);
+        }
+        else {
+            seededRandom.nextBytes(bytes);
+        }
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Appends {@code count} random lowercase letters to {@code target}. Every letter is equally likely.<br><br>
+     *
+     * Random bytes are drawn in batches, and each byte below {@code ACCEPTED_BYTE_VALUES} becomes one letter.
+     * Rejected bytes are replaced in the next batch, which is sized for the letters still missing.
+     *
+     * @param target builder to append to. Cannot be null
+     * @param count number of letters to append. Cannot be negative
+     * @param seed seed of the letters, or null to draw them from the shared DRBG
+     */
+    public static void appendLetters(StringBuilder target, int count, Long seed) {
+        if(target == null) throw new AssertionError("Target cannot be null");
+        if(count < 0) throw new AssertionError("Count cannot be negative- received " + count);
+
+        SplittableRandom seededRandom = (seed == null) ? null : new SplittableRandom(seed);
+        int lettersLeft = count;
+        while(lettersLeft > 0) {
+            //about 1 in 12 bytes is rejected, so ask for a little more than needed
+            byte[] bytes = new byte[lettersLeft + (lettersLeft >> 3) + 1];
+            fetchRandomBytes(bytes, seededRandom);
+
+            lettersLeft -= appendAcceptedLetters(target, bytes, lettersLeft);
+        }
+    }
+
+
+
+    /**
+     * FOR METHOD UNIT TESTING ONLY! Calls {@code appendAcceptedLetters}. Preconditions are the same.
+     *
+     * @param target builder to append to. Cannot be null
+     * @param bytes random bytes to turn into letters. Cannot be null
+     * @param maxLetters most letters to append. Cannot be negative
+     * @return number of letters appended
+     */
+    public static int appendAcceptedLetters_Testing(StringBuilder target, byte[] bytes, int maxLetters) {
+        return appendAcceptedLetters(target, bytes, maxLetters);
+    }
+}
@@ -0,0 +1,187 @@
+package com.rscode.stepperfx.threading;
+
+import com.rscode.stepperfx.integration.InputSelection;
+import com.rscode.stepperfx.integration.OperationSelection;
+import com.rscode.stepperfx.integration.PunctuationSelection;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Appends one JSON record per finished job to a local metrics log, in the JSON Lines format.<br><br>
+ *
+ * Each record holds the job's settings (operation, punctuation, input type and size, block geometry, and worker count),
+ * its outcome, and its {@code ProcessMetrics}: per-phase nanoseconds, throughput, bytes read and written, peak heap,
+ * and GC time. The log keeps every job's record, so it can be used to choose thread counts and size machines.<br><br>
+ *
+ * Records are created and written on a single daemon thread, in the order they were given, so writing a record never delays
+ * the Task that gave it. A record that cannot be written is reported to the error stream and dropped.
+ */
+final public class MetricsLog {
+
+    /**
+     * Thread that creates and appends the records. A daemon thread, so it never keeps the app open
+     */
+    private static final ExecutorService logWriter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "StepperFX metrics log");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Not used. The log only has static methods
+     */
+    private MetricsLog() {
+        throw new AssertionError("MetricsLog cannot be instantiated");
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // HELPERS
+
+    /**
+     * Appends {@code record} and a line break to {@code logFile}, creating the file if it does not exist.
+     * If the file cannot be written, the error is printed and the record is dropped.<br><br>
+     *
+     * Helper to {@code writeRecord}
+     *
+     * @param logFile file to append to. Cannot be null
+     * @param record record to append, without a line break. Cannot be null
+     */
+    private static void appendRecord(File logFile, String record) {
+        try {
+            Files.writeString(logFile.toPath(), record + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        catch(IOException e) {
+            System.err.println("Could not write to the metrics log: " + e.getMessage());
+        }
+    }
+
+
+
+    /**
+     * Returns one JSON object, on one line, describing a finished job.<br><br>
+     *
+     * Helper to {@code writeRecord}
+     *
+     * @param finishTime time the job finished. Cannot be null
+     * @param result result of the job. Cannot be null
+     * @param operationSelection operation of the job. Cannot be null
+     * @param punctSelection punctuation preference of the job. Cannot be null
+     * @param inputSelection where the job's input came from. Cannot be null
+     * @param inputSize length of the job's input: characters for typed text, bytes for a file
+     * @param blockCount number of blocks in the job's key
+     * @param blockLength number of characters in each key block
+     * @return the record, as JSON without line breaks
+     */
+    private static String createRecord(Instant finishTime, ProcessResult result, OperationSelection operationSelection,
+                                       PunctuationSelection punctSelection, InputSelection inputSelection, long inputSize,
+                                       int blockCount, int blockLength) {
+        ProcessMetrics metrics = result.getMetrics();
+        String outcome = result.isSucceeded() ? "succeeded" : (result.isFailed() ? "failed" : "cancelled");
+
+        StringBuilder record = new StringBuilder(600);
+        record.append("{\"finishTime\":\"").append(finishTime).append('"');
+        record.append(",\"outcome\":\"").append(outcome).append('"');
+        if(result.isFailed()) {
+            record.append(",\"errorType\":\"").append(escapeJson(result.getErrorType())).append('"');
+        }
+        record.append(",\"operation\":\"").append(operationSelection.name()).append('"');
+        record.append(",\"punctuation\":\"").append(punctSelection.name()).append('"');
+        record.append(",\"input\":\"").append(inputSelection.name()).append('"');
+        record.append(",\"inputSize\":").append(inputSize);
+        record.append(",\"blockCount\":").append(blockCount);
+        record.append(",\"blockLength\":").append(blockLength);
+        record.append(",\"workers\":").append(metrics.getWorkerCount());
+        record.append(",\"charactersProcessed\":").append(metrics.getCharactersProcessed());
+        record.append(",\"bytesRead\":").append(metrics.getBytesRead());
+        record.append(",\"bytesWritten\":").append(metrics.getBytesWritten());
+        record.append(",\"totalNanos\":").append(metrics.getTotalNanos());
+        record.append(",\"charactersPerSecond\":").append(Math.round(metrics.findCharactersPerSecond()));
+        record.append(",\"peakHeapBytes\":").append(metrics.getPeakHeapBytes());
+        record.append(",\"gcMillis\":").append(metrics.getGcMillis());
+
+        record.append(",\"phaseNanos\":{");
+        for(ProcessMetrics.Phase phase : ProcessMetrics.Phase.values()) {
+            if(phase.ordinal() > 0) {
+                record.append(',');
+            }
+            record.append('"').append(phase.name()).append("\":").append(metrics.getPhaseNanos(phase));
+        }
+        record.append("}}");
+        return record.toString();
+    }
+
+
+
+    /**
+     * Returns {@code text} with its backslashes, quotes, and control characters escaped for a JSON string.<br><br>
+     *
+     * Helper to {@code createRecord}
+     *
+     * @param text text to escape. Cannot be null
+     * @return the escaped text, without surrounding quotes
+     */
+    private static String escapeJson(String text) {
+        StringBuilder escaped = new StringBuilder(text.length() + 8);
+        for(int i = 0; i < text.length(); i++) {
+            char currentChar = text.charAt(i);
+            if(currentChar == '"' || currentChar == '\\') {
+                escaped.append('\\').append(currentChar);
+            }
+            else if(currentChar < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) currentChar));
+            }
+            else {
+                escaped.append(currentChar);
+            }
+        }
+        return escaped.toString();
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Queues a record of a finished job to be appended to {@code logFile}, then returns without waiting for it.<br><br>
+     *
+     * The record is created on the log's thread, from {@code result}'s metrics, which never change.
+     *
+     * @param logFile file to append the record to. Cannot be null
+     * @param result result of the job. Cannot be null
+     * @param operationSelection operation of the job. Cannot be null
+     * @param punctSelection punctuation preference of the job. Cannot be null
+     * @param inputSelection where the job's input came from. Cannot be null
+     * @param inputSize length of the job's input: characters for typed text, bytes for a file. Cannot be negative
+     * @param blockCount number of blocks in the job's key
+     * @param blockLength number of characters in each key block
+     * @return future that completes once the record is written or dropped
+     */
+    public static Future<?> writeRecord(File logFile, ProcessResult result, OperationSelection operationSelection,
+                                        PunctuationSelection punctSelection, InputSelection inputSelection, long inputSize,
+                                        int blockCount, int blockLength) {
+        if(logFile == null) throw new AssertionError("Log file cannot be null");
+        if(result == null) throw new AssertionError("Result cannot be null");
+        if(operationSelection == null) throw new AssertionError("Operation cannot be null");
+        if(punctSelection == null) throw new AssertionError("Punctuation selection cannot be null");
+        if(inputSelection == null) throw new AssertionError("Input selection cannot be null");
+        if(inputSize < 0) throw new AssertionError("Input size cannot be negative- received " + inputSize);
+
+        Instant finishTime = Instant.now();
+        return logWriter.submit(() -> appendRecord(logFile, createRecord(finishTime, result, operationSelection,
+                punctSelection, inputSelection, inputSize, blockCount, blockLength)));
+    }
+}
@@ -0,0 +1,359 @@
+package com.rscode.stepperfx.threading;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+/**
+ * Tuned thread settings for this machine, measured by a {@code CalibrationTask} and kept in a properties file
+ * between launches. Immutable.<br><br>
+ *
+ * A profile holds what was measured (the processing cost per character, the overhead of one worker, and the time of each
+ * worker count on the calibration sample) and the settings chosen from it: the grain (fewest characters given to a worker)
+ * and the small-input threshold, below which a job stays on one thread. A profile only applies to a machine
+ * with the core count it was measured on.<br><br>
+ *
+ * The best worker count depends on the input's size, so the profile keeps the whole measured curve instead of one maximum.
+ * Each worker count's time is split into a fixed part, its workers' overhead, and a part that grows with the input.
+ * For an input of any size, the fixed part is kept and the rest is scaled from the sample's size, and the fewest workers
+ * that no larger count beats by more than {@code WORKER_COUNT_TOLERANCE} are chosen. Small inputs get fewer workers than
+ * the sample's best, and large inputs only get more if the workers' overhead was what held them back.
+ */
+final public class PerformanceProfile {
+
+    /**
+     * Version of the profile file's format. A file with any other version is not read
+     */
+    private static final int FILE_VERSION = 2;
+
+    /**
+     * How many times faster a larger worker count must be than a smaller one to be chosen over it. Must be at least 1
+     */
+    private static final double WORKER_COUNT_TOLERANCE = 1.05;
+
+    /**
+     * Time the profile was measured
+     */
+    private final Instant calibrationTime;
+
+    /**
+     * Number of cores the profile was measured on. Must be positive
+     */
+    private final int cores;
+
+    /**
+     * Fastest time of each worker count in {@code curveWorkerCounts} on the calibration sample, in nanoseconds.
+     * No index can be less than 1
+     */
+    private final long[] curveNanos;
+
+    /**
+     * Worker counts timed on the calibration sample, in increasing order, starting at 1. No index can be more than {@code cores}
+     */
+    private final int[] curveWorkerCounts;
+
+    /**
+     * Fewest characters given to a worker. Must be positive
+     */
+    private final long grainCharacters;
+
+    /**
+     * Single-worker cost of the diacritics and main process stages, per character, in nanoseconds. Must be positive
+     */
+    private final double nanosPerCharacter;
+
+    /**
+     * Number of characters in the calibration sample. Must be positive
+     */
+    private final long sampleCharacters;
+
+    /**
+     * Fewest characters that a job is split among workers for. Smaller jobs run on one thread. Must be positive
+     */
+    private final long smallInputThreshold;
+
+    /**
+     * Nanoseconds to start, run, and join one empty worker. Must be positive
+     */
+    private final long workerOverheadNanos;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates a new profile.
+     *
+     * @param calibrationTime time the profile was measured. Cannot be null
+     * @param cores number of cores the profile was measured on. Must be positive
+     * @param nanosPerCharacter single-worker cost per character, in nanoseconds. Must be positive
+     * @param workerOverheadNanos overhead of one worker, in nanoseconds. Must be positive
+     * @param grainCharacters fewest characters given to a worker. Must be positive
+     * @param smallInputThreshold fewest characters that a job is split for. Must be positive
+     * @param sampleCharacters number of characters in the calibration sample. Must be positive
+     * @param curveWorkerCounts worker counts timed on the sample. Cannot be null or empty. Must be increasing, start at 1,
+     *                          and be at most {@code cores}
+     * @param curveNanos fastest time of each worker count on the sample, in nanoseconds. Cannot be null.
+     *                   Must have the same length as {@code curveWorkerCounts}. No index can be less than 1
+     */
+    public PerformanceProfile(Instant calibrationTime, int cores, double nanosPerCharacter, long workerOverheadNanos,
+                              long grainCharacters, long smallInputThreshold, long sampleCharacters,
+                              int[] curveWorkerCounts, long[] curveNanos) {
+        if(calibrationTime == null) throw new AssertionError("Calibration time cannot be null");
+        if(cores <= 0) throw new AssertionError("Cores must be positive- received " + cores);
+        if(!(nanosPerCharacter > 0) || Double.isInfinite(nanosPerCharacter))
+            throw new AssertionError("Nanos per character must be positive- received " + nanosPerCharacter);
+        if(workerOverheadNanos <= 0) throw new AssertionError("Worker overhead must be positive- received " + workerOverheadNanos);
+        if(grainCharacters <= 0) throw new AssertionError("Grain must be positive- received " + grainCharacters);
+        if(smallInputThreshold <= 0) throw new AssertionError("Small input threshold must be positive- received "
+                + smallInputThreshold);
+        if(sampleCharacters <= 0) throw new AssertionError("Sample characters must be positive- received " + sampleCharacters);
+        if(curveWorkerCounts == null || curveWorkerCounts.length == 0) throw new AssertionError("Curve worker counts cannot be null or empty");
+        if(curveNanos == null || curveNanos.length != curveWorkerCounts.length) throw new AssertionError("Curve times must have "
+                + curveWorkerCounts.length + " indices");
+        for(int c = 0; c < curveWorkerCounts.length; c++) {
+            int lowest = (c == 0) ? 1 : curveWorkerCounts[c - 1] + 1;
+            if(curveWorkerCounts[c] < lowest || curveWorkerCounts[c] > cores || (c == 0 && curveWorkerCounts[c] != 1))
+                throw new AssertionError("Curve worker count " + c + " must be on the interval [" + lowest + ", " + cores
+                        + "], and the first must be 1- received " + curveWorkerCounts[c]);
+            if(curveNanos[c] < 1) throw new AssertionError("Curve time " + c + " must be positive- received " + curveNanos[c]);
+        }
+
+        this.calibrationTime = calibrationTime;
+        this.cores = cores;
+        this.nanosPerCharacter = nanosPerCharacter;
+        this.workerOverheadNanos = workerOverheadNanos;
+        this.grainCharacters = grainCharacters;
+        this.smallInputThreshold = smallInputThreshold;
+        this.sampleCharacters = sampleCharacters;
+        this.curveWorkerCounts = curveWorkerCounts.clone();
+        this.curveNanos = curveNanos.clone();
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // HELPERS
+
+    /**
+     * Returns the comma-separated numbers in {@code text} as longs.<br><br>
+     *
+     * Helper to {@code fetchProfile}
+     *
+     * @param text numbers separated by commas. Cannot be null
+     * @return the numbers, in order
+     * @throws NumberFormatException if any number is malformed
+     */
+    private static long[] parseNumbers(String text) {
+        String[] parts = text.split(",");
+        long[] numbers = new long[parts.length];
+        for(int i = 0; i < parts.length; i++) {
+            numbers[i] = Long.parseLong(parts[i].trim());
+        }
+        return numbers;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // GETTERS
+
+    /**
+     * Returns the time the profile was measured
+     * @return the calibration time
+     */
+    public Instant getCalibrationTime() {
+        return calibrationTime;
+    }
+
+
+
+    /**
+     * Returns the number of cores the profile was measured on
+     * @return the core count
+     */
+    public int getCores() {
+        return cores;
+    }
+
+
+
+    /**
+     * Returns the fewest characters given to a worker
+     * @return the grain, in characters
+     */
+    public long getGrainCharacters() {
+        return grainCharacters;
+    }
+
+
+
+    /**
+     * Returns the single-worker cost of the diacritics and main process stages, per character
+     * @return the cost, in nanoseconds
+     */
+    public double getNanosPerCharacter() {
+        return nanosPerCharacter;
+    }
+
+
+
+    /**
+     * Returns the number of characters in the calibration sample
+     * @return the sample's size, in characters
+     */
+    public long getSampleCharacters() {
+        return sampleCharacters;
+    }
+
+
+
+    /**
+     * Returns the fewest characters that a job is split among workers for
+     * @return the threshold, in characters
+     */
+    public long getSmallInputThreshold() {
+        return smallInputThreshold;
+    }
+
+
+
+    /**
+     * Returns the overhead of one worker
+     * @return the overhead, in nanoseconds
+     */
+    public long getWorkerOverheadNanos() {
+        return workerOverheadNanos;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Returns a short description of the profile's settings, for the settings screen
+     * @return the description, on one line
+     */
+    public String createSummary() {
+        return findWorkerCount(sampleCharacters) + " of " + cores + " cores for " + sampleCharacters + " characters, "
+                + grainCharacters + " characters per worker";
+    }
+
+
+
+    /**
+     * Returns the profile stored in {@code profileFile}, or null if the file does not exist, cannot be read,
+     * has another format version, or holds invalid values.
+     *
+     * @param profileFile file to read. Cannot be null
+     * @return the stored profile, or null
+     */
+    public static PerformanceProfile fetchProfile(File profileFile) {
+        if(profileFile == null) throw new AssertionError("Profile file cannot be null");
+        if(!profileFile.isFile()) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try(Reader reader = Files.newBufferedReader(profileFile.toPath(), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+            if(Integer.parseInt(properties.getProperty("version", "0")) != FILE_VERSION) {
+                return null;
+            }
+
+            long[] workerCounts = parseNumbers(properties.getProperty("curveWorkerCounts"));
+            int[] curveWorkerCounts = new int[workerCounts.length];
+            for(int c = 0; c < workerCounts.length; c++) {
+                curveWorkerCounts[c] = Math.toIntExact(workerCounts[c]);
+            }
+
+            return new PerformanceProfile(Instant.parse(properties.getProperty("calibrationTime")),
+                    Integer.parseInt(properties.getProperty("cores")),
+                    Double.parseDouble(properties.getProperty("nanosPerCharacter")),
+                    Long.parseLong(properties.getProperty("workerOverheadNanos")),
+                    Long.parseLong(properties.getProperty("grainCharacters")),
+                    Long.parseLong(properties.getProperty("smallInputThreshold")),
+                    Long.parseLong(properties.getProperty("sampleCharacters")),
+                    curveWorkerCounts,
+                    parseNumbers(properties.getProperty("curveNanos")));
+        }
+        //A missing, malformed, or out-of-range value makes the whole file invalid
+        catch(IOException | RuntimeException | AssertionError e) {
+            return null;
+        }
+    }
+
+
+
+    /**
+     * Returns the best worker count for an input of {@code characters} characters: the fewest workers that no larger
+     * measured count beats by more than {@code WORKER_COUNT_TOLERANCE}.<br><br>
+     *
+     * Each measured count's time is estimated for the input by keeping its workers' overhead, and scaling the rest of
+     * its time on the sample by the input's size.
+     *
+     * @param characters number of characters split among the workers. Cannot be negative
+     * @return the worker count, on the interval [1, {@code cores}]
+     */
+    public int findWorkerCount(long characters) {
+        if(characters < 0) throw new AssertionError("Characters cannot be negative- received " + characters);
+
+        double scale = (double) characters / sampleCharacters;
+        int bestIndex = 0;
+        double bestNanos = Double.POSITIVE_INFINITY;
+        for(int c = 0; c < curveWorkerCounts.length; c++) {
+            double fixedNanos = Math.min((double) curveWorkerCounts[c] * workerOverheadNanos, curveNanos[c]);
+            double estimatedNanos = fixedNanos + (curveNanos[c] - fixedNanos) * scale;
+            if(estimatedNanos * WORKER_COUNT_TOLERANCE < bestNanos) {
+                bestIndex = c;
+                bestNanos = estimatedNanos;
+            }
+        }
+        return curveWorkerCounts[bestIndex];
+    }
+
+
+
+    /**
+     * Returns whether the profile was measured on a machine with this machine's number of cores
+     * @return true if the core counts are equal
+     */
+    public boolean matchesHardware() {
+        return cores == Runtime.getRuntime().availableProcessors();
+    }
+
+
+
+    /**
+     * Writes the profile to {@code profileFile} as properties, replacing the file's contents.
+     *
+     * @param profileFile file to write. Cannot be null
+     * @throws IOException if the file cannot be written
+     */
+    public void writeProfile(File profileFile) throws IOException {
+        if(profileFile == null) throw new AssertionError("Profile file cannot be null");
+
+        Properties properties = new Properties();
+        properties.setProperty("version", Integer.toString(FILE_VERSION));
+        properties.setProperty("calibrationTime", calibrationTime.toString());
+        properties.setProperty("cores", Integer.toString(cores));
+        properties.setProperty("nanosPerCharacter", Double.toString(nanosPerCharacter));
+        properties.setProperty("workerOverheadNanos", Long.toString(workerOverheadNanos));
+        properties.setProperty("grainCharacters", Long.toString(grainCharacters));
+        properties.setProperty("smallInputThreshold", Long.toString(smallInputThreshold));
+        properties.setProperty("sampleCharacters", Long.toString(sampleCharacters));
+        properties.setProperty("curveWorkerCounts", Arrays.stream(curveWorkerCounts).mapToObj(Integer::toString)
+                .collect(Collectors.joining(",")));
+        properties.setProperty("curveNanos", Arrays.stream(curveNanos).mapToObj(Long::toString)
+                .collect(Collectors.joining(",")));
+
+        StringWriter text = new StringWriter();
+        properties.store(text, "StepperFX performance profile. Delete this file to recalibrate on the next launch");
+        Files.writeString(profileFile.toPath(), text.toString(), StandardCharsets.UTF_8);
+    }
+}
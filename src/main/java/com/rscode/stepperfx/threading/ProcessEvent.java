@@ -0,0 +1,280 @@
+package com.rscode.stepperfx.threading;
+
+import com.rscode.stepperfx.integration.OperationSelection;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for one phase of a {@code ProcessTask}. Each phase has its own event type, nested in this class.<br><br>
+ *
+ * The events are recorded under the "StepperFX" category, so a recording made with standard JFR tools
+ * (such as {@code jcmd <pid> JFR.start} or JDK Mission Control) shows each job's phases, their durations,
+ * and the threads that ran them.<br>
+ * An event that is not enabled costs one check, so the phases create their events even when nothing is recording.
+ * The shared fields are only filled in if the event will be committed.<br><br>
+ *
+ * Every event holds the job's operation, thread count, and block geometry, and the number of characters it covers.
+ * Events with a file measure it in bytes.
+ */
+@Category({"StepperFX", "Process"})
+@StackTrace(false)
+abstract class ProcessEvent extends Event {
+
+    /**
+     * Number of blocks in the key
+     */
+    @Label("Block Count")
+    int blockCount;
+
+    /**
+     * Number of characters in each key block
+     */
+    @Label("Block Length")
+    int blockLength;
+
+    /**
+     * Number of characters the phase covers. Phases that read or write a file count bytes instead
+     */
+    @Label("Characters")
+    long characters;
+
+    /**
+     * Operation of the job, from {@code OperationSelection.name()}
+     */
+    @Label("Operation")
+    String operation;
+
+    /**
+     * Number of worker threads in the job
+     */
+    @Label("Threads")
+    int threads;
+
+
+    // /////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates a new event. The event's duration starts at {@code begin()}, or when it is created if never begun
+     */
+    ProcessEvent() {
+        super();
+    }
+
+
+    // /////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Commits the event with its shared fields, if it is enabled and lasted past its threshold.
+     * Otherwise, does nothing.
+     *
+     * @param operation operation of the job. Cannot be null
+     * @param threads number of worker threads in the job
+     * @param blockCount number of blocks in the key
+     * @param blockLength number of characters in each key block
+     * @param characters number of characters, or bytes, that the phase covers
+     */
+    void commitPhase(OperationSelection operation, int threads, int blockCount, int blockLength, long characters) {
+        if(operation == null) throw new AssertionError("Operation cannot be null");
+        if(!shouldCommit()) {
+            return;
+        }
+
+        this.operation = operation.name();
+        this.threads = threads;
+        this.blockCount = blockCount;
+        this.blockLength = blockLength;
+        this.characters = characters;
+        commit();
+    }
+
+
+
+    // /////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // EVENT TYPES
+
+    /**
+     * Removal of diacritics from the whole input, or the scan of a mapped input file, by the diacritics workers
+     */
+    @Name("com.rscode.stepperfx.DiacriticsStage")
+    @Label("Diacritics Stage")
+    @Description("Diacritics workers formatting the input")
+    static final class DiacriticsStage extends ProcessEvent {
+
+        /**
+         * Whether the stage scanned a mapped input file, instead of text held in memory
+         */
+        @Label("Scanned File")
+        boolean scannedFile;
+
+        /**
+         * Creates a new event
+         */
+        DiacriticsStage() {
+            super();
+        }
+    }
+
+
+
+    /**
+     * Read of an input file. Covers mapping and indexing a file's regions, or filling one chunk of a streamed file
+     */
+    @Name("com.rscode.stepperfx.FileRead")
+    @Label("File Read")
+    @Description("Input file read, in bytes for mapped files and characters for streamed chunks")
+    static final class FileRead extends ProcessEvent {
+
+        /**
+         * Whether the file was streamed one chunk at a time
+         */
+        @Label("Streamed")
+        boolean streamed;
+
+        /**
+         * Creates a new event
+         */
+        FileRead() {
+            super();
+        }
+    }
+
+
+
+    /**
+     * Creation of the key blocks from the key text
+     */
+    @Name("com.rscode.stepperfx.KeyBlocks")
+    @Label("Key Block Creation")
+    @Description("Formatting the key into key blocks")
+    static final class KeyBlocks extends ProcessEvent {
+
+        /**
+         * Creates a new event
+         */
+        KeyBlocks() {
+            super();
+        }
+    }
+
+
+
+    /**
+     * Execution of one {@code ProcessSubtaskMain}
+     */
+    @Name("com.rscode.stepperfx.MainSubtask")
+    @Label("Main Subtask")
+    @Description("One main process worker processing its piece")
+    static final class MainSubtask extends ProcessEvent {
+
+        /**
+         * Punctuation preference of the job, from {@code PunctuationSelection.name()}
+         */
+        @Label("Punctuation")
+        String punctuation;
+
+        /**
+         * Segment of the job's input where the piece starts
+         */
+        @Label("Start Segment")
+        long startSegment;
+
+        /**
+         * Number of the subtask's worker, or -1 if its worker is not tracked
+         */
+        @Label("Worker")
+        int worker;
+
+        /**
+         * Whether the subtask wrote its output to a file instead of returning it
+         */
+        @Label("Writes File")
+        boolean writingFile;
+
+        /**
+         * Creates a new event
+         */
+        MainSubtask() {
+            super();
+        }
+    }
+
+
+
+    /**
+     * Write of the output file. Covers waiting for the workers' writes and saving the file's index
+     */
+    @Name("com.rscode.stepperfx.OutputWrite")
+    @Label("Output Write")
+    @Description("Workers writing their outputs to the output file, and the file being finished")
+    static final class OutputWrite extends ProcessEvent {
+
+        /**
+         * Number of bytes in the finished output file
+         */
+        @Label("File Size")
+        @DataAmount
+        long fileBytes;
+
+        /**
+         * Creates a new event
+         */
+        OutputWrite() {
+            super();
+        }
+    }
+
+
+
+    /**
+     * Split of a text into one workload per worker
+     */
+    @Name("com.rscode.stepperfx.Partition")
+    @Label("Partitioning")
+    @Description("Splitting text into workloads on block boundaries")
+    static final class Partition extends ProcessEvent {
+
+        /**
+         * Number of workloads the text was split into
+         */
+        @Label("Pieces")
+        int pieces;
+
+        /**
+         * Creates a new event
+         */
+        Partition() {
+            super();
+        }
+    }
+
+
+
+    /**
+     * Reassembly of the workers' outputs, in order, into one result held in memory
+     */
+    @Name("com.rscode.stepperfx.Reassembly")
+    @Label("Reassembly")
+    @Description("Waiting for the workers' outputs and joining them in order")
+    static final class Reassembly extends ProcessEvent {
+
+        /**
+         * Number of outputs joined
+         */
+        @Label("Pieces")
+        int pieces;
+
+        /**
+         * Creates a new event
+         */
+        Reassembly() {
+            super();
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.rscode.stepperfx.threading;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.concurrent.Worker;
+
+import java.io.File;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * One job in a {@code JobQueue}: a {@code ProcessTask}, with the number of threads it counts against the queue's budget,
+ * its status, and its result once it finishes.<br><br>
+ *
+ * The job's message and progress follow its Task's while it runs, and keep their last values after it finishes.
+ * Once finished, the job lets go of its Task, so a finished job does not hold on to its input.<br><br>
+ *
+ * Jobs are created, started, and cancelled by their queue. All methods must be called on the FX application thread.
+ */
+final public class ProcessJob {
+
+    /**
+     * Short description of the job's operation, input, and output, for the jobs screen. Cannot be null
+     */
+    private final String description;
+
+    /**
+     * Text of the error that stopped the job, or null if it has not failed
+     */
+    private String errorText;
+
+    /**
+     * Number of the job in its queue. Jobs are numbered from 1, in the order they were submitted
+     */
+    private final int id;
+
+    /**
+     * Message of the job's Task, or the empty string before it starts
+     */
+    private final ReadOnlyStringWrapper message;
+
+    /**
+     * File the job writes its output to, as an absolute, normalized path. Cannot be null
+     */
+    private final File outputFile;
+
+    /**
+     * Progress of the job's Task, on the interval [0, 1], or -1 if its current stage's progress is not counted
+     */
+    private final ReadOnlyDoubleWrapper progress;
+
+    /**
+     * What the job's Task returned, or null if it has not finished or returned nothing
+     */
+    private ProcessResult result;
+
+    /**
+     * Current status of the job. Cannot be null
+     */
+    private final ReadOnlyObjectWrapper<JobStatus> status;
+
+    /**
+     * Task that processes the job's input, or null once the job has finished
+     */
+    private ProcessTask task;
+
+    /**
+     * Number of threads the job counts against its queue's budget. Must be positive
+     */
+    private final int threadCount;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates a new queued job that runs {@code task}
+     *
+     * @param id number of the job in its queue. Must be positive
+     * @param description short description of the job. Cannot be null
+     * @param threadCount number of threads the job counts against its queue's budget. Must be positive
+     * @param outputFile file the job writes its output to, as an absolute, normalized path. Cannot be null
+     * @param task task that processes the job's input. Cannot be null, and must not have been started
+     */
+    ProcessJob(int id, String description, int threadCount, File outputFile, ProcessTask task) {
+        if(id <= 0) throw new AssertionError("Job id must be positive- received " + id);
+        if(description == null) throw new AssertionError("Description cannot be null");
+        if(threadCount <= 0) throw new AssertionError("Thread count must be positive- received " + threadCount);
+        if(outputFile == null) throw new AssertionError("Output file cannot be null");
+        if(task == null) throw new AssertionError("Task cannot be null");
+
+        this.id = id;
+        this.outputFile = outputFile;
+        this.description = description;
+        this.threadCount = threadCount;
+        this.task = task;
+        this.errorText = null;
+        this.result = null;
+        this.message = new ReadOnlyStringWrapper("");
+        this.progress = new ReadOnlyDoubleWrapper(0);
+        this.status = new ReadOnlyObjectWrapper<>(JobStatus.QUEUED);
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // HELPERS
+
+    /**
+     * Sets the job's result and final status from its Task, and lets go of the Task.<br><br>
+     *
+     * Helper to {@code cancel} and {@code start}
+     */
+    private void finish() {
+        message.unbind();
+        progress.unbind();
+
+        if(task.getState() == Worker.State.SUCCEEDED) {
+            result = task.getValue();
+            if(result.isCancelled()) {
+                status.set(JobStatus.CANCELLED);
+            }
+            else if(result.isFailed()) {
+                errorText = result.getErrorType() + ": " + Objects.toString(result.getErrorMessage(), "No details were given");
+                status.set(JobStatus.FAILED);
+            }
+            else {
+                status.set(JobStatus.SUCCEEDED);
+            }
+        }
+        else if(task.getState() == Worker.State.FAILED) {
+            errorText = String.valueOf(task.getException());
+            status.set(JobStatus.FAILED);
+        }
+        else {
+            status.set(JobStatus.CANCELLED);
+        }
+
+        task = null;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // GETTERS
+
+    /**
+     * Returns the short description of the job's operation, input, and output
+     * @return the description
+     */
+    public String getDescription() {
+        return description;
+    }
+
+
+
+    /**
+     * Returns the number of the job in its queue
+     * @return the job's id, starting at 1
+     */
+    public int getId() {
+        return id;
+    }
+
+
+
+    /**
+     * Returns the file the job writes its output to
+     * @return the output file, as an absolute, normalized path
+     */
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+
+
+    /**
+     * Returns what the job's Task returned
+     * @return the result, or null if the job has not finished, was cancelled while queued, or failed without a result
+     */
+    public ProcessResult getResult() {
+        return result;
+    }
+
+
+
+    /**
+     * Returns the job's current status
+     * @return the status
+     */
+    public JobStatus getStatus() {
+        return status.get();
+    }
+
+
+
+    /**
+     * Returns the number of threads the job counts against its queue's budget
+     * @return the thread count, at least 1
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Cancels the job. A queued job is cancelled at once. A running job's Task is cancelled, and the job is
+     * {@code CANCELLED} once its Task returns. Does nothing if the job has finished.
+     */
+    void cancel() {
+        if(task == null) {
+            return;
+        }
+
+        task.cancel();
+        if(getStatus() == JobStatus.QUEUED) {
+            finish();
+        }
+    }
+
+
+
+    /**
+     * Returns one line describing the job for the jobs screen: its number, status, and description, followed by
+     * its progress while it runs, or its outcome once it finishes
+     * @return the summary
+     */
+    public String createSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append('#').append(id).append("  ").append(getStatus()).append("  ").append(description);
+
+        switch(getStatus()) {
+            case RUNNING -> {
+                summary.append("  |  ").append(message.get());
+                if(progress.get() >= 0) {
+                    summary.append(" (").append(Math.round(100 * progress.get())).append("%)");
+                }
+            }
+            case SUCCEEDED -> summary.append("  |  Finished in ")
+                    .append(String.format("%.2f", result.getMetrics().getTotalNanos() / 1e9)).append(" s");
+            case FAILED -> summary.append("  |  ").append(errorText);
+            default -> {}
+        }
+        return summary.toString();
+    }
+
+
+
+    /**
+     * Returns the message of the job's Task, which names its current stage. Keeps its last value once the job finishes
+     * @return the message property
+     */
+    public ReadOnlyStringProperty messageProperty() {
+        return message.getReadOnlyProperty();
+    }
+
+
+
+    /**
+     * Returns the progress of the job's Task. Keeps its last value once the job finishes
+     * @return the progress property, on the interval [0, 1], or -1 if the current stage's progress is not counted
+     */
+    public ReadOnlyDoubleProperty progressProperty() {
+        return progress.getReadOnlyProperty();
+    }
+
+
+
+    /**
+     * Starts the job's Task on {@code executor}. Once the Task returns and its final state is set,
+     * sets the job's result and status, then runs {@code onFinished} on the FX application thread.
+     *
+     * @param executor executor to run the Task on. Cannot be null
+     * @param onFinished runs after the job finishes. Cannot be null
+     */
+    void start(Executor executor, Runnable onFinished) {
+        if(executor == null) throw new AssertionError("Executor cannot be null");
+        if(onFinished == null) throw new AssertionError("Finish action cannot be null");
+        if(getStatus() != JobStatus.QUEUED) throw new AssertionError("Only queued jobs can be started- job is " + getStatus());
+
+        ProcessTask runningTask = task;
+        message.bind(runningTask.messageProperty());
+        progress.bind(runningTask.progressProperty());
+        status.set(JobStatus.RUNNING);
+
+        //The Task sets its final state with Platform.runLater before it returns, so it is set before the job finishes.
+        //The job only finishes once the Task's thread is done with it, even if the Task was cancelled earlier
+        executor.execute(() -> {
+            try {
+                runningTask.run();
+            }
+            finally {
+                Platform.runLater(() -> {
+                    finish();
+                    onFinished.run();
+                });
+            }
+        });
+    }
+
+
+
+    /**
+     * Returns the job's current status
+     * @return the status property
+     */
+    public ReadOnlyObjectProperty<JobStatus> statusProperty() {
+        return status.getReadOnlyProperty();
+    }
+}
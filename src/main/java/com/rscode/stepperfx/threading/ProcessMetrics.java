@@ -0,0 +1,291 @@
+package com.rscode.stepperfx.threading;
+
+import java.util.Arrays;
+
+/**
+ * Measurements of one {@code ProcessTask} run. Immutable once created.<br><br>
+ *
+ * Each phase's time is the wall-clock time the Task spent in it, summed over every time the phase ran
+ * (a streamed file runs most phases once per chunk). The main process phase includes waiting for the workers,
+ * so it contains the reassembly and output write phases, and phase times do not add up to the total time.<br>
+ * The peak heap is the most heap seen in use when the Task sampled it, at the end of each phase and with each progress sample.
+ * The GC time is the time every garbage collector spent collecting during the run, including collections of other jobs' garbage.
+ */
+final public class ProcessMetrics {
+
+    /**
+     * Phases of a {@code ProcessTask} that are timed. Each phase matches a {@code ProcessEvent} type, except for the main process,
+     * whose workers each record their own event
+     */
+    public enum Phase {
+        FILE_READ("File read"),
+        KEY_BLOCKS("Key block creation"),
+        PARTITION("Partitioning"),
+        DIACRITICS("Diacritics stage"),
+        MAIN("Main process"),
+        REASSEMBLY("Reassembly"),
+        OUTPUT_WRITE("Output write");
+
+        /**
+         * Name of the phase shown to the user
+         */
+        private final String displayName;
+
+        /**
+         * Creates a new phase shown to the user as {@code displayName}
+         * @param displayName name of the phase shown to the user. Cannot be null
+         */
+        Phase(String displayName) {
+            if(displayName == null) throw new AssertionError("Display name cannot be null");
+            this.displayName = displayName;
+        }
+
+        /**
+         * Returns the name of the phase shown to the user
+         * @return the phase's display name
+         */
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Number of bytes read from an input file. 0 if the input was text, or a browsed file that is decrypted one page at a time
+     */
+    private final long bytesRead;
+
+    /**
+     * Number of bytes written to an output file. 0 if the output was returned
+     */
+    private final long bytesWritten;
+
+    /**
+     * Number of input characters that the main process covered. For a mapped file, this is the number of decoded characters
+     */
+    private final long charactersProcessed;
+
+    /**
+     * Milliseconds the garbage collectors spent collecting during the run, summed over every collector
+     */
+    private final long gcMillis;
+
+    /**
+     * Most heap in use when sampled during the run, in bytes
+     */
+    private final long peakHeapBytes;
+
+    /**
+     * Nanoseconds spent in each phase, indexed by {@code Phase.ordinal()}
+     */
+    private final long[] phaseNanos;
+
+    /**
+     * Nanoseconds from the start of the run until its result was ready
+     */
+    private final long totalNanos;
+
+    /**
+     * Number of worker threads
+     */
+    private final int workerCount;
+
+    /**
+     * Summary of how evenly the workers of the run's last stage finished, or the empty string if no stage had workers
+     */
+    private final String workerSummary;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates the metrics of a finished run.
+     *
+     * @param phaseNanos nanoseconds spent in each phase, indexed by {@code Phase.ordinal()}. Cannot be null.
+     *                   Length must be the number of phases. No index can be negative
+     * @param totalNanos nanoseconds from the start of the run until its result was ready. Cannot be negative
+     * @param charactersProcessed number of input characters that the main process covered. Cannot be negative
+     * @param bytesRead number of bytes read from an input file. Cannot be negative
+     * @param bytesWritten number of bytes written to an output file. Cannot be negative
+     * @param workerCount number of worker threads. Cannot be negative
+     * @param peakHeapBytes most heap in use when sampled during the run, in bytes. Cannot be negative
+     * @param gcMillis milliseconds the garbage collectors spent collecting during the run. Cannot be negative
+     * @param workerSummary summary of the last stage's workers, or the empty string. Cannot be null
+     */
+    public ProcessMetrics(long[] phaseNanos, long totalNanos, long charactersProcessed, long bytesRead, long bytesWritten,
+                          int workerCount, long peakHeapBytes, long gcMillis, String workerSummary) {
+        if(phaseNanos == null || phaseNanos.length != Phase.values().length) throw new AssertionError("Phase times must have "
+                + Phase.values().length + " indices");
+        for(long nanos : phaseNanos) {
+            if(nanos < 0) throw new AssertionError("Phase times cannot be negative- received " + nanos);
+        }
+        if(totalNanos < 0) throw new AssertionError("Total time cannot be negative- received " + totalNanos);
+        if(charactersProcessed < 0) throw new AssertionError("Characters processed cannot be negative- received " + charactersProcessed);
+        if(bytesRead < 0) throw new AssertionError("Bytes read cannot be negative- received " + bytesRead);
+        if(bytesWritten < 0) throw new AssertionError("Bytes written cannot be negative- received " + bytesWritten);
+        if(workerCount < 0) throw new AssertionError("Worker count cannot be negative- received " + workerCount);
+        if(peakHeapBytes < 0) throw new AssertionError("Peak heap cannot be negative- received " + peakHeapBytes);
+        if(gcMillis < 0) throw new AssertionError("GC time cannot be negative- received " + gcMillis);
+        if(workerSummary == null) throw new AssertionError("Worker summary cannot be null");
+
+        this.phaseNanos = phaseNanos.clone();
+        this.totalNanos = totalNanos;
+        this.charactersProcessed = charactersProcessed;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.workerCount = workerCount;
+        this.peakHeapBytes = peakHeapBytes;
+        this.gcMillis = gcMillis;
+        this.workerSummary = workerSummary;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // GETTERS
+
+    /**
+     * Returns the number of bytes read from an input file
+     * @return bytes read, or 0 if the input was text or a browsed file
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+
+
+    /**
+     * Returns the number of bytes written to an output file
+     * @return bytes written, or 0 if the output was returned
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+
+
+    /**
+     * Returns the number of input characters that the main process covered
+     * @return characters processed
+     */
+    public long getCharactersProcessed() {
+        return charactersProcessed;
+    }
+
+
+
+    /**
+     * Returns the milliseconds the garbage collectors spent collecting during the run
+     * @return GC time, in milliseconds
+     */
+    public long getGcMillis() {
+        return gcMillis;
+    }
+
+
+
+    /**
+     * Returns the most heap in use when sampled during the run
+     * @return peak heap, in bytes
+     */
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+
+
+    /**
+     * Returns the nanoseconds spent in {@code phase}
+     * @param phase phase to look up. Cannot be null
+     * @return nanoseconds spent in the phase, or 0 if it never ran
+     */
+    public long getPhaseNanos(Phase phase) {
+        if(phase == null) throw new AssertionError("Phase cannot be null");
+        return phaseNanos[phase.ordinal()];
+    }
+
+
+
+    /**
+     * Returns the nanoseconds from the start of the run until its result was ready
+     * @return total time, in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+
+
+    /**
+     * Returns the number of worker threads
+     * @return worker count
+     */
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+
+
+    /**
+     * Returns the summary of how evenly the workers of the run's last stage finished
+     * @return worker summary, or the empty string if no stage had workers
+     */
+    public String getWorkerSummary() {
+        return workerSummary;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Returns a multi-line report of the metrics, with one line for each phase that ran.
+     * @return text of the report
+     */
+    public String createReport() {
+        StringBuilder report = new StringBuilder(400);
+        report.append(String.format("Total: %.3f s, %,d characters, %,.0f characters/s%n",
+                totalNanos / 1e9, charactersProcessed, findCharactersPerSecond()));
+        report.append(String.format("Workers: %d, peak heap: %,.1f MB, GC: %,d ms%n",
+                workerCount, peakHeapBytes / (1024.0 * 1024.0), gcMillis));
+        if(bytesRead > 0 || bytesWritten > 0) {
+            report.append(String.format("File: %,d bytes read, %,d bytes written%n", bytesRead, bytesWritten));
+        }
+
+        for(Phase phase : Phase.values()) {
+            if(phaseNanos[phase.ordinal()] > 0) {
+                report.append(String.format("%s: %.3f s%n", phase.getDisplayName(), phaseNanos[phase.ordinal()] / 1e9));
+            }
+        }
+
+        if(!workerSummary.isEmpty()) {
+            report.append(workerSummary);
+        }
+        return report.toString().strip();
+    }
+
+
+
+    /**
+     * Returns the number of characters processed per second over the whole run
+     * @return throughput in characters per second, or 0 if the run took no time
+     */
+    public double findCharactersPerSecond() {
+        return (totalNanos == 0) ? 0 : charactersProcessed / (totalNanos / 1e9);
+    }
+
+
+
+    /**
+     * Returns the metrics as a String, for debugging
+     * @return the metrics' fields as a String
+     */
+    @Override
+    public String toString() {
+        return "ProcessMetrics{phaseNanos=" + Arrays.toString(phaseNanos) + ", totalNanos=" + totalNanos
+                + ", charactersProcessed=" + charactersProcessed + ", bytesRead=" + bytesRead + ", bytesWritten=" + bytesWritten
+                + ", workerCount=" + workerCount + ", peakHeapBytes=" + peakHeapBytes + ", gcMillis=" + gcMillis + "}";
+    }
+}
@@ -0,0 +1,548 @@
+package com.rscode.stepperfx.threading;
+
+import com.rscode.stepperfx.integration.PunctuationSelection;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * Writes processed text to an output file. Worker threads write their pieces of the output in parallel,
+ * each at its own position in the file.<br><br>
+ *
+ * The output is written in runs. Each run is split into pieces, which are numbered in output order.
+ * A piece's position in the file is the sum of the UTF-8 lengths of all pieces before it (a prefix sum).
+ * Each piece's length is counted before anything is encoded, and passed on to the next piece right away,
+ * so pieces wait only for each other's lengths, never for each other's writes.<br><br>
+ *
+ * The output file's contents are stripped, as if {@code String.strip} was called on everything written.
+ * Leading whitespace is never written, and trailing whitespace is cut off when the writer is closed.<br><br>
+ *
+ * If a checkpoint interval is given, the writer also records checkpoints for a {@code ChunkIndex} while the pieces are written.
+ * Each piece records the checkpoints inside itself, so recording is spread over the worker threads too.<br><br>
+ *
+ * If the writer writes a {@code ChunkContainer}, each non-empty piece becomes one chunk, and the output is not stripped.
+ * Each piece computes its chunk's CRC32C checksum from the bytes it encodes, so checksums cost no extra pass.
+ * The container's header and chunk table are written by {@code finishContainer}.<br><br>
+ *
+ * The writer must be closed after the last piece is written.
+ */
+final public class ProcessOutputWriter implements Closeable {
+
+    /**
+     * Number of bytes each piece encodes at a time before writing them to the file. Must be positive
+     */
+    final public static int BUFFER_BYTES = 1 << 20;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Number of characters per key block. Checkpoints are only recorded before letters that start a block
+     */
+    private final int blockLength;
+
+    /**
+     * Channel to the output file
+     */
+    private final FileChannel channel;
+
+    /**
+     * Approximate number of bytes between checkpoints, or 0 if no checkpoints are recorded
+     */
+    private final int checkpointInterval;
+
+    /**
+     * Checkpoints recorded so far, as {byte offset, letter offset}, in no particular order
+     */
+    private final ConcurrentLinkedQueue<long[]> checkpoints;
+
+    /**
+     * Container chunks written so far, as {byte offset, byte length, letter offset, checksum}, in no particular order
+     */
+    private final ConcurrentLinkedQueue<long[]> chunks;
+
+    /**
+     * Number of bytes in the output, up to and including the last non-whitespace character written.
+     * When writing a container, includes every character written
+     */
+    private final AtomicLong contentEndByte;
+
+    /**
+     * Number of characters in the output, up to and including the last non-whitespace character written.
+     * When writing a container, includes every character written
+     */
+    private final AtomicLong contentEndChar;
+
+    /**
+     * Whether the output is written as the chunks of a {@code ChunkContainer}
+     */
+    private final boolean writingContainer;
+
+    /**
+     * End of each piece in the current run, as {byte position, character position}.
+     * Completed as soon as the piece's length is known. Null before the first run
+     */
+    private List<CompletableFuture<long[]>> pieceEnds;
+
+    /**
+     * Start of the current run's first piece, as {byte position, character position}
+     */
+    private CompletableFuture<long[]> runStart;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates a new writer that writes to {@code outputFile}, without recording checkpoints.
+     * If the file exists, its contents are erased.
+     *
+     * @param outputFile file to write to. Cannot be null
+     * @throws IOException if the file cannot be opened for writing
+     */
+    public ProcessOutputWriter(File outputFile) throws IOException {
+        this(outputFile, 0, 1, false);
+    }
+
+
+
+    /**
+     * Creates a new writer that writes to {@code outputFile}, and records a checkpoint about every {@code checkpointInterval}
+     * bytes. If the file exists, its contents are erased.
+     *
+     * @param outputFile file to write to. Cannot be null
+     * @param checkpointInterval approximate number of bytes between checkpoints, or 0 to record no checkpoints. Cannot be negative
+     * @param blockLength number of characters per key block of the operation. Must be positive
+     * @throws IOException if the file cannot be opened for writing
+     */
+    public ProcessOutputWriter(File outputFile, int checkpointInterval, int blockLength) throws IOException {
+        this(outputFile, checkpointInterval, blockLength, false);
+    }
+
+
+
+    /**
+     * Creates a new writer that writes to {@code outputFile}, either as plain text that may record checkpoints,
+     * or as a container. If the file exists, its contents are erased.
+     *
+     * @param outputFile file to write to. Cannot be null
+     * @param checkpointInterval approximate number of bytes between checkpoints, or 0 to record no checkpoints. Cannot be negative.
+     *                           Must be 0 if {@code writingContainer} is true
+     * @param blockLength number of characters per key block of the operation. Must be positive
+     * @param writingContainer true to write the output as the chunks of a {@code ChunkContainer}
+     * @throws IOException if the file cannot be opened for writing
+     */
+    public ProcessOutputWriter(File outputFile, int checkpointInterval, int blockLength, boolean writingContainer) throws IOException {
+        if(outputFile == null) throw new AssertionError("Output file cannot be null");
+        if(checkpointInterval < 0) throw new AssertionError("Checkpoint interval cannot be negative- received " + checkpointInterval);
+        if(blockLength <= 0) throw new AssertionError("Block length must be positive- received " + blockLength);
+        if(writingContainer && checkpointInterval != 0) throw new AssertionError("Containers cannot record checkpoints");
+
+        this.checkpointInterval = checkpointInterval;
+        this.blockLength = blockLength;
+        this.writingContainer = writingContainer;
+        checkpoints = new ConcurrentLinkedQueue<>();
+        chunks = new ConcurrentLinkedQueue<>();
+        channel = FileChannel.open(outputFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        //A container's chunks start after its header
+        long firstByte = writingContainer ? ChunkContainer.HEADER_BYTES : 0;
+        contentEndByte = new AtomicLong(firstByte);
+        contentEndChar = new AtomicLong(0);
+        pieceEnds = null;
+        runStart = CompletableFuture.completedFuture(new long[] {firstByte, 0});
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // HELPERS
+
+    /**
+     * Returns the number of bytes that the characters of {@code text} on the interval [{@code start}, {@code end})
+     * take up when encoded as UTF-8.<br><br>
+     *
+     * A surrogate that is not part of a pair counts as 1 byte, since the encoder replaces it with '?'.<br><br>
+     *
+     * Helper to {@code writePiece} and {@code recordCheckpoints}
+     *
+     * @param text text to measure. Cannot be null
+     * @param start index of the first character to measure. Must be on the interval [0, {@code end}]
+     * @param end index after the last character to measure. Must be on the interval [{@code start}, {@code text.length()}]
+     * @return UTF-8 length of the characters, in bytes
+     */
+    private static long countUtf8Bytes(CharSequence text, int start, int end) {
+        if(text == null) throw new AssertionError("Text cannot be null");
+        if(start < 0 || start > end || end > text.length()) {
+            throw new AssertionError("Range [" + start + ", " + end + ") must be inside the text (length " + text.length() + ")");
+        }
+
+        long bytes = 0;
+        for(int i = start; i < end; i++) {
+            char c = text.charAt(i);
+
+            if(c < 0x80) {
+                bytes += 1;
+            }
+            else if(c < 0x800) {
+                bytes += 2;
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            }
+            else if(Character.isSurrogate(c)) {
+                bytes += 1;
+            }
+            else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+
+
+    /**
+     * Writes all bytes in {@code buffer} to the output file, starting at {@code position}, then empties the buffer.
+     * If {@code checksum} is not null, it is updated with the bytes while they are still in the cache.<br><br>
+     *
+     * Helper to {@code writePiece}
+     *
+     * @param buffer buffer holding encoded text, ready to be filled again. Cannot be null
+     * @param position byte position in the file to write the buffer's contents. Cannot be negative
+     * @param checksum checksum to update with the written bytes, or null
+     * @return byte position after the written bytes
+     * @throws IOException if the output file cannot be written
+     */
+    private long drainBuffer(ByteBuffer buffer, long position, CRC32C checksum) throws IOException {
+        if(buffer == null) throw new AssertionError("Buffer cannot be null");
+        if(position < 0) throw new AssertionError("Position cannot be negative- received " + position);
+
+        buffer.flip();
+        if(checksum != null) {
+            checksum.update(buffer.duplicate());
+        }
+        while(buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+
+        return position;
+    }
+
+
+
+    /**
+     * Records the checkpoints inside a piece that starts at byte {@code startByte} and letter {@code startLetter} of the output.
+     * Only the characters of {@code text} from index {@code firstChar} onward are written.<br><br>
+     *
+     * A checkpoint is recorded at the first letter that starts a key block, at or after each multiple of
+     * {@code checkpointInterval} bytes. Letters are English ASCII letters, matching the process subtasks.<br><br>
+     *
+     * Helper to {@code writePiece}
+     *
+     * @param text text of the piece. Cannot be null
+     * @param firstChar index of the first character written. Must be on the interval [0, {@code text.length()}]
+     * @param startByte byte position of the first character written. Cannot be negative
+     * @param startLetter number of letters in the output before the piece. Cannot be negative
+     */
+    private void recordCheckpoints(String text, int firstChar, long startByte, long startLetter) {
+        if(text == null) throw new AssertionError("Text cannot be null");
+        if(firstChar < 0 || firstChar > text.length()) throw new AssertionError("First character must be on the interval [0, "
+                + text.length() + "]- received " + firstChar);
+        if(startByte < 0) throw new AssertionError("Start byte cannot be negative- received " + startByte);
+        if(startLetter < 0) throw new AssertionError("Start letter cannot be negative- received " + startLetter);
+
+        long nextCheckpoint = (startByte + checkpointInterval - 1) / checkpointInterval * checkpointInterval;
+        long position = startByte;
+        long letter = startLetter;
+
+        for(int i = firstChar; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                if(position >= nextCheckpoint && letter % blockLength == 0) {
+                    checkpoints.add(new long[] {position, letter});
+                    nextCheckpoint = (position / checkpointInterval + 1) * checkpointInterval;
+                }
+                letter++;
+                position++;
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                position += 4;
+                i++;
+            }
+            else {
+                position += countUtf8Bytes(text, i, i + 1);
+            }
+        }
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // GETTERS
+
+    /**
+     * Returns the number of bytes in the output file, after trailing whitespace is cut off.<br>
+     * Only complete once every piece has been written.
+     *
+     * @return number of bytes written
+     */
+    public long getBytesWritten() {
+        return contentEndByte.get();
+    }
+
+
+
+    /**
+     * Returns the number of characters in the output file, after trailing whitespace is cut off.<br>
+     * Only complete once every piece has been written.
+     *
+     * @return number of characters written
+     */
+    public long getCharsWritten() {
+        return contentEndChar.get();
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Starts a new run of {@code pieceCount} pieces. The run continues the output where the previous run ended.<br><br>
+     *
+     * Must be called before any of the run's pieces are written, and after every piece of the previous run is written.
+     *
+     * @param pieceCount number of pieces in the run. Must be positive
+     */
+    public void beginRun(int pieceCount) {
+        if(pieceCount <= 0) throw new AssertionError("Piece count must be positive- received " + pieceCount);
+
+        if(pieceEnds != null) {
+            runStart = pieceEnds.getLast();
+        }
+
+        pieceEnds = new ArrayList<>(pieceCount);
+        for(int p = 0; p < pieceCount; p++) {
+            pieceEnds.add(new CompletableFuture<>());
+        }
+    }
+
+
+
+    /**
+     * Cuts off the trailing whitespace, then closes the output file.
+     *
+     * @throws IOException if the file cannot be truncated or closed
+     */
+    @Override
+    public void close() throws IOException {
+        if(!channel.isOpen()) {
+            return;
+        }
+
+        try {
+            channel.truncate(contentEndByte.get());
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+
+
+    /**
+     * Returns a chunk index holding the checkpoints recorded for the output. The index describes the output file
+     * after trailing whitespace is cut off.<br><br>
+     *
+     * Must be called after every piece is written.
+     *
+     * @param blockCount number of key blocks of the operation. Must be positive
+     * @param stepperVersion Stepper version of the operation. Must be 1 or 2
+     * @return chunk index of the output
+     */
+    public ChunkIndex createChunkIndex(int blockCount, int stepperVersion) {
+        if(checkpointInterval == 0) throw new AssertionError("This writer does not record checkpoints");
+
+        long[][] sortedCheckpoints = checkpoints.toArray(new long[0][]);
+        Arrays.sort(sortedCheckpoints, Comparator.comparingLong(checkpoint -> checkpoint[0]));
+
+        long[] byteOffsets = new long[sortedCheckpoints.length];
+        long[] letterOffsets = new long[sortedCheckpoints.length];
+        for(int c = 0; c < sortedCheckpoints.length; c++) {
+            byteOffsets[c] = sortedCheckpoints[c][0];
+            letterOffsets[c] = sortedCheckpoints[c][1];
+        }
+
+        return new ChunkIndex(blockCount, blockLength, stepperVersion, checkpointInterval, contentEndByte.get(),
+                byteOffsets, letterOffsets);
+    }
+
+
+
+    /**
+     * Writes the container's header, chunk table, and footer, which describe the chunks written so far.<br><br>
+     *
+     * Must be called after every piece is written, and before the writer is closed. A container that is closed without
+     * being finished has no footer, so it cannot be read.
+     *
+     * @param stepperVersion Stepper version of the operation. Must be 1 or 2
+     * @param blockCount number of key blocks of the operation. Must be positive
+     * @param punctSelection punctuation preferences of the operation. Cannot be null
+     * @throws IOException if the file cannot be written
+     */
+    public void finishContainer(int stepperVersion, int blockCount, PunctuationSelection punctSelection) throws IOException {
+        if(!writingContainer) throw new AssertionError("This writer does not write a container");
+
+        long[][] sortedChunks = chunks.toArray(new long[0][]);
+        Arrays.sort(sortedChunks, Comparator.comparingLong(chunk -> chunk[0]));
+
+        long[] chunkOffsets = new long[sortedChunks.length];
+        long[] chunkLengths = new long[sortedChunks.length];
+        long[] letterOffsets = new long[sortedChunks.length];
+        int[] checksums = new int[sortedChunks.length];
+        for(int c = 0; c < sortedChunks.length; c++) {
+            chunkOffsets[c] = sortedChunks[c][0];
+            chunkLengths[c] = sortedChunks[c][1];
+            letterOffsets[c] = sortedChunks[c][2];
+            checksums[c] = (int) sortedChunks[c][3];
+        }
+
+        ChunkContainer container = new ChunkContainer(stepperVersion, blockCount, blockLength, punctSelection,
+                chunkOffsets, chunkLengths, letterOffsets, checksums);
+        contentEndByte.set(container.saveToChannel(channel, contentEndByte.get()));
+    }
+
+
+
+    /**
+     * Writes {@code text} as piece number {@code index} of the current run.
+     * Called by worker threads, which may write their pieces in any order and at the same time.<br><br>
+     *
+     * Waits until the length of every earlier piece is known. The piece is then encoded and written
+     * in slices of {@code BUFFER_BYTES} bytes, without waiting for other pieces to be written.<br><br>
+     *
+     * If an earlier piece fails, this piece fails too, so no worker waits forever.<br><br>
+     *
+     * If the writer records checkpoints, the piece's checkpoints are recorded once its position is known.
+     * If the writer writes a container, the piece is recorded as a chunk once it is written.
+     *
+     * @param index position of the piece in the current run. Must be on the interval [0, piece count)
+     * @param text text to write. Cannot be null
+     * @param startLetter number of letters in the whole output before this piece. Cannot be negative.
+     *                    Only used when recording checkpoints or writing a container
+     * @throws IOException if the output file cannot be written, or an earlier piece failed
+     * @throws InterruptedException if the worker is interrupted (i.e. cancelled) while waiting for earlier pieces
+     */
+    public void writePiece(int index, String text, long startLetter) throws IOException, InterruptedException {
+        if(pieceEnds == null) throw new AssertionError("A run must be started before pieces are written");
+        if(index < 0 || index >= pieceEnds.size()) throw new AssertionError("Index must be on the interval [0, "
+                + pieceEnds.size() + ")- received " + index);
+        if(text == null) throw new AssertionError("Text cannot be null");
+        if(startLetter < 0) throw new AssertionError("Start letter cannot be negative- received " + startLetter);
+
+        CompletableFuture<long[]> previousEnd = (index == 0) ? runStart : pieceEnds.get(index - 1);
+        CompletableFuture<long[]> thisEnd = pieceEnds.get(index);
+
+        try {
+            //Measure the piece before waiting, so the wait is as short as possible
+            int leadingEnd = 0;
+            while(leadingEnd < text.length() && Character.isWhitespace(text.charAt(leadingEnd))) {
+                leadingEnd++;
+            }
+            int trailingStart = text.length();
+            while(trailingStart > leadingEnd && Character.isWhitespace(text.charAt(trailingStart - 1))) {
+                trailingStart--;
+            }
+            long leadingBytes = countUtf8Bytes(text, 0, leadingEnd);
+            long contentBytes = countUtf8Bytes(text, leadingEnd, trailingStart);
+            long trailingBytes = countUtf8Bytes(text, trailingStart, text.length());
+
+            //Wait for the earlier pieces' lengths
+            long[] start;
+            try {
+                start = previousEnd.get();
+            }
+            catch(ExecutionException e) {
+                throw new IOException("An earlier piece of the output could not be written", e.getCause());
+            }
+
+            //Nothing written yet: skip the leading whitespace. A container's output is not stripped
+            boolean skippingLeading = !writingContainer && start[0] == 0;
+            int firstChar = skippingLeading ? leadingEnd : 0;
+            long firstByte = skippingLeading ? leadingBytes : 0;
+
+            //Pass this piece's end to the next piece
+            long pieceBytes = leadingBytes + contentBytes + trailingBytes - firstByte;
+            thisEnd.complete(new long[] {start[0] + pieceBytes, start[1] + text.length() - firstChar});
+
+            //Track the end of the non-whitespace output, or of all output for a container
+            if(writingContainer) {
+                contentEndByte.accumulateAndGet(start[0] + pieceBytes, Math::max);
+                contentEndChar.accumulateAndGet(start[1] + text.length(), Math::max);
+            }
+            else if(trailingStart > leadingEnd) {
+                long contentEnd = start[0] + pieceBytes - trailingBytes;
+                long contentEndCharIndex = start[1] + trailingStart - firstChar;
+                contentEndByte.accumulateAndGet(contentEnd, Math::max);
+                contentEndChar.accumulateAndGet(contentEndCharIndex, Math::max);
+            }
+
+            if(checkpointInterval > 0) {
+                recordCheckpoints(text, firstChar, start[0], startLetter);
+            }
+
+            //Encode and write the piece, one slice at a time
+            CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_BYTES, Math.max(pieceBytes, 16)));
+            CharBuffer chars = CharBuffer.wrap(text, firstChar, text.length());
+            long position = start[0];
+            CRC32C checksum = writingContainer ? new CRC32C() : null;
+
+            CoderResult result;
+            do {
+                result = encoder.encode(chars, buffer, true);
+                position = drainBuffer(buffer, position, checksum);
+            } while(result.isOverflow());
+            do {
+                result = encoder.flush(buffer);
+                position = drainBuffer(buffer, position, checksum);
+            } while(result.isOverflow());
+
+            if(position != start[0] + pieceBytes) {
+                throw new AssertionError("Piece " + index + " wrote " + (position - start[0]) + " bytes, but "
+                        + pieceBytes + " bytes were expected");
+            }
+
+            //Each non-empty piece of a container is one chunk
+            if(writingContainer && pieceBytes > 0) {
+                chunks.add(new long[] {start[0], pieceBytes, startLetter, (int) checksum.getValue()});
+            }
+        }
+        catch(IOException | InterruptedException | RuntimeException | Error e) {
+            thisEnd.completeExceptionally(e);
+            throw e;
+        }
+    }
+}
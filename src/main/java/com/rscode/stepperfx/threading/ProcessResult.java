@@ -0,0 +1,217 @@
+package com.rscode.stepperfx.threading;
+
+/**
+ * Result of one {@code ProcessTask} run. Immutable once created, except for its output being materialized.<br><br>
+ *
+ * A result is one of three kinds:<br>
+ * - Succeeded: the output and formatted key are non-null, and there is no error.<br>
+ * - Failed: the error type is non-null, and there is no output or key. The error message may be null.<br>
+ * - Cancelled: nothing is set except the metrics.<br><br>
+ *
+ * A succeeded result's output may be a view into the buffer that the workers' outputs were joined in, so a large output
+ * is never copied just to be returned. The output is only turned into a String by {@code materializeOutput}, once,
+ * the first time a String is needed.
+ */
+final public class ProcessResult {
+
+    /**
+     * Type of the error that stopped the run, from {@code getClass().toString()}, or null if there was no error
+     */
+    private final String errorType;
+
+    /**
+     * Message of the error that stopped the run, or null if there was no error or the error has no message
+     */
+    private final String errorMessage;
+
+    /**
+     * Formatted key used to process the output, or null if the run did not succeed
+     */
+    private final String key;
+
+    /**
+     * Measurements of the run. Cannot be null
+     */
+    private final ProcessMetrics metrics;
+
+    /**
+     * Output of the run, or null if the run did not succeed. Must not change after the result is created
+     */
+    private final CharSequence output;
+
+    /**
+     * Output of the run as a String, or null if it was not created yet
+     */
+    private volatile String outputString;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates a new result. Use {@code succeeded}, {@code failed}, or {@code cancelled} instead.
+     *
+     * @param output output of the run, or null
+     * @param key formatted key, or null
+     * @param errorType type of the error, or null
+     * @param errorMessage message of the error, or null
+     * @param metrics measurements of the run. Cannot be null
+     */
+    private ProcessResult(CharSequence output, String key, String errorType, String errorMessage, ProcessMetrics metrics) {
+        if(metrics == null) throw new AssertionError("Metrics cannot be null");
+
+        this.output = output;
+        this.key = key;
+        this.errorType = errorType;
+        this.errorMessage = errorMessage;
+        this.metrics = metrics;
+        this.outputString = (output instanceof String) ? (String) output : null;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // FACTORIES
+
+    /**
+     * Returns the result of a cancelled run
+     * @param metrics measurements of the run until it was cancelled. Cannot be null
+     * @return a cancelled result
+     */
+    public static ProcessResult cancelled(ProcessMetrics metrics) {
+        return new ProcessResult(null, null, null, null, metrics);
+    }
+
+
+
+    /**
+     * Returns the result of a run that was stopped by an error
+     *
+     * @param errorType type of the error, from {@code getClass().toString()}. Cannot be null
+     * @param errorMessage message of the error, or null if the error has no message
+     * @param metrics measurements of the run until it stopped. Cannot be null
+     * @return a failed result
+     */
+    public static ProcessResult failed(String errorType, String errorMessage, ProcessMetrics metrics) {
+        if(errorType == null) throw new AssertionError("Error type cannot be null");
+        return new ProcessResult(null, null, errorType, errorMessage, metrics);
+    }
+
+
+
+    /**
+     * Returns the result of a run that succeeded. {@code output} is not copied, so it must not change afterward.
+     *
+     * @param output output of the run. Cannot be null
+     * @param key formatted key used to process the output. Cannot be null
+     * @param metrics measurements of the run. Cannot be null
+     * @return a succeeded result
+     */
+    public static ProcessResult succeeded(CharSequence output, String key, ProcessMetrics metrics) {
+        if(output == null) throw new AssertionError("Output cannot be null");
+        if(key == null) throw new AssertionError("Key cannot be null");
+        return new ProcessResult(output, key, null, null, metrics);
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // GETTERS
+
+    /**
+     * Returns the message of the error that stopped the run
+     * @return error message, or null if the run did not fail or the error has no message
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+
+
+    /**
+     * Returns the type of the error that stopped the run
+     * @return error type, from {@code getClass().toString()}, or null if the run did not fail
+     */
+    public String getErrorType() {
+        return errorType;
+    }
+
+
+
+    /**
+     * Returns the formatted key used to process the output
+     * @return the key, or null if the run did not succeed
+     */
+    public String getKey() {
+        return key;
+    }
+
+
+
+    /**
+     * Returns the measurements of the run
+     * @return the run's metrics
+     */
+    public ProcessMetrics getMetrics() {
+        return metrics;
+    }
+
+
+
+    /**
+     * Returns the output of the run, without copying it. The output may be a view, so it must not be changed
+     * @return the output, or null if the run did not succeed
+     */
+    public CharSequence getOutput() {
+        return output;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Returns whether the run was cancelled
+     * @return true if the result has no output and no error
+     */
+    public boolean isCancelled() {
+        return output == null && errorType == null;
+    }
+
+
+
+    /**
+     * Returns whether the run was stopped by an error
+     * @return true if the result has an error
+     */
+    public boolean isFailed() {
+        return errorType != null;
+    }
+
+
+
+    /**
+     * Returns whether the run succeeded
+     * @return true if the result has an output and key
+     */
+    public boolean isSucceeded() {
+        return output != null;
+    }
+
+
+
+    /**
+     * Returns the output of the run as a String. The String is created the first time it is needed, then reused.
+     * @return the output as a String, or null if the run did not succeed
+     */
+    public String materializeOutput() {
+        if(output == null) {
+            return null;
+        }
+
+        String materialized = outputString;
+        if(materialized == null) {
+            materialized = output.toString();
+            outputString = materialized;
+        }
+        return materialized;
+    }
+}
@@ -1,11 +1,18 @@
 package com.rscode.stepperfx.threading;
 
+import com.rscode.stepperfx.integration.InputSelection;
 import com.rscode.stepperfx.integration.OperationSelection;
 import com.rscode.stepperfx.integration.PunctuationSelection;
 import javafx.concurrent.Service;
 import javafx.concurrent.Task;
 import com.rscode.stepperfx.integration.StepperFields;
 
+import java.util.ArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.Supplier;
+
 import static com.rscode.stepperfx.integration.StepperFields.MAX_BLOCK_COUNT;
 import static com.rscode.stepperfx.integration.StepperFields.MAX_BLOCK_LENGTH;
 
@@ -14,15 +21,31 @@ import static com.rscode.stepperfx.integration.StepperFields.MAX_BLOCK_LENGTH;
  *
  * The output of the Service is retrieved using a ValuePropertyListener set on it.<br><br>
  *
- * The output is an array of 4 Strings: {result, formatted key, error type, error messages}.<br>
- * If a user-produced error stops processing, the result and key will be null, with a non-null error type and message.<br>
- * If the process is cancelled, all output indices are null.<br>
- * In the case of normal execution, the result and key are the only non-null indexes of the output.<br><br>
+ * The output is a {@code ProcessResult}.<br>
+ * If a user-produced error stops processing, the result holds the error's type and message.<br>
+ * If the process is cancelled, the result holds neither an output nor an error.<br>
+ * In the case of normal execution, the result holds the output and formatted key.<br>
+ * Every result holds the run's {@code ProcessMetrics}.<br><br>
+ *
+ * Before the output is ready, its first pieces can be received by adding a partial result subscriber.
+ * Each run publishes the pieces of a result it returns, in order, to a new subscriber from each added factory.<br><br>
+ *
+ * Each run reserves its threads in the app's {@code JobQueue} while it runs, so queued jobs and the run share one
+ * thread budget. The reservation ends once the run succeeds, fails, or is cancelled.<br><br>
  *
  * IMPORTANT: The service must be re-initialized before each run. The service's fields are set to {@code null}
  * during each run. Initialize using the service's {@code initializeService} method.
  */
-final public class ProcessService extends Service<String[]> {
+final public class ProcessService extends Service<ProcessResult> {
+
+    /**
+     * Maximum number of published pieces of a result that each subscriber can fall behind by.
+     * Once a subscriber is this far behind, the run waits for it
+     */
+    final public static int PARTIAL_RESULT_BUFFER = 16;
+
+
+    // //////////////////////////////////////////////////////////////////////////////////////////////////////////
 
     /**
      * Number of blocks to use in processes
@@ -45,15 +68,35 @@ final public class ProcessService extends Service<String[]> {
     private String key;
 
     /**
-     * Whether the service's task will load its input from a file
+     * Where the service's task will load its input from (typed text, a file, or a streamed file)
      */
-    private boolean loadingFromFile;
+    private InputSelection inputSelection;
+
+    /**
+     * Queue whose thread budget each run's threads are reserved in. Cannot be null
+     */
+    private final JobQueue jobQueue;
+
+    /**
+     * Task created for the service's last run, or null before the first run
+     */
+    private ProcessTask lastTask;
 
     /**
      * Number of threads to use during processing
      */
     private int nThreads;
 
+    /**
+     * Factories for the subscribers that receive each run's partial results. Each run subscribes a new subscriber from each factory
+     */
+    private final ArrayList<Supplier<? extends Flow.Subscriber<? super String>>> partialResultSubscriberFactories;
+
+    /**
+     * Filepath the service's task writes its output to. If empty, uses the default output file. If null, the output is not written
+     */
+    private String outputFilepath;
+
     /**
      * Which operation the Service carries out. Example: Stepper 2, encryption.
      */
@@ -64,40 +107,137 @@ final public class ProcessService extends Service<String[]> {
      */
     private PunctuationSelection punctSelection;
 
+    /**
+     * Whether the service's task writes a chunk index next to an encrypted output file
+     */
+    private boolean writingChunkIndex;
+
     // //////////////////////////////////////////////////////////////////////////////////////////////////////////
 
 
     //CONSTRUCTOR
     /**
      * Creates a new ProcessService with uninitialized fields
+     * @param jobQueue queue whose thread budget each run's threads are reserved in. Cannot be null
      */
-    public ProcessService() {
+    public ProcessService(JobQueue jobQueue) {
         super();
-        //An explicitly defined constructor is required by the rules
+        if(jobQueue == null) throw new AssertionError("Job queue cannot be null");
+        this.jobQueue = jobQueue;
+        partialResultSubscriberFactories = new ArrayList<>();
     }
 
     // //////////////////////////////////////////////////////////////////////////////////////////////////////////
     //CREATE TASK
 
     /**
-     * Creates and runs a ProcessTask. The Service's fields are set to null to save memory.
+     * Creates and runs a ProcessTask. The Service's fields are set to null to save memory.<br>
+     * If any partial result subscribers were added, the Task publishes its partial results to a new subscriber from each factory.<br>
+     * The Task's threads are reserved in the job queue's budget until the run ends. A run counts at least 1 thread.
      */
     @Override
-    public Task<String[]> createTask() {
+    public Task<ProcessResult> createTask() {
+        SubmissionPublisher<String> partialResultPublisher = null;
+        if(!partialResultSubscriberFactories.isEmpty()) {
+            partialResultPublisher = new SubmissionPublisher<>(ForkJoinPool.commonPool(), PARTIAL_RESULT_BUFFER);
+            for(Supplier<? extends Flow.Subscriber<? super String>> factory : partialResultSubscriberFactories) {
+                partialResultPublisher.subscribe(factory.get());
+            }
+        }
+
         ProcessTask task = new ProcessTask(input, key, operationSelection, punctSelection,
                 blocks, charsPerBlock,
-                loadingFromFile, nThreads);
+                inputSelection, outputFilepath, writingChunkIndex, nThreads, partialResultPublisher);
 
         input = null;
         key = null;
+        lastTask = task;
+        jobQueue.setReservedOutputFile(outputFilepath);
+        jobQueue.setReservedThreads(Math.max(nThreads, 1));
 
         return task;
     }
 
 
+    // //////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //STATE CHANGES
+
+    /**
+     * Ends the cancelled run's reservations in the job queue, so queued jobs can use its threads and output file
+     */
+    @Override
+    protected void cancelled() {
+        super.cancelled();
+        jobQueue.setReservedOutputFile(null);
+        jobQueue.setReservedThreads(0);
+    }
+
+
+
+    /**
+     * Ends the failed run's reservations in the job queue, so queued jobs can use its threads and output file
+     */
+    @Override
+    protected void failed() {
+        super.failed();
+        jobQueue.setReservedOutputFile(null);
+        jobQueue.setReservedThreads(0);
+    }
+
+
+
+    /**
+     * Ends the finished run's reservations in the job queue, so queued jobs can use its threads and output file
+     */
+    @Override
+    protected void succeeded() {
+        super.succeeded();
+        jobQueue.setReservedOutputFile(null);
+        jobQueue.setReservedThreads(0);
+    }
+
+
     // //////////////////////////////////////////////////////////////////////////////////////////////////////////
     //METHODS
 
+    /**
+     * Adds a factory for subscribers to the partial results of each later run.<br><br>
+     *
+     * Each run that returns its result publishes the result's pieces, in order, to a new subscriber from the factory.
+     * The pieces are received on a background thread, and are not stripped. A run that fails or is cancelled may end
+     * before publishing every piece, and one that writes its result to a file publishes nothing.
+     * Either way, the subscriber is completed when the run ends.<br>
+     * The factory is called on the FX application thread, as each run starts.
+     *
+     * @param subscriberFactory creates a subscriber for each run. Cannot be null, and cannot return null
+     */
+    public void addPartialResultSubscriber(Supplier<? extends Flow.Subscriber<? super String>> subscriberFactory) {
+        if(subscriberFactory == null) throw new AssertionError("Subscriber factory cannot be null");
+        partialResultSubscriberFactories.add(subscriberFactory);
+    }
+
+
+
+    /**
+     * Returns the reader for the other pages of the file browsed by the service's last run.
+     * @return the last task's page reader, or null if the last run did not browse a file
+     */
+    public ResultPageReader fetchPageReader() {
+        return (lastTask == null) ? null : lastTask.getPageReader();
+    }
+
+
+
+    /**
+     * Returns the progress of each worker in the current or last stage of the service's last run.
+     * @return the last task's worker progress, or null if no stage with workers has started
+     */
+    public WorkerProgress fetchWorkerProgress() {
+        return (lastTask == null) ? null : lastTask.getWorkerProgress();
+    }
+
+
+
     /**
      * Sets all inputs for processing.<br>
      * The inputs to this method will be passed to the service's Task to execute.
@@ -108,15 +248,22 @@ final public class ProcessService extends Service<String[]> {
      * @param punctSelection punctuation preferences, as a PunctuationSelection object
      * @param blockCount number of blocks to use. Must be on the interval [1, {@code StepperFields.MAX_BLOCK_COUNT}]
      * @param blockLength number of characters in each block to use. Must be on the interval [1, {@code StepperFields.MAX_BLOCK_LENGTH}]
-     * @param loadingFromFile whether to load input from a file
+     * @param inputSelection where to load input from, as an InputSelection object. Cannot be null
+     * @param outputFilepath filepath to write the output to, or the empty string to use {@code StepperFields.DEFAULT_OUTPUT_FILENAME}.
+     *                       If null, the output is displayed instead. Cannot be null if {@code inputSelection} is {@code FILE_STREAMING}
+     * @param writingChunkIndex whether to write a chunk index next to an encrypted output file.
+     *                          Ignored if the output is not written to a file, or the operation is decryption
      * @param nThreads number of threads to use during processing. Must be on the interval [0, {@code StepperFields.MAX_THREADS}]
      */
     public void initializeService(String input, String key, OperationSelection operationSelection, PunctuationSelection punctSelection,
                                   int blockCount, int blockLength,
-                                  boolean loadingFromFile, int nThreads) {
+                                  InputSelection inputSelection, String outputFilepath, boolean writingChunkIndex, int nThreads) {
 
         if(input == null) throw new AssertionError("Input cannot be null");
         if(key == null) throw new AssertionError("Key cannot be null");
+        if(inputSelection == null) throw new AssertionError("Input selection cannot be null");
+        if(inputSelection == InputSelection.FILE_STREAMING && outputFilepath == null)
+            throw new AssertionError("Streamed file inputs must have an output filepath");
         if(blockCount<=0 || blockCount>MAX_BLOCK_COUNT) throw new AssertionError("Block count must be on the interval [1, " + MAX_BLOCK_COUNT + "]- instead received " + blockCount);
         if(blockLength<=0 || blockLength>MAX_BLOCK_LENGTH) throw new AssertionError("Block length must be on the interval [1, " + MAX_BLOCK_LENGTH + "]- instead received " + blockLength);
         if(nThreads<0 || nThreads>StepperFields.MAX_THREADS) throw new AssertionError("Number of threads must be on the interval [0, " + StepperFields.MAX_THREADS + "]- instead received " + nThreads);
@@ -127,7 +274,9 @@ final public class ProcessService extends Service<String[]> {
         this.punctSelection = punctSelection;
         this.blocks = blockCount;
         this.charsPerBlock = blockLength;
-        this.loadingFromFile = loadingFromFile;
+        this.inputSelection = inputSelection;
+        this.outputFilepath = outputFilepath;
+        this.writingChunkIndex = writingChunkIndex;
         this.nThreads = nThreads;
     }
 
@@ -1,19 +1,89 @@
 package com.rscode.stepperfx.threading;
 
 import javafx.concurrent.Task;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.rscode.stepperfx.integration.StepperFields.PROGRESS_REPORT_CHARACTERS;
 
 /**
- * Worker thread that removes diacritics and non-ASCII numbers from its given input
+ * Worker thread that removes diacritics and non-ASCII numbers from its given input.<br><br>
+ *
+ * The input is either a String, or a region of a memory-mapped UTF-8 file. A file region is decoded by the worker itself,
+ * and the worker counts the letters in its output, so the whole file is scanned in parallel.<br><br>
+ *
+ * If the region holds chunks of a {@code ChunkContainer}, the worker checks each chunk's checksum before decoding it,
+ * so the integrity check runs in parallel with the rest of the work.<br><br>
+ *
+ * If given a progress counter, the worker adds its processed characters to it in batches of {@code PROGRESS_REPORT_CHARACTERS}.
+ * Once the worker finishes, the counter holds the length of its input: characters for a String, or bytes for a file region.
+ * The same batches are added to the worker's entry in a {@code WorkerProgress}, if given one.
  */
 final public class ProcessSubtaskDiacritics extends Task<String> {
 
     /**
-     * The given input for this worker to process
+     * Container whose chunks make up {@code inputRegion}, or null if the region is not part of a container
+     */
+    private final ChunkContainer container;
+
+    /**
+     * Number of the first container chunk in {@code inputRegion}. Ignored if {@code container} is null
+     */
+    private final int firstChunk;
+
+    /**
+     * Region of a UTF-8 input file for this worker to decode and process. Null if the input is {@code textPiece}
+     */
+    private final ByteBuffer inputRegion;
+
+    /**
+     * Number of lowercase English ASCII letters in the output. Only set for file regions, once the subtask finishes
+     */
+    private int letterCount;
+
+    /**
+     * Number of the container chunk after the last chunk in {@code inputRegion}. Ignored if {@code container} is null
+     */
+    private final int lastChunkEnd;
+
+    /**
+     * Shared counter that this worker adds its processed characters to, or null if progress is not counted
+     */
+    private LongAdder progressCounter;
+
+    /**
+     * Number of processed characters that were added to {@code progressCounter}
+     */
+    private long reportedCharacters;
+
+    /**
+     * The given input for this worker to process. Null if the input is {@code inputRegion}
      */
     private final String textPiece;
 
+    /**
+     * Generation of this worker when it was given its worker progress
+     */
+    private int workerGeneration;
+
+    /**
+     * Number of this worker in {@code workerProgress}
+     */
+    private int workerNumber;
+
+    /**
+     * Progress of each worker in this worker's stage, or null if per-worker progress is not tracked
+     */
+    private WorkerProgress workerProgress;
+
 
     // ///////////////////////////////////////////////////////////////////////////////////////////////////////////
     // CONSTRUCTORS
@@ -25,6 +95,61 @@ final public class ProcessSubtaskDiacritics extends Task<String> {
     public ProcessSubtaskDiacritics(String textPiece) {
         if(textPiece == null)  throw new AssertionError("Input piece cannot be null");
         this.textPiece = textPiece;
+        this.inputRegion = null;
+        this.letterCount = -1;
+        this.container = null;
+        this.firstChunk = 0;
+        this.lastChunkEnd = 0;
+        this.progressCounter = null;
+        this.reportedCharacters = 0;
+        this.workerProgress = null;
+        this.workerNumber = 0;
+        this.workerGeneration = 0;
+    }
+
+
+
+    /**
+     * Creates a new subtask and assigns it to decode {@code inputRegion}, then remove diacritics from it.<br>
+     * Line breaks ("\r\n", "\r", and other line separators) are converted to "\n".
+     * Once finished, the subtask's letter count is available through {@code getLetterCount}.
+     *
+     * @param inputRegion region of a UTF-8 file to process. Cannot be null. Must start and end on character boundaries,
+     *                    and cannot split a "\r\n" line break
+     */
+    public ProcessSubtaskDiacritics(ByteBuffer inputRegion) {
+        this(inputRegion, null, 0, 0);
+    }
+
+
+
+    /**
+     * Creates a new subtask and assigns it to check the chunks of {@code container} on the interval [{@code firstChunk},
+     * {@code lastChunkEnd}), which make up {@code inputRegion}. The subtask then decodes the region and removes diacritics,
+     * like a subtask for a plain file region.<br>
+     * If a chunk's checksum does not match, the subtask fails with an IOException.
+     *
+     * @param inputRegion region of a container file holding the chunks, back to back. Cannot be null
+     * @param container container the chunks belong to, or null if the region is not part of a container
+     * @param firstChunk number of the first chunk in the region. Must be on the interval [0, {@code lastChunkEnd}]
+     * @param lastChunkEnd number of the chunk after the last chunk in the region. Must be at most the container's chunk count
+     */
+    public ProcessSubtaskDiacritics(ByteBuffer inputRegion, ChunkContainer container, int firstChunk, int lastChunkEnd) {
+        if(inputRegion == null) throw new AssertionError("Input region cannot be null");
+        if(container != null && (firstChunk < 0 || firstChunk > lastChunkEnd || lastChunkEnd > container.getChunkCount()))
+            throw new AssertionError("Chunks [" + firstChunk + ", " + lastChunkEnd + ") must be inside the container (chunk count "
+                    + container.getChunkCount() + ")");
+        this.inputRegion = inputRegion;
+        this.textPiece = null;
+        this.letterCount = -1;
+        this.container = container;
+        this.firstChunk = firstChunk;
+        this.lastChunkEnd = lastChunkEnd;
+        this.progressCounter = null;
+        this.reportedCharacters = 0;
+        this.workerProgress = null;
+        this.workerNumber = 0;
+        this.workerGeneration = 0;
     }
 
 
@@ -34,6 +159,16 @@ final public class ProcessSubtaskDiacritics extends Task<String> {
      */
     public ProcessSubtaskDiacritics() {
         textPiece = null;
+        inputRegion = null;
+        letterCount = -1;
+        container = null;
+        firstChunk = -1;
+        lastChunkEnd = -1;
+        progressCounter = null;
+        reportedCharacters = 0;
+        workerProgress = null;
+        workerNumber = 0;
+        workerGeneration = 0;
      }
 
 
@@ -43,18 +178,147 @@ final public class ProcessSubtaskDiacritics extends Task<String> {
     /**
      * Performs this task's processing and returns the result
      * @return result of processing
+     * @throws CharacterCodingException if the input region cannot be decoded (should not happen, since
+     * malformed bytes are replaced)
+     * @throws IOException if a container chunk in the input region is corrupted
      */
     @Override
-    protected String call() {
+    protected String call() throws IOException {
         //Constructor check
-        if(textPiece == null) throw new AssertionError("PROCESS SUBTASK DIACRITICS- TESTING CONSTRUCTOR USED FOR OPERATIONS");
-        return removeDiacritics(textPiece);
+        if(textPiece == null && inputRegion == null) {
+            throw new AssertionError("PROCESS SUBTASK DIACRITICS- TESTING CONSTRUCTOR USED FOR OPERATIONS");
+        }
+        if(workerProgress != null) {
+            workerProgress.markStarted(workerNumber, workerGeneration);
+        }
+
+        if(textPiece != null) {
+            String output = removeDiacritics(textPiece);
+            finishProgress(textPiece.length());
+            return output;
+        }
+
+        //Container region: check every chunk first
+        if(container != null) {
+            verifyChunks();
+        }
+
+        //File region: decode, then count the letters while the output is fresh in the cache
+        String output = removeDiacritics(decodeRegion(inputRegion));
+        int letters = 0;
+        for(int i = 0; i < output.length(); i++) {
+            if(output.charAt(i) >= 97 && output.charAt(i) <= 122) {
+                letters++;
+            }
+        }
+        letterCount = letters;
+
+        //A region's length is counted in bytes, so its decoded characters only approximate it until now
+        finishProgress(inputRegion.remaining());
+        return output;
+    }
+
+
+    // ///////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // GETTERS, SETTERS
+
+    /**
+     * Returns the number of lowercase English ASCII letters in the output of a file region subtask.
+     * Only valid after the subtask finishes.
+     *
+     * @return number of letters in the output, or -1 if the subtask's input is not a file region, or it is not finished
+     */
+    public int getLetterCount() {
+        return letterCount;
+    }
+
+
+
+    /**
+     * Sets the shared counter that this worker adds its processed characters to. Must be called before the worker starts.
+     * @param newProgressCounter counter to add to, or null to not count progress
+     */
+    public void setProgressCounter(LongAdder newProgressCounter) {
+        progressCounter = newProgressCounter;
+    }
+
+
+
+    /**
+     * Sets the per-worker progress that this worker reports to, as worker {@code worker}. Must be called before the worker starts.
+     *
+     * @param newWorkerProgress progress of each worker in this worker's stage, or null to not track it
+     * @param worker this worker's number. Must be on the interval [0, {@code newWorkerProgress.getWorkerCount()})
+     */
+    public void setWorkerProgress(WorkerProgress newWorkerProgress, int worker) {
+        workerProgress = newWorkerProgress;
+        workerNumber = worker;
+        workerGeneration = (newWorkerProgress == null) ? 0 : newWorkerProgress.getGeneration(worker);
     }
 
 
     // ///////////////////////////////////////////////////////////////////////////////////////////////////////////
     // METHODS
 
+    /**
+     * Returns the text in {@code region}, decoded as UTF-8, with every line break converted to "\n".<br><br>
+     *
+     * Line breaks are "\r\n", "\r", "\n", "\u0085", "\u2028", and "\u2029", matching {@code Scanner.nextLine}.
+     * Malformed bytes are replaced.
+     *
+     * @param region region of a UTF-8 file. Cannot be null
+     * @return decoded text of the region
+     * @throws CharacterCodingException if the region cannot be decoded
+     */
+    private String decodeRegion(ByteBuffer region) throws CharacterCodingException {
+        if(region == null) throw new AssertionError("Region cannot be null");
+
+        CharBuffer decoded = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .decode(region.duplicate());
+
+        StringBuilder output = new StringBuilder(decoded.remaining());
+        boolean previousCharWasReturn = false;
+        while(decoded.hasRemaining()) {
+            char currentChar = decoded.get();
+
+            if(currentChar == '\r' || currentChar == '\u0085' || currentChar == '\u2028' || currentChar == '\u2029') {
+                output.append('\n');
+            }
+            else if(!(currentChar == '\n' && previousCharWasReturn)) {
+                output.append(currentChar);
+            }
+
+            previousCharWasReturn = (currentChar == '\r');
+        }
+
+        return output.toString();
+    }
+
+
+
+    /**
+     * Reports the rest of the worker's input as processed, then marks the worker as finished.
+     * Does nothing if the worker was cancelled.<br><br>
+     *
+     * Helper to {@code call}
+     *
+     * @param inputLength length of the worker's input. Cannot be negative
+     */
+    private void finishProgress(long inputLength) {
+        if(isCancelled()) {
+            return;
+        }
+
+        reportProgress(inputLength);
+        if(workerProgress != null) {
+            workerProgress.finishPart(workerNumber, workerGeneration);
+        }
+    }
+
+
+
     /**
      * Returns a lowercased version of the input without accent marks or letter variants.
      *
@@ -104,6 +368,11 @@ final public class ProcessSubtaskDiacritics extends Task<String> {
             if(isCancelled()) {
                 return "";
             }
+
+            //count progress in batches, so the shared counter is not touched for each character
+            if(((i + 1) & (PROGRESS_REPORT_CHARACTERS - 1)) == 0) {
+                reportProgress(reportedCharacters + PROGRESS_REPORT_CHARACTERS);
+            }
         }
 
         return output.toString();
@@ -120,4 +389,48 @@ final public class ProcessSubtaskDiacritics extends Task<String> {
     public String removeDiacritics_Testing(String input) {
         return removeDiacritics(input);
     }
+
+
+
+    /**
+     * Adds the characters processed since the last report to the progress counter and the worker progress,
+     * so that they hold {@code processedCharacters} of this worker's characters.
+     *
+     * @param processedCharacters number of this worker's characters processed so far. Cannot be negative
+     */
+    private void reportProgress(long processedCharacters) {
+        long characters = processedCharacters - reportedCharacters;
+        boolean counted = (workerProgress == null) || workerProgress.addProcessed(workerNumber, workerGeneration, characters);
+        if(counted && progressCounter != null) {
+            progressCounter.add(characters);
+        }
+        reportedCharacters = processedCharacters;
+    }
+
+
+
+    /**
+     * Checks the CRC32C checksum of every container chunk in the input region.<br><br>
+     *
+     * Helper to {@code call}
+     *
+     * @throws IOException if a chunk's checksum does not match the container's chunk table
+     */
+    private void verifyChunks() throws IOException {
+        if(container == null || inputRegion == null) throw new AssertionError("The input region must hold container chunks");
+
+        long regionStart = (firstChunk < lastChunkEnd) ? container.getChunkOffset(firstChunk) : 0;
+        for(int c = firstChunk; c < lastChunkEnd; c++) {
+            int chunkStart = (int) (container.getChunkOffset(c) - regionStart);
+            ByteBuffer chunk = inputRegion.slice(chunkStart, (int) container.getChunkLength(c));
+
+            if(ChunkContainer.computeChecksum(chunk) != container.getChecksum(c)) {
+                throw new IOException("Chunk " + c + " of the container is corrupted (its checksum does not match)");
+            }
+
+            if(isCancelled()) {
+                return;
+            }
+        }
+    }
 }
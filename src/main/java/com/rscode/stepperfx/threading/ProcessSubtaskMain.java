@@ -3,14 +3,31 @@ package com.rscode.stepperfx.threading;
 import com.rscode.stepperfx.integration.OperationSelection;
 import com.rscode.stepperfx.integration.PunctuationSelection;
 import javafx.concurrent.Task;
+
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.rscode.stepperfx.integration.StepperFields.PROGRESS_REPORT_CHARACTERS;
 import static com.rscode.stepperfx.integration.StepperFields.getKeyBlockIncrementIndex;
 
 /**
- * Performs part of the work of a ProcessTask
+ * Performs part of the work of a ProcessTask.<br><br>
+ *
+ * If given a progress counter, the subtask adds its processed characters to it in batches of
+ * {@code PROGRESS_REPORT_CHARACTERS}, so the shared counter is never touched for each character.
+ * Once the subtask finishes, the counter holds the whole length of its piece.
+ * The same batches are added to the subtask's worker in a {@code WorkerProgress}, if given one.<br><br>
+ *
+ * Each finished execution is recorded as a {@code ProcessEvent.MainSubtask} for Java Flight Recorder.
  */
 final public class ProcessSubtaskMain extends Task<String> {
 
+    /**
+     * Number of characters counted as processed so far, including those not yet added to {@code progressCounter}
+     */
+    private int countedCharacters;
+
     /**
      * The String to process. Can't be null
      */
@@ -21,20 +38,66 @@ final public class ProcessSubtaskMain extends Task<String> {
      */
     final private byte[][] key;
 
+    /**
+     * Whether the character just after the piece, in the whole input, is a letter as found by {@code Character.isAlphabetic}
+     */
+    private boolean letterAfter;
+
+    /**
+     * Whether the character just before the piece, in the whole input, is a letter as found by {@code Character.isAlphabetic}
+     */
+    private boolean letterBefore;
+
     /**
      * Which operation the Task carries out. Example: Stepper 2, encryption.
      */
     private final OperationSelection operationSelection;
 
+    /**
+     * Writer that this subtask writes its output to. If null, the output is returned instead
+     */
+    private final ProcessOutputWriter outputWriter;
+
+    /**
+     * Position of this subtask's output among the pieces written to {@code outputWriter}.
+     * Ignored if {@code outputWriter} is null
+     */
+    private final int pieceIndex;
+
+    /**
+     * Shared counter that this subtask adds its processed characters to, or null if progress is not counted
+     */
+    private LongAdder progressCounter;
+
     /**
      * Punctuation preferences for the given operation
      */
     private final PunctuationSelection punctSelection;
 
+    /**
+     * Number of counted characters that were added to {@code progressCounter}
+     */
+    private int reportedCharacters;
+
+    /**
+     * Generation of this subtask's worker when the subtask was given its worker progress
+     */
+    private int workerGeneration;
+
+    /**
+     * Number of this subtask's worker in {@code workerProgress}
+     */
+    private int workerNumber;
+
+    /**
+     * Progress of each worker in this subtask's stage, or null if per-worker progress is not tracked
+     */
+    private WorkerProgress workerProgress;
+
     /**
      * The segment number in the Boss's input string. Can't be negative
      */
-    final private int startSegment;
+    final private long startSegment;
 
     // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
     // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -52,8 +115,31 @@ final public class ProcessSubtaskMain extends Task<String> {
      */
     public ProcessSubtaskMain(String textPiece, byte[][] key,
                               OperationSelection operationSelection, PunctuationSelection punctSelection,
-                              int startSegment) {
+                              long startSegment) {
+        this(textPiece, key, operationSelection, punctSelection, startSegment, null, 0);
+    }
+
+
 
+    /**
+     * Creates a new {@code ProcessSubtaskMain} that writes its output to {@code outputWriter}, and loads its fields.<br>
+     * If {@code outputWriter} is not null, the subtask's output is written as piece {@code pieceIndex} of the writer's
+     * current run, and the subtask returns the empty string.
+     *
+     * @param textPiece the substring it should process. Can't be null
+     * @param key the key to process the substring with. Can't be null. No subarrays can be null.
+     *            All indices must be on the interval [0,25].
+     * @param operationSelection operation to do, as a OperationSelection object (i.e. Stepper 2, encrypt)
+     * @param punctSelection punctuation preferences, as a PunctuationSelection object
+     * @param startSegment text segment to start processing the input. Cannot be negative
+     * @param outputWriter writer to write the output to, or null to return the output
+     * @param pieceIndex position of the output in the writer's current run. Cannot be negative
+     */
+    public ProcessSubtaskMain(String textPiece, byte[][] key,
+                              OperationSelection operationSelection, PunctuationSelection punctSelection,
+                              long startSegment, ProcessOutputWriter outputWriter, int pieceIndex) {
+
+        if(pieceIndex < 0) throw new AssertionError("Piece index cannot be negative- instead received " + pieceIndex);
         if(textPiece == null) throw new AssertionError("Input text cannot be null");
         if(key == null) throw new AssertionError("Key cannot be null");
         if(startSegment < 0) throw new AssertionError("Start segment cannot be negative- instead received " + startSegment);
@@ -75,6 +161,16 @@ final public class ProcessSubtaskMain extends Task<String> {
         this.operationSelection = operationSelection;
         this.punctSelection = punctSelection;
         this.startSegment = startSegment;
+        this.outputWriter = outputWriter;
+        this.pieceIndex = pieceIndex;
+        this.letterAfter = false;
+        this.letterBefore = false;
+        this.progressCounter = null;
+        this.countedCharacters = 0;
+        this.reportedCharacters = 0;
+        this.workerProgress = null;
+        this.workerNumber = 0;
+        this.workerGeneration = 0;
     }
 
 
@@ -88,6 +184,16 @@ final public class ProcessSubtaskMain extends Task<String> {
         this.operationSelection = OperationSelection.STEPPER_ENCRYPT;
         this.punctSelection = PunctuationSelection.USE_PUNCTUATION;
         this.startSegment = -1;
+        this.outputWriter = null;
+        this.pieceIndex = -1;
+        this.letterAfter = false;
+        this.letterBefore = false;
+        this.progressCounter = null;
+        this.countedCharacters = 0;
+        this.reportedCharacters = 0;
+        this.workerProgress = null;
+        this.workerNumber = 0;
+        this.workerGeneration = 0;
     }
 
 
@@ -99,18 +205,28 @@ final public class ProcessSubtaskMain extends Task<String> {
 
 
     /**
-     * Processes the subtask's inputs, returning an output.
-     * @return the output of processing
+     * Processes the subtask's inputs, returning an output.<br>
+     * If the subtask has an output writer, the output is written to it instead, and the empty string is returned.
+     *
+     * @return the output of processing, or the empty string if the output was written
+     * @throws IOException if the output cannot be written
+     * @throws InterruptedException if the subtask is cancelled while waiting to write its output
      */
-    protected String call() {
+    protected String call() throws IOException, InterruptedException {
         //Constructor check
         if(textPiece==null || key==null || startSegment<0) {
             throw new AssertionError("PROCESS SUBTASK MAIN- TESTING CONSTRUCTOR USED FOR OPERATIONS");
         }
+        int pieceLength = textPiece.length();
+        if(workerProgress != null) {
+            workerProgress.markStarted(workerNumber, workerGeneration);
+        }
+        ProcessEvent.MainSubtask subtaskEvent = new ProcessEvent.MainSubtask();
+        subtaskEvent.begin();
 
         //remove spaces (if specified)
         if(operationSelection.isEncryptionOperation() && punctSelection==PunctuationSelection.REMOVE_SPACES) {
-            textPiece = removeSpaces(textPiece);
+            textPiece = removeSpaces(textPiece, letterBefore, letterAfter);
         }
 
         //split non-alphas, then remove from the input
@@ -138,11 +254,146 @@ final public class ProcessSubtaskMain extends Task<String> {
         textPiece = recombineNonAlphas(textPiece, nonAlphas,
                 (!operationSelection.isEncryptionOperation() || !punctSelection.equals(PunctuationSelection.REMOVE_ALL_PUNCTUATION)));
 
+        //write the output straight to its place in the output file, if a writer is given
+        if(outputWriter != null) {
+            outputWriter.writePiece(pieceIndex, textPiece, startSegment * key[0].length);
+            textPiece = null;
+            finishProgress(pieceLength);
+            commitEvent(subtaskEvent, pieceLength);
+            return "";
+        }
+
+        finishProgress(pieceLength);
+        commitEvent(subtaskEvent, pieceLength);
         return textPiece;
     }
 
 
 
+    /**
+     * Commits {@code event} with this subtask's settings, if the event is enabled.
+     * The thread count is the number of workers in the subtask's stage, or 1 if its worker is not tracked.<br><br>
+     *
+     * Helper to {@code call}
+     *
+     * @param event event of this subtask's execution. Cannot be null
+     * @param pieceLength number of characters in the subtask's piece
+     */
+    private void commitEvent(ProcessEvent.MainSubtask event, int pieceLength) {
+        if(event == null) throw new AssertionError("Event cannot be null");
+        if(!event.shouldCommit()) {
+            return;
+        }
+
+        event.punctuation = punctSelection.name();
+        event.startSegment = startSegment;
+        event.worker = (workerProgress == null) ? -1 : workerNumber;
+        event.writingFile = (outputWriter != null);
+        event.commitPhase(operationSelection, (workerProgress == null) ? 1 : workerProgress.getWorkerCount(),
+                key.length, key[0].length, pieceLength);
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // PROGRESS
+
+    /**
+     * Counts {@code characters} more characters as processed. Once at least {@code PROGRESS_REPORT_CHARACTERS} counted
+     * characters were not added to the progress counter, they are added together.<br><br>
+     *
+     * Called once per segment, so the counter is only touched once per batch.
+     *
+     * @param characters number of characters processed since the last call. Cannot be negative
+     */
+    private void countProgress(int characters) {
+        countedCharacters += characters;
+        if(countedCharacters - reportedCharacters >= PROGRESS_REPORT_CHARACTERS) {
+            reportProgress();
+        }
+    }
+
+
+
+    /**
+     * Counts the rest of the subtask's piece as processed, then adds every counted character to the progress counter,
+     * and marks the subtask's worker as finished. Once finished, the subtask has added exactly {@code pieceLength}
+     * characters to the counter.<br>
+     * Does nothing if the subtask was cancelled, since its piece was not processed.<br><br>
+     *
+     * Helper to {@code call}
+     *
+     * @param pieceLength length of the subtask's piece before processing. Cannot be negative
+     */
+    private void finishProgress(int pieceLength) {
+        if(isCancelled()) {
+            return;
+        }
+
+        countedCharacters = pieceLength;
+        reportProgress();
+        if(workerProgress != null) {
+            workerProgress.finishPart(workerNumber, workerGeneration);
+        }
+    }
+
+
+
+    /**
+     * Adds the counted characters that were not yet added to the progress counter and the worker progress.<br>
+     * If the worker progress ignores them, because this subtask's worker was split, they are not added to the counter either.<br><br>
+     *
+     * Helper to {@code countProgress} and {@code finishProgress}
+     */
+    private void reportProgress() {
+        int characters = countedCharacters - reportedCharacters;
+        boolean counted = (workerProgress == null) || workerProgress.addProcessed(workerNumber, workerGeneration, characters);
+        if(counted && progressCounter != null) {
+            progressCounter.add(characters);
+        }
+        reportedCharacters = countedCharacters;
+    }
+
+
+
+    /**
+     * Sets whether the characters just before and after the piece, in the whole input, are letters, so spaces at the
+     * piece's ends are removed like those inside it. Both are false unless set. Must be called before the subtask starts.
+     *
+     * @param newLetterBefore true if the character before the piece is a letter, as found by {@code Character.isAlphabetic}
+     * @param newLetterAfter true if the character after the piece is a letter, as found by {@code Character.isAlphabetic}
+     */
+    public void setAdjacentLetters(boolean newLetterBefore, boolean newLetterAfter) {
+        letterBefore = newLetterBefore;
+        letterAfter = newLetterAfter;
+    }
+
+
+
+    /**
+     * Sets the shared counter that this subtask adds its processed characters to. Must be called before the subtask starts.
+     * @param newProgressCounter counter to add to, or null to not count progress
+     */
+    public void setProgressCounter(LongAdder newProgressCounter) {
+        progressCounter = newProgressCounter;
+    }
+
+
+
+    /**
+     * Sets the per-worker progress that this subtask reports to, as worker {@code worker}. The subtask reports with the worker's
+     * current generation. Must be called before the subtask starts.
+     *
+     * @param newWorkerProgress progress of each worker in the subtask's stage, or null to not track it
+     * @param worker this subtask's worker number. Must be on the interval [0, {@code newWorkerProgress.getWorkerCount()})
+     */
+    public void setWorkerProgress(WorkerProgress newWorkerProgress, int worker) {
+        workerProgress = newWorkerProgress;
+        workerNumber = worker;
+        workerGeneration = (newWorkerProgress == null) ? 0 : newWorkerProgress.getGeneration(worker);
+    }
+
+
+
 
     // //////////////////////////////////////////////////////////////////////////////////////////////////////////////
     // //////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -164,7 +415,7 @@ final public class ProcessSubtaskMain extends Task<String> {
      * @param startSegment index to start decrypting from. Must be non-negative
      * @return decrypted version of text
      */
-    private String decryptStepper(String text, byte[][] key, int startSegment) {
+    private String decryptStepper(String text, byte[][] key, long startSegment) {
         //Enforce preconditions
 
         //Check that both inputs are not null
@@ -197,7 +448,7 @@ final public class ProcessSubtaskMain extends Task<String> {
         // ////////////////////////
 
         //Configure block positions
-        byte[] keyBlockBasePositions= initializeKeyBlockPositions((long)startSegment * key[0].length + text.length(),
+        byte[] keyBlockBasePositions= initializeKeyBlockPositions(startSegment * key[0].length + text.length(),
                 key.length, key[0].length);
         StringBuilder output = new StringBuilder(text.length());
 
@@ -248,6 +499,7 @@ final public class ProcessSubtaskMain extends Task<String> {
             if(isCancelled()) {
                 return "";
             }
+            countProgress(key[0].length);
 
 
             keyBlockBasePositions[0]--;
@@ -301,6 +553,17 @@ final public class ProcessSubtaskMain extends Task<String> {
         return output.toString();
     }
 
+    /**
+     * FOR TESTING PURPOSES ONLY! Returns the output of {@code decryptStepper} for {@code text}.
+     * @param text text to decrypt. Must contain all lowercase English ASCII characters. Can't be null
+     * @param key key to decrypt with. Can't be null. All indices must be on [0,25]
+     * @param startSegment index to start decrypting from. Must be non-negative
+     * @return decrypted version of text
+     */
+    public String decryptStepper_Testing(String text, byte[][] key, long startSegment) {
+        return decryptStepper(text, key, startSegment);
+    }
+
 
 
     /**
@@ -314,7 +577,7 @@ final public class ProcessSubtaskMain extends Task<String> {
      * @param startingSegment index to start decrypting from. Must be non-negative
      * @return decrypted version of text
      */
-    private String decryptStepper2(String text, byte[][] key, int startingSegment) {
+    private String decryptStepper2(String text, byte[][] key, long startingSegment) {
         //Enforce preconditions
 
         //Check that both inputs are not null
@@ -358,7 +621,7 @@ final public class ProcessSubtaskMain extends Task<String> {
         StringBuilder output = new StringBuilder(text.length());
 
         int currentChar = 0;
-        int currentBlock = (startingSegment + text.length() / key[0].length);
+        long currentBlock = (startingSegment + text.length() / key[0].length);
 
         byte[] keyBlockReadPositions = new byte[key.length];
         System.arraycopy(keyBlockBasePositions, 0, keyBlockReadPositions, 0, keyBlockReadPositions.length);
@@ -401,6 +664,7 @@ final public class ProcessSubtaskMain extends Task<String> {
             if(isCancelled()) {
                 return "";
             }
+            countProgress(key[0].length);
 
             currentBlock--;
             if((currentBlock + 1) % key[0].length == 0) {
@@ -448,6 +712,17 @@ final public class ProcessSubtaskMain extends Task<String> {
         return output.toString();
     }
 
+    /**
+     * FOR TESTING PURPOSES ONLY! Returns the output of {@code decryptStepper2} for {@code text}.
+     * @param text text to decrypt. Must contain all lowercase English ASCII characters. Can't be null
+     * @param key key to decrypt with. Can't be null. All indices must be on [0,25]
+     * @param startingSegment index to start decrypting from. Must be non-negative
+     * @return decrypted version of text
+     */
+    public String decryptStepper2_Testing(String text, byte[][] key, long startingSegment) {
+        return decryptStepper2(text, key, startingSegment);
+    }
+
 
 
     /**
@@ -516,7 +791,7 @@ final public class ProcessSubtaskMain extends Task<String> {
      * @param startSegment index to start encrypting from. Must be non-negative
      * @return encrypted version of text
      */
-    private String encryptStepper(String text, byte[][] key, int startSegment) {
+    private String encryptStepper(String text, byte[][] key, long startSegment) {
         //Enforce preconditions
 
         //Check that both inputs are not null
@@ -554,7 +829,7 @@ final public class ProcessSubtaskMain extends Task<String> {
         // ////////////////////////
         //Start the process
 
-        byte[] keyBlockBasePositions = initializeKeyBlockPositions((long)startSegment * (long)key[0].length,
+        byte[] keyBlockBasePositions = initializeKeyBlockPositions(startSegment * key[0].length,
                 key.length, key[0].length);
         byte[] keyBlockReadPositions = new byte[key.length];
         System.arraycopy(keyBlockBasePositions, 0, keyBlockReadPositions, 0, keyBlockReadPositions.length);
@@ -566,6 +841,7 @@ final public class ProcessSubtaskMain extends Task<String> {
             if(isCancelled()) {
                 return "";
             }
+            countProgress(key[0].length);
 
             System.arraycopy(keyBlockBasePositions, 0, keyBlockReadPositions, 0, keyBlockReadPositions.length);
 
@@ -631,6 +907,17 @@ final public class ProcessSubtaskMain extends Task<String> {
         return output.toString();
     }
 
+    /**
+     * FOR TESTING PURPOSES ONLY! Returns the output of {@code encryptStepper} for {@code text}.
+     * @param text text to encrypt. Must contain all lowercase English ASCII characters. Can't be null
+     * @param key key to encrypt with. Can't be null. All indices must be on [0,25]
+     * @param startSegment index to start encrypting from. Must be non-negative
+     * @return encrypted version of text
+     */
+    public String encryptStepper_Testing(String text, byte[][] key, long startSegment) {
+        return encryptStepper(text, key, startSegment);
+    }
+
 
 
     /**
@@ -647,7 +934,7 @@ final public class ProcessSubtaskMain extends Task<String> {
      * @param startingSegment index to start encrypting from. Must be non-negative
      * @return encrypted version of text
      */
-    private String encryptStepper2(String text, byte[][] key, int startingSegment) {
+    private String encryptStepper2(String text, byte[][] key, long startingSegment) {
         //Enforce preconditions
 
         //Check that both inputs are not null
@@ -692,12 +979,13 @@ final public class ProcessSubtaskMain extends Task<String> {
 
         StringBuilder output = new StringBuilder(text.length());
         int currentChar = 0;
-        int blocksEncrypted = startingSegment;
+        long blocksEncrypted = startingSegment;
 
         for(int seg = 0; seg <= (text.length() - key[0].length); seg += key[0].length) {
             if(isCancelled()) {
                 return "";
             }
+            countProgress(key[0].length);
 
             System.arraycopy(keyBlockBasePositions, 0, keyBlockReadPositions, 0, keyBlockReadPositions.length);
 
@@ -757,6 +1045,17 @@ final public class ProcessSubtaskMain extends Task<String> {
         return output.toString();
     }
 
+    /**
+     * FOR TESTING PURPOSES ONLY! Returns the output of {@code encryptStepper2} for {@code text}.
+     * @param text text to encrypt. Must contain all lowercase English ASCII characters. Can't be null
+     * @param key key to encrypt with. Can't be null. All indices must be on [0,25]
+     * @param startingSegment index to start encrypting from. Must be non-negative
+     * @return encrypted version of text
+     */
+    public String encryptStepper2_Testing(String text, byte[][] key, long startingSegment) {
+        return encryptStepper2(text, key, startingSegment);
+    }
+
 
 
     /**
@@ -1129,30 +1428,51 @@ final public class ProcessSubtaskMain extends Task<String> {
      * Returns a copy of {@code input}, but with spaces removed.<br><br>
      *
      * Any space between two letters is removed. All other spaces are to remain in the output.
-     * A letter is any character returned by the {@code Character.isAlphabetic} method.
+     * A letter is any character returned by the {@code Character.isAlphabetic} method.<br>
+     * The characters just outside {@code input} are given by {@code letterBefore} and {@code letterAfter}, so a piece of a
+     * larger input loses the same spaces as the whole input would.
      *
      * @param input text to remove spaces from. Cannot be null
+     * @param letterBefore true if the character before {@code input} is a letter
+     * @param letterAfter true if the character after {@code input} is a letter
      * @return copy of input without spaces
      */
-    private String removeSpaces(String input) {
+    private String removeSpaces(String input, boolean letterBefore, boolean letterAfter) {
         if(input==null) throw new AssertionError("Input cannot be null");
 
         StringBuilder output = new StringBuilder(input.length());
-        output.append(input.charAt(0));
 
-        for(int i = 1; i < input.length() - 1; i++) {
+        for(int i = 0; i < input.length(); i++) {
+            boolean previousIsLetter = (i == 0) ? letterBefore : Character.isAlphabetic(input.charAt(i-1));
+            boolean nextIsLetter = (i == input.length() - 1) ? letterAfter : Character.isAlphabetic(input.charAt(i+1));
 
-            if(! (input.charAt(i) == ' '
-                    && Character.isAlphabetic(input.charAt(i-1)) && Character.isAlphabetic(input.charAt(i+1)))) {
+            if(! (input.charAt(i) == ' ' && previousIsLetter && nextIsLetter)) {
                 output.append(input.charAt(i));
             }
-
         }
 
-        output.append(input.charAt( input.length() - 1 ));
-
         return output.toString();
     }
 
+    /**
+     * FOR TESTING PURPOSES ONLY! Returns the output of {@code removeSpaces} for {@code input}, with no letters around it.
+     * @param input text to remove spaces from. Cannot be null
+     * @return copy of input without spaces
+     */
+    public String removeSpaces_Testing(String input) {
+        return removeSpaces(input, false, false);
+    }
+
+    /**
+     * FOR TESTING PURPOSES ONLY! Returns the output of {@code removeSpaces} for {@code input}.
+     * @param input text to remove spaces from. Cannot be null
+     * @param letterBefore true if the character before {@code input} is a letter
+     * @param letterAfter true if the character after {@code input} is a letter
+     * @return copy of input without spaces
+     */
+    public String removeSpaces_Testing(String input, boolean letterBefore, boolean letterAfter) {
+        return removeSpaces(input, letterBefore, letterAfter);
+    }
+
 
 }
@@ -2,36 +2,74 @@ package com.rscode.stepperfx.threading;
 
 
 import com.rscode.stepperfx.controllers.LoadingController;
+import com.rscode.stepperfx.integration.InputSelection;
 import com.rscode.stepperfx.integration.OperationSelection;
 import com.rscode.stepperfx.integration.PunctuationSelection;
 import javafx.concurrent.Task;
 import com.rscode.stepperfx.integration.StepperFields;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.security.SecureRandom;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
-import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 import static com.rscode.stepperfx.integration.StepperFields.*;
 
 /**
  * Processes the input on a separate thread.<br><br>
  *
- * The output is an array of length 4. The indices are: {output, formatted key, error type (from [error].getClass().toString),
- * error message (from [error].getMessage)}<br>
- * If operations complete successfully, the output and key will be non-null, with a null error type and message.<br>
- * If not, the error type and message will be non-null, with the first two indices null.<br><br>
+ * The output is a {@code ProcessResult}. If operations complete successfully, it holds the output and formatted key.
+ * If not, it holds the error's type and message. If the task is cancelled, it holds neither.
+ * Every result holds the run's {@code ProcessMetrics}.<br><br>
  *
- * If the task is cancelled, the return value will have all indices as null.<br><br>
+ * The output is received with a ValueProperty listener on the Service that deployed this object.<br><br>
  *
- * The output is received with a ValueProperty listener on the Service that deployed this object.
+ * If the output is returned rather than written to a file, the Task can also publish it in order, one worker's piece at a time,
+ * as soon as each piece is done. Subscribers can then show the start of the output before the whole output is finished.<br><br>
+ *
+ * Each processing stage reports its progress in characters. The workers add to a shared counter in batches,
+ * and the Task samples the counter every {@code PROGRESS_SAMPLE_MILLIS} while it waits for them, then passes the sample
+ * to {@code updateProgress}. The loading screen turns the samples into a rate and an estimated time left.<br>
+ * Each worker's progress and start and finish times are also tracked in a {@code WorkerProgress}. If chosen,
+ * a main process worker that straggles is cancelled, and its piece is split among the idle threads by a {@code StragglerSplitter}.<br><br>
+ *
+ * Each phase of the Task (file read, key block creation, partitioning, the diacritics stage, reassembly, and output write)
+ * is recorded as a {@code ProcessEvent} for Java Flight Recorder. The events cost almost nothing when no recording is running.
+ * The same phases, and the main process, are timed for the result's metrics. If chosen, the metrics are then appended
+ * to the metrics log by {@code MetricsLog}, without waiting for the write.
  */
-final public class ProcessTask extends Task<String[]> {
+final public class ProcessTask extends Task<ProcessResult> {
+
+    /**
+     * Milliseconds the Task waits after showing the "Finalizing..." message, so the FX app thread can show it.
+     * Part of every successful run's total time. Cannot be negative
+     */
+    final public static long FINALIZING_DELAY_MILLIS = 100;
+
+    /**
+     * Milliseconds the Task waits before it starts, so the loading screen does not flash. Part of every run's total time.
+     * Cannot be negative
+     */
+    final public static long START_DELAY_MILLIS = 150;
+
 
 
     // //////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -47,10 +85,41 @@ final public class ProcessTask extends Task<String[]> {
     private final int blockLength;
 
     /**
-     * Input text for the service to process
+     * Number of bytes read from the input file. Only used by the Task's thread
+     */
+    private long bytesRead;
+
+    /**
+     * Number of bytes written to the output file. Only used by the Task's thread
+     */
+    private long bytesWritten;
+
+    /**
+     * Number of input characters that the main process covered. Only used by the Task's thread
+     */
+    private long charactersProcessed;
+
+    /**
+     * Milliseconds the garbage collectors had spent collecting when the Task started running
+     */
+    private long gcStartMillis;
+
+    /**
+     * Input text for the service to process, or a filepath to load from
      */
     private String input;
 
+    /**
+     * Where the Task's input comes from (typed text, a file, or a streamed file)
+     */
+    private final InputSelection inputSelection;
+
+    /**
+     * Length of the input: characters for typed text, bytes for a file. 0 until the input is found.
+     * Only used by the Task's thread
+     */
+    private long inputSize;
+
     /**
      * Key to process the input with
      */
@@ -61,6 +130,39 @@ final public class ProcessTask extends Task<String[]> {
      */
     private final int nWorkerThreads;
 
+    /**
+     * Publishes each piece of the output, in order, as soon as it is done. Null if partial results are not published.
+     * Closed once the Task finishes
+     */
+    private final SubmissionPublisher<String> partialResultPublisher;
+
+    /**
+     * Characters processed so far in the current stage. Workers add to it in batches, and the Task samples it
+     */
+    private final LongAdder processedCharacters;
+
+    /**
+     * Reader that decrypts the rest of a browsed file's pages. Set once the first page of a browsed file is read,
+     * otherwise null. The results screen takes over the reader, and closes it
+     */
+    private volatile ResultPageReader pageReader;
+
+    /**
+     * Most heap in use when sampled so far, in bytes. Only used by the Task's thread
+     */
+    private long peakHeapBytes;
+
+    /**
+     * Nanoseconds spent in each phase so far, indexed by {@code ProcessMetrics.Phase.ordinal()}. Only used by the Task's thread
+     */
+    private final long[] phaseNanos;
+
+    /**
+     * Filepath to write the output to. If empty, the output is written to {@code StepperFields.DEFAULT_OUTPUT_FILENAME}.
+     * If null, the output is returned instead of being written
+     */
+    private final String outputFilepath;
+
     /**
      * Which operation the Task carries out. Example: Stepper 2, encryption.
      */
@@ -72,9 +174,31 @@ final public class ProcessTask extends Task<String[]> {
     private final PunctuationSelection punctSelection;
 
     /**
-     * Whether the service's task will load its input from a file
+     * Value of {@code System.nanoTime()} when the Task started running
+     */
+    private long runStartNanos;
+
+    /**
+     * Splitter for the main process stage whose straggling workers can be split, or null if the current stage's workers
+     * are not split. Only used by the Task's thread
      */
-    private final boolean usingFileInput;
+    private StragglerSplitter stragglerSplitter;
+
+    /**
+     * Number of characters the current stage processes, or -1 if the current stage's progress is not counted.
+     * Only used by the Task's thread
+     */
+    private long stageCharacters;
+
+    /**
+     * Progress of each worker in the current or last stage, or null before the first stage with workers
+     */
+    private volatile WorkerProgress workerProgress;
+
+    /**
+     * Whether a chunk index is written next to the output file. Only used for encryption operations with an output file
+     */
+    private final boolean writingChunkIndex;
 
 
     /**
@@ -86,15 +210,51 @@ final public class ProcessTask extends Task<String[]> {
      * @param punctSelection punctuation preferences, as a PunctuationSelection object
      * @param blockCount number of blocks to use. Must be on the interval [1, {@code StepperFields.MAX_BLOCK_COUNT}]
      * @param blockLength number of characters in each block to use. Must be on the interval [1, {@code StepperFields.MAX_BLOCK_LENGTH}]
-     * @param usingFileInput whether to load input from a file
+     * @param inputSelection where the input comes from, as an InputSelection object. Cannot be null
+     * @param outputFilepath filepath to write the output to, or the empty string to use {@code StepperFields.DEFAULT_OUTPUT_FILENAME}.
+     *                       If null, the output is returned instead. Cannot be null if {@code inputSelection} is {@code FILE_STREAMING}
+     * @param writingChunkIndex whether to write a chunk index next to the output file, as a {@code ChunkIndex}.
+     *                          Ignored if {@code outputFilepath} is null, or the operation is decryption
+     * @param nWorkerThreads number of threads to use during processing. Must be on the interval [0, {@code StepperFields.MAX_THREADS}]
+     */
+    public ProcessTask(String input, String key, OperationSelection operationSelection, PunctuationSelection punctSelection,
+                       int blockCount, int blockLength,
+                       InputSelection inputSelection, String outputFilepath, boolean writingChunkIndex, int nWorkerThreads) {
+        this(input, key, operationSelection, punctSelection, blockCount, blockLength,
+                inputSelection, outputFilepath, writingChunkIndex, nWorkerThreads, null);
+    }
+
+
+
+    /**
+     * Creates a new ProcessTask, initializing its inputs. The Task publishes the pieces of its output to
+     * {@code partialResultPublisher} as they are done, and closes the publisher when it finishes.<br>
+     * Pieces are only published if the output is returned rather than written to a file. They are not stripped.
+     *
+     * @param input input text to process, or a filepath to load from. Cannot be null
+     * @param key key to process the input with. Cannot be null
+     * @param operationSelection operation to do, as a OperationSelection object (i.e. Stepper 2, encrypt)
+     * @param punctSelection punctuation preferences, as a PunctuationSelection object
+     * @param blockCount number of blocks to use. Must be on the interval [1, {@code StepperFields.MAX_BLOCK_COUNT}]
+     * @param blockLength number of characters in each block to use. Must be on the interval [1, {@code StepperFields.MAX_BLOCK_LENGTH}]
+     * @param inputSelection where the input comes from, as an InputSelection object. Cannot be null
+     * @param outputFilepath filepath to write the output to, or the empty string to use {@code StepperFields.DEFAULT_OUTPUT_FILENAME}.
+     *                       If null, the output is returned instead. Cannot be null if {@code inputSelection} is {@code FILE_STREAMING}
+     * @param writingChunkIndex whether to write a chunk index next to the output file, as a {@code ChunkIndex}.
+     *                          Ignored if {@code outputFilepath} is null, or the operation is decryption
      * @param nWorkerThreads number of threads to use during processing. Must be on the interval [0, {@code StepperFields.MAX_THREADS}]
+     * @param partialResultPublisher publisher for the pieces of the output, or null to publish nothing
      */
     public ProcessTask(String input, String key, OperationSelection operationSelection, PunctuationSelection punctSelection,
                        int blockCount, int blockLength,
-                       boolean usingFileInput, int nWorkerThreads) {
+                       InputSelection inputSelection, String outputFilepath, boolean writingChunkIndex, int nWorkerThreads,
+                       SubmissionPublisher<String> partialResultPublisher) {
 
         if(input == null) throw new AssertionError("Input cannot be null");
         if(key == null) throw new AssertionError("Key cannot be null");
+        if(inputSelection == null) throw new AssertionError("Input selection cannot be null");
+        if(inputSelection == InputSelection.FILE_STREAMING && outputFilepath == null)
+            throw new AssertionError("Streamed file inputs must have an output filepath");
         if(blockCount<=0 || blockCount>MAX_BLOCK_COUNT) throw new AssertionError("Blocks must be on the interval" +
                 " [1, " + MAX_BLOCK_COUNT + "]- received " + blockCount);
         if(blockLength<=0 || blockLength>MAX_BLOCK_LENGTH) throw new AssertionError("Chars per block " +
@@ -109,8 +269,17 @@ final public class ProcessTask extends Task<String[]> {
         this.punctSelection = punctSelection;
         this.blockCount = blockCount;
         this.blockLength = blockLength;
-        this.usingFileInput = usingFileInput;
+        this.inputSelection = inputSelection;
+        this.outputFilepath = outputFilepath;
+        this.writingChunkIndex = writingChunkIndex;
         this.nWorkerThreads = nWorkerThreads;
+        this.partialResultPublisher = partialResultPublisher;
+        this.pageReader = null;
+        this.processedCharacters = new LongAdder();
+        this.stageCharacters = -1;
+        this.stragglerSplitter = null;
+        this.workerProgress = null;
+        this.phaseNanos = new long[ProcessMetrics.Phase.values().length];
     }
 
     /**
@@ -123,8 +292,17 @@ final public class ProcessTask extends Task<String[]> {
         this.punctSelection = PunctuationSelection.USE_PUNCTUATION;
         this.blockCount = -1;
         this.blockLength = -1;
-        this.usingFileInput = false;
+        this.inputSelection = InputSelection.TEXT;
+        this.outputFilepath = null;
+        this.writingChunkIndex = false;
         this.nWorkerThreads = -1;
+        this.partialResultPublisher = null;
+        this.pageReader = null;
+        this.processedCharacters = new LongAdder();
+        this.stageCharacters = -1;
+        this.stragglerSplitter = null;
+        this.workerProgress = null;
+        this.phaseNanos = new long[ProcessMetrics.Phase.values().length];
     }
 
 
@@ -138,19 +316,40 @@ final public class ProcessTask extends Task<String[]> {
     /**
      * Returns the output of the Task's processing.<br><br>
      *
-     * The output is an array of length 4. The indices are: {output, formatted key, error type (from [error].getClass().toString),
-     * error message (from [error].getMessage)}<br>
-     * If operations complete successfully, the output and key will be non-null, with a null error type and message.<br>
-     * If not, the error type and message will be non-null, with the first two indices null.<br><br>
+     * If operations complete successfully, the result holds the output and formatted key.
+     * If not, it holds the error's type (from [error].getClass().toString) and message (from [error].getMessage).<br>
+     * If the task is cancelled, the result holds neither. Every result holds the run's metrics.<br><br>
      *
-     * If the task is cancelled, the return value will have all four indices as null.<br><br>
+     * The output is received with a ValueProperty listener assigned to the Service that deployed the Task.<br><br>
      *
-     * The output is received with a ValueProperty listener assigned to the Service that deployed the Task.
+     * If {@code StepperFields.getLoggingMetrics()} is true, a record of the run is queued for the metrics log
+     * before the result is returned.
      *
      * @return result of transforming the input with the given parameters
      */
     @Override
-    protected String[] call() {
+    protected ProcessResult call() {
+        runStartNanos = System.nanoTime();
+        gcStartMillis = fetchGcMillis();
+
+        ProcessResult result = runProcess();
+        if (getLoggingMetrics()) {
+            MetricsLog.writeRecord(new File(METRICS_LOG_FILENAME), result, operationSelection, punctSelection, inputSelection,
+                    inputSize, blockCount, blockLength);
+        }
+        return result;
+    }
+
+
+
+    /**
+     * Processes the input, and returns the result of the run. Never throws: any error is returned as a failed result.<br><br>
+     *
+     * Helper to {@code call}
+     *
+     * @return result of transforming the input with the given parameters
+     */
+    private ProcessResult runProcess() {
         //Entire execution is in a try-catch to prevent silent errors
         try {
 
@@ -163,117 +362,153 @@ final public class ProcessTask extends Task<String[]> {
 
             //Prevent the user from getting epilepsy
             try {
-                Thread.sleep(150);
+                Thread.sleep(START_DELAY_MILLIS);
             }
             catch(InterruptedException e) {
-                return new String[] {null, null, null, null};
+                return ProcessResult.cancelled(createMetrics());
             }
 
 
-            //Get the input from a file, if chosen. Upon failure, present the error message
-            if (usingFileInput) {
-                try {
-                    input = readFile(input);
+            //Locate the input file, if chosen, and the output file. Upon failure, present the error message
+            //A streamed file is read later, one chunk at a time. A browsed file is decrypted one page at a time.
+            //Any other input file is mapped and scanned by the workers
+            File streamedInputFile = null;
+            File browsedInputFile = null;
+            File mappedInputFile = null;
+            File outputFile = null;
+            try {
+                if (outputFilepath != null) {
+                    outputFile = fetchOutputFile(outputFilepath);
+                }
+
+                if (inputSelection == InputSelection.FILE_STREAMING) {
+                    streamedInputFile = fetchInputFile(input, false);
+                }
+                else if (inputSelection == InputSelection.FILE) {
+                    mappedInputFile = fetchInputFile(input, true);
                 }
-                catch (FileNotFoundException e) {
-                    return new String[]{null, null, e.getClass().toString(), e.getMessage()};
+                else if (inputSelection == InputSelection.FILE_BROWSING) {
+                    browsedInputFile = fetchInputFile(input, true);
                 }
             }
-            //`input` now contains the text to be loaded
+            catch (FileNotFoundException e) {
+                return ProcessResult.failed(e.getClass().toString(), e.getMessage(), createMetrics());
+            }
+            //`input` now contains the text to be loaded, unless the input is a file
+            File inputFile = (streamedInputFile != null) ? streamedInputFile
+                    : (mappedInputFile != null) ? mappedInputFile : browsedInputFile;
+            inputSize = (inputFile != null) ? inputFile.length() : input.length();
 
 
             //Make the key
+            long keyBlocksStart = System.nanoTime();
+            ProcessEvent.KeyBlocks keyBlocksEvent = new ProcessEvent.KeyBlocks();
+            keyBlocksEvent.begin();
             byte[][] formattedKey = createKeyBlocks(key, blockCount, blockLength);
+            finishPhase(ProcessMetrics.Phase.KEY_BLOCKS, keyBlocksStart, keyBlocksEvent, key.length());
 
-            StringBuilder runResult = new StringBuilder(); //Intermediate result
-            for (int run = 1; run <= 2; run++) { //run 1 -> diacritics workers, run 2 -> main process workers
-
-                updateMessage(LoadingController.LOADING_STATE_NAMES[run]);
-
-                //Bug fix
-                if (nWorkerThreads <= 0) {
-                    return new String[]{"", "", null, null};
-                }
-
-                //Create subtasks and workloads
-                ExecutorService executorService = Executors.newFixedThreadPool(nWorkerThreads);
-                String[] subtaskWorkloads = assignWorkerLoads(input, nWorkerThreads, blockLength);
-
-                //Assign worker threads. Run 1 -> diacritics workers, run 2 -> main process workers
-                Task<String>[] subtasks = (run == 1)
-                        ? new ProcessSubtaskDiacritics[nWorkerThreads]
-                        : new ProcessSubtaskMain[nWorkerThreads];
-
-                //Assign work to each subtask and create each subtask
-                int startingSegment = 0;
-                for (int i = 0; i < nWorkerThreads; i++) {
-                    subtasks[i] = (run == 1)
-                            ? new ProcessSubtaskDiacritics(subtaskWorkloads[i])
-                            : new ProcessSubtaskMain(subtaskWorkloads[i], formattedKey,
-                                operationSelection, punctSelection, startingSegment);
-
-                    //Advance starting segment
-                    startingSegment += (countAlphaChars(subtaskWorkloads[i]) / blockLength);
+            //Bug fix
+            if (nWorkerThreads <= 0) {
+                return ProcessResult.succeeded("", "", createMetrics());
+            }
 
-                    if (isCancelled()) {
-                        return new String[]{null, null, null, null};
-                    }
+            //Browsed file: only decrypt the first page. The results screen decrypts the other pages on demand
+            if (browsedInputFile != null) {
+                String firstPage = browseFile(browsedInputFile, formattedKey);
+                if (firstPage == null) {
+                    return ProcessResult.cancelled(createMetrics());
                 }
+                return ProcessResult.succeeded(firstPage, createKeyFromKeyBlocks(formattedKey), createMetrics());
+            }
 
-                //The subtask workloads are no longer needed now
-                subtaskWorkloads = null;
-                System.gc();
-
-                //Start the subtasks
-                for (Task<String> subtask : subtasks) {
-                    executorService.submit(subtask);
+            CharSequence output;
+            ExecutorService executorService = Executors.newFixedThreadPool(nWorkerThreads);
+            try {
+                if (streamedInputFile != null) {
+                    output = streamFile(streamedInputFile, outputFile, formattedKey, executorService);
                 }
-
-
-                //Get the results
-                runResult = new StringBuilder(100);
-                for (int s = 0; s < nWorkerThreads; s++) {
-
-                    //when the current worker finishes, load its result
-                    try {
-                        if (this.isCancelled()) {
-                            for (Task<String> subtask : subtasks) {
-                                subtask.cancel();
-                            }
-                            executorService.shutdownNow();
-                            return new String[]{null, null, null, null};
+                else {
+                    //Run 1: diacritics workers
+                    //A mapped input file is decoded and scanned by the workers, which also give the main workloads
+                    updateMessage(LoadingController.LOADING_STATE_NAMES[1]);
+                    long diacriticsStart = System.nanoTime();
+                    ProcessEvent.DiacriticsStage diacriticsEvent = new ProcessEvent.DiacriticsStage();
+                    diacriticsEvent.begin();
+                    String[] scannedWorkloads = null;
+                    long[] scannedStartSegments = new long[nWorkerThreads];
+                    if (mappedInputFile != null) {
+                        scannedWorkloads = scanInputFile(mappedInputFile, scannedStartSegments, executorService);
+                        if (scannedWorkloads == null) {
+                            return ProcessResult.cancelled(createMetrics());
                         }
-
-                        runResult.append(subtasks[s].get());
+                        diacriticsEvent.scannedFile = true;
+                        finishPhase(ProcessMetrics.Phase.DIACRITICS, diacriticsStart, diacriticsEvent, mappedInputFile.length());
                     }
-                    //If cancelled while waiting
-                    catch (InterruptedException e) {
-                        return new String[]{null, null, null, null};
+                    else {
+                        long inputCharacters = input.length();
+                        startProgressStage(inputCharacters);
+                        input = runWorkers(input, formattedKey, 0, true, executorService);
+                        if (input == null) {
+                            return ProcessResult.cancelled(createMetrics());
+                        }
+                        finishPhase(ProcessMetrics.Phase.DIACRITICS, diacriticsStart, diacriticsEvent, inputCharacters);
                     }
-                    //ExecutionExceptions are caught by the outside try/catch
 
+                    //Run 2: main process workers
+                    //Each worker writes its output straight to its place in the output file, if chosen
+                    updateMessage(LoadingController.LOADING_STATE_NAMES[2]);
+                    long workloadCharacters = 0;
+                    if (scannedWorkloads != null) {
+                        for (String workload : scannedWorkloads) {
+                            workloadCharacters += workload.length();
+                        }
+                    }
+                    charactersProcessed = (scannedWorkloads != null) ? workloadCharacters : input.length();
+                    startProgressStage(charactersProcessed);
+
+                    long mainStart = System.nanoTime();
+                    try (ProcessOutputWriter writer = (outputFile == null) ? null : createOutputWriter(outputFile)) {
+                        Task<String>[] subtasks = (scannedWorkloads != null)
+                                ? startMainWorkers(scannedWorkloads, scannedStartSegments, false, false, formattedKey, writer,
+                                        executorService)
+                                : startWorkers(input, formattedKey, 0, false, false, false, writer, executorService);
+                        input = null;
+                        scannedWorkloads = null;
+
+                        if (subtasks == null) {
+                            output = null;
+                        }
+                        else if (writer != null) {
+                            output = storeWorkerResults(subtasks, writer, outputFile);
+                        }
+                        //Otherwise, combine the outputs
+                        else {
+                            StringBuilder joinedOutput = joinWorkerResults(subtasks, partialResultPublisher);
+                            output = (joinedOutput == null) ? null : createStrippedView(joinedOutput);
+                        }
+                    }
+                    finishPhase(ProcessMetrics.Phase.MAIN, mainStart, null, charactersProcessed);
                 }
+            }
+            finally {
+                executorService.shutdownNow(); //needed to free threads from memory
+            }
 
-                executorService.shutdown(); //needed to free threads from memory
-
-                //reload the input if run 2 still needs to go
-                if (run == 1) {
-                    input = runResult.toString();
-                    runResult = null;
-                }
+            if (output == null) {
+                return ProcessResult.cancelled(createMetrics());
             }
 
             //change the message to "Finalizing..." (which disables the cancel button through the loading controller's listener)
             updateMessage(LoadingController.LOADING_STATE_NAMES[4]);
             try {
-                Thread.sleep(100); //give the FX app thread time to update
+                Thread.sleep(FINALIZING_DELAY_MILLIS); //give the FX app thread time to update
             }
             //Handle cancelling while the threads sleep
             catch(InterruptedException e) {
-                return new String[]{null, null, null, null};
+                return ProcessResult.cancelled(createMetrics());
             }
 
-            return new String[] {runResult.toString().strip(), createKeyFromKeyBlocks(formattedKey), null, null};
+            return ProcessResult.succeeded(output, createKeyFromKeyBlocks(formattedKey), createMetrics());
         }
         //Any unhandled exception: Print the stack trace and return error
         //Any errors are handled and displayed by the results controller, through the same value listener that loads successful results
@@ -281,19 +516,157 @@ final public class ProcessTask extends Task<String[]> {
             System.err.println("Exception thrown in ProcessTask------------------");
             t.printStackTrace();
             System.err.println("End ProcessTask Stack Trace----------------------");
-            return new String[] {null, null, t.getClass().toString(), t.getMessage()};
+            return ProcessResult.failed(t.getClass().toString(), t.getMessage(), createMetrics());
+        }
+        //Tell any subscribers that no more pieces are coming
+        finally {
+            if (partialResultPublisher != null) {
+                partialResultPublisher.close();
+            }
         }
     }
 
 
 
 
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////
+    //GETTERS
+
+    /**
+     * Returns the reader for the rest of a browsed file's pages. Only set once the Task finishes browsing a file.
+     * @return the page reader, or null if the input was not browsed
+     */
+    public ResultPageReader getPageReader() {
+        return pageReader;
+    }
+
+
+
+    /**
+     * Returns the progress of each worker in the Task's current or last stage. The progress keeps changing while the stage runs.
+     * @return the worker progress, or null if no stage with workers has started
+     */
+    public WorkerProgress getWorkerProgress() {
+        return workerProgress;
+    }
+
+
+
+
     // ////////////////////////////////////////////////////////////////////////////////////////////////////
     // ////////////////////////////////////////////////////////////////////////////////////////////////////
     // ////////////////////////////////////////////////////////////////////////////////////////////////////
     // ////////////////////////////////////////////////////////////////////////////////////////////////////
     //METHODS
 
+    /**
+     * Returns the scanned input regions {@code regionTexts}, re-split into {@code nWorkerThreads} workloads whose letter counts
+     * are multiples of {@code blockLength}, except for the last workload. Loads {@code startSegments} with each workload's
+     * starting segment.<br><br>
+     *
+     * The workloads' starting letters come from a prefix sum over {@code regionLetterCounts}: workload {@code i} starts at the
+     * last block boundary before region {@code i}. Each cut is found by walking backwards from the end of the previous region,
+     * so only a few characters around each cut are examined.<br>
+     * Each workload ends with a letter, and any non-letters after it are put in the next workload, like {@code assignWorkerLoads}.<br><br>
+     *
+     * Each index of {@code regionTexts} is set to null once it is no longer needed.
+     *
+     * @param regionTexts text of each scanned region, in order. Cannot be null. Length must be {@code nWorkerThreads}.
+     *                    No index can be null
+     * @param regionLetterCounts number of lowercase English ASCII letters in each region. Cannot be null.
+     *                           Length must be {@code nWorkerThreads}. No index can be negative
+     * @param startSegments array to load with each workload's starting segment. Cannot be null. Length must be {@code nWorkerThreads}
+     * @return the workloads, or null if the Task is cancelled
+     */
+    private String[] assignScannedWorkerLoads(String[] regionTexts, int[] regionLetterCounts, long[] startSegments) {
+        if(regionTexts == null || regionTexts.length != nWorkerThreads) throw new AssertionError("Region texts must have "
+                + nWorkerThreads + " indices");
+        if(regionLetterCounts == null || regionLetterCounts.length != nWorkerThreads) throw new AssertionError("Region letter counts must have "
+                + nWorkerThreads + " indices");
+        if(startSegments == null || startSegments.length != nWorkerThreads) throw new AssertionError("Start segments must have "
+                + nWorkerThreads + " indices");
+
+        //Prefix sum: letters before each region, rounded down to a block boundary, is where each workload starts
+        long lettersBefore = 0;
+        for (int r = 0; r < nWorkerThreads; r++) {
+            if(regionTexts[r] == null) throw new AssertionError("Region " + r + " cannot be null");
+            if(regionLetterCounts[r] < 0) throw new AssertionError("Region " + r + " cannot have a negative letter count");
+
+            startSegments[r] = lettersBefore / blockLength;
+            lettersBefore += regionLetterCounts[r];
+        }
+
+        //Find each cut as (region, index). Cut i goes right after the workload's starting letter
+        int[] cutRegions = new int[nWorkerThreads + 1];
+        int[] cutIndices = new int[nWorkerThreads + 1];
+        cutRegions[nWorkerThreads] = nWorkerThreads - 1;
+        cutIndices[nWorkerThreads] = regionTexts[nWorkerThreads - 1].length();
+
+        lettersBefore = 0;
+        for (int w = 1; w < nWorkerThreads; w++) {
+            lettersBefore += regionLetterCounts[w - 1];
+            long lettersToSkip = lettersBefore - startSegments[w] * blockLength;
+
+            //Walk back over the letters past the block boundary, then over any non-letters before them
+            int region = w - 1;
+            int index = regionTexts[region].length();
+            while (true) {
+                if (index == 0) {
+                    if (region == 0) {
+                        break;
+                    }
+                    region--;
+                    index = regionTexts[region].length();
+                    continue;
+                }
+
+                char previousChar = regionTexts[region].charAt(index - 1);
+                if (previousChar >= 97 && previousChar <= 122) {
+                    if (lettersToSkip == 0) {
+                        break;
+                    }
+                    lettersToSkip--;
+                }
+                index--;
+            }
+
+            cutRegions[w] = region;
+            cutIndices[w] = index;
+
+            if (isCancelled()) {
+                return null;
+            }
+        }
+
+        //Build each workload from the regions between its cuts
+        String[] workloads = new String[nWorkerThreads];
+        for (int w = 0; w < nWorkerThreads; w++) {
+            StringBuilder workload = new StringBuilder();
+            for (int r = cutRegions[w]; r <= cutRegions[w + 1]; r++) {
+                int start = (r == cutRegions[w]) ? cutIndices[w] : 0;
+                int end = (r == cutRegions[w + 1]) ? cutIndices[w + 1] : regionTexts[r].length();
+                if (start < end) {
+                    workload.append(regionTexts[r], start, end);
+                }
+            }
+            workloads[w] = workload.toString();
+
+            //Regions before the next workload's first region are no longer needed
+            for (int r = 0; r < cutRegions[w + 1]; r++) {
+                regionTexts[r] = null;
+            }
+
+            if (isCancelled()) {
+                return null;
+            }
+        }
+
+        return workloads;
+    }
+
+
+
     /**
      * Returns an array containing {@code text} split evenly into {@code threads} pieces.
      * The number of alphabetic characters of each piece is a multiple of {@code blockLength}, except for the last piece.<br><br>
@@ -456,6 +829,132 @@ final public class ProcessTask extends Task<String[]> {
 
 
 
+    /**
+     * Returns the output of the subtask at index {@code index} of {@code subtasks}, waiting for the subtask to finish.
+     * The subtask's reference is then removed from the array, so its output can be freed once used.<br><br>
+     *
+     * If the Task is cancelled while waiting, all subtasks are cancelled, and null is returned.<br>
+     * While waiting, the current stage's progress is sampled every {@code PROGRESS_SAMPLE_MILLIS}. If {@code subtasks} belong to
+     * the stage of {@code stragglerSplitter}, each sample also checks for a straggler to split.
+     * A split subtask's output is its parts' outputs.<br><br>
+     *
+     * Helper to {@code joinWorkerResults}, {@code scanInputFile}, {@code storeWorkerResults},
+     * and {@code StragglerSplitter.joinSplitParts}
+     *
+     * @param subtasks started subtasks. Cannot be null
+     * @param index index of the subtask to wait for. Must be on the interval [0, {@code subtasks.length}). Its subtask cannot be null
+     * @return the subtask's output, or null if the Task was cancelled
+     * @throws ExecutionException if the subtask throws an exception
+     */
+    private String awaitWorkerResult(Task<String>[] subtasks, int index) throws ExecutionException {
+        if(subtasks == null) throw new AssertionError("Subtasks cannot be null");
+        if(index < 0 || index >= subtasks.length) throw new AssertionError("Index must be on the interval [0, "
+                + subtasks.length + ")- received " + index);
+        if(subtasks[index] == null) throw new AssertionError("Subtask " + index + " cannot be null");
+
+        StragglerSplitter splitter = (stragglerSplitter != null && stragglerSplitter.getSubtasks() == subtasks)
+                ? stragglerSplitter : null;
+        try {
+            //Sample the progress counter while waiting, so the loading screen updates at a steady rate
+            while (!this.isCancelled()) {
+                //A split worker's output is its parts' outputs, combined in order
+                if (splitter != null && splitter.isSplit(index)) {
+                    String splitResult = splitter.joinSplitParts(index, this::awaitWorkerResult);
+                    if (splitResult == null) {
+                        break;
+                    }
+                    subtasks[index] = null;
+                    return splitResult;
+                }
+
+                try {
+                    String subtaskResult = subtasks[index].get(PROGRESS_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+                    subtasks[index] = null;
+                    if (splitter != null) {
+                        splitter.finishWorker(index);
+                    }
+                    sampleProgress();
+                    return subtaskResult;
+                }
+                catch (TimeoutException e) {
+                    sampleProgress();
+                    if (splitter != null) {
+                        splitter.splitStraggler(getStragglerFactor(), System.nanoTime());
+                    }
+                }
+            }
+        }
+        //If cancelled while waiting, cancel the subtasks below. ExecutionExceptions are passed to the caller
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        //Cancelled: stop the remaining subtasks, including the parts of split workers
+        for (Task<String> subtask : subtasks) {
+            if (subtask != null) {
+                subtask.cancel();
+            }
+        }
+        if (splitter != null) {
+            splitter.cancelParts();
+        }
+        return null;
+    }
+
+
+
+    /**
+     * Returns the decrypted first page of {@code inputFile}, and sets {@code pageReader} to a reader for its other pages.<br><br>
+     *
+     * A container's settings are checked like for any container input, and only its chunks are browsed. Checksums are only
+     * checked when the whole container is decrypted.
+     *
+     * @param inputFile file to browse. Cannot be null. Must exist
+     * @param formattedKey key blocks to decrypt with. Cannot be null
+     * @return the first page's decrypted text, or null if the Task is cancelled
+     * @throws IOException if the operation is encryption, the file cannot be read, or a container's settings do not match
+     * @throws ExecutionException if decrypting the first page fails
+     * @throws InterruptedException if the Task is cancelled while decrypting the first page
+     */
+    private String browseFile(File inputFile, byte[][] formattedKey) throws IOException, ExecutionException, InterruptedException {
+        if(inputFile == null) throw new AssertionError("Input file cannot be null");
+        if(formattedKey == null) throw new AssertionError("Key cannot be null");
+
+        if(operationSelection.isEncryptionOperation()) {
+            throw new IOException("Browsing only decrypts files. Choose \"File\" input to encrypt a file");
+        }
+
+        //Only a container's chunks hold text
+        long dataStart = 0;
+        long dataEnd = inputFile.length();
+        if(ChunkContainer.isContainerFile(inputFile)) {
+            ChunkContainer container = fetchMatchingContainer(inputFile);
+            int lastChunk = container.getChunkCount() - 1;
+            dataStart = ChunkContainer.HEADER_BYTES;
+            dataEnd = (lastChunk < 0) ? dataStart : container.getChunkOffset(lastChunk) + container.getChunkLength(lastChunk);
+        }
+
+        updateMessage(LoadingController.LOADING_STATE_NAMES[2]);
+        ResultPageReader reader = new ResultPageReader(inputFile, dataStart, dataEnd, formattedKey, operationSelection, punctSelection);
+        String firstPage = null;
+        try {
+            firstPage = reader.readPage(0);
+        }
+        finally {
+            if(firstPage == null || isCancelled()) {
+                reader.close();
+            }
+        }
+
+        if(isCancelled()) {
+            return null;
+        }
+        pageReader = reader;
+        return firstPage;
+    }
+
+
+
     /**
      * Returns the amount of English ASCII characters in {@code input}.
      * If cancelled, returns 0.
@@ -501,6 +1000,9 @@ final public class ProcessTask extends Task<String[]> {
      * becomes a random value on the interval [0,25]. If {@code input} contains more than {@code blocks}*{@code charsPerBlock}
      * English ASCII letters, any letter past index {@code blocks}*{@code charsPerBlock} in the input is ignored.<br>
      *
+     * -Random values come from {@code KeyPadding}. If {@code StepperFields.getKeyPaddingSeed()} is not null, they are seeded
+     * with it, so the same input always gives the same output.<br>
+     *
      * @param input the input text. Can't be null
      * @param blocks number of indices in the output array. Must be positive
      * @param charsPerBlock number of indices in each of the output's subarrays. Must be positive
@@ -530,27 +1032,9 @@ final public class ProcessTask extends Task<String[]> {
             }
         }
 
-        //Create a sequence of random numbers
-        SecureRandom rng = new SecureRandom();
-        rng.nextInt();
-
-        //If the output is not filled, load with random characters
-        while(formattedKey.length() < blocks*charsPerBlock) {
-            for(int r = 0; r < rng.nextInt(); r++) {
-                rng.nextInt();
-            }
-            int currentRandChar = rng.nextInt();
-
-            //Convert the next random number to a non-negative number
-            if(currentRandChar < 0) {
-                currentRandChar = currentRandChar*-1;
-            }
-
-            //Convert the number to a lowercase character ASCII value
-            currentRandChar = (currentRandChar % 26 + 97);
-
-            //Add random character to the formatted key
-            formattedKey.append((char) currentRandChar);
+        //If the output is not filled, pad it with random letters
+        if(formattedKey.length() < blocks*charsPerBlock) {
+            KeyPadding.appendLetters(formattedKey, blocks*charsPerBlock - formattedKey.length(), getKeyPaddingSeed());
         }
 
         //At this point, the formatted key should contain blocks*charsPerBlock characters.
@@ -631,76 +1115,625 @@ final public class ProcessTask extends Task<String[]> {
 
 
     /**
-     * Returns all the text from a file whose name is {@code filepath}. If {@code filepath} is the empty string, loads from
-     * {@code StepperFields.DEFAULT_INPUT_FILE}.<br><br>
+     * Returns the measurements of the run so far. The total time runs until this is called.<br><br>
      *
-     * The input filepath must end with the ".txt" extension.<br>
-     * If the input filepath is empty, does not end in ".txt", or the file could not be read,
-     * throws a FileNotFoundException.<br>
+     * Helper to {@code runProcess}
      *
-     * @param filepath name of the input file. Can't be null
-     * @return contents from the given input filename, or the empty string if the task is cancelled
-     * @throws FileNotFoundException if the file can't be read or the filename lacks the ".txt" extension.
-     * Displays a descriptive error message, which can be displayed to the user, if thrown.
+     * @return the run's metrics
      */
-    private String readFile(String filepath) throws FileNotFoundException {
-        if(filepath == null) {
-            throw new AssertionError("Filename cannot be null");
-        }
-
-        File inputFile;
+    private ProcessMetrics createMetrics() {
+        sampleHeap();
+        WorkerProgress progress = workerProgress;
+        String workerSummary = (progress == null) ? "" : progress.readSummary(getStragglerFactor(), System.nanoTime());
+        return new ProcessMetrics(phaseNanos, System.nanoTime() - runStartNanos, charactersProcessed, bytesRead, bytesWritten,
+                Math.max(nWorkerThreads, 0), peakHeapBytes, Math.max(fetchGcMillis() - gcStartMillis, 0), workerSummary);
+    }
 
-        //Create file from default or the top text input
-        if(filepath.isEmpty()) {
-            inputFile = new File(DEFAULT_INPUT_FILENAME);
-        }
-        else {
-            inputFile = new File(filepath);
-        }
 
-        StringBuilder output = new StringBuilder();
 
-        //Check if the input file ends in .txt
-        if(inputFile.getName().length()<=3 || !inputFile.getName().endsWith(".txt")) {
-            throw new FileNotFoundException("The input file must have a .txt extension");
-        }
-        else {
-            //Read the file and load it into the fields
-            try {
-                Scanner fileReader = new Scanner(inputFile);
+    /**
+     * Returns a message saying how many characters {@code writer} wrote, and the absolute path of {@code outputFile}.<br><br>
+     *
+     * The message is displayed on the results screen in place of the output.<br><br>
+     *
+     * Helper to {@code storeWorkerResults} and {@code streamFile}
+     *
+     * @param writer writer that wrote the output. Cannot be null
+     * @param outputFile file the output was written to. Cannot be null
+     * @return message describing the written output
+     */
+    private String createOutputNotice(ProcessOutputWriter writer, File outputFile) {
+        if(writer == null) throw new AssertionError("Writer cannot be null");
+        if(outputFile == null) throw new AssertionError("Output file cannot be null");
 
-                //Load all the lines
-                while (fileReader.hasNextLine()) {
-                    if(isCancelled()) {
-                        return "";
-                    }
+        return "Output (" + writer.getCharsWritten() + " characters) written to\n" + outputFile.getAbsolutePath();
+    }
 
-                    output.append(fileReader.nextLine());
-                    output.append("\n");
-                }
-            }
-            //If error, create a nicer error message and throw an exception with it
-            catch (FileNotFoundException e) {
-                String fileErrorMsg = "The input file \"";
 
-                fileErrorMsg += (inputFile.getName().length() < 20) ?
-                        inputFile.getName() :
-                        inputFile.getName().substring(0, 16) + "... .txt";
 
-                fileErrorMsg += "\" does not exist\n";
+    /**
+     * Returns a new writer for {@code outputFile}. If {@code outputFile} is a container, the writer writes a container.
+     * Otherwise, the writer records checkpoints for a chunk index if one is chosen and the operation is encryption.<br><br>
+     *
+     * Any existing chunk index next to {@code outputFile} is deleted first, since it no longer describes the file.
+     *
+     * @param outputFile file to write the output to. Cannot be null. If the file exists, its contents are erased
+     * @return writer for the output file
+     * @throws IOException if the output file cannot be opened, or its old chunk index cannot be deleted
+     */
+    private ProcessOutputWriter createOutputWriter(File outputFile) throws IOException {
+        if(outputFile == null) throw new AssertionError("Output file cannot be null");
 
-                if(filepath.contains("\\") || filepath.contains("/")) {
-                    fileErrorMsg += "at the given absolute path";
-                }
-                else {
-                    fileErrorMsg += "in the folder containing the app";
-                }
+        Files.deleteIfExists(ChunkIndex.fetchIndexFile(outputFile).toPath());
 
-                throw new FileNotFoundException(fileErrorMsg);
-            }
+        if(ChunkContainer.isContainerFile(outputFile)) {
+            return new ProcessOutputWriter(outputFile, 0, blockLength, true);
         }
-
-        return output.toString();
+        return (writingChunkIndex && operationSelection.isEncryptionOperation())
+                ? new ProcessOutputWriter(outputFile, CHUNK_INDEX_INTERVAL, blockLength)
+                : new ProcessOutputWriter(outputFile);
+    }
+
+
+
+    /**
+     * Returns a view of {@code text} without its leading and trailing whitespace, matching {@code String.strip}.
+     * The text is not copied, so it must not change while the view is used.<br><br>
+     *
+     * Helper to {@code runProcess}
+     *
+     * @param text text to strip. Cannot be null
+     * @return read-only view of the stripped text
+     */
+    private CharSequence createStrippedView(CharSequence text) {
+        if(text == null) throw new AssertionError("Text cannot be null");
+
+        //Every whitespace character is in the Basic Multilingual Plane, so checking single chars matches String.strip
+        int start = 0;
+        int end = text.length();
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return CharBuffer.wrap(text, start, end);
+    }
+
+
+
+    /**
+     * Returns the chunks of the container file {@code inputFile}, grouped into {@code nWorkerThreads} regions of about the same
+     * size and mapped into memory.<br><br>
+     *
+     * Every region starts on a chunk, so it starts on a key block boundary and can be decrypted as it is.
+     * {@code startSegments} is loaded with the segment each region starts on, and {@code firstChunks} with the number of
+     * each region's first chunk. Regions at the end of a container with few chunks may be empty.
+     *
+     * @param inputFile container file to map. Cannot be null. Must exist
+     * @param container description of {@code inputFile}. Cannot be null
+     * @param startSegments array to load with each region's starting segment. Cannot be null. Length must be {@code nWorkerThreads}
+     * @param firstChunks array to load with each region's first chunk, then the container's chunk count. Cannot be null.
+     *                    Length must be {@code nWorkerThreads + 1}
+     * @return the container's regions, in order
+     * @throws IOException if the file cannot be mapped, or a region is larger than 2 GB
+     */
+    private ByteBuffer[] fetchContainerRegions(File inputFile, ChunkContainer container, long[] startSegments, int[] firstChunks)
+            throws IOException {
+        if(inputFile == null) throw new AssertionError("Input file cannot be null");
+        if(container == null) throw new AssertionError("Container cannot be null");
+        if(startSegments == null || startSegments.length != nWorkerThreads) throw new AssertionError("Start segments must have "
+                + nWorkerThreads + " indices");
+        if(firstChunks == null || firstChunks.length != nWorkerThreads + 1) throw new AssertionError("First chunks must have "
+                + (nWorkerThreads + 1) + " indices");
+
+        int chunkCount = container.getChunkCount();
+        long chunksStart = ChunkContainer.HEADER_BYTES;
+        long chunksEnd = (chunkCount == 0) ? chunksStart
+                : container.getChunkOffset(chunkCount - 1) + container.getChunkLength(chunkCount - 1);
+
+        //Move each even boundary back to the start of a chunk
+        long[] boundaries = new long[nWorkerThreads + 1];
+        boundaries[0] = chunksStart;
+        boundaries[nWorkerThreads] = chunksEnd;
+        firstChunks[0] = 0;
+        firstChunks[nWorkerThreads] = chunkCount;
+        for (int r = 1; r < nWorkerThreads; r++) {
+            long evenBoundary = chunksStart + (chunksEnd - chunksStart) / nWorkerThreads * r;
+            firstChunks[r] = Math.max(firstChunks[r - 1], container.findChunk(evenBoundary));
+            boundaries[r] = (firstChunks[r] < chunkCount) ? container.getChunkOffset(firstChunks[r]) : chunksEnd;
+        }
+        for (int r = 0; r < nWorkerThreads; r++) {
+            startSegments[r] = (firstChunks[r] < chunkCount)
+                    ? container.getLetterOffset(firstChunks[r]) / blockLength
+                    : 0;
+        }
+
+        try (FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            return fetchMappedRegions(channel, boundaries);
+        }
+    }
+
+
+
+    /**
+     * Returns the milliseconds every garbage collector has spent collecting since the JVM started.
+     * Collectors that do not report their time are skipped.<br><br>
+     *
+     * Helper to {@code call} and {@code createMetrics}
+     *
+     * @return total GC time, in milliseconds
+     */
+    private long fetchGcMillis() {
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcMillis += Math.max(collector.getCollectionTime(), 0);
+        }
+        return gcMillis;
+    }
+
+
+
+    /**
+     * Returns the input file whose name is {@code filepath}. If {@code filepath} is the empty string, returns
+     * {@code StepperFields.DEFAULT_INPUT_FILE}.<br><br>
+     *
+     * The input filepath must end with the ".txt" extension, or the container extension if containers are allowed.<br>
+     * If the input filepath has any other extension, or the file does not exist, throws a FileNotFoundException.<br>
+     *
+     * @param filepath name of the input file. Can't be null
+     * @param allowingContainer true if the input file can be a container, with the extension {@code ChunkContainer.FILE_EXTENSION}
+     * @return the input file, which exists
+     * @throws FileNotFoundException if the file doesn't exist or the filename lacks an allowed extension.
+     * Displays a descriptive error message, which can be displayed to the user, if thrown.
+     */
+    private File fetchInputFile(String filepath, boolean allowingContainer) throws FileNotFoundException {
+        if(filepath == null) {
+            throw new AssertionError("Filename cannot be null");
+        }
+
+        File inputFile;
+
+        //Create file from default or the top text input
+        if(filepath.isEmpty()) {
+            inputFile = new File(DEFAULT_INPUT_FILENAME);
+        }
+        else {
+            inputFile = new File(filepath);
+        }
+
+        //Check if the input file ends in .txt, or is a container
+        boolean isContainer = allowingContainer && ChunkContainer.isContainerFile(inputFile);
+        if(!isContainer && (inputFile.getName().length()<=3 || !inputFile.getName().endsWith(".txt"))) {
+            throw new FileNotFoundException(allowingContainer
+                    ? "The input file must have a .txt or " + ChunkContainer.FILE_EXTENSION + " extension"
+                    : "The input file must have a .txt extension");
+        }
+
+        //If the file is missing, create a nicer error message and throw an exception with it
+        if(!inputFile.isFile()) {
+            String fileErrorMsg = "The input file \"";
+
+            fileErrorMsg += (inputFile.getName().length() < 20) ?
+                    inputFile.getName() :
+                    inputFile.getName().substring(0, 16) + "... " + (isContainer ? ChunkContainer.FILE_EXTENSION : ".txt");
+
+            fileErrorMsg += "\" does not exist\n";
+
+            if(filepath.contains("\\") || filepath.contains("/")) {
+                fileErrorMsg += "at the given absolute path";
+            }
+            else {
+                fileErrorMsg += "in the folder containing the app";
+            }
+
+            throw new FileNotFoundException(fileErrorMsg);
+        }
+
+        return inputFile;
+    }
+
+
+
+    /**
+     * Returns {@code inputFile}, split into {@code nWorkerThreads} regions of about the same size and mapped into memory.<br><br>
+     *
+     * Without a chunk index, region boundaries are moved forward so no UTF-8 character and no "\r\n" line break is split
+     * between two regions.<br>
+     * With a chunk index, each region boundary is moved back to the nearest checkpoint, and {@code startSegments} is loaded
+     * with the segment each region starts on. Each region can then be decrypted as it is, without counting any letters.<br><br>
+     *
+     * Regions at the end of a small file may be empty.
+     *
+     * @param inputFile file to map. Cannot be null. Must exist
+     * @param chunkIndex chunk index that matches {@code inputFile}, or null to split the file evenly
+     * @param startSegments array to load with each region's starting segment if {@code chunkIndex} is not null.
+     *                      Cannot be null. Length must be {@code nWorkerThreads}
+     * @return the file's regions, in order
+     * @throws IOException if the file cannot be mapped, or a region is larger than 2 GB
+     */
+    private ByteBuffer[] fetchInputRegions(File inputFile, ChunkIndex chunkIndex, long[] startSegments) throws IOException {
+        if(inputFile == null) throw new AssertionError("Input file cannot be null");
+        if(startSegments == null || startSegments.length != nWorkerThreads) throw new AssertionError("Start segments must have "
+                + nWorkerThreads + " indices");
+
+        try (FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+
+            //Find the region boundaries
+            long[] boundaries = new long[nWorkerThreads + 1];
+            boundaries[nWorkerThreads] = fileSize;
+            for (int r = 1; r < nWorkerThreads; r++) {
+                long evenBoundary = Math.max(boundaries[r - 1], fileSize / nWorkerThreads * r);
+
+                if (chunkIndex == null) {
+                    boundaries[r] = findRegionBoundary(channel, evenBoundary);
+                }
+                //Checkpoints are found in increasing order, so the boundaries never move backwards
+                else {
+                    int checkpoint = chunkIndex.findCheckpoint(evenBoundary);
+                    boundaries[r] = (checkpoint < 0) ? 0 : chunkIndex.getByteOffset(checkpoint);
+                    startSegments[r] = (checkpoint < 0) ? 0 : chunkIndex.getLetterOffset(checkpoint) / blockLength;
+                }
+            }
+
+            return fetchMappedRegions(channel, boundaries);
+        }
+    }
+
+
+
+    /**
+     * Returns the regions of the file in {@code channel} between consecutive {@code boundaries}, mapped into memory.
+     * Mappings stay valid after the channel is closed.<br><br>
+     *
+     * Helper to {@code fetchContainerRegions} and {@code fetchInputRegions}
+     *
+     * @param channel channel to the input file. Cannot be null
+     * @param boundaries start of each region, then the end of the last region. Cannot be null.
+     *                   Length must be {@code nWorkerThreads + 1}. Must be non-decreasing
+     * @return the mapped regions, in order
+     * @throws IOException if the file cannot be mapped, or a region is larger than 2 GB
+     */
+    private ByteBuffer[] fetchMappedRegions(FileChannel channel, long[] boundaries) throws IOException {
+        if(channel == null) throw new AssertionError("Channel cannot be null");
+        if(boundaries == null || boundaries.length != nWorkerThreads + 1) throw new AssertionError("Boundaries must have "
+                + (nWorkerThreads + 1) + " indices");
+
+        ByteBuffer[] regions = new ByteBuffer[nWorkerThreads];
+        for (int r = 0; r < nWorkerThreads; r++) {
+            long regionSize = boundaries[r + 1] - boundaries[r];
+            if (regionSize > Integer.MAX_VALUE) {
+                throw new IOException("The input file is too large to load at once. Use streamed file input instead");
+            }
+
+            regions[r] = channel.map(FileChannel.MapMode.READ_ONLY, boundaries[r], regionSize);
+        }
+
+        return regions;
+    }
+
+
+
+    /**
+     * Returns the chunk index next to {@code inputFile}, if the operation is decryption and the index matches the file and
+     * the operation's settings. Otherwise, returns null.<br><br>
+     *
+     * An index that cannot be read is ignored, and a warning is printed to System.err.
+     *
+     * @param inputFile file to decrypt. Cannot be null
+     * @return the file's chunk index, or null if there is no usable index
+     */
+    private ChunkIndex fetchMatchingChunkIndex(File inputFile) {
+        if(inputFile == null) throw new AssertionError("Input file cannot be null");
+
+        File indexFile = ChunkIndex.fetchIndexFile(inputFile);
+        if(operationSelection.isEncryptionOperation() || !indexFile.isFile()) {
+            return null;
+        }
+
+        try {
+            ChunkIndex chunkIndex = ChunkIndex.fetchChunkIndex(indexFile);
+            int stepperVersion = operationSelection.isStepper2Operation() ? 2 : 1;
+            return chunkIndex.isUsableFor(inputFile, blockCount, blockLength, stepperVersion) ? chunkIndex : null;
+        }
+        catch(IOException e) {
+            System.err.println("WARNING: Chunk index \"" + indexFile.getName() + "\" was ignored- " + e.getMessage());
+            return null;
+        }
+    }
+
+
+
+    /**
+     * Returns the description of the container file {@code inputFile}, after checking that the operation can decrypt it.<br><br>
+     *
+     * The container's Stepper version, block count, and block length must match the operation's. If not, the error message
+     * tells the user which settings to use.
+     *
+     * @param inputFile container file to decrypt. Cannot be null
+     * @return description of the container
+     * @throws IOException if the container cannot be read, the operation is encryption, or the settings do not match
+     */
+    private ChunkContainer fetchMatchingContainer(File inputFile) throws IOException {
+        if(inputFile == null) throw new AssertionError("Input file cannot be null");
+
+        if(operationSelection.isEncryptionOperation()) {
+            throw new IOException("Container (" + ChunkContainer.FILE_EXTENSION + ") files hold encrypted output, and can only be decrypted");
+        }
+
+        ChunkContainer container = ChunkContainer.fetchChunkContainer(inputFile);
+        int stepperVersion = operationSelection.isStepper2Operation() ? 2 : 1;
+        if(container.getStepperVersion() != stepperVersion || container.getBlockCount() != blockCount
+                || container.getBlockLength() != blockLength) {
+            throw new IOException("This container was encrypted with " + ((container.getStepperVersion() == 2) ? "Stepper 2" : "Stepper")
+                    + ", using " + container.getBlockCount() + " blocks of " + container.getBlockLength()
+                    + " characters. Change the version and settings to match");
+        }
+
+        return container;
+    }
+
+
+
+    /**
+     * Returns the output file whose name is {@code filepath}. If {@code filepath} is the empty string, returns
+     * {@code StepperFields.DEFAULT_OUTPUT_FILENAME}.<br><br>
+     *
+     * The output filepath must end with the ".txt" extension, and its folder must exist. The file itself does not need to exist.<br>
+     * Encrypted output can also be written to a container, whose filepath ends with {@code ChunkContainer.FILE_EXTENSION}.<br>
+     * If any condition is not met, throws a FileNotFoundException.
+     *
+     * @param filepath name of the output file. Can't be null
+     * @return the output file, which can be created or overwritten
+     * @throws FileNotFoundException if the output folder doesn't exist, the filepath names a folder,
+     * or the filename lacks an allowed extension. Displays a descriptive error message, which can be displayed to the user, if thrown.
+     */
+    private File fetchOutputFile(String filepath) throws FileNotFoundException {
+        if(filepath == null) {
+            throw new AssertionError("Filename cannot be null");
+        }
+
+        //Create file from default or the given filepath
+        File outputFile = filepath.isEmpty() ? new File(DEFAULT_OUTPUT_FILENAME) : new File(filepath);
+
+        //Check if the output file ends in .txt, or is a container of encrypted output
+        if(ChunkContainer.isContainerFile(outputFile)) {
+            if(!operationSelection.isEncryptionOperation()) {
+                throw new FileNotFoundException("Only encrypted output can be written to a container ("
+                        + ChunkContainer.FILE_EXTENSION + ") file");
+            }
+        }
+        else if(outputFile.getName().length()<=3 || !outputFile.getName().endsWith(".txt")) {
+            throw new FileNotFoundException("The output file must have a .txt extension");
+        }
+
+        //The file will be created if it is missing, but its folder must already exist
+        File outputFolder = outputFile.getAbsoluteFile().getParentFile();
+        if(outputFolder == null || !outputFolder.isDirectory()) {
+            throw new FileNotFoundException("The folder for the output file \"" + outputFile.getName() + "\" does not exist");
+        }
+        if(outputFile.isDirectory()) {
+            throw new FileNotFoundException("The output filepath \"" + outputFile.getName() + "\" is a folder, not a file");
+        }
+
+        return outputFile;
+    }
+
+
+
+    /**
+     * Returns the first byte position, at or after {@code position}, where a region of the UTF-8 file in {@code channel}
+     * can start.<br><br>
+     *
+     * A region cannot start on a UTF-8 continuation byte, or between the "\r" and "\n" of a line break.<br><br>
+     *
+     * Helper to {@code fetchInputRegions}
+     *
+     * @param channel channel to the input file. Cannot be null
+     * @param position position to start searching from. Must be on the interval [0, file size]
+     * @return position where a region can start, on the interval [{@code position}, file size]
+     * @throws IOException if the file cannot be read
+     */
+    private long findRegionBoundary(FileChannel channel, long position) throws IOException {
+        if(channel == null) throw new AssertionError("Channel cannot be null");
+        if(position < 0 || position > channel.size()) throw new AssertionError("Position must be on the interval [0, "
+                + channel.size() + "]- received " + position);
+
+        if (position == 0) {
+            return 0;
+        }
+
+        //Read the byte before the position, and enough bytes after it to pass a UTF-8 character
+        ByteBuffer window = ByteBuffer.allocate(5);
+        while (window.hasRemaining() && channel.read(window, position - 1 + window.position()) > 0) {
+            //keep reading until the window is full or the file ends
+        }
+        window.flip();
+
+        int offset = 1;
+        while (offset < window.limit() && (window.get(offset) & 0xC0) == 0x80) {
+            offset++;
+        }
+        if (offset == 1 && offset < window.limit() && window.get(0) == '\r' && window.get(1) == '\n') {
+            offset++;
+        }
+
+        return position - 1 + offset;
+    }
+
+
+
+    /**
+     * Returns the index where a streamed chunk of {@code text} should be cut.<br><br>
+     *
+     * The letters before the cut fill a whole number of blocks, and as many blocks as possible.
+     * Non-letters directly after the last full block stay before the cut, so the text after the cut starts with a letter
+     * (or is empty).<br>
+     * If {@code text} has fewer than {@code blockLength} letters, the cut is at the first letter.<br>
+     * If the cut would be at the end of {@code text}, after a space, it is moved before the space. Whether the space is
+     * removed depends on the character after it, which is in the next chunk.<br><br>
+     *
+     * Letters are lowercase English ASCII characters.<br><br>
+     *
+     * Helper to {@code streamFile}
+     *
+     * @param text text to cut, after diacritics are removed. Cannot be null
+     * @return index of the cut, on the interval [0, {@code text.length()}]
+     */
+    private int findStreamCut(String text) {
+        if(text == null) throw new AssertionError("Text cannot be null");
+
+        //Count the letters that fill whole blocks
+        int letters = 0;
+        for(int i = 0; i < text.length(); i++) {
+            if(text.charAt(i) >= 97 && text.charAt(i) <= 122) {
+                letters++;
+            }
+        }
+        int lettersBeforeCut = (letters / blockLength) * blockLength;
+
+        //Move past the letters before the cut
+        int cutIndex = 0;
+        while(lettersBeforeCut > 0) {
+            if(text.charAt(cutIndex) >= 97 && text.charAt(cutIndex) <= 122) {
+                lettersBeforeCut--;
+            }
+            cutIndex++;
+        }
+
+        //Move past any non-letters after the last full block
+        while(cutIndex < text.length() && !(text.charAt(cutIndex) >= 97 && text.charAt(cutIndex) <= 122)) {
+            cutIndex++;
+        }
+
+        //Keep a space at the end for the next chunk, which holds the character after it
+        if(cutIndex == text.length() && cutIndex > 0 && text.charAt(cutIndex - 1) == ' ') {
+            cutIndex--;
+        }
+
+        return cutIndex;
+    }
+
+
+
+    /**
+     * Finishes the output written by {@code outputWriter}. If {@code outputFile} is a container, its header and chunk table
+     * are written. Otherwise, its chunk index is saved next to it if a chunk index is chosen and the operation is encryption.<br><br>
+     *
+     * Must be called after every piece of the output is written.
+     *
+     * @param outputWriter writer that wrote the output. Cannot be null
+     * @param outputFile file that {@code outputWriter} writes to. Cannot be null
+     * @throws IOException if the container or index file cannot be written
+     */
+    private void finishOutputFile(ProcessOutputWriter outputWriter, File outputFile) throws IOException {
+        if(outputWriter == null) throw new AssertionError("Output writer cannot be null");
+        if(outputFile == null) throw new AssertionError("Output file cannot be null");
+
+        int stepperVersion = operationSelection.isStepper2Operation() ? 2 : 1;
+        if(ChunkContainer.isContainerFile(outputFile)) {
+            outputWriter.finishContainer(stepperVersion, blockCount, punctSelection);
+        }
+        else if(writingChunkIndex && operationSelection.isEncryptionOperation()) {
+            outputWriter.createChunkIndex(blockCount, stepperVersion).saveToFile(ChunkIndex.fetchIndexFile(outputFile));
+        }
+    }
+
+
+
+    /**
+     * Adds the time since {@code phaseStart} to {@code phase}'s time, samples the heap in use, then commits {@code event}
+     * with the Task's operation, thread count, and block geometry if the event is enabled.
+     * The event's own fields must be set first.
+     *
+     * @param phase phase that finished. Cannot be null
+     * @param phaseStart value of {@code System.nanoTime()} when the phase started
+     * @param event event of the phase, or null if the phase has no event of its own
+     * @param characters number of characters, or bytes, that the phase covered
+     */
+    private void finishPhase(ProcessMetrics.Phase phase, long phaseStart, ProcessEvent event, long characters) {
+        if(phase == null) throw new AssertionError("Phase cannot be null");
+
+        phaseNanos[phase.ordinal()] += System.nanoTime() - phaseStart;
+        sampleHeap();
+        if (event != null) {
+            event.commitPhase(operationSelection, nWorkerThreads, blockCount, blockLength, characters);
+        }
+    }
+
+
+
+    /**
+     * Returns the outputs of {@code subtasks}, combined in order. The combined output is not copied into a String.<br><br>
+     *
+     * If the Task is cancelled while waiting, all subtasks are cancelled, and null is returned.
+     *
+     * @param subtasks started subtasks whose outputs are combined. Cannot be null
+     * @return the subtasks' outputs, combined in order, or null if the Task was cancelled
+     * @throws ExecutionException if a subtask throws an exception
+     */
+    private StringBuilder joinWorkerResults(Task<String>[] subtasks) throws ExecutionException {
+        return joinWorkerResults(subtasks, null);
+    }
+
+
+
+    /**
+     * Returns the outputs of {@code subtasks}, combined in order. Each non-empty output is also published to {@code publisher}
+     * as soon as it and every output before it are done. The combined output is not copied into a String.<br><br>
+     *
+     * If the Task is cancelled while waiting, all subtasks are cancelled, and null is returned.
+     *
+     * @param subtasks started subtasks whose outputs are combined. Cannot be null
+     * @param publisher publisher for each output, or null to publish nothing
+     * @return the subtasks' outputs, combined in order, or null if the Task was cancelled
+     * @throws ExecutionException if a subtask throws an exception
+     */
+    private StringBuilder joinWorkerResults(Task<String>[] subtasks, SubmissionPublisher<String> publisher) throws ExecutionException {
+        if(subtasks == null) throw new AssertionError("Subtasks cannot be null");
+
+        long reassemblyStart = System.nanoTime();
+        ProcessEvent.Reassembly reassemblyEvent = new ProcessEvent.Reassembly();
+        reassemblyEvent.begin();
+        StringBuilder runResult = new StringBuilder(100);
+        for (int s = 0; s < subtasks.length; s++) {
+            String subtaskResult = awaitWorkerResult(subtasks, s);
+            if (subtaskResult == null) {
+                return null;
+            }
+
+            runResult.append(subtaskResult);
+            if(publisher != null && !subtaskResult.isEmpty()) {
+                publisher.submit(subtaskResult);
+            }
+        }
+
+        reassemblyEvent.pieces = subtasks.length;
+        finishPhase(ProcessMetrics.Phase.REASSEMBLY, reassemblyStart, reassemblyEvent, runResult.length());
+        return runResult;
+    }
+
+
+
+    /**
+     * Returns {@code workload} split evenly into {@code parts} pieces, for the parts of a split worker.
+     * The split is timed as a partition phase.<br><br>
+     *
+     * Helper to {@code stragglerSplitter}
+     *
+     * @param workload workload of the split worker. Cannot be null
+     * @param parts number of pieces to split the workload into. Must be positive
+     * @return the pieces, in order
+     */
+    private String[] partitionSplitWorkload(String workload, int parts) {
+        long partitionStart = System.nanoTime();
+        ProcessEvent.Partition partitionEvent = new ProcessEvent.Partition();
+        partitionEvent.begin();
+        String[] pieces = assignWorkerLoads(workload, parts, blockLength);
+        partitionEvent.pieces = pieces.length;
+        finishPhase(ProcessMetrics.Phase.PARTITION, partitionStart, partitionEvent, workload.length());
+        return pieces;
     }
 
 
@@ -751,64 +1784,535 @@ final public class ProcessTask extends Task<String[]> {
 
 
     /**
-     * May be useful later.
-     * @param filepath filepath to write to. Cannot be null. If not the empty string, must end in ".txt"
-     * @param contents what to write to the file. Cannot be null
-     * @param doingDryRun true if checking if the file exists, false if writing to the file
-     * @throws FileNotFoundException if the file write fails
+     * Returns the combined output of worker threads that process {@code text} together.<br><br>
+     *
+     * {@code text} is split evenly into {@code nWorkerThreads} pieces, which are processed by subtasks on {@code executorService}.<br>
+     * If {@code runningDiacritics} is true, the subtasks remove diacritics.
+     * If not, the subtasks do the main process, as if {@code text} started after {@code startingSegment} segments
+     * of a larger input.<br><br>
+     *
+     * If the Task is cancelled, all subtasks are cancelled, and null is returned.
+     *
+     * @param text text to process. Cannot be null
+     * @param formattedKey key to process the text with. Cannot be null
+     * @param startingSegment number of segments processed before {@code text}. Cannot be negative
+     * @param runningDiacritics true to remove diacritics, false to do the main process
+     * @param executorService thread pool to run the subtasks on. Cannot be null
+     * @return the subtasks' outputs, combined in order, or null if the Task was cancelled
+     * @throws ExecutionException if a subtask throws an exception
      */
-    private void writeFile(String filepath, String contents, boolean doingDryRun) throws FileNotFoundException {
-        if (filepath == null) {
-            throw new AssertionError("Filepath cannot be null");
+    private String runWorkers(String text, byte[][] formattedKey, long startingSegment, boolean runningDiacritics,
+                              ExecutorService executorService) throws ExecutionException {
+
+        Task<String>[] subtasks = startWorkers(text, formattedKey, startingSegment, runningDiacritics, false, false, null,
+                executorService);
+        if (subtasks == null) {
+            return null;
         }
-        if (contents == null) {
-            throw new AssertionError("Contents cannot be null");
+
+        StringBuilder runResult = joinWorkerResults(subtasks);
+        return (runResult == null) ? null : runResult.toString();
+    }
+
+
+
+    /**
+     * Updates {@code peakHeapBytes} if more heap is in use now than when last sampled.<br><br>
+     *
+     * Helper to {@code createMetrics}, {@code finishPhase}, and {@code sampleProgress}
+     */
+    private void sampleHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        peakHeapBytes = Math.max(peakHeapBytes, runtime.totalMemory() - runtime.freeMemory());
+    }
+
+
+
+    /**
+     * Passes the current stage's progress counter to {@code updateProgress}, and samples the heap in use. Does nothing else
+     * if the stage's progress is not counted.<br>
+     * Workers may count slightly more than the stage's estimated total, so the sample is capped at the total.<br><br>
+     *
+     * Helper to {@code awaitWorkerResult}
+     */
+    private void sampleProgress() {
+        sampleHeap();
+        if (stageCharacters <= 0) {
+            return;
         }
+        updateProgress(Math.min(processedCharacters.sum(), stageCharacters), stageCharacters);
+    }
 
-        File inputFile;
 
-        //Create file from default or the top text input
-        if (filepath.isEmpty()) {
-            inputFile = new File(DEFAULT_INPUT_FILENAME);
-        } else {
-            inputFile = new File(filepath);
+
+    /**
+     * Splits {@code text} evenly into {@code nWorkerThreads} pieces, then starts one subtask on each piece
+     * with {@code executorService}. Returns the started subtasks, in the order of their pieces.<br><br>
+     *
+     * If {@code runningDiacritics} is true, the subtasks remove diacritics.
+     * If not, the subtasks do the main process, as if {@code text} started after {@code startingSegment} segments
+     * of a larger input, between the characters described by {@code letterBefore} and {@code letterAfter}.<br><br>
+     *
+     * If {@code outputWriter} is not null, a new run is started on it, and each main process subtask writes its output
+     * to the writer as one piece of the run. Those subtasks return the empty string.<br><br>
+     *
+     * If the Task is cancelled before the subtasks start, returns null.
+     *
+     * @param text text to process. Cannot be null
+     * @param formattedKey key to process the text with. Cannot be null
+     * @param startingSegment number of segments processed before {@code text}. Cannot be negative
+     * @param runningDiacritics true to remove diacritics, false to do the main process
+     * @param letterBefore true if the character before {@code text} in the larger input is a letter
+     * @param letterAfter true if the character after {@code text} in the larger input is a letter
+     * @param outputWriter writer for the main process subtasks to write to, or null to return their outputs.
+     *                     Must be null if {@code runningDiacritics} is true
+     * @param executorService thread pool to run the subtasks on. Cannot be null
+     * @return the started subtasks, or null if the Task was cancelled
+     */
+    private Task<String>[] startWorkers(String text, byte[][] formattedKey, long startingSegment, boolean runningDiacritics,
+                                        boolean letterBefore, boolean letterAfter,
+                                        ProcessOutputWriter outputWriter, ExecutorService executorService) {
+        if(runningDiacritics && outputWriter != null) throw new AssertionError("Diacritics subtasks cannot write to an output writer");
+        if(text == null) throw new AssertionError("Text cannot be null");
+        if(formattedKey == null) throw new AssertionError("Key cannot be null");
+        if(startingSegment < 0) throw new AssertionError("Starting segment cannot be negative- received " + startingSegment);
+        if(executorService == null) throw new AssertionError("Executor service cannot be null");
+
+        //Create workloads
+        long partitionStart = System.nanoTime();
+        ProcessEvent.Partition partitionEvent = new ProcessEvent.Partition();
+        partitionEvent.begin();
+        String[] subtaskWorkloads = assignWorkerLoads(text, nWorkerThreads, blockLength);
+        if (isCancelled()) {
+            return null;
         }
+        partitionEvent.pieces = subtaskWorkloads.length;
+        finishPhase(ProcessMetrics.Phase.PARTITION, partitionStart, partitionEvent, text.length());
+
+        //Main process: find each piece's starting segment, then start the subtasks
+        if (!runningDiacritics) {
+            long[] startSegments = new long[nWorkerThreads];
+            long currentSegment = startingSegment;
+            for (int i = 0; i < nWorkerThreads; i++) {
+                startSegments[i] = currentSegment;
+                currentSegment += (countAlphaChars(subtaskWorkloads[i]) / blockLength);
 
-        //Check if the input file ends in .txt
-        if (inputFile.getName().length() <= 3 || !inputFile.getName().endsWith(".txt")) {
-            throw new AssertionError("The input file must have a .txt extension");
+                if (isCancelled()) {
+                    return null;
+                }
+            }
+
+            return startMainWorkers(subtaskWorkloads, startSegments, letterBefore, letterAfter, formattedKey, outputWriter,
+                    executorService);
         }
 
-        try {
-            FileWriter writer = new FileWriter(inputFile);
-            if (doingDryRun) {
-                return;
+        //Diacritics: create and start each subtask
+        long[] pieceCharacters = new long[nWorkerThreads];
+        for (int i = 0; i < nWorkerThreads; i++) {
+            pieceCharacters[i] = subtaskWorkloads[i].length();
+        }
+        WorkerProgress progress = new WorkerProgress(pieceCharacters);
+        workerProgress = progress;
+        stragglerSplitter = null;
+
+        Task<String>[] subtasks = new ProcessSubtaskDiacritics[nWorkerThreads];
+        for (int i = 0; i < nWorkerThreads; i++) {
+            ProcessSubtaskDiacritics subtask = new ProcessSubtaskDiacritics(subtaskWorkloads[i]);
+            subtask.setProgressCounter(processedCharacters);
+            subtask.setWorkerProgress(progress, i);
+            subtasks[i] = subtask;
+            executorService.submit(subtask);
+        }
+
+        return subtasks;
+    }
+
+
+
+    /**
+     * Maps {@code inputFile} into {@code nWorkerThreads} regions, then decodes, removes diacritics from, and counts the letters of
+     * every region in parallel. Returns the text split into workloads for the main process subtasks,
+     * and loads {@code startSegments} with each workload's starting segment.<br><br>
+     *
+     * This is the only full pass over the input before the main process.
+     * The workloads come from a prefix sum over the regions' letter counts, without counting the letters again.
+     * If the file is decrypted and has a matching chunk index, the regions start on the index's checkpoints,
+     * so each region is used as a workload directly. A container file's regions start on its chunks, and each subtask
+     * also checks its chunks' checksums.<br><br>
+     *
+     * If the Task is cancelled, all subtasks are cancelled, and null is returned.
+     *
+     * @param inputFile file to scan. Cannot be null. Must exist
+     * @param startSegments array to load with each workload's starting segment. Cannot be null. Length must be {@code nWorkerThreads}
+     * @param executorService thread pool to run the subtasks on. Cannot be null
+     * @return the workloads, or null if the Task was cancelled
+     * @throws IOException if the file cannot be mapped, or it is a container that cannot be decrypted with the operation
+     * @throws ExecutionException if a subtask throws an exception, including finding a corrupted chunk
+     */
+    private String[] scanInputFile(File inputFile, long[] startSegments, ExecutorService executorService)
+            throws IOException, ExecutionException {
+        if(inputFile == null) throw new AssertionError("Input file cannot be null");
+        if(startSegments == null || startSegments.length != nWorkerThreads) throw new AssertionError("Start segments must have "
+                + nWorkerThreads + " indices");
+        if(executorService == null) throw new AssertionError("Executor service cannot be null");
+
+        //Start one subtask on each region
+        long fileReadStart = System.nanoTime();
+        ProcessEvent.FileRead fileReadEvent = new ProcessEvent.FileRead();
+        fileReadEvent.begin();
+        ChunkContainer container = ChunkContainer.isContainerFile(inputFile) ? fetchMatchingContainer(inputFile) : null;
+        ChunkIndex chunkIndex = (container == null) ? fetchMatchingChunkIndex(inputFile) : null;
+        int[] firstChunks = new int[nWorkerThreads + 1];
+        ByteBuffer[] regions = (container != null)
+                ? fetchContainerRegions(inputFile, container, startSegments, firstChunks)
+                : fetchInputRegions(inputFile, chunkIndex, startSegments);
+
+        //The regions' progress is counted in bytes
+        long regionBytes = 0;
+        long[] pieceBytes = new long[nWorkerThreads];
+        for (int r = 0; r < nWorkerThreads; r++) {
+            pieceBytes[r] = regions[r].remaining();
+            regionBytes += pieceBytes[r];
+        }
+        bytesRead = regionBytes;
+        finishPhase(ProcessMetrics.Phase.FILE_READ, fileReadStart, fileReadEvent, regionBytes);
+        startProgressStage(regionBytes);
+        WorkerProgress progress = new WorkerProgress(pieceBytes);
+        workerProgress = progress;
+        stragglerSplitter = null;
+
+        ProcessSubtaskDiacritics[] subtasks = new ProcessSubtaskDiacritics[nWorkerThreads];
+        for (int r = 0; r < nWorkerThreads; r++) {
+            subtasks[r] = new ProcessSubtaskDiacritics(regions[r], container, firstChunks[r], firstChunks[r + 1]);
+            subtasks[r].setProgressCounter(processedCharacters);
+            subtasks[r].setWorkerProgress(progress, r);
+            executorService.submit(subtasks[r]);
+        }
+        regions = null;
+
+        //Collect each region's text and letter count
+        String[] regionTexts = new String[nWorkerThreads];
+        int[] regionLetterCounts = new int[nWorkerThreads];
+        for (int r = 0; r < nWorkerThreads; r++) {
+            ProcessSubtaskDiacritics subtask = subtasks[r];
+            regionTexts[r] = awaitWorkerResult(subtasks, r);
+            if (regionTexts[r] == null) {
+                return null;
             }
-            //Write an empty string to clear the file
-            writer.write("");
+            regionLetterCounts[r] = subtask.getLetterCount();
+        }
 
-            writer = new FileWriter(inputFile, true);
+        //Regions that start on checkpoints or chunks already start on block boundaries
+        if (chunkIndex != null || container != null) {
+            return regionTexts;
+        }
+
+        long partitionStart = System.nanoTime();
+        ProcessEvent.Partition partitionEvent = new ProcessEvent.Partition();
+        partitionEvent.begin();
+        String[] scannedWorkloads = assignScannedWorkerLoads(regionTexts, regionLetterCounts, startSegments);
+        partitionEvent.pieces = scannedWorkloads.length;
+        finishPhase(ProcessMetrics.Phase.PARTITION, partitionStart, partitionEvent, inputFile.length());
+        return scannedWorkloads;
+    }
+
+
+
+    /**
+     * Starts one main process subtask on each of {@code workloads} with {@code executorService}.
+     * Returns the started subtasks, in the order of their workloads.<br><br>
+     *
+     * Each workload is processed as if it started after {@code startSegments} (at the same index) segments of a larger input.
+     * Each subtask is told whether the characters around its workload are letters, so spaces at the workloads' ends are
+     * removed like those inside them.<br>
+     * The subtasks' progress is tracked in a new {@code WorkerProgress}. If stragglers are split, and the outputs are returned,
+     * a new {@code StragglerSplitter} splits the subtasks' stragglers.<br>
+     * If {@code outputWriter} is not null, a new run is started on it, and each subtask writes its output
+     * to the writer as one piece of the run. The subtasks then return the empty string.<br><br>
+     *
+     * If the Task is cancelled before the subtasks start, returns null.
+     *
+     * @param workloads text for each subtask to process. Cannot be null. Length must be {@code nWorkerThreads}. No index can be null
+     * @param startSegments number of segments before each workload. Cannot be null. Length must be {@code nWorkerThreads}.
+     *                      No index can be negative
+     * @param letterBefore true if the character before the first workload in the larger input is a letter
+     * @param letterAfter true if the character after the last workload in the larger input is a letter
+     * @param formattedKey key to process the workloads with. Cannot be null
+     * @param outputWriter writer for the subtasks to write to, or null to return their outputs
+     * @param executorService thread pool to run the subtasks on. Cannot be null
+     * @return the started subtasks, or null if the Task was cancelled. Each index of {@code workloads} is set to null
+     * once its subtask is created
+     */
+    private Task<String>[] startMainWorkers(String[] workloads, long[] startSegments, boolean letterBefore, boolean letterAfter,
+                                            byte[][] formattedKey, ProcessOutputWriter outputWriter,
+                                            ExecutorService executorService) {
+        if(workloads == null || workloads.length != nWorkerThreads) throw new AssertionError("Workloads must have "
+                + nWorkerThreads + " indices");
+        if(startSegments == null || startSegments.length != nWorkerThreads) throw new AssertionError("Start segments must have "
+                + nWorkerThreads + " indices");
+        if(formattedKey == null) throw new AssertionError("Key cannot be null");
+        if(executorService == null) throw new AssertionError("Executor service cannot be null");
+
+        if (isCancelled()) {
+            return null;
+        }
+
+        //Each subtask writes one piece of a new output run, if writing
+        if (outputWriter != null) {
+            outputWriter.beginRun(nWorkerThreads);
+        }
+
+        //Track each worker. If stragglers can be split, keep the workloads to split them
+        //Removing spaces depends on where pieces start, so those outputs would change if split
+        long[] pieceCharacters = new long[nWorkerThreads];
+        for (int i = 0; i < nWorkerThreads; i++) {
+            if(workloads[i] == null) throw new AssertionError("Workload " + i + " cannot be null");
+            pieceCharacters[i] = workloads[i].length();
+        }
+        WorkerProgress progress = new WorkerProgress(pieceCharacters);
+        workerProgress = progress;
+
+        //Find whether each workload follows and precedes a letter. Empty workloads pass their neighbors' letters through
+        boolean[] lettersBefore = new boolean[nWorkerThreads];
+        boolean[] lettersAfter = new boolean[nWorkerThreads];
+        boolean previousLetter = letterBefore;
+        for (int i = 0; i < nWorkerThreads; i++) {
+            lettersBefore[i] = previousLetter;
+            if (!workloads[i].isEmpty()) {
+                previousLetter = Character.isAlphabetic(workloads[i].charAt(workloads[i].length() - 1));
+            }
+        }
+        boolean nextLetter = letterAfter;
+        for (int i = nWorkerThreads - 1; i >= 0; i--) {
+            lettersAfter[i] = nextLetter;
+            if (!workloads[i].isEmpty()) {
+                nextLetter = Character.isAlphabetic(workloads[i].charAt(0));
+            }
+        }
+
+        boolean splitting = getSplittingStragglers() && outputWriter == null
+                && !(operationSelection.isEncryptionOperation() && punctSelection == PunctuationSelection.REMOVE_SPACES);
+        String[] splittableWorkloads = splitting ? workloads.clone() : null;
+
+        //Create each subtask. Unless stragglers can be split, the subtasks hold the only references to their workloads
+        Task<String>[] subtasks = new ProcessSubtaskMain[nWorkerThreads];
+        for (int i = 0; i < nWorkerThreads; i++) {
+            if(startSegments[i] < 0) throw new AssertionError("Start segment " + i + " cannot be negative- received "
+                    + startSegments[i]);
+
+            ProcessSubtaskMain subtask = new ProcessSubtaskMain(workloads[i], formattedKey,
+                    operationSelection, punctSelection, startSegments[i], outputWriter, i);
+            subtask.setAdjacentLetters(lettersBefore[i], lettersAfter[i]);
+            subtask.setProgressCounter(processedCharacters);
+            subtask.setWorkerProgress(progress, i);
+            subtasks[i] = subtask;
+            workloads[i] = null;
+        }
+        stragglerSplitter = splitting
+                ? new StragglerSplitter(subtasks, splittableWorkloads, startSegments.clone(), formattedKey, operationSelection,
+                        punctSelection, blockLength, nWorkerThreads, this::partitionSplitWorkload, progress, processedCharacters,
+                        executorService)
+                : null;
+
+        //Start the subtasks
+        for (Task<String> subtask : subtasks) {
+            executorService.submit(subtask);
+        }
+
+        return subtasks;
+    }
+
+
+
+    /**
+     * Starts counting the progress of a new stage, which processes {@code totalCharacters} characters.
+     * The shared counter is reset, and the loading screen is told that no characters are processed yet.
+     *
+     * @param totalCharacters number of characters the stage processes. Cannot be negative
+     */
+    private void startProgressStage(long totalCharacters) {
+        if(totalCharacters < 0) throw new AssertionError("Total characters cannot be negative- received " + totalCharacters);
+
+        processedCharacters.reset();
+        stageCharacters = totalCharacters;
+        if (totalCharacters > 0) {
+            updateProgress(0, totalCharacters);
+        }
+    }
 
-            //Write 100,000 characters at a time
-            int startIndex = 0;
-            int endIndex = 100000;
-            while (endIndex < contents.length()) {
-                if (isCancelled()) {
-                    return;
-                }
 
-                writer.write(contents.substring(startIndex, endIndex));
 
-                startIndex += 100000;
-                endIndex += 100000;
+    /**
+     * Waits for {@code subtasks} to write their outputs to {@code outputWriter}.
+     * Returns a message saying where the output was written.<br><br>
+     *
+     * Each subtask writes its output straight to its own place in the output file, so the combined output is never
+     * assembled or held in memory.<br>
+     * The written output is stripped, matching the output shown on the results screen.
+     * If chosen, the output file's chunk index is saved once every subtask finishes.<br><br>
+     *
+     * If the Task is cancelled while waiting, all subtasks are cancelled, and null is returned.
+     *
+     * @param subtasks started subtasks that write to {@code outputWriter}. Cannot be null
+     * @param outputWriter writer that the subtasks write to. Cannot be null
+     * @param outputFile file that {@code outputWriter} writes to. Cannot be null
+     * @return message with the output file's location, or null if the Task was cancelled
+     * @throws ExecutionException if a subtask throws an exception, including failing to write its output
+     * @throws IOException if the output file's chunk index cannot be saved
+     */
+    private String storeWorkerResults(Task<String>[] subtasks, ProcessOutputWriter outputWriter, File outputFile)
+            throws ExecutionException, IOException {
+        if(subtasks == null) throw new AssertionError("Subtasks cannot be null");
+        if(outputWriter == null) throw new AssertionError("Output writer cannot be null");
+        if(outputFile == null) throw new AssertionError("Output file cannot be null");
+
+        long outputWriteStart = System.nanoTime();
+        ProcessEvent.OutputWrite outputWriteEvent = new ProcessEvent.OutputWrite();
+        outputWriteEvent.begin();
+        for (int s = 0; s < subtasks.length; s++) {
+            //The subtasks return the empty string, since their outputs are already written
+            if (awaitWorkerResult(subtasks, s) == null) {
+                return null;
             }
-            writer.write(contents.substring(startIndex));
 
+            //The first piece is written. Later pieces may still be executing
+            if (s == 0) {
+                updateMessage(LoadingController.LOADING_STATE_NAMES[3]);
+            }
+        }
+
+        finishOutputFile(outputWriter, outputFile);
+        bytesWritten = outputFile.length();
+        outputWriteEvent.fileBytes = bytesWritten;
+        finishPhase(ProcessMetrics.Phase.OUTPUT_WRITE, outputWriteStart, outputWriteEvent, outputWriter.getCharsWritten());
+        return createOutputNotice(outputWriter, outputFile);
+    }
+
+
+
+    /**
+     * Processes the file {@code inputFile} one chunk at a time, writing each processed chunk to the file
+     * {@code outputFile}. Returns a message saying where the output was written.<br><br>
+     *
+     * About {@code StepperFields.STREAM_CHUNK_LENGTH} characters are read at a time, so memory use depends on the chunk size,
+     * not the file size.<br>
+     * Each chunk is cut so that the letters before the cut fill a whole number of blocks. The rest of the chunk is carried
+     * into the next chunk, which continues the process from the segment where the previous chunk stopped.
+     * Chunk boundaries behave like the boundaries between worker threads' pieces, so each chunk is told whether the
+     * characters around it are letters.<br><br>
+     *
+     * Line breaks are converted to "\n", and the output is stripped, matching the non-streamed file input.
+     * If chosen, the output file's chunk index is saved after the last chunk.<br>
+     * Progress is counted over the whole file, so the loading screen shows one stage for all chunks.
+     *
+     * @param inputFile file to process. Cannot be null. Must be a UTF-8 text file
+     * @param outputFile file to write the output to. Cannot be null. If the file exists, its contents are erased
+     * @param formattedKey key to process the file with. Cannot be null
+     * @param executorService thread pool to run the subtasks on. Cannot be null
+     * @return message with the output file's location, or null if the Task was cancelled
+     * @throws IOException if the input file cannot be read, or the output file cannot be written
+     * @throws ExecutionException if a subtask throws an exception
+     */
+    private String streamFile(File inputFile, File outputFile, byte[][] formattedKey, ExecutorService executorService)
+            throws IOException, ExecutionException {
+
+        if(inputFile == null) throw new AssertionError("Input file cannot be null");
+        if(outputFile == null) throw new AssertionError("Output file cannot be null");
+        if(formattedKey == null) throw new AssertionError("Key cannot be null");
+        if(executorService == null) throw new AssertionError("Executor service cannot be null");
+
+        char[] readBuffer = new char[STREAM_CHUNK_LENGTH];
+        StringBuilder chunk = new StringBuilder(STREAM_CHUNK_LENGTH);
+        boolean previousCharWasReturn = false;
+        boolean endOfFile = false;
+        boolean letterBefore = false;
+        long currentSegment = 0;
+
+        //Every character passes through both runs, so the stage covers the file twice. The file's length in bytes
+        //approximates its length in characters
+        updateMessage(LoadingController.LOADING_STATE_NAMES[2]);
+        startProgressStage(2 * inputFile.length());
+
+        try (Reader reader = new InputStreamReader(new FileInputStream(inputFile), StandardCharsets.UTF_8);
+             ProcessOutputWriter writer = createOutputWriter(outputFile)) {
+
+            while(!endOfFile) {
+                if(isCancelled()) {
+                    return null;
+                }
+
+                //Fill the read buffer
+                long fileReadStart = System.nanoTime();
+                ProcessEvent.FileRead fileReadEvent = new ProcessEvent.FileRead();
+                fileReadEvent.begin();
+                int filled = 0;
+                int charsRead = 0;
+                while(filled < readBuffer.length
+                        && (charsRead = reader.read(readBuffer, filled, readBuffer.length - filled)) != -1) {
+                    filled += charsRead;
+                }
+                endOfFile = (charsRead == -1);
+                fileReadEvent.streamed = true;
+                finishPhase(ProcessMetrics.Phase.FILE_READ, fileReadStart, fileReadEvent, filled);
+
+                //Add the new text to the chunk, converting line breaks to "\n"
+                for(int i = 0; i < filled; i++) {
+                    char currentChar = readBuffer[i];
+
+                    if(currentChar == '\r' || currentChar == '\u0085' || currentChar == '\u2028' || currentChar == '\u2029') {
+                        chunk.append('\n');
+                    }
+                    else if(!(currentChar == '\n' && previousCharWasReturn)) {
+                        chunk.append(currentChar);
+                    }
+
+                    previousCharWasReturn = (currentChar == '\r');
+                }
+
+                //Run 1: diacritics workers
+                long diacriticsStart = System.nanoTime();
+                ProcessEvent.DiacriticsStage diacriticsEvent = new ProcessEvent.DiacriticsStage();
+                diacriticsEvent.begin();
+                long chunkCharacters = chunk.length();
+                String formattedChunk = runWorkers(chunk.toString(), formattedKey, 0, true, executorService);
+                if(formattedChunk == null) {
+                    return null;
+                }
+                finishPhase(ProcessMetrics.Phase.DIACRITICS, diacriticsStart, diacriticsEvent, chunkCharacters);
+
+                //Keep the text after the cut for the next chunk. The last chunk is never cut
+                int cutIndex = endOfFile ? formattedChunk.length() : findStreamCut(formattedChunk);
+                String chunkHead = formattedChunk.substring(0, cutIndex);
+                boolean letterAfter = (cutIndex < formattedChunk.length()) && Character.isAlphabetic(formattedChunk.charAt(cutIndex));
+                chunk.setLength(0);
+                chunk.append(formattedChunk, cutIndex, formattedChunk.length());
+                formattedChunk = null;
+
+                //Run 2: main process workers, which write their outputs straight to the output file
+                if(!chunkHead.isEmpty()) {
+                    long mainStart = System.nanoTime();
+                    Task<String>[] subtasks = startWorkers(chunkHead, formattedKey, currentSegment, false, letterBefore, letterAfter,
+                            writer, executorService);
+                    if(subtasks == null || joinWorkerResults(subtasks) == null) {
+                        return null;
+                    }
+                    charactersProcessed += chunkHead.length();
+                    finishPhase(ProcessMetrics.Phase.MAIN, mainStart, null, chunkHead.length());
+
+                    currentSegment += countAlphaChars(chunkHead) / blockLength;
+                    letterBefore = Character.isAlphabetic(chunkHead.charAt(chunkHead.length() - 1));
+                }
+            }
 
-            writer.close();
-            System.out.println("WRITE FILE: Successfully wrote to the file.");
-        } catch (IOException e) {
-            throw new FileNotFoundException("error during file write");
+            long outputWriteStart = System.nanoTime();
+            ProcessEvent.OutputWrite outputWriteEvent = new ProcessEvent.OutputWrite();
+            outputWriteEvent.begin();
+            finishOutputFile(writer, outputFile);
+            bytesRead = inputFile.length();
+            bytesWritten = outputFile.length();
+            outputWriteEvent.fileBytes = bytesWritten;
+            finishPhase(ProcessMetrics.Phase.OUTPUT_WRITE, outputWriteStart, outputWriteEvent, writer.getCharsWritten());
+            return createOutputNotice(writer, outputFile);
         }
     }
 }
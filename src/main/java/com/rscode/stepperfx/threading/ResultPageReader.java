@@ -0,0 +1,386 @@
+package com.rscode.stepperfx.threading;
+
+import com.rscode.stepperfx.integration.OperationSelection;
+import com.rscode.stepperfx.integration.PunctuationSelection;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+
+import static com.rscode.stepperfx.integration.StepperFields.RESULT_PAGE_LENGTH;
+
+/**
+ * Decrypts one page of a large encrypted file at a time, for browsing the result without decrypting the whole file.<br><br>
+ *
+ * Each page covers about {@code RESULT_PAGE_LENGTH} bytes of the file, and never more than {@code RESULT_PAGE_LENGTH}
+ * characters, unless a page has too few letters to fill a key block. Every page except the last ends right before a letter
+ * that starts a key block, so each page is decrypted on its own, with the keystream seeked to the page's starting segment.<br><br>
+ *
+ * The reader keeps a page table of each page's (byte offset, letter offset), filled in as pages are read.
+ * A page that was read before is decrypted again from its table entry, without reading anything before it.
+ * Reading a page past the end of the table reads every page up to it first.<br><br>
+ *
+ * The reader must be closed once browsing ends.
+ */
+final public class ResultPageReader implements Closeable {
+
+    /**
+     * Number of characters per key block of the operation
+     */
+    private final int blockLength;
+
+    /**
+     * Channel to the encrypted file
+     */
+    private final FileChannel channel;
+
+    /**
+     * Position after the last byte of encrypted text in the file
+     */
+    private final long dataEnd;
+
+    /**
+     * Position of the first byte of encrypted text in the file
+     */
+    private final long dataStart;
+
+    /**
+     * Key to decrypt the pages with
+     */
+    private final byte[][] formattedKey;
+
+    /**
+     * Number of the last page, or -1 if the last page has not been read yet
+     */
+    private int lastPage;
+
+    /**
+     * Which decryption operation the reader carries out. Example: Stepper 2, decryption.
+     */
+    private final OperationSelection operationSelection;
+
+    /**
+     * Start of each page found so far, as {byte offset, letter offset}. Each letter offset is a multiple of {@code blockLength}
+     */
+    private final ArrayList<long[]> pageStarts;
+
+    /**
+     * Punctuation preferences for the operation
+     */
+    private final PunctuationSelection punctSelection;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates a new reader that decrypts the encrypted text of {@code inputFile} on the interval [{@code dataStart},
+     * {@code dataEnd}), one page at a time.
+     *
+     * @param inputFile UTF-8 file to browse. Cannot be null. Must exist
+     * @param dataStart position of the first byte of encrypted text. Must be on the interval [0, {@code dataEnd}]
+     * @param dataEnd position after the last byte of encrypted text. Cannot be past the end of the file
+     * @param formattedKey key blocks to decrypt with. Cannot be null. No subarrays can be null
+     * @param operationSelection operation to do. Cannot be null. Must be a decryption operation
+     * @param punctSelection punctuation preferences, as a PunctuationSelection object
+     * @throws IOException if the file cannot be opened
+     */
+    public ResultPageReader(File inputFile, long dataStart, long dataEnd, byte[][] formattedKey,
+                            OperationSelection operationSelection, PunctuationSelection punctSelection) throws IOException {
+        if(inputFile == null) throw new AssertionError("Input file cannot be null");
+        if(dataStart < 0 || dataStart > dataEnd || dataEnd > inputFile.length()) throw new AssertionError("Data range ["
+                + dataStart + ", " + dataEnd + ") must be inside the file (length " + inputFile.length() + ")");
+        if(formattedKey == null || formattedKey.length == 0 || formattedKey[0] == null) throw new AssertionError("Key cannot be null or empty");
+        if(operationSelection == null || operationSelection.isEncryptionOperation())
+            throw new AssertionError("Operation must be a decryption operation- received " + operationSelection);
+
+        this.dataStart = dataStart;
+        this.dataEnd = dataEnd;
+        this.formattedKey = formattedKey;
+        this.blockLength = formattedKey[0].length;
+        this.operationSelection = operationSelection;
+        this.punctSelection = punctSelection;
+        this.lastPage = -1;
+        pageStarts = new ArrayList<>();
+        pageStarts.add(new long[] {dataStart, 0});
+        channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // HELPERS
+
+    /**
+     * Returns the number of bytes taken by the first {@code charCount} characters of {@code window}, decoded as UTF-8.<br><br>
+     *
+     * Helper to {@code decryptPage}
+     *
+     * @param window bytes to decode. Cannot be null
+     * @param charCount number of characters to measure. Cannot be negative.
+     *                  Cannot end between the two halves of a surrogate pair
+     * @return number of bytes decoded into the characters
+     */
+    private static int countDecodedBytes(ByteBuffer window, int charCount) {
+        if(window == null) throw new AssertionError("Window cannot be null");
+        if(charCount < 0) throw new AssertionError("Character count cannot be negative- received " + charCount);
+
+        ByteBuffer in = window.duplicate();
+        createDecoder().decode(in, CharBuffer.allocate(charCount), true);
+        return in.position() - window.position();
+    }
+
+
+
+    /**
+     * Returns a UTF-8 decoder that replaces malformed bytes, like the one used by {@code ProcessSubtaskDiacritics}.<br><br>
+     *
+     * Helper to {@code countDecodedBytes} and {@code findRawIndex}
+     *
+     * @return a new decoder
+     */
+    private static CharsetDecoder createDecoder() {
+        return StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+
+
+    /**
+     * Returns the decrypted text of page {@code page}, and adds the next page's start to the page table if it is not there yet.<br><br>
+     *
+     * The page's bytes are formatted by a {@code ProcessSubtaskDiacritics}, then cut before the letter that starts the
+     * page's last key block. If the page has no such letter, more bytes are read until it does, or the data ends.
+     * The text before the cut is decrypted by a {@code ProcessSubtaskMain}, starting at the page's segment.<br><br>
+     *
+     * Helper to {@code readPage}
+     *
+     * @param page number of the page. Must be on the interval [0, page table size)
+     * @return the page's decrypted text
+     * @throws IOException if the file cannot be read
+     * @throws ExecutionException if formatting or decryption fails
+     * @throws InterruptedException if the thread is interrupted while waiting on a subtask
+     */
+    private String decryptPage(int page) throws IOException, ExecutionException, InterruptedException {
+        if(page < 0 || page >= pageStarts.size()) throw new AssertionError("Page must be on the interval [0, "
+                + pageStarts.size() + ")- received " + page);
+
+        long startByte = pageStarts.get(page)[0];
+        long startLetter = pageStarts.get(page)[1];
+        long windowBytes = RESULT_PAGE_LENGTH;
+
+        while(true) {
+            boolean reachingEnd = (startByte + windowBytes >= dataEnd);
+            ByteBuffer window = loadWindow(startByte, reachingEnd ? dataEnd - startByte : windowBytes);
+
+            ProcessSubtaskDiacritics formatter = new ProcessSubtaskDiacritics(window);
+            formatter.run();
+            String formatted = formatter.get();
+
+            //The last page takes all of its text
+            if(reachingEnd) {
+                if(page == pageStarts.size() - 1) {
+                    lastPage = page;
+                }
+                return decryptText(formatted, startLetter);
+            }
+
+            //Otherwise, cut before the letter that starts the last (possibly partial) key block
+            int letters = formatter.getLetterCount();
+            long lettersBeforeCut = (letters > 0) ? ((letters - 1) / blockLength) * (long) blockLength : 0;
+            if(lettersBeforeCut == 0) {
+                windowBytes *= 2;
+                continue;
+            }
+
+            int cutIndex = 0;
+            for(long seen = 0; seen < lettersBeforeCut || !(formatted.charAt(cutIndex) >= 97 && formatted.charAt(cutIndex) <= 122); cutIndex++) {
+                if(formatted.charAt(cutIndex) >= 97 && formatted.charAt(cutIndex) <= 122) {
+                    seen++;
+                }
+            }
+
+            if(page == pageStarts.size() - 1) {
+                long cutByte = startByte + countDecodedBytes(window, findRawIndex(window, cutIndex));
+                pageStarts.add(new long[] {cutByte, startLetter + lettersBeforeCut});
+            }
+            return decryptText(formatted.substring(0, cutIndex), startLetter);
+        }
+    }
+
+
+
+    /**
+     * Returns {@code text} decrypted by a {@code ProcessSubtaskMain}, with the keystream starting at letter {@code startLetter}.<br><br>
+     *
+     * Helper to {@code decryptPage}
+     *
+     * @param text formatted text to decrypt. Cannot be null
+     * @param startLetter letter offset of the text's first letter. Must be a non-negative multiple of {@code blockLength}
+     * @return decrypted text
+     * @throws ExecutionException if decryption fails
+     * @throws InterruptedException if the thread is interrupted while waiting on the subtask
+     */
+    private String decryptText(String text, long startLetter) throws ExecutionException, InterruptedException {
+        if(text == null) throw new AssertionError("Text cannot be null");
+        if(startLetter < 0 || startLetter % blockLength != 0) throw new AssertionError("Start letter must be a non-negative multiple of "
+                + blockLength + "- received " + startLetter);
+
+        ProcessSubtaskMain decrypter = new ProcessSubtaskMain(text, formattedKey, operationSelection, punctSelection,
+                (int) (startLetter / blockLength));
+        decrypter.run();
+        return decrypter.get();
+    }
+
+
+
+    /**
+     * Returns the index in the decoded characters of {@code window} that matches index {@code formattedIndex} of its formatted text.<br><br>
+     *
+     * Formatting turns each "\r\n" line break into one character, and keeps every other character, so the two indices only
+     * differ by the number of "\r\n" line breaks before the index.<br><br>
+     *
+     * Helper to {@code decryptPage}
+     *
+     * @param window bytes that were formatted. Cannot be null
+     * @param formattedIndex index in the formatted text. Cannot be negative. Cannot be inside a "\r\n" line break
+     * @return matching index in the decoded characters
+     */
+    private static int findRawIndex(ByteBuffer window, int formattedIndex) {
+        if(window == null) throw new AssertionError("Window cannot be null");
+        if(formattedIndex < 0) throw new AssertionError("Formatted index cannot be negative- received " + formattedIndex);
+
+        CharBuffer decoded = CharBuffer.allocate(window.remaining());
+        createDecoder().decode(window.duplicate(), decoded, true);
+        decoded.flip();
+
+        int rawIndex = 0;
+        boolean previousCharWasReturn = false;
+        for(int formatted = 0; formatted < formattedIndex || (decoded.get(rawIndex) == '\n' && previousCharWasReturn); rawIndex++) {
+            char currentChar = decoded.get(rawIndex);
+            if(!(currentChar == '\n' && previousCharWasReturn)) {
+                formatted++;
+            }
+            previousCharWasReturn = (currentChar == '\r');
+        }
+
+        return rawIndex;
+    }
+
+
+
+    /**
+     * Returns {@code length} bytes of the file, starting at {@code position}. If the window ends before {@code dataEnd},
+     * it is shortened so it does not end inside a UTF-8 character.<br><br>
+     *
+     * Helper to {@code decryptPage}
+     *
+     * @param position position of the window's first byte. Must be on the interval [{@code dataStart}, {@code dataEnd}]
+     * @param length number of bytes to load. Cannot be negative. Cannot reach past {@code dataEnd}
+     * @return the window's bytes, ready to be read
+     * @throws IOException if the file cannot be read
+     */
+    private ByteBuffer loadWindow(long position, long length) throws IOException {
+        if(position < dataStart || length < 0 || position + length > dataEnd) throw new AssertionError("Window at "
+                + position + " of length " + length + " must be inside [" + dataStart + ", " + dataEnd + ")");
+        if(length > Integer.MAX_VALUE) throw new IOException("A page of the file has too few letters to be browsed");
+
+        ByteBuffer window = ByteBuffer.allocate((int) length);
+        while(window.hasRemaining()) {
+            if(channel.read(window, position + window.position()) < 0) {
+                throw new IOException("The file ended early. Was it changed while browsing?");
+            }
+        }
+        window.flip();
+
+        //Drop the last character, which may be incomplete. The page is cut before it anyway
+        if(position + length < dataEnd) {
+            int end = window.limit();
+            while(end > 0 && (window.get(end - 1) & 0xC0) == 0x80) {
+                end--;
+            }
+            window.limit(Math.max(end - 1, 0));
+        }
+
+        return window;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Closes the file. Closing a closed reader does nothing.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+
+
+    /**
+     * Returns an estimate of the number of pages, from the average size of the pages found so far.
+     * Once the last page is read, returns the exact number of pages.
+     *
+     * @return estimated number of pages, at least 1
+     */
+    public synchronized int estimatePageCount() {
+        if(lastPage >= 0) {
+            return lastPage + 1;
+        }
+
+        int pagesFound = pageStarts.size() - 1;
+        if(pagesFound == 0) {
+            return Math.max(1, (int) Math.ceil((dataEnd - dataStart) / (double) RESULT_PAGE_LENGTH));
+        }
+        double bytesPerPage = (pageStarts.getLast()[0] - dataStart) / (double) pagesFound;
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(pageStarts.size(), Math.ceil((dataEnd - dataStart) / bytesPerPage)));
+    }
+
+
+
+    /**
+     * Returns whether page {@code page} is known to be the last page. A page is only known to be the last once it is read.
+     *
+     * @param page number of the page. Cannot be negative
+     * @return true if the page is the last page
+     */
+    public synchronized boolean isLastPage(int page) {
+        if(page < 0) throw new AssertionError("Page cannot be negative- received " + page);
+        return page == lastPage;
+    }
+
+
+
+    /**
+     * Returns the decrypted text of page {@code page}. Any pages before it that were not read yet are read first.
+     *
+     * @param page number of the page to read. Cannot be negative. Cannot be after the last page
+     * @return the page's decrypted text
+     * @throws IOException if the file cannot be read, or the page is after the last page
+     * @throws ExecutionException if formatting or decryption fails
+     * @throws InterruptedException if the thread is interrupted while waiting on a subtask
+     */
+    public synchronized String readPage(int page) throws IOException, ExecutionException, InterruptedException {
+        if(page < 0) throw new AssertionError("Page cannot be negative- received " + page);
+
+        while(pageStarts.size() <= page) {
+            if(lastPage >= 0) {
+                throw new IOException("Page " + (page + 1) + " is after the last page (" + (lastPage + 1) + ")");
+            }
+            decryptPage(pageStarts.size() - 1);
+        }
+        return decryptPage(page);
+    }
+}
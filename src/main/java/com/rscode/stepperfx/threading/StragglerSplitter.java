@@ -0,0 +1,378 @@
+package com.rscode.stepperfx.threading;
+
+import com.rscode.stepperfx.integration.OperationSelection;
+import com.rscode.stepperfx.integration.PunctuationSelection;
+import javafx.concurrent.Task;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Splits the straggling workers of one main process stage of a {@code ProcessTask} among the stage's idle threads.<br><br>
+ *
+ * The splitter holds what is needed to restart any unfinished worker's piece as several parts: each worker's workload,
+ * its starting segment, the key, and the thread pool. A worker's workload is released once its output is returned.<br><br>
+ *
+ * A split worker is cancelled, and its whole piece is split into blocks for the idle threads and itself. The parts start
+ * at the segments where their text falls in the piece, so their combined output matches the worker's.
+ * The worker's counted progress is discarded, since the parts redo its work.<br><br>
+ *
+ * Removing spaces while encrypting depends on where pieces start, so stages with that setting should not be split.
+ */
+final public class StragglerSplitter {
+
+    /**
+     * Most of its piece that a straggling worker can have processed for it to be split. Past this, splitting loses more work
+     * than it saves. Must be on the interval [0, 1]
+     */
+    final public static double MAX_SPLIT_PROGRESS = 0.5;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Number of characters per key block of the operation
+     */
+    private final int blockLength;
+
+    /**
+     * Thread pool that the stage's subtasks run on
+     */
+    private final ExecutorService executorService;
+
+    /**
+     * Key that the stage's workloads are processed with
+     */
+    private final byte[][] formattedKey;
+
+    /**
+     * Most parts a worker can be split into
+     */
+    private final int maxParts;
+
+    /**
+     * Which operation the stage carries out. Example: Stepper 2, decryption.
+     */
+    private final OperationSelection operationSelection;
+
+    /**
+     * Parts that each worker was split into, in order, or null at the index of a worker that is not split
+     */
+    private final Task<String>[][] parts;
+
+    /**
+     * Splits a workload into the given number of pieces, each with a multiple of {@code blockLength} letters except the last
+     */
+    private final BiFunction<String, Integer, String[]> partitioner;
+
+    /**
+     * Shared counter that the stage's subtasks add their processed characters to, or null if progress is not counted
+     */
+    private final LongAdder processedCharacters;
+
+    /**
+     * Progress of the stage's workers
+     */
+    private final WorkerProgress progress;
+
+    /**
+     * Punctuation preferences for the stage
+     */
+    private final PunctuationSelection punctSelection;
+
+    /**
+     * Number of segments before each worker's workload
+     */
+    private final long[] startSegments;
+
+    /**
+     * Subtasks started for the stage, one for each worker
+     */
+    private final Task<String>[] subtasks;
+
+    /**
+     * Text of each worker's workload. Set to null once the worker's output is returned
+     */
+    private final String[] workloads;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates a splitter for the stage of {@code subtasks}, which process {@code workloads} with {@code formattedKey}.
+     * The subtasks' parts are created like them, with {@code operationSelection} and {@code punctSelection},
+     * and report to {@code progress} and {@code processedCharacters}.
+     *
+     * @param subtasks subtasks created for the stage. Cannot be null
+     * @param workloads text of each subtask's workload. Cannot be null. Must have the same length as {@code subtasks}
+     * @param startSegments number of segments before each workload. Cannot be null. Must have the same length as {@code subtasks}
+     * @param formattedKey key that the workloads are processed with. Cannot be null
+     * @param operationSelection operation of the stage. Cannot be null
+     * @param punctSelection punctuation preferences of the stage. Cannot be null
+     * @param blockLength number of characters per key block. Must be positive
+     * @param maxParts most parts a worker can be split into. Must be positive
+     * @param partitioner splits a workload into the given number of pieces. Cannot be null
+     * @param progress progress of the subtasks. Cannot be null. Must have the same worker count as {@code subtasks}
+     * @param processedCharacters counter the subtasks add their processed characters to, or null if progress is not counted
+     * @param executorService thread pool that the subtasks run on. Cannot be null
+     */
+    public StragglerSplitter(Task<String>[] subtasks, String[] workloads, long[] startSegments, byte[][] formattedKey,
+                             OperationSelection operationSelection, PunctuationSelection punctSelection,
+                             int blockLength, int maxParts, BiFunction<String, Integer, String[]> partitioner,
+                             WorkerProgress progress, LongAdder processedCharacters, ExecutorService executorService) {
+        if(subtasks == null) throw new AssertionError("Subtasks cannot be null");
+        if(workloads == null || workloads.length != subtasks.length) throw new AssertionError("Workloads must have "
+                + subtasks.length + " indices");
+        if(startSegments == null || startSegments.length != subtasks.length) throw new AssertionError("Start segments must have "
+                + subtasks.length + " indices");
+        if(formattedKey == null) throw new AssertionError("Key cannot be null");
+        if(operationSelection == null) throw new AssertionError("Operation cannot be null");
+        if(punctSelection == null) throw new AssertionError("Punctuation selection cannot be null");
+        if(blockLength <= 0) throw new AssertionError("Block length must be positive- received " + blockLength);
+        if(maxParts <= 0) throw new AssertionError("Max parts must be positive- received " + maxParts);
+        if(partitioner == null) throw new AssertionError("Partitioner cannot be null");
+        if(progress == null || progress.getWorkerCount() != subtasks.length) throw new AssertionError("Progress must have "
+                + subtasks.length + " workers");
+        if(executorService == null) throw new AssertionError("Executor service cannot be null");
+
+        this.subtasks = subtasks;
+        this.workloads = workloads;
+        this.startSegments = startSegments;
+        this.formattedKey = formattedKey;
+        this.operationSelection = operationSelection;
+        this.punctSelection = punctSelection;
+        this.blockLength = blockLength;
+        this.maxParts = maxParts;
+        this.partitioner = partitioner;
+        this.progress = progress;
+        this.processedCharacters = processedCharacters;
+        this.executorService = executorService;
+        this.parts = new ProcessSubtaskMain[subtasks.length][];
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // HELPERS
+
+    /**
+     * Checks that {@code worker} is a worker number.
+     * Helper to the methods that take a worker number
+     *
+     * @param worker worker number to check
+     */
+    private void checkWorker(int worker) {
+        if(worker < 0 || worker >= subtasks.length) throw new AssertionError("Worker must be on the interval [0, "
+                + subtasks.length + ")- received " + worker);
+    }
+
+
+
+    /**
+     * Returns the number of English ASCII letters in {@code text}.<br><br>
+     *
+     * Helper to {@code splitWorker}
+     *
+     * @param text text to count the letters of. Cannot be null
+     * @return number of letters
+     */
+    private static int countLetters(String text) {
+        int letters = 0;
+        for(int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                letters++;
+            }
+        }
+        return letters;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // GETTERS
+
+    /**
+     * Returns the subtasks of the stage that this splitter splits
+     * @return the stage's subtasks
+     */
+    public Task<String>[] getSubtasks() {
+        return subtasks;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Cancels the parts of every split worker
+     */
+    public void cancelParts() {
+        for(Task<String>[] workerParts : parts) {
+            if(workerParts != null) {
+                for(Task<String> part : workerParts) {
+                    part.cancel();
+                }
+            }
+        }
+    }
+
+
+
+    /**
+     * Releases worker {@code worker}'s workload once its output is returned. The worker can no longer be split
+     * @param worker worker number. Must be on the interval [0, {@code getSubtasks().length})
+     */
+    public void finishWorker(int worker) {
+        checkWorker(worker);
+        workloads[worker] = null;
+    }
+
+
+
+    /**
+     * Returns whether worker {@code worker} was split and its parts' outputs have not been joined yet
+     * @param worker worker number. Must be on the interval [0, {@code getSubtasks().length})
+     * @return true if the worker's output is its parts' outputs
+     */
+    public boolean isSplit(int worker) {
+        checkWorker(worker);
+        return parts[worker] != null;
+    }
+
+
+
+    /**
+     * Returns the outputs of the parts that worker {@code worker} was split into, combined in order.
+     * Each part's output is waited for with {@code partWaiter}, then the worker's workload is released.<br><br>
+     *
+     * If {@code partWaiter} returns null for any part, null is returned.
+     *
+     * @param worker worker number. The worker must be split
+     * @param partWaiter waits for the output of one part. Cannot be null
+     * @return the parts' outputs, combined in order, or null if waiting was stopped
+     * @throws ExecutionException if a part throws an exception
+     */
+    public String joinSplitParts(int worker, PartWaiter partWaiter) throws ExecutionException {
+        checkWorker(worker);
+        if(parts[worker] == null) throw new AssertionError("Worker " + worker + " must be split");
+        if(partWaiter == null) throw new AssertionError("Part waiter cannot be null");
+
+        Task<String>[] workerParts = parts[worker];
+        StringBuilder splitResult = new StringBuilder(100);
+        for (int p = 0; p < workerParts.length; p++) {
+            String partResult = partWaiter.awaitPart(workerParts, p);
+            if (partResult == null) {
+                return null;
+            }
+            splitResult.append(partResult);
+        }
+
+        parts[worker] = null;
+        workloads[worker] = null;
+        return splitResult.toString();
+    }
+
+
+
+    /**
+     * Splits the first straggling worker among the idle threads. Does nothing if no thread is idle,
+     * or no worker is straggling.<br><br>
+     *
+     * A worker is straggling if {@code WorkerProgress.findStragglers} flags it with {@code factor}.
+     * Workers that have processed more than {@code MAX_SPLIT_PROGRESS} of their pieces are left to finish.
+     * The straggler is split into one part for each idle thread and itself, up to the most parts allowed.
+     *
+     * @param factor how many times the median projected time a straggler exceeds. Must be at least 1
+     * @param now current time, from {@code System.nanoTime}
+     * @return true if a straggler was split
+     */
+    public boolean splitStraggler(double factor, long now) {
+        int idleThreads = 0;
+        for (int w = 0; w < progress.getWorkerCount(); w++) {
+            if (progress.isFinished(w)) {
+                idleThreads++;
+            }
+        }
+        if (idleThreads == 0) {
+            return false;
+        }
+
+        boolean[] stragglers = progress.findStragglers(factor, now);
+        double[] fractionsDone = progress.findFractionsDone();
+        for (int w = 0; w < stragglers.length; w++) {
+            if (stragglers[w] && !progress.isSplit(w) && !progress.isFinished(w) && fractionsDone[w] <= MAX_SPLIT_PROGRESS
+                    && subtasks[w] != null && workloads[w] != null) {
+                return splitWorker(w, Math.min(idleThreads + 1, maxParts));
+            }
+        }
+        return false;
+    }
+
+
+
+    /**
+     * Cancels worker {@code worker}, splits its workload into {@code partCount} parts, and starts the parts.
+     * Does nothing if the worker finishes before it is cancelled, since it keeps its output.
+     *
+     * @param worker worker number. Must be on the interval [0, {@code getSubtasks().length}). The worker cannot be split,
+     *               and its workload cannot be released
+     * @param partCount number of parts to split the workload into. Must be positive
+     * @return true if the worker was split
+     */
+    public boolean splitWorker(int worker, int partCount) {
+        checkWorker(worker);
+        if(partCount <= 0) throw new AssertionError("Part count must be positive- received " + partCount);
+        if(parts[worker] != null || progress.isSplit(worker)) throw new AssertionError("Worker " + worker
+                + " cannot be already split");
+        if(workloads[worker] == null) throw new AssertionError("Worker " + worker + " cannot have its workload released");
+
+        if (!subtasks[worker].cancel()) {
+            return false;
+        }
+
+        String[] pieces = partitioner.apply(workloads[worker], partCount);
+        long discarded = progress.splitWorker(worker, pieces.length);
+        if (processedCharacters != null) {
+            processedCharacters.add(-discarded);
+        }
+
+        Task<String>[] partTasks = new ProcessSubtaskMain[pieces.length];
+        long segment = startSegments[worker];
+        for (int p = 0; p < pieces.length; p++) {
+            ProcessSubtaskMain part = new ProcessSubtaskMain(pieces[p], formattedKey,
+                    operationSelection, punctSelection, segment);
+            part.setProgressCounter(processedCharacters);
+            part.setWorkerProgress(progress, worker);
+            partTasks[p] = part;
+            segment += countLetters(pieces[p]) / blockLength;
+        }
+        parts[worker] = partTasks;
+        for (Task<String> part : partTasks) {
+            executorService.submit(part);
+        }
+        return true;
+    }
+
+
+
+    // /////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // PART WAITER
+
+    /**
+     * Waits for the output of one part of a split worker
+     */
+    public interface PartWaiter {
+
+        /**
+         * Returns the output of the part at index {@code index} of {@code parts}, waiting for the part to finish
+         *
+         * @param parts started parts of a split worker. Cannot be null
+         * @param index index of the part to wait for. Must be on the interval [0, {@code parts.length})
+         * @return the part's output, or null if waiting was stopped
+         * @throws ExecutionException if the part throws an exception
+         */
+        String awaitPart(Task<String>[] parts, int index) throws ExecutionException;
+    }
+}
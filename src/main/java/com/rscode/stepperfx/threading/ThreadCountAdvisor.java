@@ -0,0 +1,243 @@
+package com.rscode.stepperfx.threading;
+
+import com.rscode.stepperfx.integration.InputSelection;
+import com.rscode.stepperfx.integration.StepperFields;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses the number of worker threads for a job from its input size, the number of cores, and the measured cost of a worker.<br><br>
+ *
+ * Each worker must be given at least a grain of characters. The grain is the number of characters that take
+ * {@code OVERHEAD_MULTIPLE} times as long to process as it takes to start and join one worker, so a worker's overhead
+ * is a small part of its time. It is never less than {@code MIN_GRAIN_CHARACTERS}.
+ * The job gets one worker for each grain of its input, from 1 up to the number of cores. Small inputs stay on one thread,
+ * and large ones use every core.<br><br>
+ *
+ * The worker overhead is measured by a {@code CalibrationTask}, which runs on a daemon thread at startup when this machine
+ * has no profile yet, by starting and joining a pool of empty workers. Until the measurement is ready,
+ * {@code ESTIMATED_WORKER_OVERHEAD_NANOS} is used, so choosing a thread count never waits for it.
+ * Once a {@code PerformanceProfile} is set, its measured grain and small-input threshold are used instead, and each job's
+ * workers are capped at the profile's best worker count for the job's size.
+ */
+final public class ThreadCountAdvisor {
+
+    /**
+     * Rough single-worker cost of the whole pipeline, per input character, in nanoseconds. Must be positive
+     */
+    private static final double ESTIMATED_NANOS_PER_CHARACTER = 200;
+
+    /**
+     * Rough cost of starting, running, and joining one empty worker, in nanoseconds, used until the overhead is measured.
+     * Cannot be negative
+     */
+    private static final long ESTIMATED_WORKER_OVERHEAD_NANOS = 100_000;
+
+    /**
+     * Number of times the worker overhead is measured. The fastest measurement is kept, since the others include noise
+     */
+    private static final int MEASUREMENT_ROUNDS = 3;
+
+    /**
+     * Fewest characters given to a worker, however cheap workers are. Must be positive
+     */
+    private static final long MIN_GRAIN_CHARACTERS = 16384;
+
+    /**
+     * How many times its own overhead a worker's share of the input must take to process. Must be positive
+     */
+    private static final long OVERHEAD_MULTIPLE = 20;
+
+    /**
+     * Calibrated settings for this machine, or null to estimate them
+     */
+    private static volatile PerformanceProfile profile = null;
+
+    /**
+     * Measured nanoseconds to start, run, and join one empty worker, or -1 if not measured yet
+     */
+    private static volatile long workerOverheadNanos = -1;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Not used. The advisor only has static methods
+     */
+    private ThreadCountAdvisor() {
+        throw new AssertionError("ThreadCountAdvisor cannot be instantiated");
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // HELPERS
+
+    /**
+     * Returns the grain for a worker overhead and per-character cost: {@code OVERHEAD_MULTIPLE} times the characters
+     * that can be processed during one worker's overhead, and at least {@code MIN_GRAIN_CHARACTERS}.<br><br>
+     *
+     * Helper to {@code findGrainCharacters} and {@code CalibrationTask}
+     *
+     * @param overheadNanos overhead of one worker, in nanoseconds. Cannot be negative
+     * @param nanosPerCharacter single-worker cost per character, in nanoseconds. Must be positive
+     * @return the grain, in characters
+     */
+    static long createGrainCharacters(long overheadNanos, double nanosPerCharacter) {
+        long overheadCharacters = (long) (overheadNanos / nanosPerCharacter);
+        return Math.max(OVERHEAD_MULTIPLE * overheadCharacters, MIN_GRAIN_CHARACTERS);
+    }
+
+
+
+    /**
+     * Returns the number of characters that each worker processes at once: the whole input, except for a streamed file,
+     * which is processed {@code StepperFields.STREAM_CHUNK_LENGTH} characters at a time, and a browsed file,
+     * which is decrypted one page at a time.<br><br>
+     *
+     * Helper to {@code findThreadCount}
+     *
+     * @param inputSize characters of typed input, or bytes of an input file. Cannot be negative
+     * @param inputSelection where the input comes from. Cannot be null
+     * @return the number of characters split among the workers at once
+     */
+    private static long findSplitCharacters(long inputSize, InputSelection inputSelection) {
+        return switch(inputSelection) {
+            case FILE_STREAMING -> Math.min(inputSize, StepperFields.STREAM_CHUNK_LENGTH);
+            case FILE_BROWSING -> Math.min(inputSize, StepperFields.RESULT_PAGE_LENGTH);
+            default -> inputSize;
+        };
+    }
+
+
+
+    /**
+     * Returns the measured nanoseconds to start, run, and join one empty worker, or {@code ESTIMATED_WORKER_OVERHEAD_NANOS}
+     * if they were not measured yet. Never measures them, so it can be called on the FX application thread.<br><br>
+     *
+     * Helper to {@code findGrainCharacters}
+     *
+     * @return the worker overhead, in nanoseconds
+     */
+    private static long getWorkerOverheadNanos() {
+        long overhead = workerOverheadNanos;
+        return (overhead < 0) ? ESTIMATED_WORKER_OVERHEAD_NANOS : overhead;
+    }
+
+
+
+    /**
+     * Returns the fewest nanoseconds, over {@code MEASUREMENT_ROUNDS} rounds, to start a pool with one thread per core,
+     * run one empty task on each thread, and shut the pool down, divided by the number of threads.<br><br>
+     *
+     * Helper to {@code CalibrationTask}
+     *
+     * @return the overhead of one worker, in nanoseconds. At least 1
+     */
+    static long measureWorkerOverheadNanos() {
+        int threads = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+        long fastest = Long.MAX_VALUE;
+
+        for(int r = 0; r < MEASUREMENT_ROUNDS; r++) {
+            long start = System.nanoTime();
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            for(int t = 0; t < threads; t++) {
+                pool.submit(() -> {});
+            }
+            pool.shutdown();
+            try {
+                pool.awaitTermination(1, TimeUnit.SECONDS);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            fastest = Math.min(fastest, System.nanoTime() - start);
+        }
+
+        return (fastest == Long.MAX_VALUE) ? 1 : Math.max(fastest / threads, 1);
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Returns the fewest characters that a worker is given: the profile's grain if a profile is set, otherwise
+     * an estimate from the measured worker overhead, or from the estimated overhead until it is measured
+     * @return the grain, in characters
+     */
+    public static long findGrainCharacters() {
+        PerformanceProfile currentProfile = profile;
+        if(currentProfile != null) {
+            return currentProfile.getGrainCharacters();
+        }
+        return createGrainCharacters(getWorkerOverheadNanos(), ESTIMATED_NANOS_PER_CHARACTER);
+    }
+
+
+
+    /**
+     * Returns the number of worker threads for a job: one for each grain of the characters split among the workers at once,
+     * from 1 up to the number of cores.<br><br>
+     *
+     * If a profile is set, jobs below its small-input threshold get one thread, and no job gets more than the profile's
+     * best worker count for the characters split among the workers at once.
+     *
+     * @param inputSize characters of typed input, or bytes of an input file. Cannot be negative
+     * @param inputSelection where the input comes from. Cannot be null
+     * @return the number of worker threads, on the interval [1, min(cores, {@code StepperFields.MAX_THREADS})]
+     */
+    public static int findThreadCount(long inputSize, InputSelection inputSelection) {
+        if(inputSize < 0) throw new AssertionError("Input size cannot be negative- received " + inputSize);
+        if(inputSelection == null) throw new AssertionError("Input selection cannot be null");
+
+        int maxThreads = Math.min(Runtime.getRuntime().availableProcessors(), StepperFields.MAX_THREADS);
+        long splitCharacters = findSplitCharacters(inputSize, inputSelection);
+
+        PerformanceProfile currentProfile = profile;
+        if(currentProfile != null) {
+            if(splitCharacters < currentProfile.getSmallInputThreshold()) {
+                return 1;
+            }
+            maxThreads = Math.min(maxThreads, currentProfile.findWorkerCount(splitCharacters));
+        }
+
+        long grains = splitCharacters / findGrainCharacters();
+        return (int) Math.max(1, Math.min(grains, maxThreads));
+    }
+
+
+
+    /**
+     * Returns the calibrated settings that thread counts are chosen with
+     * @return the profile, or null if thread counts are estimated
+     */
+    public static PerformanceProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Sets the calibrated settings that thread counts are chosen with.
+     * @param newProfile profile measured on this machine, or null to estimate thread counts
+     */
+    public static void setProfile(PerformanceProfile newProfile) {
+        profile = newProfile;
+    }
+
+
+
+    /**
+     * Sets the measured worker overhead that grains are estimated with while no profile is set.<br><br>
+     *
+     * Helper to {@code CalibrationTask}, which measures it on its own thread
+     *
+     * @param overheadNanos overhead of one worker, in nanoseconds, from {@code measureWorkerOverheadNanos}. Must be positive
+     */
+    static void setWorkerOverheadNanos(long overheadNanos) {
+        if(overheadNanos <= 0) throw new AssertionError("Worker overhead must be positive- received " + overheadNanos);
+        workerOverheadNanos = overheadNanos;
+    }
+}
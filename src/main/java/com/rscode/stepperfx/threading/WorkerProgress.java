@@ -0,0 +1,393 @@
+package com.rscode.stepperfx.threading;
+
+import java.util.Arrays;
+
+/**
+ * Progress of each worker in one stage of a {@code ProcessTask}, with each worker's start and finish times.<br><br>
+ *
+ * Workers add their processed characters in batches, so the progress is only locked once per batch.
+ * The loading screen reads the progress to draw one bar per worker, and the results screen summarizes it once the Task ends.<br><br>
+ *
+ * A worker is a straggler if its projected time is more than a given factor times the median projected time of the
+ * started workers. A running worker's projected time is its time so far, divided by the fraction of its piece it has processed.
+ * A finished worker's projected time is the time it took.<br><br>
+ *
+ * A straggler's piece can be split among new workers. The split worker's counted characters are discarded,
+ * and its generation is increased, so anything the cancelled worker adds afterward is ignored. The new workers count toward
+ * the split worker's progress, and the worker finishes once all of them finish.
+ */
+final public class WorkerProgress {
+
+    /**
+     * Milliseconds a worker must run before it can be a straggler. Shorter times are too noisy to compare. Cannot be negative
+     */
+    final public static long MIN_STRAGGLER_MILLIS = 500;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Time each worker finished, from {@code System.nanoTime}. 0 if the worker has not finished
+     */
+    private final long[] finishNanos;
+
+    /**
+     * Generation of each worker. Increased when the worker is split, so the split worker's later reports are ignored
+     */
+    private final int[] generations;
+
+    /**
+     * Number of characters in each worker's piece
+     */
+    private final long[] pieceCharacters;
+
+    /**
+     * Number of characters each worker has processed so far
+     */
+    private final long[] processedCharacters;
+
+    /**
+     * Number of unfinished parts of each worker. 1 until the worker is split
+     */
+    private final int[] runningParts;
+
+    /**
+     * Whether each worker was split
+     */
+    private final boolean[] splitWorkers;
+
+    /**
+     * Time each worker started, from {@code System.nanoTime}. 0 if the worker has not started
+     */
+    private final long[] startNanos;
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // CONSTRUCTOR
+
+    /**
+     * Creates the progress of workers that process pieces of {@code pieceCharacters} characters. No worker has started.
+     *
+     * @param pieceCharacters number of characters in each worker's piece. Cannot be null. No index can be negative
+     */
+    public WorkerProgress(long[] pieceCharacters) {
+        if(pieceCharacters == null) throw new AssertionError("Piece lengths cannot be null");
+        for(int w = 0; w < pieceCharacters.length; w++) {
+            if(pieceCharacters[w] < 0) throw new AssertionError("Piece length " + w + " cannot be negative- received "
+                    + pieceCharacters[w]);
+        }
+
+        int workers = pieceCharacters.length;
+        this.pieceCharacters = pieceCharacters.clone();
+        this.processedCharacters = new long[workers];
+        this.startNanos = new long[workers];
+        this.finishNanos = new long[workers];
+        this.generations = new int[workers];
+        this.runningParts = new int[workers];
+        this.splitWorkers = new boolean[workers];
+        Arrays.fill(runningParts, 1);
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // HELPERS
+
+    /**
+     * Checks that {@code worker} is a worker number.
+     * Helper to the methods that take a worker number
+     *
+     * @param worker worker number to check
+     */
+    private void checkWorker(int worker) {
+        if(worker < 0 || worker >= pieceCharacters.length) throw new AssertionError("Worker must be on the interval [0, "
+                + pieceCharacters.length + ")- received " + worker);
+    }
+
+
+
+    /**
+     * Returns the fraction of worker {@code worker}'s piece that it has processed. Empty pieces are done once the worker finishes.<br><br>
+     *
+     * Helper to {@code findFractionsDone} and {@code findProjectedNanos}. The caller must hold the lock
+     *
+     * @param worker worker number. Must be on the interval [0, {@code getWorkerCount()})
+     * @return fraction on the interval [0, 1]
+     */
+    private double findFractionDone(int worker) {
+        if(pieceCharacters[worker] == 0) {
+            return (finishNanos[worker] != 0) ? 1 : 0;
+        }
+        return Math.min(1, processedCharacters[worker] / (double) pieceCharacters[worker]);
+    }
+
+
+
+    /**
+     * Returns the median of the numbers in {@code values} that are not NaN, or NaN if there are none.<br><br>
+     *
+     * Helper to {@code findStragglers} and {@code readSummary}
+     *
+     * @param values values to find the median of. Cannot be null
+     * @return the median value
+     */
+    private static double findMedian(double[] values) {
+        double[] known = Arrays.stream(values).filter(value -> !Double.isNaN(value)).sorted().toArray();
+        if(known.length == 0) {
+            return Double.NaN;
+        }
+        return (known.length % 2 == 1)
+                ? known[known.length / 2]
+                : (known[known.length / 2 - 1] + known[known.length / 2]) / 2;
+    }
+
+
+
+    /**
+     * Returns each started worker's projected time, in nanoseconds, at time {@code now}.
+     * Unstarted workers are NaN, and started workers that processed nothing are infinite.<br><br>
+     *
+     * Helper to {@code findStragglers} and {@code readSummary}. The caller must hold the lock
+     *
+     * @param now current time, from {@code System.nanoTime}
+     * @return projected time of each worker
+     */
+    private double[] findProjectedNanos(long now) {
+        double[] projected = new double[pieceCharacters.length];
+        for(int w = 0; w < projected.length; w++) {
+            if(startNanos[w] == 0) {
+                projected[w] = Double.NaN;
+            }
+            else if(finishNanos[w] != 0) {
+                projected[w] = finishNanos[w] - startNanos[w];
+            }
+            else {
+                double fraction = findFractionDone(w);
+                projected[w] = (fraction > 0) ? (now - startNanos[w]) / fraction : Double.POSITIVE_INFINITY;
+            }
+        }
+        return projected;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // GETTERS
+
+    /**
+     * Returns the current generation of worker {@code worker}. Workers must report with the generation they were started with
+     * @param worker worker number. Must be on the interval [0, {@code getWorkerCount()})
+     * @return the worker's generation. 0 until the worker is split
+     */
+    public synchronized int getGeneration(int worker) {
+        checkWorker(worker);
+        return generations[worker];
+    }
+
+
+
+    /**
+     * Returns the number of workers
+     * @return worker count
+     */
+    public int getWorkerCount() {
+        return pieceCharacters.length;
+    }
+
+
+    // ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // METHODS
+
+    /**
+     * Adds {@code characters} to the characters processed by worker {@code worker}. Ignored if {@code generation} is not
+     * the worker's current generation, which happens after the worker is split.
+     *
+     * @param worker worker number. Must be on the interval [0, {@code getWorkerCount()})
+     * @param generation generation the reporting worker was started with
+     * @param characters number of characters processed since the worker's last report
+     * @return true if the characters were added, false if they were ignored
+     */
+    public synchronized boolean addProcessed(int worker, int generation, long characters) {
+        checkWorker(worker);
+        if(generation != generations[worker]) {
+            return false;
+        }
+
+        processedCharacters[worker] += characters;
+        return true;
+    }
+
+
+
+    /**
+     * Returns the fraction of each worker's piece that it has processed
+     * @return fractions on the interval [0, 1], one for each worker
+     */
+    public synchronized double[] findFractionsDone() {
+        double[] fractions = new double[pieceCharacters.length];
+        for(int w = 0; w < fractions.length; w++) {
+            fractions[w] = findFractionDone(w);
+        }
+        return fractions;
+    }
+
+
+
+    /**
+     * Returns which workers are stragglers at time {@code now}: started workers that ran for at least {@code MIN_STRAGGLER_MILLIS},
+     * and whose projected time is more than {@code factor} times the median projected time.<br>
+     * At least 2 workers must have started for any worker to be a straggler.
+     *
+     * @param factor how many times the median projected time a straggler exceeds. Must be at least 1
+     * @param now current time, from {@code System.nanoTime}
+     * @return whether each worker is a straggler
+     */
+    public synchronized boolean[] findStragglers(double factor, long now) {
+        if(!(factor >= 1)) throw new AssertionError("Straggler factor must be at least 1- received " + factor);
+
+        boolean[] stragglers = new boolean[pieceCharacters.length];
+        double[] projected = findProjectedNanos(now);
+        if(Arrays.stream(projected).filter(value -> !Double.isNaN(value)).count() < 2) {
+            return stragglers;
+        }
+
+        double median = findMedian(projected);
+        for(int w = 0; w < stragglers.length; w++) {
+            long elapsed = (finishNanos[w] != 0 ? finishNanos[w] : now) - startNanos[w];
+            stragglers[w] = !Double.isNaN(projected[w])
+                    && elapsed >= MIN_STRAGGLER_MILLIS * 1_000_000
+                    && projected[w] > factor * median;
+        }
+        return stragglers;
+    }
+
+
+
+    /**
+     * Marks one part of worker {@code worker} as finished. Once every part is finished, the worker's finish time is set.
+     * Ignored if {@code generation} is not the worker's current generation.
+     *
+     * @param worker worker number. Must be on the interval [0, {@code getWorkerCount()})
+     * @param generation generation the finishing worker was started with
+     */
+    public synchronized void finishPart(int worker, int generation) {
+        checkWorker(worker);
+        if(generation != generations[worker] || runningParts[worker] == 0) {
+            return;
+        }
+
+        runningParts[worker]--;
+        if(runningParts[worker] == 0) {
+            finishNanos[worker] = System.nanoTime();
+        }
+    }
+
+
+
+    /**
+     * Returns whether worker {@code worker} has finished
+     * @param worker worker number. Must be on the interval [0, {@code getWorkerCount()})
+     * @return true if every part of the worker has finished
+     */
+    public synchronized boolean isFinished(int worker) {
+        checkWorker(worker);
+        return finishNanos[worker] != 0;
+    }
+
+
+
+    /**
+     * Returns whether worker {@code worker} was split
+     * @param worker worker number. Must be on the interval [0, {@code getWorkerCount()})
+     * @return true if the worker's piece was split among new workers
+     */
+    public synchronized boolean isSplit(int worker) {
+        checkWorker(worker);
+        return splitWorkers[worker];
+    }
+
+
+
+    /**
+     * Marks worker {@code worker} as started, at the current time. Ignored if the worker already started,
+     * or {@code generation} is not the worker's current generation.
+     *
+     * @param worker worker number. Must be on the interval [0, {@code getWorkerCount()})
+     * @param generation generation the starting worker was started with
+     */
+    public synchronized void markStarted(int worker, int generation) {
+        checkWorker(worker);
+        if(generation == generations[worker] && startNanos[worker] == 0) {
+            startNanos[worker] = System.nanoTime();
+        }
+    }
+
+
+
+    /**
+     * Returns a one-line summary of the workers at time {@code now}: the median and slowest projected times,
+     * and the number of stragglers and split workers.
+     *
+     * @param factor how many times the median projected time a straggler exceeds. Must be at least 1
+     * @param now current time, from {@code System.nanoTime}
+     * @return summary of the workers
+     */
+    public synchronized String readSummary(double factor, long now) {
+        double[] projected = findProjectedNanos(now);
+        double median = findMedian(projected);
+        if(Double.isNaN(median)) {
+            return pieceCharacters.length + " workers, none started";
+        }
+
+        int slowest = -1;
+        for(int w = 0; w < projected.length; w++) {
+            if(!Double.isNaN(projected[w]) && (slowest < 0 || projected[w] > projected[slowest])) {
+                slowest = w;
+            }
+        }
+
+        int stragglerCount = 0;
+        int splitCount = 0;
+        boolean[] stragglers = findStragglers(factor, now);
+        for(int w = 0; w < stragglers.length; w++) {
+            stragglerCount += stragglers[w] ? 1 : 0;
+            splitCount += splitWorkers[w] ? 1 : 0;
+        }
+
+        String slowestTime = Double.isInfinite(projected[slowest]) ? "no progress"
+                : String.format("%.2f s", projected[slowest] / 1e9);
+        String summary = String.format("%d workers: median %.2f s, slowest worker %d at %s", pieceCharacters.length,
+                median / 1e9, slowest + 1, slowestTime);
+        if(median > 0 && !Double.isInfinite(projected[slowest])) {
+            summary += String.format(" (%.1fx median)", projected[slowest] / median);
+        }
+        summary += ", " + stragglerCount + ((stragglerCount == 1) ? " straggler" : " stragglers");
+        if(splitCount > 0) {
+            summary += ", " + splitCount + " split";
+        }
+        return summary;
+    }
+
+
+
+    /**
+     * Splits worker {@code worker} into {@code parts} new parts. The worker's counted characters are discarded,
+     * and its generation is increased, so the cancelled worker's later reports are ignored.
+     * The new parts must report with the new generation.
+     *
+     * @param worker worker number. Must be on the interval [0, {@code getWorkerCount()}). Cannot be finished or already split
+     * @param parts number of parts the worker's piece is split into. Must be positive
+     * @return number of characters the worker had counted, which were discarded
+     */
+    public synchronized long splitWorker(int worker, int parts) {
+        checkWorker(worker);
+        if(parts <= 0) throw new AssertionError("Parts must be positive- received " + parts);
+        if(finishNanos[worker] != 0 || splitWorkers[worker]) throw new AssertionError("Worker " + worker
+                + " cannot be finished or already split");
+
+        long discarded = processedCharacters[worker];
+        processedCharacters[worker] = 0;
+        generations[worker]++;
+        runningParts[worker] = parts;
+        splitWorkers[worker] = true;
+        return discarded;
+    }
+}
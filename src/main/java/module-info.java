@@ -2,6 +2,8 @@ module com.rscode.stepperfx {
     requires javafx.controls;
     requires javafx.fxml;
     requires javafx.graphics;
+    requires java.management;
+    requires jdk.jfr;
 
     opens com.rscode.stepperfx to javafx.fxml;
     opens com.rscode.stepperfx.controllers to javafx.fxml;
@@ -0,0 +1,275 @@
+package com.rscode.stepperfx;
+
+import com.rscode.stepperfx.integration.InputSelection;
+import com.rscode.stepperfx.integration.OperationSelection;
+import com.rscode.stepperfx.integration.PunctuationSelection;
+import com.rscode.stepperfx.threading.ChunkContainer;
+import com.rscode.stepperfx.threading.ProcessOutputWriter;
+import com.rscode.stepperfx.threading.ProcessResult;
+import com.rscode.stepperfx.threading.ProcessTask;
+import javafx.application.Platform;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Class to test writing, reading, and checking a {@code ChunkContainer}.<br><br>
+ *
+ * Note: A container that was changed after it was written should never be decrypted. It should be rejected
+ * with an error message instead.
+ */
+public class ChunkContainerTest {
+
+    /**
+     * Key long enough that no letters are padded
+     */
+    private final static String KEY = "thequickbrownfoxjumpsoverthelazydog";
+
+
+    /**
+     * Temporary folder for the container files
+     */
+    @TempDir
+    Path folder;
+
+
+    /**
+     * Starts the JavaFX runtime, which Tasks report their progress on. The runtime may already be started by another test class
+     */
+    @BeforeAll
+    public static void initJavaFxRuntime() {
+        try {
+            Platform.startup(() -> {});
+        }
+        catch(IllegalStateException e) {
+            //Already started
+        }
+    }
+
+
+
+    //UTILITY METHODS
+
+    /**
+     * Returns random text with letters, spaces, punctuation, line breaks, and multi-byte characters
+     *
+     * @param random source of the text
+     * @param length number of characters to return
+     * @return the text
+     */
+    private String createText(Random random, int length) {
+        String[] parts = {"abc", "Hello", " ", "\n", ",.!?", "é", "中文", "😀", "12"};
+        StringBuilder text = new StringBuilder();
+        while(text.length() < length) {
+            text.append(parts[random.nextInt(parts.length)]);
+        }
+        return text.toString();
+    }
+
+
+    /**
+     * Encrypts {@code text} into a new container file, using 3 blocks of 7 characters, and returns the container file
+     *
+     * @param text text to encrypt
+     * @param operation encryption operation to use
+     * @return the container file
+     */
+    private Path encryptToContainer(String text, OperationSelection operation) throws ExecutionException, InterruptedException {
+        Path containerFile = folder.resolve("encrypted" + ChunkContainer.FILE_EXTENSION);
+        ProcessResult result = run(text, InputSelection.TEXT, operation, 3, 7, containerFile.toString());
+        assertTrue(result.isSucceeded(), result.getErrorMessage());
+        return containerFile;
+    }
+
+
+    /**
+     * Runs a Task with 4 worker threads and returns its result
+     *
+     * @param input text to process, or a filepath to the input
+     * @param inputSelection where the input comes from
+     * @param operation operation to do
+     * @param blockCount number of key blocks
+     * @param blockLength number of characters per key block
+     * @param outputFilepath filepath to write the output to, or null to keep it in memory
+     * @return the Task's result
+     */
+    private ProcessResult run(String input, InputSelection inputSelection, OperationSelection operation,
+                              int blockCount, int blockLength, String outputFilepath) throws ExecutionException, InterruptedException {
+        ProcessTask task = new ProcessTask(input, KEY, operation, PunctuationSelection.USE_PUNCTUATION, blockCount, blockLength,
+                inputSelection, outputFilepath, false, 4);
+        task.run();
+        return task.get();
+    }
+
+
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //TESTS
+
+
+    @DisplayName("A container written by a ProcessOutputWriter should be read back with the same settings, " +
+            "and one chunk per non-empty piece with a matching checksum")
+    @Test
+    void testWriteThenRead() throws Exception {
+        Random random = new Random(31);
+        File containerFile = folder.resolve("pieces" + ChunkContainer.FILE_EXTENSION).toFile();
+        List<String> pieces = List.of(createText(random, 3000), "", "  \n", createText(random, 100_000));
+        long[] startLetters = {0, 1500, 1500, 1505};
+
+        //The pieces are written backwards, each on its own thread
+        ExecutorService executor = Executors.newFixedThreadPool(pieces.size());
+        try(ProcessOutputWriter writer = new ProcessOutputWriter(containerFile, 0, 5, true)) {
+            writer.beginRun(pieces.size());
+            List<Future<?>> writes = new ArrayList<>();
+            for(int p = pieces.size() - 1; p >= 0; p--) {
+                int index = p;
+                writes.add(executor.submit(() -> {
+                    writer.writePiece(index, pieces.get(index), startLetters[index]);
+                    return null;
+                }));
+            }
+            for(Future<?> write : writes) {
+                write.get();
+            }
+            writer.finishContainer(2, 4, PunctuationSelection.REMOVE_SPACES);
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        ChunkContainer container = ChunkContainer.fetchChunkContainer(containerFile);
+        assertEquals(2, container.getStepperVersion());
+        assertEquals(4, container.getBlockCount());
+        assertEquals(5, container.getBlockLength());
+        assertEquals(PunctuationSelection.REMOVE_SPACES, container.getPunctSelection());
+
+        //The empty piece has no chunk
+        assertEquals(3, container.getChunkCount());
+        assertEquals(ChunkContainer.HEADER_BYTES, container.getChunkOffset(0));
+        assertArrayEquals(new long[]{0, 1500, 1505},
+                new long[]{container.getLetterOffset(0), container.getLetterOffset(1), container.getLetterOffset(2)});
+
+        byte[] bytes = Files.readAllBytes(containerFile.toPath());
+        List<String> chunkPieces = List.of(pieces.get(0), pieces.get(2), pieces.get(3));
+        for(int c = 0; c < container.getChunkCount(); c++) {
+            ByteBuffer chunk = ByteBuffer.wrap(bytes, (int) container.getChunkOffset(c), (int) container.getChunkLength(c));
+            assertEquals(container.getChecksum(c), ChunkContainer.computeChecksum(chunk), "Chunk " + c);
+            assertEquals(chunkPieces.get(c), StandardCharsets.UTF_8.decode(chunk).toString(), "Chunk " + c);
+        }
+    }
+
+
+    @DisplayName("Text encrypted into a container should decrypt to the same text as a plain encrypted file")
+    @Test
+    void testDecryptContainer() throws Exception {
+        String text = createText(new Random(32), 300_000);
+
+        for(OperationSelection[] operations : new OperationSelection[][]{
+                {OperationSelection.STEPPER_ENCRYPT, OperationSelection.STEPPER_DECRYPT},
+                {OperationSelection.STEPPER2_ENCRYPT, OperationSelection.STEPPER2_DECRYPT}}) {
+            Path containerFile = encryptToContainer(text, operations[0]);
+            String encrypted = run(text, InputSelection.TEXT, operations[0], 3, 7, null).materializeOutput();
+            String expected = run(encrypted, InputSelection.TEXT, operations[1], 3, 7, null).materializeOutput();
+
+            ProcessResult decrypted = run(containerFile.toString(), InputSelection.FILE, operations[1], 3, 7, null);
+            assertTrue(decrypted.isSucceeded(), decrypted.getErrorMessage());
+            assertEquals(expected, decrypted.materializeOutput(), operations[1].toString());
+        }
+    }
+
+
+    @DisplayName("Decrypting a container with a flipped byte in any chunk should fail with a corrupted chunk error")
+    @Test
+    void testFlippedByte() throws Exception {
+        Path containerFile = encryptToContainer(createText(new Random(33), 300_000), OperationSelection.STEPPER2_ENCRYPT);
+        ChunkContainer container = ChunkContainer.fetchChunkContainer(containerFile.toFile());
+        byte[] bytes = Files.readAllBytes(containerFile);
+        Path badFile = folder.resolve("flipped" + ChunkContainer.FILE_EXTENSION);
+
+        for(int c = 0; c < container.getChunkCount(); c++) {
+            byte[] badBytes = Arrays.copyOf(bytes, bytes.length);
+            int position = (int) (container.getChunkOffset(c) + container.getChunkLength(c) / 2);
+            badBytes[position] ^= 1;
+            Files.write(badFile, badBytes);
+
+            ProcessResult result = run(badFile.toString(), InputSelection.FILE, OperationSelection.STEPPER2_DECRYPT, 3, 7, null);
+            assertTrue(result.isFailed(), "Chunk " + c);
+            assertTrue(result.getErrorMessage().contains("corrupted"), result.getErrorMessage());
+        }
+    }
+
+
+    @DisplayName("Decrypting a container with a different block count, block length, or Stepper version should fail " +
+            "with an error naming the container's settings")
+    @Test
+    void testWrongGeometry() throws Exception {
+        Path containerFile = encryptToContainer("Hello there, world", OperationSelection.STEPPER_ENCRYPT);
+
+        ProcessResult result = run(containerFile.toString(), InputSelection.FILE, OperationSelection.STEPPER_DECRYPT, 4, 7, null);
+        assertTrue(result.isFailed());
+        assertTrue(result.getErrorMessage().contains("3 blocks of 7 characters"), result.getErrorMessage());
+
+        result = run(containerFile.toString(), InputSelection.FILE, OperationSelection.STEPPER_DECRYPT, 3, 6, null);
+        assertTrue(result.isFailed());
+
+        result = run(containerFile.toString(), InputSelection.FILE, OperationSelection.STEPPER2_DECRYPT, 3, 7, null);
+        assertTrue(result.isFailed());
+
+        result = run(containerFile.toString(), InputSelection.FILE, OperationSelection.STEPPER_DECRYPT, 3, 7, null);
+        assertTrue(result.isSucceeded(), result.getErrorMessage());
+        assertEquals("hello there, world", result.materializeOutput());
+    }
+
+
+    @DisplayName("A container whose chunk table or footer is cut off or changed should throw an IOException")
+    @Test
+    void testTruncatedTableOrFooter() throws Exception {
+        Path containerFile = encryptToContainer(createText(new Random(34), 100_000), OperationSelection.STEPPER_ENCRYPT);
+        byte[] bytes = Files.readAllBytes(containerFile);
+        ChunkContainer container = ChunkContainer.fetchChunkContainer(containerFile.toFile());
+        int tablePosition = bytes.length - ChunkContainer.FOOTER_BYTES
+                - container.getChunkCount() * ChunkContainer.TABLE_ENTRY_BYTES;
+        File badFile = folder.resolve("bad" + ChunkContainer.FILE_EXTENSION).toFile();
+
+        //Cut inside the footer, at the end of the table, and inside the table
+        for(int length : new int[]{bytes.length - 1, bytes.length - ChunkContainer.FOOTER_BYTES,
+                tablePosition + ChunkContainer.TABLE_ENTRY_BYTES / 2, ChunkContainer.HEADER_BYTES}) {
+            Files.write(badFile.toPath(), Arrays.copyOf(bytes, length));
+            assertThrows(IOException.class, () -> ChunkContainer.fetchChunkContainer(badFile), "Cut to " + length + " bytes");
+        }
+
+        //Footer with a chunk count that does not fit the file
+        byte[] badBytes = Arrays.copyOf(bytes, bytes.length);
+        ByteBuffer.wrap(badBytes).putInt(bytes.length - 8, Integer.MAX_VALUE);
+        Files.write(badFile.toPath(), badBytes);
+        assertThrows(IOException.class, () -> ChunkContainer.fetchChunkContainer(badFile), "Chunk count");
+
+        //Footer pointing the table at the wrong position
+        badBytes = Arrays.copyOf(bytes, bytes.length);
+        ByteBuffer.wrap(badBytes).putLong(bytes.length - ChunkContainer.FOOTER_BYTES, tablePosition - 1);
+        Files.write(badFile.toPath(), badBytes);
+        assertThrows(IOException.class, () -> ChunkContainer.fetchChunkContainer(badFile), "Table position");
+
+        //Table with a chunk that does not start where the previous one ended
+        badBytes = Arrays.copyOf(bytes, bytes.length);
+        ByteBuffer.wrap(badBytes).putLong(tablePosition, ChunkContainer.HEADER_BYTES + 1);
+        Files.write(badFile.toPath(), badBytes);
+        assertThrows(IOException.class, () -> ChunkContainer.fetchChunkContainer(badFile), "Chunk offset");
+    }
+}
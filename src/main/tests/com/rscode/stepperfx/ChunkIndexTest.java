@@ -0,0 +1,275 @@
+package com.rscode.stepperfx;
+
+import com.rscode.stepperfx.integration.InputSelection;
+import com.rscode.stepperfx.integration.OperationSelection;
+import com.rscode.stepperfx.integration.PunctuationSelection;
+import com.rscode.stepperfx.integration.StepperFields;
+import com.rscode.stepperfx.threading.ChunkIndex;
+import com.rscode.stepperfx.threading.ProcessResult;
+import com.rscode.stepperfx.threading.ProcessTask;
+import javafx.application.Platform;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Class to test saving and loading a {@code ChunkIndex}, and decrypting a file through its index.<br><br>
+ *
+ * Note: An index file that cannot be loaded should always throw an IOException, so the index is ignored
+ * instead of failing the process. A file decrypted through its index should give the same text as without it.
+ */
+public class ChunkIndexTest {
+
+    /**
+     * Key long enough that no letters are padded
+     */
+    private final static String KEY = "thequickbrownfoxjumpsoverthelazydog";
+
+
+    /**
+     * Temporary folder for the index files
+     */
+    @TempDir
+    Path folder;
+
+
+    /**
+     * Starts the JavaFX runtime, which Tasks report their progress on. The runtime may already be started by another test class
+     */
+    @BeforeAll
+    public static void initJavaFxRuntime() {
+        try {
+            Platform.startup(() -> {});
+        }
+        catch(IllegalStateException e) {
+            //Already started
+        }
+    }
+
+
+
+    //UTILITY METHODS
+
+    /**
+     * Returns random text with letters, spaces, punctuation, line breaks, and multi-byte characters
+     *
+     * @param random source of the text
+     * @param length number of characters to return
+     * @return the text
+     */
+    private String createText(Random random, int length) {
+        String[] parts = {"abc", "Hello", " ", "  ", "\n", ",.!?", "é", "中文", "😀", "12"};
+        StringBuilder text = new StringBuilder();
+        while(text.length() < length) {
+            text.append(parts[random.nextInt(parts.length)]);
+        }
+        return text.toString();
+    }
+
+
+
+    /**
+     * Returns an index with 3 checkpoints, for an output file of 1000 bytes encrypted with 4 blocks of 5 characters
+     *
+     * @return the index
+     */
+    private ChunkIndex createIndex() {
+        return new ChunkIndex(4, 5, 2, 256, 1000,
+                new long[]{0, 260, 530}, new long[]{0, 200, 405});
+    }
+
+
+    /**
+     * Saves {@code index} to a new file, then returns the file's bytes
+     *
+     * @param index index to save
+     * @return bytes of the saved index file
+     */
+    private byte[] saveIndex(ChunkIndex index) throws IOException {
+        File indexFile = folder.resolve("saved.txt.idx").toFile();
+        index.saveToFile(indexFile);
+        return Files.readAllBytes(indexFile.toPath());
+    }
+
+
+    /**
+     * Runs a Task with {@code threads} worker threads that processes the file {@code inputFile}, using 3 blocks of
+     * 7 characters, and returns its result
+     *
+     * @param inputFile file to process
+     * @param operation operation to do
+     * @param punctuation punctuation preferences
+     * @param outputFile file to write the output to, or null to keep it in memory
+     * @param threads number of worker threads
+     * @return the Task's result
+     */
+    private ProcessResult run(Path inputFile, OperationSelection operation, PunctuationSelection punctuation,
+                              Path outputFile, int threads) throws ExecutionException, InterruptedException {
+        ProcessTask task = new ProcessTask(inputFile.toString(), KEY, operation, punctuation, 3, 7, InputSelection.FILE,
+                (outputFile == null) ? null : outputFile.toString(), true, threads);
+        task.run();
+        return task.get();
+    }
+
+
+    /**
+     * Writes {@code bytes} to a new index file, then checks that loading it throws an IOException
+     *
+     * @param bytes contents of the index file
+     * @param message message shown if no IOException is thrown
+     */
+    private void assertRejected(byte[] bytes, String message) throws IOException {
+        File indexFile = folder.resolve("bad.txt.idx").toFile();
+        Files.write(indexFile.toPath(), bytes);
+        assertThrows(IOException.class, () -> ChunkIndex.fetchChunkIndex(indexFile), message);
+    }
+
+
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //TESTS
+
+
+    @DisplayName("An index that is saved and loaded again should keep every field and checkpoint")
+    @Test
+    void testRoundTrip() throws IOException {
+        ChunkIndex index = createIndex();
+        File indexFile = folder.resolve("output.txt.idx").toFile();
+        index.saveToFile(indexFile);
+        assertEquals(ChunkIndex.HEADER_BYTES + 3 * ChunkIndex.CHECKPOINT_BYTES, indexFile.length());
+
+        ChunkIndex loaded = ChunkIndex.fetchChunkIndex(indexFile);
+        assertEquals(index.getBlockCount(), loaded.getBlockCount());
+        assertEquals(index.getBlockLength(), loaded.getBlockLength());
+        assertEquals(index.getStepperVersion(), loaded.getStepperVersion());
+        assertEquals(index.getCheckpointInterval(), loaded.getCheckpointInterval());
+        assertEquals(index.getOutputBytes(), loaded.getOutputBytes());
+        assertEquals(index.getCheckpointCount(), loaded.getCheckpointCount());
+        for(int c = 0; c < index.getCheckpointCount(); c++) {
+            assertEquals(index.getByteOffset(c), loaded.getByteOffset(c));
+            assertEquals(index.getLetterOffset(c), loaded.getLetterOffset(c));
+        }
+
+        //An index with no checkpoints
+        new ChunkIndex(1, 1, 1, 64, 0, new long[0], new long[0]).saveToFile(indexFile);
+        assertEquals(0, ChunkIndex.fetchChunkIndex(indexFile).getCheckpointCount());
+    }
+
+
+    @DisplayName("A truncated index file should throw an IOException")
+    @Test
+    void testTruncatedFile() throws IOException {
+        byte[] bytes = saveIndex(createIndex());
+
+        //Cut inside the last checkpoint, at the end of the header, and inside the header
+        assertRejected(Arrays.copyOf(bytes, bytes.length - 1), "Cut inside the last checkpoint");
+        assertRejected(Arrays.copyOf(bytes, bytes.length - ChunkIndex.CHECKPOINT_BYTES), "Cut before the last checkpoint");
+        assertRejected(Arrays.copyOf(bytes, ChunkIndex.HEADER_BYTES), "Cut after the header");
+        assertRejected(Arrays.copyOf(bytes, 10), "Cut inside the header");
+        assertRejected(new byte[0], "Empty file");
+    }
+
+
+    @DisplayName("An index file whose checkpoint count does not match its size should throw an IOException " +
+            "without allocating the checkpoints")
+    @Test
+    void testBadCheckpointCount() throws IOException {
+        byte[] bytes = saveIndex(createIndex());
+        int countPosition = ChunkIndex.HEADER_BYTES - 4;
+
+        for(int badCount : new int[]{Integer.MAX_VALUE, Integer.MIN_VALUE, -1, 0, 2, 4, 1 << 28}) {
+            byte[] badBytes = Arrays.copyOf(bytes, bytes.length);
+            ByteBuffer.wrap(badBytes).putInt(countPosition, badCount);
+            assertRejected(badBytes, "Checkpoint count " + badCount);
+        }
+
+        //Extra bytes after the last checkpoint
+        assertRejected(Arrays.copyOf(bytes, bytes.length + ChunkIndex.CHECKPOINT_BYTES), "Extra checkpoint bytes");
+    }
+
+
+    @DisplayName("An index file with invalid fields or unordered checkpoints should throw an IOException")
+    @Test
+    void testCorruptedFields() throws IOException {
+        byte[] bytes = saveIndex(createIndex());
+
+        //Wrong magic number, then wrong version
+        byte[] badBytes = Arrays.copyOf(bytes, bytes.length);
+        ByteBuffer.wrap(badBytes).putInt(0, 0x12345678);
+        assertRejected(badBytes, "Magic number");
+
+        badBytes = Arrays.copyOf(bytes, bytes.length);
+        ByteBuffer.wrap(badBytes).putInt(4, ChunkIndex.FORMAT_VERSION + 1);
+        assertRejected(badBytes, "Format version");
+
+        //Block length of 0, then Stepper version 3
+        badBytes = Arrays.copyOf(bytes, bytes.length);
+        ByteBuffer.wrap(badBytes).putInt(12, 0);
+        assertRejected(badBytes, "Block length");
+
+        badBytes = Arrays.copyOf(bytes, bytes.length);
+        ByteBuffer.wrap(badBytes).putInt(16, 3);
+        assertRejected(badBytes, "Stepper version");
+
+        //Second checkpoint's byte offset before the first's
+        badBytes = Arrays.copyOf(bytes, bytes.length);
+        ByteBuffer.wrap(badBytes).putLong(ChunkIndex.HEADER_BYTES + ChunkIndex.CHECKPOINT_BYTES, 0);
+        assertRejected(badBytes, "Unordered checkpoints");
+
+        //Letter offset that is not a multiple of the block length
+        badBytes = Arrays.copyOf(bytes, bytes.length);
+        ByteBuffer.wrap(badBytes).putLong(ChunkIndex.HEADER_BYTES + ChunkIndex.CHECKPOINT_BYTES + 8, 201);
+        assertRejected(badBytes, "Letter offset");
+
+        //Byte offset past the end of the output file
+        badBytes = Arrays.copyOf(bytes, bytes.length);
+        ByteBuffer.wrap(badBytes).putLong(ChunkIndex.HEADER_BYTES + 2 * ChunkIndex.CHECKPOINT_BYTES, 1000);
+        assertRejected(badBytes, "Byte offset");
+    }
+
+
+    @DisplayName("A file encrypted with a chunk index should decrypt to the same text through its index as without it, " +
+            "for every operation, punctuation preference, and thread count")
+    @Test
+    void testDecryptThroughIndex() throws Exception {
+        Path plainFile = folder.resolve("plain.txt");
+        Files.writeString(plainFile, createText(new Random(30), 4 * StepperFields.CHUNK_INDEX_INTERVAL), StandardCharsets.UTF_8);
+
+        for(OperationSelection[] operations : new OperationSelection[][]{
+                {OperationSelection.STEPPER_ENCRYPT, OperationSelection.STEPPER_DECRYPT},
+                {OperationSelection.STEPPER2_ENCRYPT, OperationSelection.STEPPER2_DECRYPT}}) {
+            for(PunctuationSelection punctuation : PunctuationSelection.values()) {
+                String message = operations[0] + " " + punctuation;
+
+                //Encrypt with an index, then copy the output to a file without one
+                Path indexedFile = folder.resolve("indexed.txt");
+                ProcessResult encrypted = run(plainFile, operations[0], punctuation, indexedFile, 4);
+                assertTrue(encrypted.isSucceeded(), encrypted.getErrorMessage());
+                File indexFile = ChunkIndex.fetchIndexFile(indexedFile.toFile());
+                assertTrue(ChunkIndex.fetchChunkIndex(indexFile).getCheckpointCount() > 1, message);
+                Path unindexedFile = folder.resolve("unindexed.txt");
+                Files.copy(indexedFile, unindexedFile, StandardCopyOption.REPLACE_EXISTING);
+
+                for(int threads : new int[]{1, 3, 8}) {
+                    ProcessResult expected = run(unindexedFile, operations[1], punctuation, null, threads);
+                    ProcessResult indexed = run(indexedFile, operations[1], punctuation, null, threads);
+                    assertTrue(expected.isSucceeded(), expected.getErrorMessage());
+                    assertTrue(indexed.isSucceeded(), indexed.getErrorMessage());
+                    assertEquals(expected.materializeOutput(), indexed.materializeOutput(), message + " with " + threads + " threads");
+                }
+            }
+        }
+    }
+}
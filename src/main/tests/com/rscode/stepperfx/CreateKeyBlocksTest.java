@@ -2,10 +2,18 @@ package com.rscode.stepperfx;
 
 import org.junit.jupiter.api.*;
 import org.opentest4j.AssertionFailedError;
+import com.rscode.stepperfx.integration.StepperFields;
+import com.rscode.stepperfx.threading.KeyPadding;
 import com.rscode.stepperfx.threading.ProcessTask;
 
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
 /**
- * Class to test the {@code createKeyBlocks} method of a {@code ProcessTask}.
+ * Class to test the {@code createKeyBlocks} method of a {@code ProcessTask}, and the {@code KeyPadding} that pads short keys.
  */
 public class CreateKeyBlocksTest {
 
@@ -108,6 +116,23 @@ public class CreateKeyBlocksTest {
     }
 
 
+    /**
+     * Returns the values of {@code array}'s subarrays, one subarray after another
+     *
+     * @param array array to flatten. Cannot be null, and no subarrays can be null
+     * @return the values, in order
+     */
+    private byte[] flatten(byte[][] array) {
+        byte[] values = new byte[0];
+        for(byte[] subarray : array) {
+            int start = values.length;
+            values = Arrays.copyOf(values, start + subarray.length);
+            System.arraycopy(subarray, 0, values, start, subarray.length);
+        }
+        return values;
+    }
+
+
     /**
      * Returns true if `array` is null, any of `array`'s subarrays are null, or any index in `array`
      * is not on the interval [0,25]. Returns false otherwise.<br><br>
@@ -476,4 +501,85 @@ public class CreateKeyBlocksTest {
         result = processTask.createKeyBlocks_Testing(input, 3, 3);
         printAssert(expected, result, 2, 2);
     }
+
+    @DisplayName("With a key padding seed set, createKeyBlocks should pad the key with the same numbers on [0,25] every time, " +
+            "and a different seed should pad it differently")
+    @Test
+    void testSeededPadding() {
+        ProcessTask task = new ProcessTask();
+
+        try {
+            StepperFields.setKeyPaddingSeed(47L);
+            String input = "abcdefg";
+            byte[][] expected = task.createKeyBlocks_Testing(input, 10, 40);
+            assertArrayEquals(new byte[]{0,1,2,3,4,5,6}, Arrays.copyOf(expected[0], 7));
+            assertFalse(valuesOutOfRange(expected), "Padding is not on [0,25]");
+            for(int i=1; i<=100; i++) {
+                printAssert(expected, task.createKeyBlocks_Testing(input, 10, 40), 9, 39);
+            }
+
+            //The padding only depends on the seed, not on the key's letters:
+            //the 393 letters that pad "abcdefg" are the first 393 of the 400 letters that pad the empty key
+            byte[][] emptyKey = task.createKeyBlocks_Testing("", 10, 40);
+            printAssert(emptyKey, task.createKeyBlocks_Testing("", 10, 40), 9, 39);
+            assertArrayEquals(Arrays.copyOf(flatten(emptyKey), 393), Arrays.copyOfRange(flatten(expected), 7, 400),
+                    "Padding of \"abcdefg\" is not the start of the empty key's padding");
+            assertArrayEquals(Arrays.copyOfRange(flatten(expected), 7, 400),
+                    Arrays.copyOfRange(flatten(task.createKeyBlocks_Testing("zyxwvut", 10, 40)), 7, 400),
+                    "Keys with the same number of letters were padded differently");
+
+            StepperFields.setKeyPaddingSeed(48L);
+            byte[][] otherSeed = task.createKeyBlocks_Testing(input, 10, 40);
+            printAssert(expected, otherSeed, 0, 6);
+            assertFalse(arraysEqual(expected, otherSeed, 9, 39), "Seeds 47 and 48 gave the same padding");
+        }
+        finally {
+            StepperFields.setKeyPaddingSeed(null);
+        }
+    }
+
+    @DisplayName("Key padding should turn each byte below the largest multiple of 26 into one letter, and never turn " +
+            "a rejected byte into a letter")
+    @Test
+    void testRejectionSampling() {
+        int acceptedByteValues = 256 - (256 % 26);
+
+        //Each byte value on its own
+        for(int value=0; value<256; value++) {
+            StringBuilder letters = new StringBuilder();
+            int appended = KeyPadding.appendAcceptedLetters_Testing(letters, new byte[]{(byte) value}, 1);
+            if(value < acceptedByteValues) {
+                assertEquals(1, appended, "Byte " + value);
+                assertEquals(String.valueOf((char) ('a' + value % 26)), letters.toString(), "Byte " + value);
+            }
+            else {
+                assertEquals(0, appended, "Byte " + value);
+                assertEquals("", letters.toString(), "Byte " + value);
+            }
+        }
+
+        //Every byte value in a row: each letter comes from the same number of byte values
+        byte[] allBytes = new byte[256];
+        for(int value=0; value<256; value++) {
+            allBytes[value] = (byte) value;
+        }
+        StringBuilder letters = new StringBuilder();
+        assertEquals(acceptedByteValues, KeyPadding.appendAcceptedLetters_Testing(letters, allBytes, 256));
+        int[] letterCounts = new int[26];
+        for(int i=0; i<letters.length(); i++) {
+            letterCounts[letters.charAt(i) - 'a']++;
+        }
+        for(int l=0; l<26; l++) {
+            assertEquals(acceptedByteValues / 26, letterCounts[l], "Letter " + (char) ('a' + l));
+        }
+
+        //Rejected bytes between accepted ones are skipped, and no more than the most letters are appended
+        letters = new StringBuilder();
+        byte[] mixedBytes = {(byte) 255, 0, (byte) 234, 27, (byte) 240, (byte) 233, 5};
+        assertEquals(2, KeyPadding.appendAcceptedLetters_Testing(letters, mixedBytes, 2));
+        assertEquals("ab", letters.toString());
+        letters = new StringBuilder();
+        assertEquals(4, KeyPadding.appendAcceptedLetters_Testing(letters, mixedBytes, 10));
+        assertEquals("abzf", letters.toString());
+    }
 }
@@ -1,6 +1,7 @@
 package com.rscode.stepperfx;
 
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
@@ -11,10 +12,13 @@ import com.rscode.stepperfx.threading.ProcessSubtaskMain;
 import java.util.Arrays;
 import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
 
 /**
  * Class to test the method {@code initializeKeyBlockPositions} in a {@code ProcessSubtaskMain},
- * over several possible block counts and block lengths.
+ * over several possible block counts and block lengths, and the starting positions of operations that start past the int range.
  */
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class InitKeyBlockPositionsTest {
@@ -331,4 +335,27 @@ public class InitKeyBlockPositionsTest {
         printAssert(expected, result);
     }
 
+
+    @DisplayName("Starting segments past the int range should give the same output as the segment they overflow to, " +
+            "for every operation")
+    @Test
+    void testLongStartSegments() {
+        ProcessSubtaskMain p = new ProcessSubtaskMain();
+        byte[][] key = {{19, 7, 4, 16, 20, 8, 2}, {10, 1, 17, 14, 22, 13, 5}, {14, 23, 9, 20, 12, 15, 18}};
+        String text = "thequickbrownfoxjumpsoverthelazydogs";
+
+        //Positions repeat every (block length ^ (block count + 1)) segments
+        long period = (long)Math.pow(7, 4);
+        for(long startSegment : new long[]{(1L << 31) + 3, (1L << 33) + 5, 3L * Integer.MAX_VALUE}) {
+            long equivalent = startSegment % period;
+            String message = "Start segment " + startSegment;
+            assertEquals(p.encryptStepper_Testing(text, key, equivalent), p.encryptStepper_Testing(text, key, startSegment), message);
+            assertEquals(p.decryptStepper_Testing(text, key, equivalent), p.decryptStepper_Testing(text, key, startSegment), message);
+            assertEquals(p.encryptStepper2_Testing(text, key, equivalent), p.encryptStepper2_Testing(text, key, startSegment), message);
+            assertEquals(p.decryptStepper2_Testing(text, key, equivalent), p.decryptStepper2_Testing(text, key, startSegment), message);
+
+            //A segment cut to an int would land elsewhere in the period
+            assertNotEquals(equivalent, (int) startSegment % period, message);
+        }
+    }
 }
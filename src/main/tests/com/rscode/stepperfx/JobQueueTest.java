@@ -0,0 +1,201 @@
+package com.rscode.stepperfx;
+
+import com.rscode.stepperfx.integration.InputSelection;
+import com.rscode.stepperfx.integration.OperationSelection;
+import com.rscode.stepperfx.integration.PunctuationSelection;
+import com.rscode.stepperfx.integration.StepperFields;
+import com.rscode.stepperfx.threading.ChunkIndex;
+import com.rscode.stepperfx.threading.JobQueue;
+import com.rscode.stepperfx.threading.JobStatus;
+import com.rscode.stepperfx.threading.ProcessJob;
+import javafx.application.Platform;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Class to test which output files the jobs of a {@code JobQueue} claim, and how jobs without an output file are named.<br><br>
+ *
+ * Note: Every queue here has its whole budget reserved, so its jobs stay queued and never write their output files.
+ */
+public class JobQueueTest {
+
+    /**
+     * Temporary folder for the output files
+     */
+    @TempDir
+    Path folder;
+
+
+    /**
+     * Starts the JavaFX runtime, which the queues run on. The runtime may already be started by another test class
+     */
+    @BeforeAll
+    public static void initJavaFxRuntime() {
+        try {
+            Platform.startup(() -> {});
+        }
+        catch(IllegalStateException e) {
+            //Already started
+        }
+    }
+
+
+
+    //UTILITY METHODS
+
+    /**
+     * Returns a queue with a budget of 2 threads, all of them reserved, so no job starts
+     *
+     * @return the queue
+     */
+    private JobQueue createHeldQueue() throws Exception {
+        return runOnFxThread(() -> {
+            JobQueue queue = new JobQueue(2);
+            queue.setReservedThreads(2);
+            return queue;
+        });
+    }
+
+
+    /**
+     * Runs {@code action} on the FX application thread, waits for it, and returns its result
+     *
+     * @param action action to run
+     * @return what the action returned
+     * @throws ExecutionException if the action threw, with what it threw as the cause
+     */
+    private <T> T runOnFxThread(Callable<T> action) throws ExecutionException, InterruptedException {
+        FutureTask<T> future = new FutureTask<>(action);
+        Platform.runLater(future);
+        return future.get();
+    }
+
+
+    /**
+     * Submits a job to {@code queue} that encrypts a short text to {@code outputFilepath}
+     *
+     * @param queue queue to submit to
+     * @param outputFilepath filepath to write the output to, or null to use a file named for the job
+     * @return the queued job
+     * @throws ExecutionException if the job was not submitted, with the error as the cause
+     */
+    private ProcessJob submit(JobQueue queue, String outputFilepath) throws ExecutionException, InterruptedException {
+        return runOnFxThread(() -> queue.submitJob("Hello there, world", "thequickbrownfox",
+                OperationSelection.STEPPER_ENCRYPT, PunctuationSelection.USE_PUNCTUATION, 3, 7,
+                InputSelection.TEXT, outputFilepath, false, 1));
+    }
+
+
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //TESTS
+
+
+    @DisplayName("A queued job's output file, under any filepath that names it, should be claimed until the job finishes, " +
+            "and a second job should not be submitted with it")
+    @Test
+    void testJobClaims() throws Exception {
+        JobQueue queue = createHeldQueue();
+        String outputFilepath = folder.resolve("out.txt").toString();
+        ProcessJob job = submit(queue, outputFilepath);
+        assertEquals(JobStatus.QUEUED, job.getStatus());
+
+        assertTrue(runOnFxThread(() -> queue.isOutputClaimed(outputFilepath)));
+        assertTrue(runOnFxThread(() -> queue.isOutputClaimed(folder.resolve("sub/../out.txt").toString())));
+        assertFalse(runOnFxThread(() -> queue.isOutputClaimed(folder.resolve("other.txt").toString())));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> submit(queue, outputFilepath));
+        assertInstanceOf(AssertionError.class, e.getCause());
+        assertEquals(1, runOnFxThread(() -> queue.getJobs().size()));
+
+        runOnFxThread(() -> {
+            queue.cancelJob(job);
+            return null;
+        });
+        assertFalse(runOnFxThread(() -> queue.isOutputClaimed(outputFilepath)));
+        assertEquals(JobStatus.QUEUED, submit(queue, outputFilepath).getStatus());
+    }
+
+
+    @DisplayName("The reserved output file should be claimed while it is set, with the empty string naming the default output file")
+    @Test
+    void testReservedClaims() throws Exception {
+        JobQueue queue = createHeldQueue();
+        String outputFilepath = folder.resolve("service.txt").toString();
+
+        runOnFxThread(() -> {
+            queue.setReservedOutputFile(outputFilepath);
+            return null;
+        });
+        assertTrue(runOnFxThread(() -> queue.isOutputClaimed(outputFilepath)));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> submit(queue, outputFilepath));
+        assertInstanceOf(AssertionError.class, e.getCause());
+
+        runOnFxThread(() -> {
+            queue.setReservedOutputFile("");
+            return null;
+        });
+        assertFalse(runOnFxThread(() -> queue.isOutputClaimed(outputFilepath)));
+        assertTrue(runOnFxThread(() -> queue.isOutputClaimed(StepperFields.DEFAULT_OUTPUT_FILENAME)));
+
+        runOnFxThread(() -> {
+            queue.setReservedOutputFile(null);
+            return null;
+        });
+        assertNull(runOnFxThread(queue::getReservedOutputFile));
+        assertFalse(runOnFxThread(() -> queue.isOutputClaimed("")));
+    }
+
+
+    @DisplayName("Jobs without an output file should each get a new file, skipping files and chunk indexes already on disk")
+    @Test
+    void testJobOutputNames() throws Exception {
+        //Stand-ins for the output of an earlier run of the app. Only files that did not exist are made, and later deleted
+        List<File> createdFiles = new ArrayList<>();
+        List<File> existingFiles = new ArrayList<>();
+        for(int n = 1; n <= 3; n++) {
+            File outputFile = JobQueue.findOutputFile(String.format(StepperFields.JOB_OUTPUT_FILENAME_FORMAT, n));
+            existingFiles.add(outputFile);
+            File madeFile = (n == 2) ? ChunkIndex.fetchIndexFile(outputFile) : outputFile;
+            if(!madeFile.exists()) {
+                Files.createFile(madeFile.toPath());
+                createdFiles.add(madeFile);
+            }
+        }
+
+        try {
+            JobQueue queue = createHeldQueue();
+            ProcessJob first = submit(queue, null);
+            ProcessJob second = submit(queue, null);
+
+            for(ProcessJob job : new ProcessJob[]{first, second}) {
+                assertFalse(existingFiles.contains(job.getOutputFile()), job.getOutputFile().toString());
+                assertFalse(job.getOutputFile().exists(), job.getOutputFile().toString());
+                assertFalse(ChunkIndex.fetchIndexFile(job.getOutputFile()).exists(), job.getOutputFile().toString());
+                assertTrue(job.getDescription().endsWith(job.getOutputFile().getName()), job.getDescription());
+            }
+            assertNotEquals(first.getOutputFile(), second.getOutputFile());
+
+            //A job given a generated name explicitly should be refused while the named job is queued
+            String claimedName = first.getOutputFile().getName();
+            ExecutionException e = assertThrows(ExecutionException.class, () -> submit(queue, claimedName));
+            assertInstanceOf(AssertionError.class, e.getCause());
+        }
+        finally {
+            for(File createdFile : createdFiles) {
+                Files.deleteIfExists(createdFile.toPath());
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.rscode.stepperfx;
+
+import com.rscode.stepperfx.threading.PerformanceProfile;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Class to test choosing worker counts from a {@code PerformanceProfile}, and storing the profile.<br><br>
+ *
+ * Note: The profile's worker count depends on the input's size. Small inputs should get fewer workers than the
+ * calibration sample's best, and large inputs more, if the workers' overhead was what held them back.
+ */
+public class PerformanceProfileTest {
+
+    /**
+     * Number of characters in the calibration sample of the test profiles
+     */
+    private final static long SAMPLE_CHARACTERS = 1 << 20;
+
+
+    /**
+     * Temporary folder for the profile files
+     */
+    @TempDir
+    Path folder;
+
+
+
+    //UTILITY METHODS
+
+    /**
+     * Returns a profile for 8 cores whose workers cost 2 ms each. On the sample, 8 workers are barely faster than 4,
+     * since most of their time is overhead.
+     *
+     * @return the profile
+     */
+    private PerformanceProfile createProfile() {
+        return new PerformanceProfile(Instant.parse("2026-10-18T12:00:00Z"), 8, 95.0, 2_000_000, 16384, 32768,
+                SAMPLE_CHARACTERS, new int[]{1, 2, 4, 8}, new long[]{100_000_000, 52_000_000, 30_000_000, 29_000_000});
+    }
+
+
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //TESTS
+
+
+    @DisplayName("A profile's worker count should grow with the input's size when the workers' overhead held back " +
+            "larger counts, and shrink for small inputs")
+    @Test
+    void testWorkerCountScalesWithSize() {
+        PerformanceProfile profile = createProfile();
+
+        assertEquals(4, profile.findWorkerCount(SAMPLE_CHARACTERS));
+        assertEquals(8, profile.findWorkerCount(10 * SAMPLE_CHARACTERS));
+        assertEquals(8, profile.findWorkerCount(Long.MAX_VALUE / 2));
+        assertEquals(1, profile.findWorkerCount(SAMPLE_CHARACTERS / 100));
+        assertEquals(1, profile.findWorkerCount(0));
+
+        //Larger inputs never get fewer workers
+        int lastCount = 1;
+        for(long characters = 1; characters < 100 * SAMPLE_CHARACTERS; characters *= 2) {
+            int count = profile.findWorkerCount(characters);
+            assertTrue(count >= lastCount, characters + " characters: " + count + " workers, after " + lastCount);
+            lastCount = count;
+        }
+    }
+
+
+    @DisplayName("A profile whose larger worker counts are no faster, even without overhead, should never use them")
+    @Test
+    void testSaturatedCurve() {
+        PerformanceProfile profile = new PerformanceProfile(Instant.now(), 8, 95.0, 1_000, 16384, 32768, SAMPLE_CHARACTERS,
+                new int[]{1, 2, 4, 8}, new long[]{100_000_000, 51_000_000, 50_000_000, 50_000_000});
+
+        for(long characters : new long[]{SAMPLE_CHARACTERS, 10 * SAMPLE_CHARACTERS, 1000 * SAMPLE_CHARACTERS}) {
+            assertEquals(2, profile.findWorkerCount(characters), characters + " characters");
+        }
+    }
+
+
+    @DisplayName("A profile that is written and read again should keep its settings and measured curve")
+    @Test
+    void testRoundTrip() throws IOException {
+        PerformanceProfile profile = createProfile();
+        File profileFile = folder.resolve("profile.properties").toFile();
+        profile.writeProfile(profileFile);
+
+        PerformanceProfile read = PerformanceProfile.fetchProfile(profileFile);
+        assertNotNull(read);
+        assertEquals(profile.getCalibrationTime(), read.getCalibrationTime());
+        assertEquals(profile.getCores(), read.getCores());
+        assertEquals(profile.getNanosPerCharacter(), read.getNanosPerCharacter());
+        assertEquals(profile.getWorkerOverheadNanos(), read.getWorkerOverheadNanos());
+        assertEquals(profile.getGrainCharacters(), read.getGrainCharacters());
+        assertEquals(profile.getSmallInputThreshold(), read.getSmallInputThreshold());
+        assertEquals(profile.getSampleCharacters(), read.getSampleCharacters());
+        assertEquals(profile.createSummary(), read.createSummary());
+        for(long characters = 1; characters < 100 * SAMPLE_CHARACTERS; characters *= 2) {
+            assertEquals(profile.findWorkerCount(characters), read.findWorkerCount(characters), characters + " characters");
+        }
+    }
+
+
+    @DisplayName("A profile file from an older version, or with a missing or invalid curve, should not be read")
+    @Test
+    void testInvalidFiles() throws IOException {
+        File profileFile = folder.resolve("profile.properties").toFile();
+        createProfile().writeProfile(profileFile);
+        String text = Files.readString(profileFile.toPath(), StandardCharsets.UTF_8);
+
+        //Older version, with one best worker count instead of a curve
+        Files.writeString(profileFile.toPath(), text.replace("version=2", "version=1"), StandardCharsets.UTF_8);
+        assertNull(PerformanceProfile.fetchProfile(profileFile), "Older version");
+
+        String[][] badLines = {
+                {"curveNanos=100000000,52000000,30000000,29000000", ""},
+                {"curveNanos=100000000,52000000,30000000,29000000", "curveNanos=100000000,52000000,30000000"},
+                {"curveNanos=100000000,52000000,30000000,29000000", "curveNanos=100000000,52000000,0,29000000"},
+                {"curveWorkerCounts=1,2,4,8", "curveWorkerCounts=1,4,2,8"},
+                {"curveWorkerCounts=1,2,4,8", "curveWorkerCounts=2,3,4,8"},
+                {"curveWorkerCounts=1,2,4,8", "curveWorkerCounts=1,2,4,16"},
+                {"curveWorkerCounts=1,2,4,8", "curveWorkerCounts=1,2,x,8"},
+                {"sampleCharacters=" + SAMPLE_CHARACTERS, "sampleCharacters=0"}};
+        for(String[] badLine : badLines) {
+            assertTrue(text.contains(badLine[0]), badLine[0]);
+            Files.writeString(profileFile.toPath(), text.replace(badLine[0], badLine[1]), StandardCharsets.UTF_8);
+            assertNull(PerformanceProfile.fetchProfile(profileFile), badLine[1]);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.rscode.stepperfx;
+
+import com.rscode.stepperfx.integration.InputSelection;
+import com.rscode.stepperfx.integration.OperationSelection;
+import com.rscode.stepperfx.integration.PunctuationSelection;
+import com.rscode.stepperfx.threading.ProcessOutputWriter;
+import com.rscode.stepperfx.threading.ProcessResult;
+import com.rscode.stepperfx.threading.ProcessTask;
+import javafx.application.Platform;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Class to test a {@code ProcessOutputWriter}, alone and through a {@code ProcessTask}.<br><br>
+ *
+ * Note: However its pieces are written, the output file should hold everything written, stripped.
+ */
+public class ProcessOutputWriterTest {
+
+    /**
+     * Key long enough that no letters are padded
+     */
+    private final static String KEY = "thequickbrownfoxjumpsoverthelazydog";
+
+
+    /**
+     * Temporary folder for the output files
+     */
+    @TempDir
+    Path folder;
+
+
+    /**
+     * Starts the JavaFX runtime, which Tasks report their progress on. The runtime may already be started by another test class
+     */
+    @BeforeAll
+    public static void initJavaFxRuntime() {
+        try {
+            Platform.startup(() -> {});
+        }
+        catch(IllegalStateException e) {
+            //Already started
+        }
+    }
+
+
+
+    //UTILITY METHODS
+
+    /**
+     * Returns {@code length} random characters, including whitespace, and one-, two-, three-, and four-byte UTF-8 characters
+     *
+     * @param random source of the characters
+     * @param length number of characters to return
+     * @return the characters
+     */
+    private String createText(Random random, int length) {
+        String[] parts = {"abc", "XYZ", " ", "   ", "\n", ",.!?", "é", "Ñ", "中文", "😀", "12"};
+        StringBuilder text = new StringBuilder();
+        while(text.length() < length) {
+            text.append(parts[random.nextInt(parts.length)]);
+        }
+        return text.toString();
+    }
+
+
+    /**
+     * Writes {@code pieces} as one run of {@code writer}, each piece on its own thread. The threads are started
+     * from the last piece to the first, and later pieces start sooner, so most pieces are written out of order.
+     *
+     * @param writer writer to write the pieces to
+     * @param pieces pieces of the run, in output order
+     */
+    private void writeRunBackwards(ProcessOutputWriter writer, List<String> pieces) throws Exception {
+        writer.beginRun(pieces.size());
+
+        ExecutorService executor = Executors.newFixedThreadPool(pieces.size());
+        try {
+            List<Future<?>> writes = new ArrayList<>();
+            for(int p = pieces.size() - 1; p >= 0; p--) {
+                int index = p;
+                writes.add(executor.submit(() -> {
+                    Thread.sleep(index);
+                    writer.writePiece(index, pieces.get(index), 0);
+                    return null;
+                }));
+            }
+            for(Future<?> write : writes) {
+                write.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //TESTS
+
+
+    @DisplayName("Pieces written out of order, over several runs, should give a file holding all pieces in order, stripped")
+    @Test
+    void testOutOfOrderPieces() throws Exception {
+        Random random = new Random(28);
+
+        for(int trial = 0; trial < 20; trial++) {
+            Path outputFile = folder.resolve("pieces" + trial + ".txt");
+            StringBuilder expected = new StringBuilder();
+
+            try(ProcessOutputWriter writer = new ProcessOutputWriter(outputFile.toFile())) {
+                for(int run = 0; run < 3; run++) {
+                    List<String> pieces = new ArrayList<>();
+                    for(int p = 0; p < 1 + random.nextInt(16); p++) {
+                        //Some pieces are empty or only whitespace
+                        String piece = switch(random.nextInt(6)) {
+                            case 0 -> "";
+                            case 1 -> "  \n ";
+                            default -> createText(random, random.nextInt(5000));
+                        };
+                        pieces.add(piece);
+                        expected.append(piece);
+                    }
+                    writeRunBackwards(writer, pieces);
+                }
+            }
+
+            String written = Files.readString(outputFile, StandardCharsets.UTF_8);
+            assertEquals(expected.toString().strip(), written, "Trial " + trial);
+        }
+    }
+
+
+    @DisplayName("Pieces larger than the writer's buffer should be written whole")
+    @Test
+    void testLargePieces() throws Exception {
+        Random random = new Random(29);
+        Path outputFile = folder.resolve("large.txt");
+        List<String> pieces = List.of(createText(random, ProcessOutputWriter.BUFFER_BYTES + 3),
+                createText(random, 10), createText(random, 2 * ProcessOutputWriter.BUFFER_BYTES));
+
+        try(ProcessOutputWriter writer = new ProcessOutputWriter(outputFile.toFile())) {
+            writeRunBackwards(writer, pieces);
+            assertEquals(String.join("", pieces).strip().getBytes(StandardCharsets.UTF_8).length, writer.getBytesWritten());
+        }
+
+        assertEquals(String.join("", pieces).strip(), Files.readString(outputFile, StandardCharsets.UTF_8));
+    }
+
+
+    @DisplayName("A Task's output file should match its in-memory output for every operation and punctuation preference, " +
+            "including when removing punctuation makes the output shorter than the input")
+    @Test
+    void testMatchesInMemoryOutput() throws Exception {
+        String input = "  \n " + createText(new Random(30), 200_000) + " \n\n ";
+        Path outputFile = folder.resolve("output.txt");
+
+        for(OperationSelection operation : OperationSelection.values()) {
+            for(PunctuationSelection punctuation : PunctuationSelection.values()) {
+                for(int threads : new int[]{1, 7, 64}) {
+                    ProcessTask inMemory = new ProcessTask(input, KEY, operation, punctuation, 3, 7,
+                            InputSelection.TEXT, null, false, threads);
+                    inMemory.run();
+                    ProcessResult memoryResult = inMemory.get();
+                    assertTrue(memoryResult.isSucceeded(), memoryResult.getErrorMessage());
+
+                    ProcessTask toFile = new ProcessTask(input, KEY, operation, punctuation, 3, 7,
+                            InputSelection.TEXT, outputFile.toString(), false, threads);
+                    toFile.run();
+                    ProcessResult fileResult = toFile.get();
+                    assertTrue(fileResult.isSucceeded(), fileResult.getErrorMessage());
+
+                    String written = Files.readString(outputFile, StandardCharsets.UTF_8);
+                    String message = operation + " " + punctuation + " " + threads + " threads";
+                    assertEquals(memoryResult.materializeOutput(), written, message);
+                    if(punctuation == PunctuationSelection.REMOVE_ALL_PUNCTUATION) {
+                        assertTrue(written.length() < input.length(), message);
+                    }
+                }
+            }
+        }
+    }
+}
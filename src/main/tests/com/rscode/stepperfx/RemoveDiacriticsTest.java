@@ -14,11 +14,16 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 public class RemoveDiacriticsTest {
 
     /**
-     * Starts the JavaFX runtime so the tests can properly run
+     * Starts the JavaFX runtime so the tests can properly run. The runtime may already be started by another test class
      */
     @BeforeAll
     public static void initJavaFxRuntime() {
-        Platform.startup(() -> {});
+        try {
+            Platform.startup(() -> {});
+        }
+        catch(IllegalStateException e) {
+            //Already started
+        }
     }
 
 
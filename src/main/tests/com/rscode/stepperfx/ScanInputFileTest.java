@@ -0,0 +1,166 @@
+package com.rscode.stepperfx;
+
+import com.rscode.stepperfx.integration.InputSelection;
+import com.rscode.stepperfx.integration.OperationSelection;
+import com.rscode.stepperfx.integration.PunctuationSelection;
+import com.rscode.stepperfx.threading.ProcessResult;
+import com.rscode.stepperfx.threading.ProcessTask;
+import javafx.application.Platform;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Class to test the parallel scan of a mapped input file by a {@code ProcessTask}.<br><br>
+ *
+ * Note: The scan splits the file into regions by bytes, then gives the workers their pieces and starting segments.
+ * The result should be the same as typing the file's text, with its line breaks converted to "\n",
+ * for any number of threads and every punctuation preference. Pieces are cut next to letters, where removing spaces
+ * depends on the characters around the cut.
+ */
+public class ScanInputFileTest {
+
+    /**
+     * Key long enough that no letters are padded
+     */
+    private final static String KEY = "thequickbrownfoxjumpsoverthelazydog";
+
+
+    /**
+     * Temporary folder for the input files
+     */
+    @TempDir
+    Path folder;
+
+
+    /**
+     * Starts the JavaFX runtime, which Tasks report their progress on. The runtime may already be started by another test class
+     */
+    @BeforeAll
+    public static void initJavaFxRuntime() {
+        try {
+            Platform.startup(() -> {});
+        }
+        catch(IllegalStateException e) {
+            //Already started
+        }
+    }
+
+
+
+    //UTILITY METHODS
+
+    /**
+     * Writes {@code fileText} to a file, then checks that processing the file gives the same output as processing
+     * the same text typed in, with every operation, every punctuation preference, and every thread count in {@code threadCounts}.
+     *
+     * @param fileText text of the file
+     * @param threadCounts thread counts to check
+     */
+    private void assertFileMatchesText(String fileText, int... threadCounts) throws Exception {
+        Path inputFile = folder.resolve("input.txt");
+        Files.writeString(inputFile, fileText, StandardCharsets.UTF_8);
+        String typedText = fileText.replace("\r\n", "\n").replace('\r', '\n');
+
+        for(OperationSelection operation : OperationSelection.values()) {
+            for(PunctuationSelection punctuation : PunctuationSelection.values()) {
+                for(int threads : threadCounts) {
+                    String typed = run(typedText, InputSelection.TEXT, operation, punctuation, threads);
+                    String scanned = run(inputFile.toString(), InputSelection.FILE, operation, punctuation, threads);
+                    assertEquals(typed, scanned, operation + " " + punctuation + " with " + threads + " threads, on a file of "
+                            + fileText.length() + " characters");
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Runs a Task on {@code input} and returns its output. Fails the test if the Task does not succeed.
+     *
+     * @param input text to process, or a filepath to the input
+     * @param inputSelection where the input comes from
+     * @param operation operation to do
+     * @param punctuation punctuation preferences
+     * @param threads number of worker threads
+     * @return the Task's output
+     */
+    private String run(String input, InputSelection inputSelection, OperationSelection operation,
+                       PunctuationSelection punctuation, int threads) throws ExecutionException, InterruptedException {
+        ProcessTask task = new ProcessTask(input, KEY, operation, punctuation, 3, 7,
+                inputSelection, null, false, threads);
+        task.run();
+        ProcessResult result = task.get();
+        assertTrue(result.isSucceeded(), inputSelection + " " + operation + ": " + result.getErrorMessage());
+        return result.materializeOutput();
+    }
+
+
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //TESTS
+
+
+    @DisplayName("A scanned file with multi-byte characters and \"\\r\\n\" line breaks should give the same output as " +
+            "the typed text, for thread counts that do not divide its letters evenly")
+    @Test
+    void testRandomFiles() throws Exception {
+        Random random = new Random(29);
+        String[] parts = {"abc", "xyzQ", "d", " ", "\r\n", "\r", "\n", ",.", "é", "Ñ", "中文", "😀", "12"};
+
+        for(int length : new int[]{1, 20, 997, 50_000}) {
+            StringBuilder text = new StringBuilder();
+            while(text.length() < length) {
+                text.append(parts[random.nextInt(parts.length)]);
+            }
+            assertFileMatchesText(text.toString(), 1, 2, 3, 7, 16, 64);
+        }
+    }
+
+
+    @DisplayName("A scanned file should give the same output as the typed text when a region's edge falls " +
+            "between the \"\\r\" and \"\\n\" of a line break, or inside a multi-byte character")
+    @Test
+    void testSplitRegionEdges() throws Exception {
+        //With 2 threads, the first region ends at byte 3: the "\n" of "\r\n"
+        assertFileMatchesText("ab\r\ncd", 2);
+
+        //With 2 threads, the first region ends at byte 3: inside the 4-byte character
+        assertFileMatchesText("a😀b", 2);
+
+        //With 2 threads, the first region ends at byte 4: inside the 3-byte character
+        assertFileMatchesText("abc中def", 2);
+
+        //Every region's edge falls inside a 4-byte character
+        assertFileMatchesText("ab" + "😀".repeat(60) + "cd", 2, 3, 5, 8, 30);
+
+        //Every region's edge falls inside a run of line breaks
+        assertFileMatchesText("abcdefg" + "\r\n".repeat(40) + "hijklmn", 2, 3, 5, 8, 30);
+    }
+
+
+    @DisplayName("A scanned file with more threads than letters, or with no letters, should give the same output as the typed text")
+    @Test
+    void testFewLetters() throws Exception {
+        assertFileMatchesText("a b", 1, 4, 64);
+        assertFileMatchesText("  é \r\n 😀 ", 1, 4, 64);
+        assertFileMatchesText("abcdefghijklmnopqrstu", 3, 7, 21, 22);
+    }
+
+
+    @DisplayName("A scanned file whose pieces are all cut next to a space should give the same output as the typed text")
+    @Test
+    void testSpacesAtCuts() throws Exception {
+        //Each block of 7 letters is followed by a space, so every cut falls right before one
+        assertFileMatchesText("abcdefg ".repeat(300), 1, 2, 3, 7, 16);
+        assertFileMatchesText(" abcdefg ".repeat(100) + "\r\n abc", 2, 5, 64);
+    }
+}
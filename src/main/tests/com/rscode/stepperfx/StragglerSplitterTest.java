@@ -0,0 +1,242 @@
+package com.rscode.stepperfx;
+
+import com.rscode.stepperfx.integration.OperationSelection;
+import com.rscode.stepperfx.integration.PunctuationSelection;
+import com.rscode.stepperfx.threading.ProcessSubtaskMain;
+import com.rscode.stepperfx.threading.ProcessTask;
+import com.rscode.stepperfx.threading.StragglerSplitter;
+import com.rscode.stepperfx.threading.WorkerProgress;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import org.junit.jupiter.api.*;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Class to test splitting a straggling worker's piece with a {@code StragglerSplitter}.<br><br>
+ *
+ * Note: The parts of a split worker start at the segments where their text falls in the worker's piece,
+ * so their combined output should always be the worker's unsplit output.
+ */
+public class StragglerSplitterTest {
+
+    /**
+     * Key long enough that no letters are padded
+     */
+    private final static String KEY = "thequickbrownfoxjumpsoverthelazydog";
+
+    /**
+     * Number of characters per key block
+     */
+    private final static int BLOCK_LENGTH = 7;
+
+    /**
+     * Number of workers in each stage
+     */
+    private final static int WORKERS = 4;
+
+
+    /**
+     * Starts the JavaFX runtime, which Tasks report their progress on. The runtime may already be started by another test class
+     */
+    @BeforeAll
+    public static void initJavaFxRuntime() {
+        try {
+            Platform.startup(() -> {});
+        }
+        catch(IllegalStateException e) {
+            //Already started
+        }
+    }
+
+
+
+    //UTILITY METHODS
+
+    /**
+     * Returns the output of part {@code index} of {@code parts}, waiting for it to finish, or null if interrupted
+     *
+     * @param parts started parts of a split worker
+     * @param index index of the part to wait for
+     * @return the part's output
+     */
+    private String awaitPart(Task<String>[] parts, int index) throws ExecutionException {
+        try {
+            return parts[index].get();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+
+    /**
+     * Returns random text with lowercase letters, spaces, punctuation, and line breaks
+     *
+     * @param random source of the text
+     * @param length number of characters to return
+     * @return the text
+     */
+    private String createText(Random random, int length) {
+        String alphabet = "abcdefghijklmnopqrstuvwxyz     ,.!?\n0123";
+        char[] text = new char[length];
+        for(int i = 0; i < length; i++) {
+            text[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return new String(text);
+    }
+
+
+    /**
+     * Processes {@code text} with {@code WORKERS} workers, after splitting each of {@code splitWorkers} into
+     * {@code partCount} parts, then returns the workers' outputs combined in order. No worker starts before the splits.
+     *
+     * @param text text to process
+     * @param operation operation to do
+     * @param punctuation punctuation preferences
+     * @param partCount number of parts to split each worker into
+     * @param splitWorkers workers to split
+     * @return the combined output
+     */
+    private String runStage(String text, OperationSelection operation, PunctuationSelection punctuation, int partCount,
+                            int... splitWorkers) throws Exception {
+        ProcessTask pt = new ProcessTask();
+        byte[][] formattedKey = pt.createKeyBlocks_Testing(KEY, 3, BLOCK_LENGTH);
+        String[] workloads = pt.assignWorkerLoads_Testing(text, WORKERS, BLOCK_LENGTH);
+
+        long[] startSegments = new long[WORKERS];
+        long[] pieceCharacters = new long[WORKERS];
+        for(int w = 0; w < WORKERS; w++) {
+            startSegments[w] = (w == 0) ? 0 : startSegments[w - 1] + workloads[w - 1].chars()
+                    .filter(Character::isLetter).count() / BLOCK_LENGTH;
+            pieceCharacters[w] = workloads[w].length();
+        }
+
+        WorkerProgress progress = new WorkerProgress(pieceCharacters);
+        LongAdder processedCharacters = new LongAdder();
+        Task<String>[] subtasks = new ProcessSubtaskMain[WORKERS];
+        for(int w = 0; w < WORKERS; w++) {
+            ProcessSubtaskMain subtask = new ProcessSubtaskMain(workloads[w], formattedKey, operation, punctuation, startSegments[w]);
+            subtask.setProgressCounter(processedCharacters);
+            subtask.setWorkerProgress(progress, w);
+            subtasks[w] = subtask;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(WORKERS);
+        try {
+            StragglerSplitter splitter = new StragglerSplitter(subtasks, workloads.clone(), startSegments, formattedKey,
+                    operation, punctuation, BLOCK_LENGTH, WORKERS,
+                    (workload, parts) -> pt.assignWorkerLoads_Testing(workload, parts, BLOCK_LENGTH),
+                    progress, processedCharacters, executor);
+            for(int w : splitWorkers) {
+                assertTrue(splitter.splitWorker(w, partCount), "Worker " + w);
+                assertTrue(splitter.isSplit(w), "Worker " + w);
+            }
+            for(int w = 0; w < WORKERS; w++) {
+                if(!splitter.isSplit(w)) {
+                    executor.submit(subtasks[w]);
+                }
+            }
+
+            StringBuilder output = new StringBuilder();
+            for(int w = 0; w < WORKERS; w++) {
+                output.append(splitter.isSplit(w)
+                        ? splitter.joinSplitParts(w, this::awaitPart)
+                        : subtasks[w].get());
+                assertFalse(splitter.isSplit(w), "Worker " + w);
+            }
+            return output.toString();
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //TESTS
+
+
+    @DisplayName("A split worker's parts should give the same combined output as the unsplit worker, for every operation " +
+            "and any number of parts")
+    @Test
+    void testSplitMatchesUnsplit() throws Exception {
+        Random random = new Random(38);
+        String text = createText(random, 20_000);
+
+        for(OperationSelection operation : OperationSelection.values()) {
+            for(PunctuationSelection punctuation : PunctuationSelection.values()) {
+                //Removing spaces while encrypting depends on where pieces start, so those stages are never split
+                if(operation.isEncryptionOperation() && punctuation == PunctuationSelection.REMOVE_SPACES) {
+                    continue;
+                }
+
+                String unsplit = runStage(text, operation, punctuation, 1);
+                for(int partCount : new int[]{1, 2, 3, 4, 9}) {
+                    assertEquals(unsplit, runStage(text, operation, punctuation, partCount, 1),
+                            operation + " " + punctuation + ", " + partCount + " parts");
+                }
+                assertEquals(unsplit, runStage(text, operation, punctuation, 3, 0, 1, 2, 3),
+                        operation + " " + punctuation + ", every worker split");
+            }
+        }
+    }
+
+
+    @DisplayName("A split worker with a piece too short to fill every part should give the same output as the unsplit worker")
+    @Test
+    void testShortPieces() throws Exception {
+        for(String text : new String[]{"", "ab cd", "abcdefghijklmnopqrstuvwxyzabc", "hello there, world. how are you?"}) {
+            for(OperationSelection operation : OperationSelection.values()) {
+                String unsplit = runStage(text, operation, PunctuationSelection.USE_PUNCTUATION, 1);
+                assertEquals(unsplit, runStage(text, operation, PunctuationSelection.USE_PUNCTUATION, 4, 0, 3),
+                        operation + " on \"" + text + "\"");
+            }
+        }
+    }
+
+
+    @DisplayName("A worker that finished before it could be split should keep its output, and splitStraggler should " +
+            "do nothing while no thread is idle")
+    @Test
+    void testUnsplittableWorkers() throws Exception {
+        ProcessTask pt = new ProcessTask();
+        byte[][] formattedKey = pt.createKeyBlocks_Testing(KEY, 3, BLOCK_LENGTH);
+        String[] workloads = pt.assignWorkerLoads_Testing(createText(new Random(39), 500), 2, BLOCK_LENGTH);
+
+        WorkerProgress progress = new WorkerProgress(new long[]{workloads[0].length(), workloads[1].length()});
+        Task<String>[] subtasks = new ProcessSubtaskMain[2];
+        for(int w = 0; w < 2; w++) {
+            subtasks[w] = new ProcessSubtaskMain(workloads[w], formattedKey, OperationSelection.STEPPER_ENCRYPT,
+                    PunctuationSelection.USE_PUNCTUATION, 0);
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            StragglerSplitter splitter = new StragglerSplitter(subtasks, workloads.clone(), new long[2], formattedKey,
+                    OperationSelection.STEPPER_ENCRYPT, PunctuationSelection.USE_PUNCTUATION, BLOCK_LENGTH, 2,
+                    (workload, parts) -> pt.assignWorkerLoads_Testing(workload, parts, BLOCK_LENGTH),
+                    progress, null, executor);
+
+            //No worker has finished, so no thread is idle
+            assertFalse(splitter.splitStraggler(1, System.nanoTime() + 60_000_000_000L));
+
+            subtasks[0].run();
+            String output = subtasks[0].get();
+            assertFalse(splitter.splitWorker(0, 2));
+            assertFalse(splitter.isSplit(0));
+            assertEquals(output, subtasks[0].get());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
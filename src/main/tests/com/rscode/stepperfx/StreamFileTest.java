@@ -0,0 +1,200 @@
+package com.rscode.stepperfx;
+
+import com.rscode.stepperfx.integration.InputSelection;
+import com.rscode.stepperfx.integration.OperationSelection;
+import com.rscode.stepperfx.integration.PunctuationSelection;
+import com.rscode.stepperfx.integration.StepperFields;
+import com.rscode.stepperfx.threading.ProcessResult;
+import com.rscode.stepperfx.threading.ProcessTask;
+import javafx.application.Platform;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Class to test the streamed file input of a {@code ProcessTask}.<br><br>
+ *
+ * Note: A streamed file should give the same output file as the same file read whole, or typed, for every operation and
+ * punctuation preference, even when a chunk is cut in the middle of a line break or a character, or next to a space.
+ */
+public class StreamFileTest {
+
+    /**
+     * Key long enough that no letters are padded
+     */
+    private final static String KEY = "thequickbrownfoxjumpsoverthelazydog";
+
+
+    /**
+     * Temporary folder for the input and output files
+     */
+    @TempDir
+    Path folder;
+
+
+    /**
+     * Starts the JavaFX runtime, which Tasks report their progress on. The runtime may already be started by another test class
+     */
+    @BeforeAll
+    public static void initJavaFxRuntime() {
+        try {
+            Platform.startup(() -> {});
+        }
+        catch(IllegalStateException e) {
+            //Already started
+        }
+    }
+
+
+
+    //UTILITY METHODS
+
+    /**
+     * Returns the text of a file two and a half chunks long, holding letters, spaces, punctuation, line breaks,
+     * and multi-byte characters.<br><br>
+     *
+     * A "\r\n" line break is split by the first chunk's end, and a two-char character is split by the second chunk's end.
+     *
+     * @return the file's text
+     */
+    private String createInputText() {
+        Random random = new Random(26);
+        String alphabet = "abcdefghijklmnopqrstuvwxyzABCDEFG     ,.!?\r\n0123456789éàÑ中";
+        char[] text = new char[StepperFields.STREAM_CHUNK_LENGTH * 5 / 2];
+        for(int i = 0; i < text.length; i++) {
+            text[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+
+        text[StepperFields.STREAM_CHUNK_LENGTH - 1] = '\r';
+        text[StepperFields.STREAM_CHUNK_LENGTH] = '\n';
+        text[2 * StepperFields.STREAM_CHUNK_LENGTH - 1] = "😀".charAt(0);
+        text[2 * StepperFields.STREAM_CHUNK_LENGTH] = "😀".charAt(1);
+        return new String(text);
+    }
+
+
+    /**
+     * Returns the text of a file two and a half chunks long, made of 7 letters and a space, repeated. Every chunk's end
+     * falls right after a space, and every cut after a full block of 3 blocks of 7 characters falls right before one.
+     *
+     * @return the file's text
+     */
+    private String createSpacedText() {
+        return "abcdefg ".repeat(StepperFields.STREAM_CHUNK_LENGTH * 5 / 16);
+    }
+
+
+    /**
+     * Runs a Task with 4 worker threads that processes {@code input} and writes its output to {@code outputFile},
+     * then returns the output file's text. Fails the test if the Task does not succeed.
+     *
+     * @param input file to process, or the text to process if {@code inputSelection} is {@code TEXT}
+     * @param outputFile file to write the output to
+     * @param operation operation to do
+     * @param punctuation punctuation preferences
+     * @param inputSelection how the input is read
+     * @return text of the output file
+     */
+    private String runToFile(String input, Path outputFile, OperationSelection operation, PunctuationSelection punctuation,
+                             InputSelection inputSelection) throws ExecutionException, InterruptedException, IOException {
+        return runToFile(input, outputFile, operation, punctuation, inputSelection, 4);
+    }
+
+
+    /**
+     * Runs a Task with {@code threads} worker threads that processes {@code input} and writes its output to {@code outputFile},
+     * then returns the output file's text. Fails the test if the Task does not succeed.
+     *
+     * @param input file to process, or the text to process if {@code inputSelection} is {@code TEXT}
+     * @param outputFile file to write the output to
+     * @param operation operation to do
+     * @param punctuation punctuation preferences
+     * @param inputSelection how the input is read
+     * @param threads number of worker threads
+     * @return text of the output file
+     */
+    private String runToFile(String input, Path outputFile, OperationSelection operation, PunctuationSelection punctuation,
+                             InputSelection inputSelection, int threads) throws ExecutionException, InterruptedException, IOException {
+        ProcessTask task = new ProcessTask(input, KEY, operation, punctuation, 3, 7,
+                inputSelection, outputFile.toString(), false, threads);
+        task.run();
+        ProcessResult result = task.get();
+        assertTrue(result.isSucceeded(), inputSelection + " " + operation + ": " + result.getErrorMessage());
+        return Files.readString(outputFile, StandardCharsets.UTF_8);
+    }
+
+
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //TESTS
+
+
+    @DisplayName("Streaming a file longer than one chunk should give the same output file as reading it whole, for every " +
+            "operation and punctuation preference, even when a chunk's end splits a \"\\r\\n\" line break or a two-char character")
+    @Test
+    void testMatchesFileInput() throws Exception {
+        Path inputFile = folder.resolve("input.txt");
+        Files.writeString(inputFile, createInputText(), StandardCharsets.UTF_8);
+
+        for(OperationSelection operation : OperationSelection.values()) {
+            for(PunctuationSelection punctuation : PunctuationSelection.values()) {
+                String whole = runToFile(inputFile.toString(), folder.resolve("whole.txt"), operation, punctuation,
+                        InputSelection.FILE);
+                String streamed = runToFile(inputFile.toString(), folder.resolve("streamed.txt"), operation, punctuation,
+                        InputSelection.FILE_STREAMING);
+
+                assertEquals(whole.length(), streamed.length(), operation + " " + punctuation);
+                assertEquals(whole, streamed, operation + " " + punctuation);
+            }
+        }
+    }
+
+
+    @DisplayName("Removing spaces from a file whose chunk ends and cuts all fall next to a space should give the same output " +
+            "when streamed, read whole, or typed, with any number of threads")
+    @Test
+    void testSpacesAtCuts() throws Exception {
+        String text = createSpacedText();
+        Path inputFile = folder.resolve("spaced.txt");
+        Files.writeString(inputFile, text, StandardCharsets.UTF_8);
+
+        for(OperationSelection operation : new OperationSelection[]{OperationSelection.STEPPER_ENCRYPT,
+                OperationSelection.STEPPER2_ENCRYPT}) {
+            String expected = runToFile(text, folder.resolve("single.txt"), operation, PunctuationSelection.REMOVE_SPACES,
+                    InputSelection.TEXT, 1);
+            assertEquals(text.length() / 8 * 7, expected.length(), operation + ": every space is between two letters");
+
+            assertEquals(expected, runToFile(text, folder.resolve("typed.txt"), operation, PunctuationSelection.REMOVE_SPACES,
+                    InputSelection.TEXT), operation + " typed");
+            assertEquals(expected, runToFile(inputFile.toString(), folder.resolve("whole.txt"), operation,
+                    PunctuationSelection.REMOVE_SPACES, InputSelection.FILE), operation + " read whole");
+            assertEquals(expected, runToFile(inputFile.toString(), folder.resolve("streamed.txt"), operation,
+                    PunctuationSelection.REMOVE_SPACES, InputSelection.FILE_STREAMING), operation + " streamed");
+        }
+    }
+
+
+    @DisplayName("Streaming a file shorter than one chunk should give the same output file as reading it whole")
+    @Test
+    void testShortFile() throws Exception {
+        Path inputFile = folder.resolve("short.txt");
+        Files.writeString(inputFile, "  Hello there,\r\nworld! Ça va? 😀  \r\n", StandardCharsets.UTF_8);
+
+        for(OperationSelection operation : OperationSelection.values()) {
+            String whole = runToFile(inputFile.toString(), folder.resolve("whole.txt"), operation,
+                    PunctuationSelection.USE_PUNCTUATION, InputSelection.FILE);
+            String streamed = runToFile(inputFile.toString(), folder.resolve("streamed.txt"), operation,
+                    PunctuationSelection.USE_PUNCTUATION, InputSelection.FILE_STREAMING);
+            assertEquals(whole, streamed, operation.toString());
+        }
+    }
+}